@@ -14,5 +14,11 @@
 	//Session 超时时间(m),默认30分钟
 	"SessionTimeout"    : 30,
 	//KeepAlive 超时时间(m),默认5分钟
-	"KeepAliveTimeout"  : 1
+	"KeepAliveTimeout"  : 1,
+	//AIO 的 I/O 线程数,0 表示使用 JVM 默认的通道组,默认0
+	"IoThreads"         : 0,
+	//业务处理的执行模式: PLATFORM 平台线程池, VIRTUAL 虚拟线程, DIRECT 在 I/O 线程中直接执行, 默认 PLATFORM
+	"ExecutionMode"     : "PLATFORM",
+	//请求报文的最大长度(MB),超过时关闭连接, 0 表示不限制, 默认8
+	"MaxRequestSize"    : 8
 }
\ No newline at end of file
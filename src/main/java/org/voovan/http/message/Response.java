@@ -1,6 +1,8 @@
 package org.voovan.http.message;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Vector;
 
@@ -24,6 +26,9 @@ public class Response {
 	private List<Cookie>		cookies;
 	private Body				body;
 	private boolean				isCompress;
+	private File				bodyFile;
+	private long				bodyFilePosition;
+	private long				bodyFileLength;
 
 	/**
 	 * 构造函数
@@ -36,6 +41,9 @@ public class Response {
 		this.body = response.body;
 		this.cookies = response.cookies;
 		this.isCompress = response.isCompress;
+		this.bodyFile = response.bodyFile;
+		this.bodyFilePosition = response.bodyFilePosition;
+		this.bodyFileLength = response.bodyFileLength;
 	}
 
 	/**
@@ -103,12 +111,56 @@ public class Response {
 		return body;
 	}
 
+	/**
+	 * 获取作为报文内容发送的文件
+	 * 
+	 * @return 文件, 没有设置时返回 null
+	 */
+	public File getBodyFile() {
+		return bodyFile;
+	}
+
+	/**
+	 * 获取报文内容在文件中的起始位置
+	 * 
+	 * @return
+	 */
+	public long getBodyFilePosition() {
+		return bodyFilePosition;
+	}
+
+	/**
+	 * 获取报文内容的文件长度
+	 * 
+	 * @return
+	 */
+	public long getBodyFileLength() {
+		return bodyFileLength;
+	}
+
+	/**
+	 * 将文件的指定区域作为报文内容
+	 * 		设置后 body 中的内容和压缩属性不再生效, asBytes 只生成响应头,
+	 * 		文件内容在发送时直接从文件写入 Socket
+	 * 
+	 * @param bodyFile 文件
+	 * @param position 文件中的起始位置
+	 * @param length   长度
+	 */
+	public void setBodyFile(File bodyFile, long position, long length) {
+		this.bodyFile = bodyFile;
+		this.bodyFilePosition = position;
+		this.bodyFileLength = length;
+	}
+
 	/**
 	 * 根据内容构造一写必要的 Header 属性
 	 */
 	private void initHeader() {
 		// 根据压缩属性确定 Header 的一些属性内容
-		if (isCompress) {
+		if (bodyFile != null) {
+			header.put("Content-Length", Long.toString(bodyFileLength));
+		} else if (isCompress) {
 			header.put("Transfer-Encoding", "chunked");
 			header.put("Content-Encoding", "gzip");
 		} else {
@@ -170,32 +222,34 @@ public class Response {
 	 */
 	public byte[] asBytes() {
 
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
 		initHeader();
 		
-		byte[] bodyBytes = genBody();
+		byte[] bodyBytes = bodyFile == null ? genBody() : new byte[0];
+		byte[] protocolBytes = protocol.toString().getBytes();
+		byte[] headerBytes = header.toString().getBytes();
+		byte[] cookieBytes = genCookie().getBytes();
+		byte[] lineBytes = "\r\n".getBytes();
 		
-		try {
-			// 处理协议行
-			outputStream.write(protocol.toString().getBytes());
+		//按报文的实际长度一次分配,避免输出流扩容产生的临时数组
+		byte[] responseBytes = new byte[protocolBytes.length + headerBytes.length + cookieBytes.length + lineBytes.length + bodyBytes.length];
+		ByteBuffer responseBuffer = ByteBuffer.wrap(responseBytes);
+		
+		// 处理协议行
+		responseBuffer.put(protocolBytes);
 
-			// 处理 Header
-			outputStream.write(header.toString().getBytes());
+		// 处理 Header
+		responseBuffer.put(headerBytes);
 
-			// 处理 Cookie
-			outputStream.write(genCookie().getBytes());
+		// 处理 Cookie
+		responseBuffer.put(cookieBytes);
 
-			//头结束插入空行
-			outputStream.write("\r\n".getBytes());
+		//头结束插入空行
+		responseBuffer.put(lineBytes);
 
-			//插入报文内容
-			outputStream.write(bodyBytes);
-			
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return outputStream.toByteArray();
+		//插入报文内容
+		responseBuffer.put(bodyBytes);
+		
+		return responseBytes;
 	}
 
 	@Override
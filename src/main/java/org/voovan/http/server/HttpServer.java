@@ -4,6 +4,8 @@ import java.io.IOException;
 
 import org.voovan.http.server.websocket.WebSocketBizHandler;
 import org.voovan.http.server.websocket.WebSocketDispatcher;
+import org.voovan.network.ExecutionMode;
+import org.voovan.network.aio.AioChannelGroup;
 import org.voovan.network.aio.AioServerSocket;
 import org.voovan.network.messagesplitter.HttpMessageSplitter;
 
@@ -41,6 +43,13 @@ public class HttpServer {
 		// 准备 socket 监听
 		aioServerSocket = new AioServerSocket(config.getHost(), config.getPort(), config.getTimeout());
 		
+		//I/O 线程数大于 0 时使用独立的固定线程池通道组,否则使用 JVM 默认的通道组
+		if(config.getIoThreads() > 0){
+			aioServerSocket.setChannelGroup(AioChannelGroup.newFixedGroup(config.getIoThreads()));
+		}
+		aioServerSocket.executionMode(ExecutionMode.valueOf(config.getExecutionMode().toUpperCase()));
+		aioServerSocket.setMaxMessageSize(config.getMaxRequestSize() * 1024 * 1024);
+		
 		//构造 SessionManage
 		sessionManager = SessionManager.newInstance(config);
 		
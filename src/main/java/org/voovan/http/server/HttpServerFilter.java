@@ -8,6 +8,7 @@ import org.voovan.http.message.HttpParser;
 import org.voovan.http.message.Request;
 import org.voovan.http.message.Response;
 import org.voovan.http.server.websocket.WebSocketFrame;
+import org.voovan.network.FileRegion;
 import org.voovan.network.IoFilter;
 import org.voovan.network.IoSession;
 import org.voovan.tools.TObject;
@@ -34,6 +35,17 @@ public class HttpServerFilter implements IoFilter {
 		// 对 Websocket 进行处理
 		if (object instanceof Response) {
 			Response response = TObject.cast(object);
+			if (response.getBodyFile() != null) {
+				// 文件内容不读入内存,由 FileRegion 直接从文件发送
+				try {
+					return new FileRegion(ByteBuffer.wrap(response.asBytes()), response.getBodyFile(),
+							response.getBodyFilePosition(), response.getBodyFileLength());
+				} catch (IOException e) {
+					Logger.error("Class HttpServerFilter Error: " + e.getMessage());
+					session.close();
+					return null;
+				}
+			}
 			return ByteBuffer.wrap(response.asBytes());
 		} else if(object instanceof WebSocketFrame){
 			WebSocketFrame webSocketFrame = TObject.cast(object);
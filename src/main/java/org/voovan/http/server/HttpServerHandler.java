@@ -1,8 +1,7 @@
 package org.voovan.http.server;
 
 import java.nio.ByteBuffer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import org.voovan.http.message.Request;
 import org.voovan.http.message.Response;
@@ -11,6 +10,7 @@ import org.voovan.http.server.websocket.WebSocketFrame;
 import org.voovan.http.server.websocket.WebSocketTools;
 import org.voovan.http.server.websocket.WebSocketDispatcher.WebSocketEvent;
 import org.voovan.http.server.websocket.WebSocketFrame.Opcode;
+import org.voovan.network.HashedWheelTimer;
 import org.voovan.network.IoHandler;
 import org.voovan.network.IoSession;
 import org.voovan.tools.TEnv;
@@ -212,19 +212,18 @@ public class HttpServerHandler implements IoHandler {
 	 * 
 	 * @param session
 	 */
-	private void keepLiveSchedule(IoSession session) {
+	private void keepLiveSchedule(final IoSession session) {
 		// 取消上次的 KeepAliveTask
 		if (session.getAttribute("keepAliveTimer") != null) {
-			Timer oldTimer = (Timer) session.getAttribute("keepAliveTimer");
-			oldTimer.cancel();
+			HashedWheelTimer.Timeout oldTimeout = TObject.cast(session.getAttribute("keepAliveTimer"));
+			oldTimeout.cancel();
 		}
 
-		// 构造新的KeepAliveTask
-		Timer keepAliveTimer = new Timer();
+		// 在共享的时间轮上构造新的KeepAliveTask
 		int keepAliveTimeout = config.getKeepAliveTimeout();
 
 		if (keepAliveTimeout > 0) {
-			TimerTask keepAliveTask = new TimerTask() {
+			Runnable keepAliveTask = new Runnable() {
 				@Override
 				public void run() {
 					// 如果是 WebSocket 则出发 Close 事件
@@ -236,7 +235,7 @@ public class HttpServerHandler implements IoHandler {
 					session.close();
 				}
 			};
-			keepAliveTimer.schedule(keepAliveTask, keepAliveTimeout * 60 * 1000);
+			HashedWheelTimer.Timeout keepAliveTimer = HashedWheelTimer.getDefault().newTimeout(keepAliveTask, keepAliveTimeout, TimeUnit.MINUTES);
 			session.setAttribute("keepAliveTimer", keepAliveTimer);
 		} else {
 			session.close();
@@ -65,6 +65,9 @@ public class WebContext {
 		config.setSessionContainer(getContextParameter("SessionContainer","java.util.Hashtable"));
 		config.setSessionTimeout(getContextParameter("SessionTimeout",30));
 		config.setKeepAliveTimeout(getContextParameter("KeepAliveTimeout",5));
+		config.setIoThreads(getContextParameter("IoThreads",0));
+		config.setExecutionMode(getContextParameter("ExecutionMode","PLATFORM"));
+		config.setMaxRequestSize(getContextParameter("MaxRequestSize",8));
 		return config;
 	}
 
@@ -17,6 +17,9 @@ public class WebServerConfig {
 	private String sessionContainer;
 	private int sessionTimeout;
 	private int keepAliveTimeout;
+	private int ioThreads;
+	private String executionMode;
+	private int maxRequestSize;
 	
 	protected void setHost(String host) {
 		this.host = host;
@@ -42,6 +45,15 @@ public class WebServerConfig {
 	protected void setKeepAliveTimeout(int keepAliveTimeout) {
 		this.keepAliveTimeout = keepAliveTimeout;
 	}
+	protected void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+	protected void setExecutionMode(String executionMode) {
+		this.executionMode = executionMode;
+	}
+	protected void setMaxRequestSize(int maxRequestSize) {
+		this.maxRequestSize = maxRequestSize;
+	}
 	
 	public String getHost() {
 		return host;
@@ -67,6 +79,15 @@ public class WebServerConfig {
 	public int getKeepAliveTimeout() {
 		return keepAliveTimeout;
 	}
+	public int getIoThreads() {
+		return ioThreads;
+	}
+	public String getExecutionMode() {
+		return executionMode;
+	}
+	public int getMaxRequestSize() {
+		return maxRequestSize;
+	}
 	
 	
 }
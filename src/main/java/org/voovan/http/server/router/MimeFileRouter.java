@@ -25,6 +25,11 @@ import org.voovan.tools.TString;
  */
 public class MimeFileRouter implements HttpBizHandler {
 
+	/**
+	 * 超过这个长度的文件不读入内存,发送时直接从文件写入 Socket, 也不进行压缩
+	 */
+	public static final long ZERO_COPY_THRESHOLD = 1024 * 1024;
+
 	private String	rootPath;
 
 	public MimeFileRouter(String rootPath) {
@@ -111,6 +116,11 @@ public class MimeFileRouter implements HttpBizHandler {
 	 * @throws FileNotFoundException 
 	 */
 	public void fillMimeFile(File responseFile,HttpRequest request,HttpResponse response){
+		if(responseFile.length() > ZERO_COPY_THRESHOLD){
+			fillMimeFileRegion(responseFile, request, response);
+			return;
+		}
+		
 		byte[] fileByte = null;
 		// 如果包含取一个范围内的文件内容进行处理,形似:Range: 0-800
 		if (request.header().get("Range") != null && request.header().get("Range").contains("-")) {
@@ -136,6 +146,32 @@ public class MimeFileRouter implements HttpBizHandler {
 		}
 	}
 	
+	/**
+	 * 将 mime 文件作为文件区域设置到 response
+	 * 		范围的含义与 fillMimeFile 一致: 发送 [beginPos, endPos) 的内容, 没有 endPos 时发送到文件结尾,
+	 * 		范围无法解析时发送整个文件
+	 * @param responseFile
+	 * @param request
+	 * @param response
+	 */
+	private void fillMimeFileRegion(File responseFile,HttpRequest request,HttpResponse response){
+		long fileSize = responseFile.length();
+		long beginPos = 0;
+		long endPos = fileSize;
+		String rangeStr = request.header().get("Range");
+		if (rangeStr != null && rangeStr.contains("-")) {
+			String[] ranges = rangeStr.replace("bytes=", "").trim().split("-", 2);
+			if (ranges[0].matches("\\d+") && (ranges[1].isEmpty() || ranges[1].matches("\\d+"))) {
+				beginPos = Math.min(Long.parseLong(ranges[0]), fileSize);
+				if (!ranges[1].isEmpty()) {
+					endPos = Math.max(Math.min(Long.parseLong(ranges[1]), fileSize), beginPos);
+				}
+				response.header().put("Content-Range", "bytes " + rangeStr + "/" + (endPos - beginPos));
+			}
+		}
+		response.setBodyFile(responseFile, beginPos, endPos - beginPos);
+	}
+	
 	/**
 	 * 将响应报文设置称304
 	 * @param response
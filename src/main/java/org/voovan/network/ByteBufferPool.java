@@ -0,0 +1,433 @@
+package org.voovan.network;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voovan.tools.log.Logger;
+
+/**
+ * 按大小分级的 ByteBuffer 池
+ * 		缓冲区按 2 的幂分级(512 字节到 64K),每个级别有线程本地缓存和一个所有线程共享的缓存区,
+ * 		申请时依次从线程本地缓存、共享缓存区获取,都没有时才新分配.
+ * 		超过最大级别的申请直接分配,不进入池.
+ * 		通过 acquire 获取的缓冲区必须且只能通过 release 归还一次.
+ *
+ * 		泄漏检测: 按采样间隔跟踪申请的缓冲区,被跟踪的缓冲区在没有归还的情况下被 GC 回收时输出告警日志.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ByteBufferPool {
+
+	private static final int MIN_SHIFT = 9;
+	private static final int MAX_SHIFT = 16;
+	private static final int CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+
+	/**
+	 * 池化的最小缓冲区大小
+	 */
+	public static final int MIN_SIZE = 1 << MIN_SHIFT;
+
+	/**
+	 * 池化的最大缓冲区大小
+	 */
+	public static final int MAX_SIZE = 1 << MAX_SHIFT;
+
+	private static final ByteBufferPool DIRECT_POOL = new ByteBufferPool(true);
+	private static final ByteBufferPool HEAP_POOL = new ByteBufferPool(false);
+
+	private final boolean direct;
+	private int threadCacheSize = 16;
+	private int arenaSize = 256;
+	private volatile int leakSampleInterval;
+
+	private final ThreadLocal<ArrayDeque<ByteBuffer>[]> threadCache;
+	private final Queue<ByteBuffer>[] arena;
+	private final AtomicInteger[] arenaCount;
+
+	private final ReferenceQueue<ByteBuffer> leakReferenceQueue;
+	private final ConcurrentHashMap<Integer, List<LeakTracker>> leakTrackers;
+
+	private final AtomicLong acquireCount = new AtomicLong(0);
+	private final AtomicLong releaseCount = new AtomicLong(0);
+	private final AtomicLong threadCacheHitCount = new AtomicLong(0);
+	private final AtomicLong arenaHitCount = new AtomicLong(0);
+	private final AtomicLong allocateCount = new AtomicLong(0);
+	private final AtomicLong unpooledCount = new AtomicLong(0);
+	private final AtomicLong leakCount = new AtomicLong(0);
+	private final AtomicLong sampleCounter = new AtomicLong(0);
+
+	/**
+	 * 构造函数
+	 * @param direct true: 使用直接内存, false: 使用堆内存
+	 */
+	public ByteBufferPool(boolean direct) {
+		this.direct = direct;
+		this.leakSampleInterval = Integer.getInteger("voovan.buffer.leakSampleInterval", 128);
+		this.threadCache = new ThreadLocal<ArrayDeque<ByteBuffer>[]>() {
+			@Override
+			protected ArrayDeque<ByteBuffer>[] initialValue() {
+				ArrayDeque<ByteBuffer>[] caches = newArray(ArrayDeque.class, CLASS_COUNT);
+				for (int i = 0; i < CLASS_COUNT; i++) {
+					caches[i] = new ArrayDeque<ByteBuffer>();
+				}
+				return caches;
+			}
+		};
+		this.arena = newArray(Queue.class, CLASS_COUNT);
+		this.arenaCount = new AtomicInteger[CLASS_COUNT];
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			arena[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			arenaCount[i] = new AtomicInteger(0);
+		}
+		this.leakReferenceQueue = new ReferenceQueue<ByteBuffer>();
+		this.leakTrackers = new ConcurrentHashMap<Integer, List<LeakTracker>>();
+	}
+
+	/**
+	 * 获取使用直接内存的共享缓冲区池
+	 * 		用于 Socket 读写等和通道直接交互的缓冲区
+	 * @return 缓冲区池
+	 */
+	public static ByteBufferPool getDirect() {
+		return DIRECT_POOL;
+	}
+
+	/**
+	 * 获取使用堆内存的共享缓冲区池
+	 * 		用于需要访问底层数组的缓冲区
+	 * @return 缓冲区池
+	 */
+	public static ByteBufferPool getHeap() {
+		return HEAP_POOL;
+	}
+
+	/**
+	 * 是否使用直接内存
+	 * @return
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * 设置每个线程每个级别缓存的缓冲区数量
+	 * @param threadCacheSize
+	 */
+	public void setThreadCacheSize(int threadCacheSize) {
+		this.threadCacheSize = threadCacheSize;
+	}
+
+	/**
+	 * 设置共享缓存区每个级别缓存的缓冲区数量
+	 * @param arenaSize
+	 */
+	public void setArenaSize(int arenaSize) {
+		this.arenaSize = arenaSize;
+	}
+
+	/**
+	 * 设置泄漏检测的采样间隔
+	 * @param leakSampleInterval 每申请多少个缓冲区跟踪一个, 1: 跟踪全部, 0: 关闭泄漏检测
+	 */
+	public void setLeakSampleInterval(int leakSampleInterval) {
+		this.leakSampleInterval = leakSampleInterval;
+	}
+
+	/**
+	 * 创建泛型元素类型的数组
+	 * @param componentType 元素的原始类型
+	 * @param length        数组长度
+	 * @param <T> 元素类型
+	 * @return 数组
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T[] newArray(Class<?> componentType, int length) {
+		return (T[]) Array.newInstance(componentType, length);
+	}
+
+	/**
+	 * 计算大小对应的级别
+	 * @param size 缓冲区大小
+	 * @return 级别, 超出池化范围返回 -1
+	 */
+	private static int sizeClass(int size) {
+		if (size > MAX_SIZE) {
+			return -1;
+		}
+		if (size <= MIN_SIZE) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * 申请缓冲区
+	 * 		返回的缓冲区 position 为 0, limit 为申请的大小, 容量可能大于申请的大小
+	 * @param size 需要的大小
+	 * @return 缓冲区
+	 */
+	public ByteBuffer acquire(int size) {
+		acquireCount.incrementAndGet();
+		pollLeaks();
+
+		int sizeClass = sizeClass(size);
+		ByteBuffer buffer = null;
+		if (sizeClass < 0) {
+			unpooledCount.incrementAndGet();
+			buffer = allocate(size);
+		} else {
+			buffer = threadCache.get()[sizeClass].pollLast();
+			if (buffer != null) {
+				threadCacheHitCount.incrementAndGet();
+			} else {
+				buffer = arena[sizeClass].poll();
+				if (buffer != null) {
+					arenaCount[sizeClass].decrementAndGet();
+					arenaHitCount.incrementAndGet();
+				} else {
+					allocateCount.incrementAndGet();
+					buffer = allocate(1 << (sizeClass + MIN_SHIFT));
+				}
+			}
+		}
+
+		buffer.clear();
+		buffer.limit(size);
+		track(buffer);
+		return buffer;
+	}
+
+	/**
+	 * 归还缓冲区
+	 * 		缓冲区归还后不能再被使用
+	 * @param buffer 通过 acquire 申请的缓冲区
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		releaseCount.incrementAndGet();
+		untrack(buffer);
+
+		int capacity = buffer.capacity();
+		int sizeClass = sizeClass(capacity);
+		// 只有容量和级别完全一致的缓冲区才能进入池
+		if (sizeClass < 0 || capacity != 1 << (sizeClass + MIN_SHIFT) || buffer.isDirect() != direct || buffer.isReadOnly()) {
+			return;
+		}
+
+		ArrayDeque<ByteBuffer> cache = threadCache.get()[sizeClass];
+		if (cache.size() < threadCacheSize) {
+			cache.addLast(buffer);
+		} else if (arenaCount[sizeClass].incrementAndGet() <= arenaSize) {
+			arena[sizeClass].offer(buffer);
+		} else {
+			arenaCount[sizeClass].decrementAndGet();
+		}
+	}
+
+	/**
+	 * 按采样间隔跟踪缓冲区
+	 * @param buffer 缓冲区
+	 */
+	private void track(ByteBuffer buffer) {
+		int interval = leakSampleInterval;
+		if (interval <= 0 || sampleCounter.incrementAndGet() % interval != 0) {
+			return;
+		}
+		LeakTracker tracker = new LeakTracker(buffer, leakReferenceQueue);
+		List<LeakTracker> trackers = leakTrackers.get(tracker.key);
+		if (trackers == null) {
+			trackers = new CopyOnWriteArrayList<LeakTracker>();
+			List<LeakTracker> oldTrackers = leakTrackers.putIfAbsent(tracker.key, trackers);
+			trackers = oldTrackers == null ? trackers : oldTrackers;
+		}
+		trackers.add(tracker);
+	}
+
+	/**
+	 * 取消对缓冲区的跟踪
+	 * @param buffer 缓冲区
+	 */
+	private void untrack(ByteBuffer buffer) {
+		if (leakTrackers.isEmpty()) {
+			return;
+		}
+		List<LeakTracker> trackers = leakTrackers.get(System.identityHashCode(buffer));
+		if (trackers != null) {
+			for (LeakTracker tracker : trackers) {
+				if (tracker.get() == buffer) {
+					tracker.clear();
+					trackers.remove(tracker);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 检查被 GC 回收但没有归还的缓冲区
+	 */
+	private void pollLeaks() {
+		LeakTracker tracker;
+		while ((tracker = (LeakTracker) leakReferenceQueue.poll()) != null) {
+			List<LeakTracker> trackers = leakTrackers.get(tracker.key);
+			if (trackers != null && trackers.remove(tracker)) {
+				leakCount.incrementAndGet();
+				Logger.warn("ByteBufferPool leak detected: a buffer was garbage collected without release, capacity: "
+						+ tracker.capacity + ", acquired at: " + stackTraceString(tracker.stackTrace));
+			}
+		}
+
+		// 清理空的跟踪列表
+		if (leakTrackers.size() > 1024) {
+			Iterator<List<LeakTracker>> iterator = leakTrackers.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().isEmpty()) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	private static String stackTraceString(StackTraceElement[] stackTrace) {
+		StringBuilder stringBuilder = new StringBuilder();
+		for (StackTraceElement element : stackTrace) {
+			// 跳过缓冲区池内部的调用
+			if (element.getClassName().startsWith(ByteBufferPool.class.getName())) {
+				continue;
+			}
+			stringBuilder.append("\r\n\tat ").append(element.toString());
+		}
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * 获取申请次数
+	 * @return
+	 */
+	public long getAcquireCount() {
+		return acquireCount.get();
+	}
+
+	/**
+	 * 获取归还次数
+	 * @return
+	 */
+	public long getReleaseCount() {
+		return releaseCount.get();
+	}
+
+	/**
+	 * 获取从线程本地缓存命中的次数
+	 * @return
+	 */
+	public long getThreadCacheHitCount() {
+		return threadCacheHitCount.get();
+	}
+
+	/**
+	 * 获取从共享缓存区命中的次数
+	 * @return
+	 */
+	public long getArenaHitCount() {
+		return arenaHitCount.get();
+	}
+
+	/**
+	 * 获取池内新分配缓冲区的次数
+	 * @return
+	 */
+	public long getAllocateCount() {
+		return allocateCount.get();
+	}
+
+	/**
+	 * 获取超出池化范围直接分配的次数
+	 * @return
+	 */
+	public long getUnpooledCount() {
+		return unpooledCount.get();
+	}
+
+	/**
+	 * 获取检测到的泄漏次数
+	 * @return
+	 */
+	public long getLeakCount() {
+		return leakCount.get();
+	}
+
+	/**
+	 * 获取共享缓存区中缓存的缓冲区数量
+	 * @return
+	 */
+	public int getArenaBufferCount() {
+		int count = 0;
+		for (AtomicInteger classCount : arenaCount) {
+			count += classCount.get();
+		}
+		return count;
+	}
+
+	/**
+	 * 获取池的使用统计
+	 * @return 统计项名称和值
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new HashMap<String, Long>();
+		statistics.put("acquire", getAcquireCount());
+		statistics.put("release", getReleaseCount());
+		statistics.put("inUse", getAcquireCount() - getReleaseCount());
+		statistics.put("threadCacheHit", getThreadCacheHitCount());
+		statistics.put("arenaHit", getArenaHitCount());
+		statistics.put("allocate", getAllocateCount());
+		statistics.put("unpooled", getUnpooledCount());
+		statistics.put("arenaBuffers", (long) getArenaBufferCount());
+		statistics.put("leak", getLeakCount());
+		return statistics;
+	}
+
+	@Override
+	public String toString() {
+		return "ByteBufferPool[direct=" + direct + " " + getStatistics() + "]";
+	}
+
+	/**
+	 * 缓冲区泄漏跟踪器
+	 * 		弱引用缓冲区,记录申请时的调用栈
+	 */
+	private static class LeakTracker extends WeakReference<ByteBuffer> {
+		private final int key;
+		private final int capacity;
+		private final StackTraceElement[] stackTrace;
+
+		public LeakTracker(ByteBuffer buffer, ReferenceQueue<ByteBuffer> referenceQueue) {
+			super(buffer, referenceQueue);
+			this.key = System.identityHashCode(buffer);
+			this.capacity = buffer.capacity();
+			this.stackTrace = new Throwable().getStackTrace();
+		}
+	}
+}
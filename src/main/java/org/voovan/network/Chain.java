@@ -1,7 +1,9 @@
 package org.voovan.network;
 
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.function.Predicate;
 /**
  * 对象链
  * 
@@ -17,6 +19,7 @@ public class Chain<E> extends ArrayDeque<E>{
 	private Iterator<E> iterator;
 	private boolean isStop;
 	private E currentObj;
+	private volatile int modifyCount;
 	
 	/**
 	 * 构造函数
@@ -81,6 +84,204 @@ public class Chain<E> extends ArrayDeque<E>{
 		}
 	}
 	
+	/**
+	 * 获取修改次数
+	 * 		每次增加或删除元素时递增,用于判断由链构建的缓存(例如过滤器管道)是否需要重新构建
+	 * @return 修改次数
+	 */
+	public int modifyCount(){
+		return modifyCount;
+	}
+
+	private void modified(){
+		modifyCount++;
+	}
+
+	@Override
+	public void addFirst(E e){
+		super.addFirst(e);
+		modified();
+	}
+
+	@Override
+	public void addLast(E e){
+		super.addLast(e);
+		modified();
+	}
+
+	@Override
+	public boolean offerFirst(E e){
+		boolean result = super.offerFirst(e);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean offerLast(E e){
+		boolean result = super.offerLast(e);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean add(E e){
+		boolean result = super.add(e);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean offer(E e){
+		boolean result = super.offer(e);
+		modified();
+		return result;
+	}
+
+	@Override
+	public void push(E e){
+		super.push(e);
+		modified();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c){
+		boolean result = super.addAll(c);
+		modified();
+		return result;
+	}
+
+	@Override
+	public E removeFirst(){
+		E result = super.removeFirst();
+		modified();
+		return result;
+	}
+
+	@Override
+	public E removeLast(){
+		E result = super.removeLast();
+		modified();
+		return result;
+	}
+
+	@Override
+	public E pollFirst(){
+		E result = super.pollFirst();
+		modified();
+		return result;
+	}
+
+	@Override
+	public E pollLast(){
+		E result = super.pollLast();
+		modified();
+		return result;
+	}
+
+	@Override
+	public E remove(){
+		E result = super.remove();
+		modified();
+		return result;
+	}
+
+	@Override
+	public E poll(){
+		E result = super.poll();
+		modified();
+		return result;
+	}
+
+	@Override
+	public E pop(){
+		E result = super.pop();
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean remove(Object o){
+		boolean result = super.remove(o);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean removeFirstOccurrence(Object o){
+		boolean result = super.removeFirstOccurrence(o);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean removeLastOccurrence(Object o){
+		boolean result = super.removeLastOccurrence(o);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c){
+		boolean result = super.removeAll(c);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c){
+		boolean result = super.retainAll(c);
+		modified();
+		return result;
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super E> filter){
+		boolean result = super.removeIf(filter);
+		modified();
+		return result;
+	}
+
+	@Override
+	public void clear(){
+		super.clear();
+		modified();
+	}
+
+	@Override
+	public Iterator<E> iterator(){
+		return modifyTracked(super.iterator());
+	}
+
+	@Override
+	public Iterator<E> descendingIterator(){
+		return modifyTracked(super.descendingIterator());
+	}
+
+	/**
+	 * 通过迭代器删除元素时同样记录修改
+	 * @param iterator 迭代器
+	 * @return 记录修改的迭代器
+	 */
+	private Iterator<E> modifyTracked(final Iterator<E> iterator){
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				modified();
+			}
+		};
+	}
+
 	/**
 	 *  从当前对象克隆一个 Chain
 	 */
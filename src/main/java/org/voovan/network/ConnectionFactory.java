@@ -0,0 +1,35 @@
+package org.voovan.network;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 连接池创建连接的工厂
+ * 		负责创建客户端 Socket, 设置业务处理句柄、过滤器和 SSL, 并发起连接
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface ConnectionFactory {
+
+	/**
+	 * 创建连接
+	 * 		例如创建 AioSocket 或者 NioSocket 并调用 connect
+	 * @param host 主机地址
+	 * @param port 端口
+	 * @param ssl  是否使用 SSL
+	 * @return 连接结果
+	 * @throws Exception 创建失败
+	 */
+	public CompletableFuture<IoSession> connect(String host, int port, boolean ssl) throws Exception;
+
+	/**
+	 * 借出前检查连接是否可用
+	 * 		连接已断开时不调用
+	 * @param session 空闲的连接
+	 * @return true: 可用, false: 不可用,连接被关闭
+	 */
+	public boolean validate(IoSession session);
+}
@@ -0,0 +1,743 @@
+package org.voovan.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.voovan.tools.log.Logger;
+
+/**
+ * 客户端连接池
+ * 		连接按主机地址、端口和是否使用 SSL 分组,借出时优先使用最近归还的空闲连接并检查连接是否可用,
+ * 		没有空闲连接并且未达到每个主机的最大连接数时通过 ConnectionFactory 创建新连接,否则进入等待队列,
+ * 		超过最大等待时间仍未借到连接时以 TimeoutException 结束.
+ * 		空闲超过最大空闲时间的连接在共享的时间轮上定期关闭.
+ * 		借出的连接使用完后必须通过 release 归还,连接不再可用时通过 invalidate 废弃.
+ * 		通过 register 注册到 JMX 后可以查看连接数、等待数、等待时间以及连接的创建和关闭次数.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ConnectionPool implements ConnectionPoolMXBean {
+
+	/**
+	 * 默认每个主机的最大连接数
+	 */
+	public static final int DEFAULT_MAX_PER_HOST = 8;
+
+	/**
+	 * 默认最大空闲时间,单位:毫秒
+	 */
+	public static final long DEFAULT_MAX_IDLE_TIME = 60 * 1000;
+
+	/**
+	 * 默认最大等待时间,单位:毫秒
+	 */
+	public static final long DEFAULT_MAX_WAIT_TIME = 5 * 1000;
+
+	/**
+	 * 不限制空闲时间时检查断开的空闲连接的间隔,单位:毫秒
+	 */
+	private static final long DEFAULT_EVICTION_INTERVAL = 30 * 1000;
+
+	private final ConnectionFactory connectionFactory;
+	private final ConcurrentHashMap<Key, HostPool> hostPools = new ConcurrentHashMap<Key, HostPool>();
+	private final ConcurrentHashMap<IoSession, HostPool> borrowedSessions = new ConcurrentHashMap<IoSession, HostPool>();
+	private volatile int maxPerHost = DEFAULT_MAX_PER_HOST;
+	private volatile long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+	private volatile long maxWaitTime = DEFAULT_MAX_WAIT_TIME;
+	private volatile boolean closed;
+	private volatile HashedWheelTimer.Timeout evictionTimeout;
+
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder createdConnections = new LongAdder();
+	private final LongAdder closedConnections = new LongAdder();
+	private final LongAdder evictedConnections = new LongAdder();
+	private final LongAdder connectFailures = new LongAdder();
+	private final LongAdder waitTimeouts = new LongAdder();
+	private final LatencyHistogram waitTime = new LatencyHistogram();
+	private ObjectName objectName;
+
+	/**
+	 * 构造函数
+	 * @param connectionFactory 创建连接的工厂
+	 */
+	public ConnectionPool(ConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+		scheduleEviction();
+	}
+
+	/**
+	 * 获取每个主机的最大连接数
+	 * 		包括借出的、空闲的和正在创建的连接
+	 * @return 连接数
+	 */
+	public int getMaxPerHost() {
+		return maxPerHost;
+	}
+
+	/**
+	 * 设置每个主机的最大连接数
+	 * @param maxPerHost 连接数
+	 */
+	public void setMaxPerHost(int maxPerHost) {
+		if (maxPerHost < 1) {
+			throw new IllegalArgumentException("maxPerHost must be greater than 0");
+		}
+		this.maxPerHost = maxPerHost;
+	}
+
+	/**
+	 * 获取最大空闲时间
+	 * @return 毫秒
+	 */
+	public long getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	/**
+	 * 设置最大空闲时间
+	 * 		空闲超过这个时间的连接被关闭,每隔最大空闲时间的一半检查一次
+	 * @param maxIdleTime 毫秒, 0 表示不限制
+	 */
+	public synchronized void setMaxIdleTime(long maxIdleTime) {
+		if (maxIdleTime < 0) {
+			throw new IllegalArgumentException("maxIdleTime must not be negative");
+		}
+		this.maxIdleTime = maxIdleTime;
+
+		//按新的空闲时间重新安排检查
+		HashedWheelTimer.Timeout timeout = evictionTimeout;
+		if (timeout != null && timeout.cancel() && !closed) {
+			scheduleEviction();
+		}
+	}
+
+	/**
+	 * 获取最大等待时间
+	 * @return 毫秒
+	 */
+	public long getMaxWaitTime() {
+		return maxWaitTime;
+	}
+
+	/**
+	 * 设置最大等待时间
+	 * 		从借出请求开始计算,包括等待空闲连接和创建连接的时间
+	 * @param maxWaitTime 毫秒, 0 表示不限制
+	 */
+	public void setMaxWaitTime(long maxWaitTime) {
+		if (maxWaitTime < 0) {
+			throw new IllegalArgumentException("maxWaitTime must not be negative");
+		}
+		this.maxWaitTime = maxWaitTime;
+	}
+
+	/**
+	 * 借出连接
+	 * @param host 主机地址
+	 * @param port 端口
+	 * @param ssl  是否使用 SSL
+	 * @return 借出结果, 超过最大等待时间时以 TimeoutException 结束, 创建连接失败时以创建连接的异常结束
+	 */
+	public CompletableFuture<IoSession> borrow(String host, int port, boolean ssl) {
+		CompletableFuture<IoSession> future = new CompletableFuture<IoSession>();
+		if (closed) {
+			future.completeExceptionally(new IllegalStateException("ConnectionPool is closed"));
+			return future;
+		}
+		borrowCount.increment();
+
+		Key key = new Key(host, port, ssl);
+		final Waiter waiter = new Waiter(future);
+		HostPool hostPool = null;
+		while (true) {
+			hostPool = hostPools.get(key);
+			if (hostPool == null) {
+				HostPool newHostPool = new HostPool(key);
+				hostPool = hostPools.putIfAbsent(key, newHostPool);
+				if (hostPool == null) {
+					hostPool = newHostPool;
+				}
+			}
+			synchronized (hostPool) {
+				//分组在清理时已经移除,重新获取
+				if (!hostPool.removed) {
+					hostPool.waiters.addLast(waiter);
+					break;
+				}
+			}
+		}
+
+		final HostPool waitHostPool = hostPool;
+		if (maxWaitTime > 0) {
+			waiter.timeout = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					expire(waitHostPool, waiter);
+				}
+			}, maxWaitTime, TimeUnit.MILLISECONDS);
+		}
+		dispatch(hostPool);
+		return future;
+	}
+
+	/**
+	 * 归还连接
+	 * 		连接已断开时关闭,否则成为空闲连接或者直接借给等待中的请求
+	 * @param session 借出的连接
+	 */
+	public void release(IoSession session) {
+		HostPool hostPool = borrowedSessions.remove(session);
+		if (hostPool == null) {
+			throw new IllegalArgumentException("Session is not borrowed from this pool: " + session);
+		}
+		if (session.isConnect()) {
+			addIdle(hostPool, session);
+		} else {
+			discard(hostPool, session);
+		}
+		dispatch(hostPool);
+	}
+
+	/**
+	 * 废弃连接
+	 * 		关闭连接并释放所占的连接数,例如请求失败连接的状态不确定时使用
+	 * @param session 借出的连接
+	 */
+	public void invalidate(IoSession session) {
+		HostPool hostPool = borrowedSessions.remove(session);
+		if (hostPool == null) {
+			throw new IllegalArgumentException("Session is not borrowed from this pool: " + session);
+		}
+		discard(hostPool, session);
+		dispatch(hostPool);
+	}
+
+	/**
+	 * 关闭连接池
+	 * 		关闭所有空闲连接,以异常结束等待中的请求,之后归还的连接被关闭
+	 */
+	public void close() {
+		closed = true;
+		HashedWheelTimer.Timeout timeout = evictionTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+
+		IllegalStateException exception = new IllegalStateException("ConnectionPool is closed");
+		for (HostPool hostPool : hostPools.values()) {
+			List<IoSession> idleSessions = new ArrayList<IoSession>();
+			List<Waiter> waiters = new ArrayList<Waiter>();
+			synchronized (hostPool) {
+				for (IdleSession idleSession : hostPool.idleSessions) {
+					idleSessions.add(idleSession.session);
+				}
+				hostPool.idleSessions.clear();
+				waiters.addAll(hostPool.waiters);
+				hostPool.waiters.clear();
+			}
+			for (IoSession session : idleSessions) {
+				discard(hostPool, session);
+			}
+			for (Waiter waiter : waiters) {
+				waiter.cancelTimeout();
+				waiter.future.completeExceptionally(exception);
+			}
+		}
+		unregister();
+	}
+
+	/**
+	 * 为等待中的请求分配连接
+	 * 		优先使用最近归还的空闲连接,不可用的空闲连接被关闭,
+	 * 		没有空闲连接时在最大连接数以内创建新连接,
+	 * 		连接立即完成(例如连接被拒绝)时在循环中继续处理下一个请求,不递归调用
+	 * @param hostPool 主机的连接
+	 */
+	private void dispatch(HostPool hostPool) {
+		while (true) {
+			Waiter waiter = null;
+			IdleSession idleSession = null;
+			synchronized (hostPool) {
+				do {
+					waiter = hostPool.waiters.pollFirst();
+				} while (waiter != null && waiter.future.isDone());
+
+				if (waiter == null) {
+					return;
+				} else if (!hostPool.idleSessions.isEmpty()) {
+					idleSession = hostPool.idleSessions.pollLast();
+				} else if (hostPool.total < maxPerHost) {
+					hostPool.total++;
+				} else {
+					hostPool.waiters.addFirst(waiter);
+					return;
+				}
+			}
+
+			if (idleSession == null) {
+				connect(hostPool, waiter);
+			} else if (!isHealthy(idleSession.session)) {
+				synchronized (hostPool) {
+					hostPool.waiters.addFirst(waiter);
+				}
+				discard(hostPool, idleSession.session);
+			} else if (!handOut(hostPool, waiter, idleSession.session)) {
+				addIdle(hostPool, idleSession.session);
+			}
+		}
+	}
+
+	/**
+	 * 创建新连接
+	 * 		连接数已经在调用前计入.
+	 * 		连接已经完成时直接处理结果,由调用的 dispatch 继续处理下一个请求;
+	 * 		否则在连接完成的回调中处理结果后再分配
+	 * @param hostPool 主机的连接
+	 * @param waiter   等待中的请求
+	 */
+	private void connect(final HostPool hostPool, final Waiter waiter) {
+		CompletableFuture<IoSession> connectFuture = null;
+		try {
+			connectFuture = connectionFactory.connect(hostPool.key.host, hostPool.key.port, hostPool.key.ssl);
+		} catch (Exception e) {
+			connectFuture = new CompletableFuture<IoSession>();
+			connectFuture.completeExceptionally(e);
+		}
+
+		if (connectFuture.isDone()) {
+			IoSession session = null;
+			Throwable throwable = null;
+			try {
+				session = connectFuture.join();
+			} catch (CompletionException e) {
+				throwable = e.getCause();
+			} catch (CancellationException e) {
+				throwable = e;
+			}
+			connected(hostPool, waiter, session, throwable);
+			return;
+		}
+
+		connectFuture.whenComplete(new BiConsumer<IoSession, Throwable>() {
+			@Override
+			public void accept(IoSession session, Throwable throwable) {
+				connected(hostPool, waiter, session, throwable);
+				dispatch(hostPool);
+			}
+		});
+	}
+
+	/**
+	 * 处理连接的结果
+	 * @param hostPool  主机的连接
+	 * @param waiter    等待中的请求
+	 * @param session   连接, 失败时为 null
+	 * @param throwable 失败的原因, 成功时为 null
+	 */
+	private void connected(HostPool hostPool, Waiter waiter, IoSession session, Throwable throwable) {
+		if (throwable != null) {
+			connectFailures.increment();
+			synchronized (hostPool) {
+				hostPool.total--;
+			}
+			waiter.cancelTimeout();
+			waiter.future.completeExceptionally(throwable);
+		} else {
+			createdConnections.increment();
+			if (!handOut(hostPool, waiter, session)) {
+				//请求已经超时,连接留给其他请求
+				addIdle(hostPool, session);
+			}
+		}
+	}
+
+	/**
+	 * 借出连接给等待中的请求
+	 * @param hostPool 主机的连接
+	 * @param waiter   等待中的请求
+	 * @param session  连接
+	 * @return true: 已借出, false: 请求已经结束
+	 */
+	private boolean handOut(HostPool hostPool, Waiter waiter, IoSession session) {
+		if (closed) {
+			return false;
+		}
+		borrowedSessions.put(session, hostPool);
+		if (waiter.future.complete(session)) {
+			waiter.cancelTimeout();
+			waitTime.record(System.nanoTime() - waiter.createTime);
+			return true;
+		}
+		borrowedSessions.remove(session);
+		return false;
+	}
+
+	/**
+	 * 检查空闲连接是否可用
+	 * @param session 空闲的连接
+	 * @return true: 可用, false: 不可用
+	 */
+	private boolean isHealthy(IoSession session) {
+		if (!session.isConnect()) {
+			return false;
+		}
+		try {
+			return connectionFactory.validate(session);
+		} catch (Exception e) {
+			Logger.error("Class ConnectionPool Error: validate session failed, " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * 连接成为空闲连接
+	 * 		连接池已关闭时关闭连接
+	 * @param hostPool 主机的连接
+	 * @param session  连接
+	 */
+	private void addIdle(HostPool hostPool, IoSession session) {
+		synchronized (hostPool) {
+			if (!closed) {
+				hostPool.idleSessions.addLast(new IdleSession(session));
+				return;
+			}
+		}
+		discard(hostPool, session);
+	}
+
+	/**
+	 * 关闭连接并释放所占的连接数
+	 * @param hostPool 主机的连接
+	 * @param session  连接
+	 */
+	private void discard(HostPool hostPool, IoSession session) {
+		synchronized (hostPool) {
+			hostPool.total--;
+		}
+		closedConnections.increment();
+		try {
+			session.close();
+		} catch (Exception e) {
+			Logger.error("Class ConnectionPool Error: close session failed, " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 借出请求超过最大等待时间
+	 * 		正在为请求创建的连接完成后留给其他请求
+	 * @param hostPool 主机的连接
+	 * @param waiter   等待中的请求
+	 */
+	private void expire(HostPool hostPool, Waiter waiter) {
+		synchronized (hostPool) {
+			hostPool.waiters.remove(waiter);
+		}
+		TimeoutException exception = new TimeoutException("Borrow connection to " + hostPool.key + " timed out after " + maxWaitTime + "ms");
+		//先计数,请求结束时指标已经更新
+		waitTimeouts.increment();
+		if (!waiter.future.completeExceptionally(exception)) {
+			waitTimeouts.decrement();
+		}
+	}
+
+	/**
+	 * 在共享的时间轮上定期关闭空闲超时和已断开的空闲连接
+	 */
+	private void scheduleEviction() {
+		long idleTime = maxIdleTime;
+		long interval = idleTime > 0 ? Math.max(HashedWheelTimer.DEFAULT_TICK_DURATION, idleTime / 2) : DEFAULT_EVICTION_INTERVAL;
+		evictionTimeout = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				if (!closed) {
+					evict();
+					scheduleEviction();
+				}
+			}
+		}, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 关闭空闲超时和已断开的空闲连接
+	 * 		没有任何连接和等待请求的分组被移除
+	 */
+	private void evict() {
+		long idleTime = maxIdleTime;
+		long currentTime = System.currentTimeMillis();
+		for (HostPool hostPool : hostPools.values()) {
+			List<IoSession> expiredSessions = new ArrayList<IoSession>();
+			synchronized (hostPool) {
+				Iterator<IdleSession> iterator = hostPool.idleSessions.iterator();
+				while (iterator.hasNext()) {
+					IdleSession idleSession = iterator.next();
+					if ((idleTime > 0 && currentTime - idleSession.idleSince >= idleTime) || !idleSession.session.isConnect()) {
+						iterator.remove();
+						expiredSessions.add(idleSession.session);
+					}
+				}
+			}
+			for (IoSession session : expiredSessions) {
+				evictedConnections.increment();
+				discard(hostPool, session);
+			}
+			if (!expiredSessions.isEmpty()) {
+				dispatch(hostPool);
+			}
+
+			synchronized (hostPool) {
+				if (hostPool.total == 0 && hostPool.waiters.isEmpty() && hostPool.idleSessions.isEmpty()) {
+					hostPool.removed = true;
+					hostPools.remove(hostPool.key, hostPool);
+				}
+			}
+		}
+	}
+
+	@Override
+	public int getTotalConnections() {
+		int count = 0;
+		for (HostPool hostPool : hostPools.values()) {
+			synchronized (hostPool) {
+				count += hostPool.total;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int getIdleConnections() {
+		int count = 0;
+		for (HostPool hostPool : hostPools.values()) {
+			synchronized (hostPool) {
+				count += hostPool.idleSessions.size();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int getBorrowedConnections() {
+		return borrowedSessions.size();
+	}
+
+	@Override
+	public int getPendingBorrows() {
+		int count = 0;
+		for (HostPool hostPool : hostPools.values()) {
+			synchronized (hostPool) {
+				count += hostPool.waiters.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 获取连接分组的数量
+	 * 		没有任何连接和等待请求的分组在清理空闲连接时移除
+	 * @return 分组数量
+	 */
+	public int getHostCount() {
+		return hostPools.size();
+	}
+
+	@Override
+	public long getBorrowCount() {
+		return borrowCount.sum();
+	}
+
+	@Override
+	public long getCreatedConnections() {
+		return createdConnections.sum();
+	}
+
+	@Override
+	public long getClosedConnections() {
+		return closedConnections.sum();
+	}
+
+	@Override
+	public long getEvictedConnections() {
+		return evictedConnections.sum();
+	}
+
+	@Override
+	public long getConnectFailures() {
+		return connectFailures.sum();
+	}
+
+	@Override
+	public long getWaitTimeouts() {
+		return waitTimeouts.sum();
+	}
+
+	/**
+	 * 获取借出等待时间的直方图
+	 * @return 直方图
+	 */
+	public LatencyHistogram getWaitTimeHistogram() {
+		return waitTime;
+	}
+
+	@Override
+	public Map<String, Double> getWaitTime() {
+		return waitTime.getStatistics();
+	}
+
+	/**
+	 * 获取所有的指标
+	 * @return 指标名称和值
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("totalConnections", (long) getTotalConnections());
+		statistics.put("idleConnections", (long) getIdleConnections());
+		statistics.put("borrowedConnections", (long) getBorrowedConnections());
+		statistics.put("pendingBorrows", (long) getPendingBorrows());
+		statistics.put("borrowCount", getBorrowCount());
+		statistics.put("createdConnections", getCreatedConnections());
+		statistics.put("closedConnections", getClosedConnections());
+		statistics.put("evictedConnections", getEvictedConnections());
+		statistics.put("connectFailures", getConnectFailures());
+		statistics.put("waitTimeouts", getWaitTimeouts());
+		return statistics;
+	}
+
+	/**
+	 * 注册到 JMX
+	 * 		ObjectName 为 org.voovan.network:type=ConnectionPool,name=[name]
+	 * @param name 名称,例如下游服务的名称
+	 */
+	public synchronized void register(String name) {
+		try {
+			unregister();
+			ObjectName newObjectName = new ObjectName("org.voovan.network:type=ConnectionPool,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+			objectName = newObjectName;
+		} catch (Exception e) {
+			Logger.error("Class ConnectionPool Error: register JMX failed, " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 从 JMX 注销
+	 */
+	public synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				if (mBeanServer.isRegistered(objectName)) {
+					mBeanServer.unregisterMBean(objectName);
+				}
+			} catch (Exception e) {
+				Logger.error("Class ConnectionPool Error: unregister JMX failed, " + e.getMessage());
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * 连接的分组
+	 */
+	private static class Key {
+		private final String host;
+		private final int port;
+		private final boolean ssl;
+
+		public Key(String host, int port, boolean ssl) {
+			this.host = host;
+			this.port = port;
+			this.ssl = ssl;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return port == key.port && ssl == key.ssl && host.equals(key.host);
+		}
+
+		@Override
+		public int hashCode() {
+			return (host.hashCode() * 31 + port) * 31 + (ssl ? 1 : 0);
+		}
+
+		@Override
+		public String toString() {
+			return (ssl ? "ssl://" : "tcp://") + host + ":" + port;
+		}
+	}
+
+	/**
+	 * 一个分组的连接
+	 * 		所有字段在持有对象锁时访问
+	 */
+	private static class HostPool {
+		private final Key key;
+		private final Deque<IdleSession> idleSessions = new ArrayDeque<IdleSession>();
+		private final Deque<Waiter> waiters = new ArrayDeque<Waiter>();
+		private int total;
+		//已经从连接池中移除,不能再加入请求
+		private boolean removed;
+
+		public HostPool(Key key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * 空闲的连接
+	 */
+	private static class IdleSession {
+		private final IoSession session;
+		private final long idleSince;
+
+		public IdleSession(IoSession session) {
+			this.session = session;
+			this.idleSince = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * 等待中的借出请求
+	 */
+	private static class Waiter {
+		private final CompletableFuture<IoSession> future;
+		private final long createTime;
+		private volatile HashedWheelTimer.Timeout timeout;
+
+		public Waiter(CompletableFuture<IoSession> future) {
+			this.future = future;
+			this.createTime = System.nanoTime();
+		}
+
+		public void cancelTimeout() {
+			HashedWheelTimer.Timeout waitTimeout = timeout;
+			if (waitTimeout != null) {
+				waitTimeout.cancel();
+			}
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package org.voovan.network;
+
+import java.util.Map;
+
+/**
+ * 连接池指标的 JMX 接口
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface ConnectionPoolMXBean {
+
+	public int getTotalConnections();
+
+	public int getIdleConnections();
+
+	public int getBorrowedConnections();
+
+	public int getPendingBorrows();
+
+	public long getBorrowCount();
+
+	public long getCreatedConnections();
+
+	public long getClosedConnections();
+
+	public long getEvictedConnections();
+
+	public long getConnectFailures();
+
+	public long getWaitTimeouts();
+
+	public Map<String, Double> getWaitTime();
+}
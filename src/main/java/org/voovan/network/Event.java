@@ -16,6 +16,7 @@ public class Event {
 	private EventName name;
 	private Object other;
 	private EventState state;
+	private long createTime;
 	
 	/**
 	 * 事件名称枚举
@@ -23,7 +24,7 @@ public class Event {
 	 *
 	 */
 	public enum EventName {
-		ON_ACCEPTED,ON_CONNECT,ON_DISCONNECT,ON_RECEIVE,ON_SENT,ON_EXCEPTION
+		ON_ACCEPTED,ON_CONNECT,ON_DISCONNECT,ON_RECEIVE,ON_SENT,ON_EXCEPTION,ON_IDLE
 	}
 	
 	/**
@@ -46,6 +47,23 @@ public class Event {
 		this.name = name;
 		this.other = other;
 		this.state = EventState.READY;
+		this.createTime = System.nanoTime();
+	}
+
+	/**
+	 * 获取事件的触发时间
+	 * @return System.nanoTime() 的值
+	 */
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	/**
+	 * 设置事件的触发时间
+	 * @param createTime System.nanoTime() 的值
+	 */
+	public void setCreateTime(long createTime) {
+		this.createTime = createTime;
 	}
 
 	public IoSession getSession() {
@@ -2,9 +2,13 @@ package org.voovan.network;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import org.voovan.network.Event.EventName;
 import org.voovan.network.Event.EventState;
+import org.voovan.network.filter.Encodable;
 import org.voovan.tools.TObject;
 
 /**
@@ -43,29 +47,43 @@ public class EventProcess {
 
 		IoSession session = event.getSession();
 		
-		// SSL 握手
-		if (session.getSSLParser() != null && !session.getSSLParser().isHandShakeDone()) {
-			try {
-				session.getSSLParser().doHandShake();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+		// SSL 握手未完成时不触发 onConnect, 握手在数据到达时推进,完成后再触发
+		if (!doHandShake(session)) {
+			return;
 		}
 
 		SocketContext socketContext = event.getSession().sockContext();
 		if (socketContext != null && session != null) {
 			Object result = socketContext.handler().onConnect(session);
 			if (result != null) {
-				socketContext.filterChain().rewind();
-				while (socketContext.filterChain().hasNext()) {
-					IoFilter fitler = socketContext.filterChain().next();
-					result = fitler.encode(session, result);
-				}
+				long encodeStartTime = System.nanoTime();
+				result = session.getFilterPipeline().encode(session, result);
+				session.getMetrics().recordEncode(System.nanoTime() - encodeStartTime);
 				sendMessage(session, result);
 			}
 		}
 	}
 
+	/**
+	 * 推进 SSL 握手
+	 * 		握手失败时关闭连接
+	 * @param session 会话对象
+	 * @return true: 握手完成或者不是 SSL 连接, false: 握手未完成
+	 * @throws IOException
+	 */
+	private static boolean doHandShake(IoSession session) throws IOException {
+		SSLParser sslParser = session.getSSLParser();
+		if (sslParser == null || sslParser.isHandShakeDone()) {
+			return true;
+		}
+		try {
+			return sslParser.doHandShake();
+		} catch (IOException e) {
+			session.close();
+			throw e;
+		}
+	}
+
 	/**
 	 * 连接断开事件 断开后出发
 	 * 
@@ -93,6 +111,19 @@ public class EventProcess {
 		IoSession session = event.getSession();
 		if (socketContext != null && session != null) {
 			
+			// SSL 握手未完成时,数据到达用于推进握手,握手完成时触发 onConnect 事件
+			SSLParser sslParser = session.getSSLParser();
+			if (sslParser != null && !sslParser.isHandShakeDone()) {
+				if (!doHandShake(session)) {
+					//握手完成前对端关闭了连接
+					if (session.getMessageLoader().isRemoteClosed()) {
+						session.close();
+					}
+					return;
+				}
+				onConnect(event);
+			}
+			
 			ByteBuffer byteBuffer = ByteBuffer.allocate(1);
 			
 			//循环读取完整的消息包,由于之前有消息分割器在工作,所以这里读取的消息都是完成的消息包.
@@ -113,31 +144,29 @@ public class EventProcess {
 				}
 
 				// -----------------Filter 解密处理-----------------
-				Object result = byteBuffer;
-
-				// 取得过滤器链
-				Chain<IoFilter> filterChain = socketContext.filterChain().clone();
-				while (filterChain.hasNext()) {
-					IoFilter fitler = filterChain.next();
-					result = fitler.decode(session, result);
-				}
+				// 每个消息都重新获取管道,会话的管道在处理过程中被替换(协议升级)时,后续的消息使用新的管道
+				NetworkMetrics metrics = session.getMetrics();
+				long startTime = System.nanoTime();
+				FilterPipeline filterPipeline = session.getFilterPipeline();
+				Object result = filterPipeline.decode(session, byteBuffer);
+				long decodeEndTime = System.nanoTime();
+				metrics.recordDecode(decodeEndTime - startTime);
 				// -------------------------------------------------
 
 				// -----------------Handler 业务处理-----------------
 				if (result != null) {
 					IoHandler handler = socketContext.handler();
 					result = handler.onReceive(session, result);
+					metrics.recordHandler(System.nanoTime() - decodeEndTime);
 				}
 				// --------------------------------------------------
 
 				// 返回的结果不为空的时候才发送
 				if (result != null) {
 					// ------------------Filter 加密处理-----------------
-					filterChain.rewind();
-					while (filterChain.hasNext()) {
-						IoFilter fitler = filterChain.next();
-						result = fitler.encode(session, result);
-					}
+					long encodeStartTime = System.nanoTime();
+					result = filterPipeline.encode(session, result);
+					metrics.recordEncode(System.nanoTime() - encodeStartTime);
 					// ---------------------------------------------------
 
 					// 发送消息
@@ -145,8 +174,6 @@ public class EventProcess {
 						sendMessage(session, result);
 					}
 				}
-
-				filterChain.clear();
 			}
 		}
 	}
@@ -189,16 +216,41 @@ public class EventProcess {
 		}
 	}
 
+	/**
+	 * 空闲事件 连接读写空闲超时后触发
+	 * 
+	 * @param event
+	 *            事件对象
+	 * @param idleType
+	 *            空闲类型
+	 */
+	public static void onIdle(Event event, IdleType idleType) {
+		SocketContext socketContext = event.getSession().sockContext();
+		IoSession session = event.getSession();
+		if (socketContext != null && session.isConnect()) {
+			socketContext.handler().onIdle(session, idleType);
+		}
+	}
+
 	/**
 	 * 消息发送
+	 * 		数据全部写入 Socket 后触发 onSent 事件
+	 * 		支持 ByteBuffer、String、Encodable 和 FileRegion 类型的对象, Encodable 对象在 onSent 事件处理完成后释放
+	 * 		String 固定使用 UTF-8 编码,不依赖平台默认字符集,需要其他字符集时使用 StringFilter
 	 * 
 	 * @param event
 	 * @param sendBuf
+	 * @return 发送完成通知
 	 * @throws Exception
 	 */
-	public static void sendMessage(IoSession session, Object sendObj) throws Exception {
+	public static CompletableFuture<Integer> sendMessage(final IoSession session, Object sendObj) throws Exception {
+
+		if (sendObj instanceof FileRegion) {
+			return sendFileRegion(session, TObject.<FileRegion>cast(sendObj));
+		}
 
 		ByteBuffer resultBuf = null;
+		Encodable encodable = null;
 		// 根据消息类型,封装消息
 		if (sendObj != null) {
 			if (sendObj instanceof ByteBuffer) {
@@ -206,25 +258,152 @@ public class EventProcess {
 				resultBuf.rewind();
 			} else if (sendObj instanceof String) {
 				String sendString = TObject.cast(sendObj);
-				resultBuf = ByteBuffer.wrap(sendString.getBytes());
+				resultBuf = ByteBuffer.wrap(sendString.getBytes(StandardCharsets.UTF_8));
+			} else if (sendObj instanceof Encodable) {
+				encodable = TObject.cast(sendObj);
+				resultBuf = encodable.encode(session);
 			} else {
-				throw new Exception("Expect Object type is 'java.nio.ByteBuffer' or 'java.lang.String',reality got type is '"
+				throw new Exception("Expect Object type is 'java.nio.ByteBuffer', 'java.lang.String' or 'org.voovan.network.filter.Encodable',reality got type is '"
 						+ sendObj.getClass() + "'");
 			}
 		}
 
+		CompletableFuture<Integer> sendFuture = null;
+		
 		// 发送消息
 		if (sendObj != null && session.isConnect()) {
 
 			if (session.getSSLParser() != null && session.getSSLParser().handShakeDone) {
-				session.sendSSLData(resultBuf);
+				sendFuture = session.sendSSLData(resultBuf);
+			} else {
+				sendFuture = session.send(resultBuf);
+			}
+
+			final ByteBuffer sentBuf = resultBuf;
+			final Encodable sentEncodable = encodable;
+			if (sendFuture.isDone()) {
+				// 已经写入完成则直接触发发送事件
+				if (!sendFuture.isCompletedExceptionally()) {
+					Event event = new Event(session, EventName.ON_SENT, sentBuf);
+					EventProcess.process(event);
+				}
+				release(sentEncodable, sentBuf);
+			} else {
+				// 数据在发送队列中,写入完成后在会话的事件线程中触发发送事件
+				sendFuture.whenComplete(new BiConsumer<Integer, Throwable>() {
+					@Override
+					public void accept(Integer length, Throwable throwable) {
+						if (throwable == null) {
+							session.getEventTrigger().fireSentThread(sentBuf);
+						}
+						// 在发送事件之后释放
+						if (sentEncodable != null) {
+							session.getEventTrigger().getSerialExecutor().execute(new Runnable() {
+								@Override
+								public void run() {
+									release(sentEncodable, sentBuf);
+								}
+							});
+						}
+					}
+				});
+			}
+		} else {
+			release(encodable, resultBuf);
+		}
+		
+		return sendFuture == null ? CompletableFuture.completedFuture(0) : sendFuture;
+	}
+
+	/**
+	 * 发送文件区域
+	 * 		先发送头部数据,头部写入完成后再发送文件内容,文件发送完成后触发 onSent 事件并关闭文件通道,
+	 * 		头部或者文件发送失败时同样关闭文件通道
+	 * @param session    会话对象
+	 * @param fileRegion 文件区域
+	 * @return 发送完成通知,值为头部和文件的总字节数,超过 Integer.MAX_VALUE 时为 Integer.MAX_VALUE
+	 */
+	private static CompletableFuture<Integer> sendFileRegion(final IoSession session, final FileRegion fileRegion) {
+		if (!session.isConnect()) {
+			fileRegion.close();
+			return CompletableFuture.completedFuture(0);
+		}
+
+		final CompletableFuture<Integer> sendFuture = new CompletableFuture<Integer>();
+		final ByteBuffer head = fileRegion.getHead();
+		final int headLength = head == null ? 0 : head.remaining();
+		if (headLength == 0) {
+			sendFileBody(session, fileRegion, 0, sendFuture);
+			return sendFuture;
+		}
+
+		CompletableFuture<Integer> headFuture = null;
+		try {
+			if (session.getSSLParser() != null && session.getSSLParser().handShakeDone) {
+				headFuture = session.sendSSLData(head);
 			} else {
-				session.send(resultBuf);
+				headFuture = session.send(head);
+			}
+		} catch (Exception e) {
+			// 文件还没有开始发送,在这里关闭文件
+			fileRegion.close();
+			sendFuture.completeExceptionally(e);
+			return sendFuture;
+		}
+
+		headFuture.whenComplete(new BiConsumer<Integer, Throwable>() {
+			@Override
+			public void accept(Integer length, Throwable throwable) {
+				if (throwable == null) {
+					sendFileBody(session, fileRegion, headLength, sendFuture);
+				} else {
+					fileRegion.close();
+					sendFuture.completeExceptionally(throwable);
+				}
+			}
+		});
+		return sendFuture;
+	}
+
+	/**
+	 * 发送文件区域的文件内容
+	 * @param session    会话对象
+	 * @param fileRegion 文件区域
+	 * @param headLength 已发送的头部长度
+	 * @param sendFuture 文件区域的发送完成通知
+	 */
+	private static void sendFileBody(final IoSession session, final FileRegion fileRegion, final int headLength, final CompletableFuture<Integer> sendFuture) {
+		CompletableFuture<Long> fileFuture = null;
+		try {
+			fileFuture = session.sendFile(fileRegion.getFileChannel(), fileRegion.getPosition(), fileRegion.getCount());
+		} catch (RuntimeException e) {
+			fileRegion.close();
+			sendFuture.completeExceptionally(e);
+			return;
+		}
+
+		fileFuture.whenComplete(new BiConsumer<Long, Throwable>() {
+			@Override
+			public void accept(Long length, Throwable throwable) {
+				fileRegion.close();
+				if (throwable == null) {
+					session.getEventTrigger().fireSentThread(fileRegion);
+					sendFuture.complete((int) Math.min(headLength + length, Integer.MAX_VALUE));
+				} else {
+					sendFuture.completeExceptionally(throwable);
+				}
 			}
+		});
+	}
 
-			Event event = new Event(session, EventName.ON_SENT, resultBuf);
-			// 出发发送事件
-			EventProcess.process(event);
+	/**
+	 * 释放 Encodable 对象编码使用的资源
+	 * @param encodable Encodable 对象
+	 * @param buffer    编码后的缓冲区
+	 */
+	private static void release(Encodable encodable, ByteBuffer buffer) {
+		if (encodable != null) {
+			encodable.release(buffer);
 		}
 	}
 
@@ -234,6 +413,12 @@ public class EventProcess {
 		}
 		event.setState(EventState.DISPOSEING);
 		EventName eventName = event.getName();
+		IoSession session = event.getSession();
+		if (session != null) {
+			NetworkMetrics metrics = session.getMetrics();
+			metrics.recordEvent(eventName);
+			metrics.recordQueueWait(System.nanoTime() - event.getCreateTime());
+		}
 		// 根据事件名称处理事件
 		try {
 			if (eventName == EventName.ON_ACCEPTED) {
@@ -249,6 +434,8 @@ public class EventProcess {
 				EventProcess.onSent(event, event.getOther());
 			} else if (eventName == EventName.ON_EXCEPTION) {
 				EventProcess.onException(event, TObject.cast(event.getOther()));
+			} else if (eventName == EventName.ON_IDLE) {
+				EventProcess.onIdle(event, TObject.cast(event.getOther()));
 			}
 		} catch (Exception e) {
 			EventProcess.onException(event, e);
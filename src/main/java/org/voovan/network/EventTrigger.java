@@ -1,18 +1,17 @@
 package org.voovan.network;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Vector;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.voovan.network.Event.EventName;
-import org.voovan.network.Event.EventState;
 
 /**
  * 事件触发器
  * 
  * 		触发各种事件
+ * 		同一个会话的事件通过串行执行器按触发顺序执行,不同会话的事件并行执行
  * 
  * @author helyho
  *
@@ -24,7 +23,8 @@ public class EventTrigger {
 	
 	private IoSession session;
 	private ThreadPoolExecutor eventThreadPool;
-	private List<Event> eventPool;
+	private SerialExecutor serialExecutor;
+	private AtomicBoolean receivePending;
 	
 	/**
 	 * 构造函数
@@ -33,99 +33,140 @@ public class EventTrigger {
 	public EventTrigger(IoSession session){
 		this.session = session;
 		eventThreadPool =ThreadPool.getThreadPool();
-		eventPool = new Vector<Event>();
+		serialExecutor = new SerialExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				eventExecutor().execute(command);
+			}
+		});
+		receivePending = new AtomicBoolean(false);
 	}
 	
 	/**
 	 * 无参数构造函数
 	 */
 	public EventTrigger(){
-		eventThreadPool = ThreadPool.getThreadPool();
+		this(null);
 		//设置allowCoreThreadTimeOut,允许回收超时的线程
 		eventThreadPool.allowCoreThreadTimeOut(true);
 	}
 	
-	public List<Event> getEventPool() {
-		return eventPool;
+	/**
+	 * 根据会话所属 SocketContext 的执行模式获取执行器
+	 * @return 执行器
+	 */
+	private Executor eventExecutor() {
+		if(session != null && session.sockContext() != null){
+			return ThreadPool.getExecutor(session.sockContext().executionMode());
+		}
+		return eventThreadPool;
+	}
+	
+	/**
+	 * 获取会话的串行执行器
+	 * 		同一个会话的事件按触发顺序依次执行
+	 * @return
+	 */
+	public SerialExecutor getSerialExecutor() {
+		return serialExecutor;
 	}
 
 	public void fireAcceptThread(IoSession session){
-		clearFinishedEvent();
 		fireEventThread(session,EventName.ON_ACCEPTED,null);
 	}
 	
 	public void fireConnectThread(){
-		clearFinishedEvent();
 		fireEventThread(EventName.ON_CONNECT,null);
 	}
 	
-	public synchronized void fireReceiveThread(){
-		clearFinishedEvent();
-		// 当消息长度大于缓冲区时,receive 会在缓冲区满了后就出发,这时消息还没有发送完,会被触发多次
-		// 所以当有 receive 事件正在执行则抛弃后面的所有 receive 事件
-		// !hasEventDisposeing(EventName.ON_CONNECT) &&
-		if (session.isConnect() && isHandShakeDone() && !hasEventUnfinished(EventName.ON_RECEIVE)) {
-			fireEventThread(EventName.ON_RECEIVE, null);
+	/**
+	 * 触发 onReceive 事件
+	 * 		已有等待执行的 receive 事件时不再重复入队,等待中的事件会读取所有已接收的数据.
+	 * 		事件开始执行时清除等待标记,执行期间到达的数据会再触发一次事件,因此不会丢失数据通知.
+	 */
+	public void fireReceiveThread(){
+		session.updateLastReadTime();
+		fireReceiveCheckThread();
+	}
+	
+	/**
+	 * 触发 onReceive 事件,不更新接收数据的时间
+	 * 		没有新的数据到达时重新处理已接收的数据,例如读取超时和对端关闭连接
+	 */
+	public void fireReceiveCheckThread(){
+		if (session.isConnect() && receivePending.compareAndSet(false, true)) {
+			if(!eventThreadPool.isShutdown()){
+				final long fireTime = System.nanoTime();
+				serialExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						receivePending.set(false);
+						//SSL 握手未完成时,receive 事件推进握手
+						if (session.isConnect()) {
+							Event event = Event.getInstance(session, EventName.ON_RECEIVE, null);
+							event.setCreateTime(fireTime);
+							EventProcess.process(event);
+						}
+					}
+				});
+			}else{
+				receivePending.set(false);
+			}
 		}
 	}
 	
-	public void fireSentThread(ByteBuffer buffer){
-		clearFinishedEvent();
-		fireEventThread(EventName.ON_SENT,buffer);
+	/**
+	 * 在事件线程中触发发送完成事件
+	 * @param sentObj 发送的对象, ByteBuffer 或者 FileRegion
+	 */
+	public void fireSentThread(Object sentObj){
+		fireEventThread(EventName.ON_SENT,sentObj);
 	}
 	
 	public void fireDisconnectThread(){
-		clearFinishedEvent();
 		fireEventThread(EventName.ON_DISCONNECT,null);
 	}
 	
 	public void fireExceptionThread(Exception exception){
-		clearFinishedEvent();
 		fireEventThread(EventName.ON_EXCEPTION,exception);
 	}
 	
+	public void fireIdleThread(IdleType idleType){
+		fireEventThread(EventName.ON_IDLE,idleType);
+	}
+	
 	public void fireAccept(IoSession session){
-		clearFinishedEvent();
 		fireEvent(session,EventName.ON_ACCEPTED,null);
 	}
 
 	public void fireConnect(){
-		clearFinishedEvent();
 		fireEvent(EventName.ON_CONNECT,null);
 	}
 	
 	public void fireReceive(){
-		clearFinishedEvent();
-		//当消息长度大于缓冲区时,receive 会在缓冲区满了后就出发,这时消息还没有发送完,会被触发多次
-		//所以当有 receive 事件正在执行则抛弃后面的所有 receive 事件
-		if (session.isConnect() && isHandShakeDone() && !hasEventUnfinished(EventName.ON_RECEIVE)) {
+		if (session.isConnect()) {
 			fireEvent(EventName.ON_RECEIVE,null);
 		}
 	}
 	
 	public void fireSent(ByteBuffer buffer){
-		clearFinishedEvent();
 		fireEvent(EventName.ON_SENT,buffer);
 	}
 	
 	public void fireDisconnect(){
-		clearFinishedEvent();
 		fireEvent(EventName.ON_DISCONNECT,null);
 	}
 	
 	public void fireException(Exception exception){
-		clearFinishedEvent();
 		fireEvent(EventName.ON_EXCEPTION,exception);
 	}
 	
 	
 	public boolean isShutdown(){
-		clearFinishedEvent();
 		return eventThreadPool.isShutdown();
 	}
 	
 	public void shutdown(){
-		clearFinishedEvent();
 		eventThreadPool.shutdown();
 	}
 	
@@ -141,36 +182,10 @@ public class EventTrigger {
 		return session;
 	}
 	
-	/**
-	 * 判断有没有特定的事件在执行
-	 * @param eventName  事件名
-	 * @return
-	 */
-	public boolean hasEventUnfinished(EventName eventName){
-		for(Event event : eventPool){
-			if(event.getName() == eventName && event.getState() != EventState.FINISHED ){
-				return true;
-			}
-		}
-		return false;
-	}
-	
-	public void clearFinishedEvent(){
-		List<Event> finishedEvent = new ArrayList<Event>();
-		synchronized (eventPool) {
-			for(Event event : eventPool){
-				if(event.getState() == EventState.FINISHED){
-					finishedEvent.add(event);
-				}
-			}
-			eventPool.removeAll(finishedEvent);
-		}
-		
-	}
-	
 	/**
 	 * 事件触发
-	 * 		根据事件启动 EventThread 来处理事件
+	 * 		当前会话的事件进入会话的串行执行器按顺序执行,
+	 * 		其他会话的事件(如 ServerSocket 接收的新连接)直接提交到线程池执行
 	 * @param session  当前连接会话
 	 * @param name     事件名称
 	 * @param exception
@@ -178,8 +193,13 @@ public class EventTrigger {
 	public void fireEventThread(IoSession session,Event.EventName name,Object other){
 		if(!eventThreadPool.isShutdown()){
 			Event event = Event.getInstance(session,name,other);
-			eventPool.add(event);
-			eventThreadPool.execute(new EventThread(event));
+			if(session == this.session){
+				serialExecutor.execute(new EventThread(event));
+			}else if(session != null && session.sockContext() != null){
+				ThreadPool.getExecutor(session.sockContext().executionMode()).execute(new EventThread(event));
+			}else{
+				eventThreadPool.execute(new EventThread(event));
+			}
 		}
 	}
 	
@@ -196,7 +216,7 @@ public class EventTrigger {
 	
 	/**
 	 * 事件触发
-	 * 		根据事件启动 EventThread 来处理事件
+	 * 		在当前线程中直接处理事件
 	 * @param session  当前连接会话
 	 * @param name     事件名称
 	 * @param exception
@@ -204,12 +224,11 @@ public class EventTrigger {
 	public void fireEvent(IoSession session,Event.EventName name,Object other){
 		Event event = Event.getInstance(session,name,other);
 		EventProcess.process(event);
-		eventPool.add(event);
 	}
 	
 	/**
 	 * 事件触发
-	 * 		根据事件启动 EventThread 来处理事件
+	 * 		在当前线程中直接处理事件
 	 * @param name     事件名称
 	 * @param exception
 	 */
@@ -0,0 +1,18 @@
+package org.voovan.network;
+
+/**
+ * 事件执行模式枚举
+ * 		PLATFORM: 在共享的平台线程池中执行事件
+ * 		VIRTUAL:  每个事件在一个新的虚拟线程中执行,适合业务处理中有阻塞操作(如数据库查询)的场景,
+ * 				      JDK 不支持虚拟线程时使用平台线程池执行
+ * 		DIRECT:   在触发事件的 I/O 线程(AIO 的完成线程或者 NIO 的事件循环线程)中直接执行,
+ * 				      省去线程切换,只适合不阻塞的轻量业务处理,业务处理阻塞时会占用 I/O 线程
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public enum ExecutionMode {
+	PLATFORM,VIRTUAL,DIRECT
+}
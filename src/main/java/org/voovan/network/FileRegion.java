@@ -0,0 +1,84 @@
+package org.voovan.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.voovan.tools.log.Logger;
+
+/**
+ * 文件区域消息
+ * 		由过滤器或者业务处理句柄返回,先发送头部数据,再通过 IoSession.sendFile 发送文件的指定区域,
+ * 		文件内容不读入 Java 堆,发送完成后触发 onSent 事件并关闭文件通道.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class FileRegion {
+
+	private ByteBuffer head;
+	private FileChannel fileChannel;
+	private long position;
+	private long count;
+
+	/**
+	 * 构造函数
+	 * @param head        在文件之前发送的数据, 可以为 null
+	 * @param fileChannel 文件通道, 发送完成后关闭
+	 * @param position    文件中的起始位置
+	 * @param count       发送的字节数
+	 */
+	public FileRegion(ByteBuffer head, FileChannel fileChannel, long position, long count) {
+		if (position < 0 || count < 0) {
+			throw new IllegalArgumentException("position and count must not be negative");
+		}
+		this.head = head;
+		this.fileChannel = fileChannel;
+		this.position = position;
+		this.count = count;
+	}
+
+	/**
+	 * 构造函数
+	 * @param head     在文件之前发送的数据, 可以为 null
+	 * @param file     文件
+	 * @param position 文件中的起始位置
+	 * @param count    发送的字节数
+	 * @throws IOException 文件打开失败
+	 */
+	public FileRegion(ByteBuffer head, File file, long position, long count) throws IOException {
+		this(head, new RandomAccessFile(file, "r").getChannel(), position, count);
+	}
+
+	public ByteBuffer getHead() {
+		return head;
+	}
+
+	public FileChannel getFileChannel() {
+		return fileChannel;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 关闭文件通道
+	 */
+	public void close() {
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			Logger.error("Class FileRegion Error: close file failed, " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package org.voovan.network;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 过滤器管道
+ * 		由过滤器链构建的不可变过滤器数组,构建后不再修改,可以被多个会话在不同的线程中同时使用,
+ * 		解码和编码按过滤器的顺序依次调用,遍历时不创建任何对象.
+ * 		需要修改过滤器时(例如 HTTP 升级为 WebSocket)通过 addFirst/addLast/replace/remove 创建新的管道,
+ * 		再通过 IoSession.setFilterPipeline 设置为会话的管道.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public final class FilterPipeline {
+
+	/**
+	 * 没有过滤器的管道
+	 */
+	public static final FilterPipeline EMPTY = new FilterPipeline(new IoFilter[0]);
+
+	private final IoFilter[] filters;
+
+	/**
+	 * 构造函数
+	 * @param filters 过滤器,按解码和编码的调用顺序排列
+	 */
+	public FilterPipeline(IoFilter... filters) {
+		this.filters = filters.clone();
+	}
+
+	/**
+	 * 构造函数
+	 * @param filters 过滤器集合,按解码和编码的调用顺序排列
+	 */
+	public FilterPipeline(Collection<IoFilter> filters) {
+		this.filters = filters.toArray(new IoFilter[filters.size()]);
+	}
+
+	/**
+	 * 过滤器数量
+	 * @return 过滤器数量
+	 */
+	public int size() {
+		return filters.length;
+	}
+
+	/**
+	 * 获取指定位置的过滤器
+	 * @param index 位置
+	 * @return 过滤器
+	 */
+	public IoFilter get(int index) {
+		return filters[index];
+	}
+
+	/**
+	 * 解码
+	 * 		onReceive 事件前调用
+	 * @param session 会话对象
+	 * @param object  接收的对象
+	 * @return 解码后的对象
+	 */
+	public Object decode(IoSession session, Object object) {
+		Object result = object;
+		for (int i = 0; i < filters.length; i++) {
+			result = filters[i].decode(session, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 编码
+	 * 		发送前调用
+	 * @param session 会话对象
+	 * @param object  发送的对象
+	 * @return 编码后的对象
+	 */
+	public Object encode(IoSession session, Object object) {
+		Object result = object;
+		for (int i = 0; i < filters.length; i++) {
+			result = filters[i].encode(session, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 创建在头部增加过滤器的新管道
+	 * @param filter 过滤器
+	 * @return 新的管道
+	 */
+	public FilterPipeline addFirst(IoFilter filter) {
+		IoFilter[] newFilters = new IoFilter[filters.length + 1];
+		newFilters[0] = filter;
+		System.arraycopy(filters, 0, newFilters, 1, filters.length);
+		return new FilterPipeline(newFilters);
+	}
+
+	/**
+	 * 创建在尾部增加过滤器的新管道
+	 * @param filter 过滤器
+	 * @return 新的管道
+	 */
+	public FilterPipeline addLast(IoFilter filter) {
+		IoFilter[] newFilters = Arrays.copyOf(filters, filters.length + 1);
+		newFilters[filters.length] = filter;
+		return new FilterPipeline(newFilters);
+	}
+
+	/**
+	 * 创建替换过滤器的新管道
+	 * 		替换所有指定类型的过滤器
+	 * @param filterClass 被替换的过滤器类型
+	 * @param filter      新的过滤器
+	 * @return 新的管道, 没有指定类型的过滤器时返回当前管道
+	 */
+	public FilterPipeline replace(Class<? extends IoFilter> filterClass, IoFilter filter) {
+		IoFilter[] newFilters = null;
+		for (int i = 0; i < filters.length; i++) {
+			if (filterClass.isInstance(filters[i])) {
+				if (newFilters == null) {
+					newFilters = filters.clone();
+				}
+				newFilters[i] = filter;
+			}
+		}
+		return newFilters == null ? this : new FilterPipeline(newFilters);
+	}
+
+	/**
+	 * 创建移除过滤器的新管道
+	 * 		移除所有指定类型的过滤器
+	 * @param filterClass 被移除的过滤器类型
+	 * @return 新的管道, 没有指定类型的过滤器时返回当前管道
+	 */
+	public FilterPipeline remove(Class<? extends IoFilter> filterClass) {
+		IoFilter[] newFilters = new IoFilter[filters.length];
+		int count = 0;
+		for (IoFilter filter : filters) {
+			if (!filterClass.isInstance(filter)) {
+				newFilters[count++] = filter;
+			}
+		}
+		return count == filters.length ? this : new FilterPipeline(Arrays.copyOf(newFilters, count));
+	}
+
+	@Override
+	public String toString() {
+		return "FilterPipeline" + Arrays.toString(filters);
+	}
+}
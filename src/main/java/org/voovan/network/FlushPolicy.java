@@ -0,0 +1,16 @@
+package org.voovan.network;
+
+/**
+ * 发送数据的刷新策略枚举
+ * 		IMMEDIATE: 发送时立即写入 Socket, 只有写不完的数据才进入发送队列
+ * 		COALESCE:  发送的数据先进入发送队列, 由事件循环在同一轮中把队列中的数据合并成一次聚集写入(Gathering Write),
+ * 				        适合一次处理中发送多个小消息的协议
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public enum FlushPolicy {
+	IMMEDIATE,COALESCE
+}
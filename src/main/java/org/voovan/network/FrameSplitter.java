@@ -0,0 +1,30 @@
+package org.voovan.network;
+
+import org.voovan.tools.ByteBufferChannel;
+
+/**
+ * 增量消息分割接口
+ * 		在已接收数据上查找消息帧,并通过 SplitState 保存上次扫描停止的位置,
+ * 		新的数据到达后从停止的位置继续扫描,不需要从头开始.
+ * 		已接收的数据通过 ByteBufferChannel 的 size/get/indexOf 查看,这些方法在通道的锁内执行,
+ * 		不会合并分段,也不会和 I/O 线程的写入冲突
+ * 
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface FrameSplitter {
+
+	/**
+	 * 查找一个完整的消息帧
+	 * 		只允许查看数据,不允许读取或者跳过数据
+	 * @param session  会话对象
+	 * @param buffer   已接收数据的通道, 偏移 0 为消息帧的起始位置
+	 * @param state    扫描状态,一个消息帧分割完成后会被重置
+	 * @return 完整消息帧的长度,消息帧不完整时返回 -1
+	 */
+	public int split(IoSession session, ByteBufferChannel buffer, SplitState state);
+	
+}
@@ -0,0 +1,401 @@
+package org.voovan.network;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.voovan.tools.log.Logger;
+
+/**
+ * 时间轮定时器
+ * 		所有连接共享一个时间轮和一个工作线程,线程数不随连接数增长.
+ * 		时间轮按 tickDuration 转动,每个槽位是一个双向链表,添加和取消定时任务都是 O(1) 的操作.
+ * 		定时任务的精度为 tickDuration,适用于 keep-alive、读写空闲检测等对精度要求不高的超时.
+ * 		到期的任务提交到执行器中执行,不会阻塞时间轮的转动.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HashedWheelTimer {
+
+	/**
+	 * 默认的时间轮刻度,毫秒
+	 */
+	public static final long DEFAULT_TICK_DURATION = 100;
+
+	/**
+	 * 默认的时间轮槽位数
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static HashedWheelTimer defaultTimer;
+
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Executor executor;
+	private final Queue<Timeout> pendingTimeouts;
+	private final Queue<Timeout> cancelledTimeouts;
+	private final AtomicInteger pendingCount;
+	private final Thread workerThread;
+	private volatile boolean running;
+	private long startTime;
+	private long tick;
+
+	/**
+	 * 构造函数
+	 * @param tickDuration 时间轮刻度,毫秒
+	 * @param wheelSize    时间轮槽位数,会向上取整为 2 的幂
+	 * @param executor     执行到期任务的执行器, 为 null 时在时间轮线程中直接执行
+	 */
+	public HashedWheelTimer(long tickDuration, int wheelSize, Executor executor) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0");
+		}
+		if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+		}
+
+		int normalizedSize = 1;
+		while (normalizedSize < wheelSize) {
+			normalizedSize <<= 1;
+		}
+
+		this.tickDuration = tickDuration;
+		this.wheel = new Bucket[normalizedSize];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = normalizedSize - 1;
+		this.executor = executor;
+		this.pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+		this.cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+		this.pendingCount = new AtomicInteger(0);
+		this.running = true;
+		this.startTime = System.nanoTime();
+		this.tick = 0;
+
+		this.workerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, "VOOVAN@HashedWheelTimer");
+		workerThread.setDaemon(true);
+		workerThread.start();
+	}
+
+	/**
+	 * 获取共享的时间轮定时器
+	 * 		到期任务在框架的线程池中执行
+	 * @return 时间轮定时器
+	 */
+	public static synchronized HashedWheelTimer getDefault() {
+		if (defaultTimer == null) {
+			defaultTimer = new HashedWheelTimer(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, ThreadPool.getThreadPool());
+		}
+		return defaultTimer;
+	}
+
+	/**
+	 * 添加定时任务
+	 * 		任务先进入无锁的等待队列,由时间轮线程在下一个刻度放入对应的槽位
+	 * @param task  定时任务
+	 * @param delay 延迟时间
+	 * @param unit  时间单位
+	 * @return 定时任务句柄,可用于取消任务
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (task == null) {
+			throw new NullPointerException("task");
+		}
+		if (!running) {
+			throw new IllegalStateException("HashedWheelTimer is stopped");
+		}
+
+		long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+		Timeout timeout = new Timeout(this, task, deadline);
+		pendingCount.incrementAndGet();
+		pendingTimeouts.offer(timeout);
+		return timeout;
+	}
+
+	/**
+	 * 等待执行的定时任务数
+	 * @return
+	 */
+	public int pendingTimeouts() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * 获取时间轮刻度
+	 * @return 毫秒
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * 获取时间轮槽位数
+	 * @return
+	 */
+	public int getWheelSize() {
+		return wheel.length;
+	}
+
+	/**
+	 * 停止时间轮
+	 * 		未到期的定时任务不再执行
+	 */
+	public void stop() {
+		running = false;
+		workerThread.interrupt();
+	}
+
+	/**
+	 * 时间轮线程
+	 */
+	private void work() {
+		while (running) {
+			long deadline = waitForNextTick();
+			if (deadline < 0) {
+				continue;
+			}
+			processCancelledTimeouts();
+			transferTimeoutsToBuckets();
+			wheel[(int) (tick & mask)].expireTimeouts(deadline);
+			tick++;
+		}
+	}
+
+	/**
+	 * 等待到下一个刻度
+	 * @return 当前刻度的时间, 被中断时返回 -1
+	 */
+	private long waitForNextTick() {
+		long deadline = TimeUnit.MILLISECONDS.toNanos(tickDuration) * (tick + 1);
+		while (true) {
+			long currentTime = System.nanoTime() - startTime;
+			long sleepTime = (deadline - currentTime + 999999) / 1000000;
+			if (sleepTime <= 0) {
+				return currentTime;
+			}
+			try {
+				Thread.sleep(sleepTime);
+			} catch (InterruptedException e) {
+				if (!running) {
+					return -1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 将等待队列中的任务放入对应的槽位
+	 * 		每个刻度最多转移 100000 个任务,避免新任务过多时时间轮停止转动
+	 */
+	private void transferTimeoutsToBuckets() {
+		for (int i = 0; i < 100000; i++) {
+			Timeout timeout = pendingTimeouts.poll();
+			if (timeout == null) {
+				break;
+			}
+			if (timeout.state() == Timeout.ST_CANCELLED) {
+				continue;
+			}
+
+			long tickDurationNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+			long calculated = timeout.deadline / tickDurationNanos;
+			timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+			// 已经过期的任务放到当前槽位,在本刻度执行
+			long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].addTimeout(timeout);
+		}
+	}
+
+	/**
+	 * 从槽位中移除已取消的任务
+	 */
+	private void processCancelledTimeouts() {
+		Timeout timeout = null;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	/**
+	 * 执行到期的任务
+	 * @param timeout 定时任务
+	 */
+	private void execute(Timeout timeout) {
+		if (executor == null) {
+			timeout.run();
+			return;
+		}
+		try {
+			executor.execute(timeout);
+		} catch (RejectedExecutionException e) {
+			Logger.error("Class HashedWheelTimer Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 定时任务句柄
+	 */
+	public static class Timeout implements Runnable {
+		private static final int ST_INIT = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state;
+
+		// 以下字段只在时间轮线程中访问
+		private long remainingRounds;
+		private Timeout next;
+		private Timeout prev;
+		private Bucket bucket;
+
+		private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+			this.state = new AtomicInteger(ST_INIT);
+		}
+
+		private int state() {
+			return state.get();
+		}
+
+		/**
+		 * 获取定时任务
+		 * @return
+		 */
+		public Runnable getTask() {
+			return task;
+		}
+
+		/**
+		 * 取消定时任务
+		 * 		任务从槽位中的移除在时间轮线程的下一个刻度完成
+		 * @return true: 取消成功, false: 任务已经执行或者已经取消
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			timer.pendingCount.decrementAndGet();
+			timer.cancelledTimeouts.offer(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state() == ST_EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+				return;
+			}
+			timer.pendingCount.decrementAndGet();
+			timer.execute(this);
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				Logger.error("Class HashedWheelTimer Error: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * 时间轮槽位
+	 * 		双向链表,只在时间轮线程中访问
+	 */
+	private static class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		private void addTimeout(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		/**
+		 * 执行槽位中到期的任务,未到期的任务轮数减一
+		 * @param deadline 当前刻度的时间
+		 */
+		private void expireTimeouts(long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					if (timeout.deadline <= deadline) {
+						timeout.expire();
+					} else {
+						// 不应该出现,放错槽位的任务
+						Logger.warn("Class HashedWheelTimer: timeout.deadline (" + timeout.deadline + ") > deadline (" + deadline + ")");
+					}
+				} else if (timeout.isCancelled()) {
+					remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		private void remove(Timeout timeout) {
+			if (timeout.bucket != this) {
+				return;
+			}
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+
+			if (timeout == head) {
+				if (timeout == tail) {
+					tail = null;
+					head = null;
+				} else {
+					head = next;
+				}
+			} else if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+}
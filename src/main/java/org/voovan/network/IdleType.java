@@ -0,0 +1,15 @@
+package org.voovan.network;
+
+/**
+ * 连接空闲类型枚举
+ * 		READ_IDLE:  超过读空闲时间没有接收到数据
+ * 		WRITE_IDLE: 超过写空闲时间没有写入数据
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public enum IdleType {
+	READ_IDLE,WRITE_IDLE
+}
@@ -0,0 +1,260 @@
+package org.voovan.network;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voovan.tools.ByteBufferChannel;
+
+/**
+ * 会话的接收限流
+ * 		记录会话已接收但尚未被消息分割器取走的数据量(包括 SSL 解包前后的数据),
+ * 		超过会话的高水位或者所有会话的总量超过全局高水位时暂停读取,
+ * 		会话的数据降低到低水位并且全局的总量降低到全局低水位时恢复读取.
+ * 		会话正在等待一个不完整的消息时不因会话的高水位暂停读取,否则消息永远无法接收完整,
+ * 		这时会话占用的内存由 SocketContext 的最大消息长度限制.
+ * 		全局的总量超过全局高水位时所有会话都暂停读取,包括等待不完整消息的会话,
+ * 		这些会话的数据在读取超时后由 MessageLoader 返回,从而释放内存,全局的总量因此始终有上限.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class InboundThrottle {
+
+	/**
+	 * 默认高水位
+	 */
+	public static final int DEFAULT_HIGH_WATER_MARK = 1024 * 1024;
+
+	/**
+	 * 默认低水位
+	 */
+	public static final int DEFAULT_LOW_WATER_MARK = 512 * 1024;
+
+	/**
+	 * 默认最大消息长度
+	 */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 8 * 1024 * 1024;
+
+	private static final int GLOBAL_DRAINED = 1;
+	private static final int PAUSE = 2;
+	private static final int RESUME = 4;
+
+	private static final AtomicLong GLOBAL_BUFFERED = new AtomicLong(0);
+	private static final AtomicBoolean GLOBAL_PAUSED = new AtomicBoolean(false);
+	private static final ConcurrentLinkedQueue<InboundThrottle> GLOBAL_PAUSED_THROTTLES = new ConcurrentLinkedQueue<InboundThrottle>();
+	private static volatile long globalHighWaterMark = Runtime.getRuntime().maxMemory() / 4;
+	private static volatile long globalLowWaterMark = globalHighWaterMark / 2;
+
+	private IoSession session;
+	private long reported;
+	private boolean overWaterMark;
+	private boolean awaitingFrame;
+	private boolean released;
+	//是否在全局暂停的队列中
+	private boolean queued;
+	private volatile boolean paused;
+
+	/**
+	 * 构造函数
+	 * @param session 会话对象
+	 */
+	public InboundThrottle(IoSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * 是否暂停了读取
+	 * @return true: 暂停, false: 未暂停
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * 会话已接收未处理的字节数
+	 * 		最后一次更新时的值
+	 * @return 字节数
+	 */
+	public synchronized long getBufferedBytes() {
+		return reported;
+	}
+
+	/**
+	 * 接收数据或者取走消息后更新
+	 * 		保持当前是否在等待不完整消息的状态
+	 */
+	public void update() {
+		int action;
+		synchronized (this) {
+			action = refresh();
+		}
+		apply(action);
+	}
+
+	/**
+	 * 消息分割后更新
+	 * @param awaitingFrame 是否在等待一个不完整的消息
+	 */
+	public void update(boolean awaitingFrame) {
+		int action;
+		synchronized (this) {
+			this.awaitingFrame = awaitingFrame;
+			action = refresh();
+		}
+		apply(action);
+	}
+
+	/**
+	 * 连接关闭时释放会话在全局总量中所占的份额
+	 */
+	public void release() {
+		boolean globalDrained;
+		synchronized (this) {
+			released = true;
+			paused = false;
+			globalDrained = addGlobal(-reported);
+			reported = 0;
+		}
+		if (globalDrained) {
+			resumeGlobalPaused();
+		}
+	}
+
+	/**
+	 * 重新计算接收的数据量并判断是否暂停读取
+	 * @return 需要在锁外执行的动作
+	 */
+	private int refresh() {
+		if (released) {
+			return 0;
+		}
+
+		int action = 0;
+		long buffered = size(session.getByteBufferChannel()) + size(session.getAppDataBufferChannel());
+		if (addGlobal(buffered - reported)) {
+			action |= GLOBAL_DRAINED;
+		}
+		reported = buffered;
+
+		SocketContext socketContext = session.sockContext();
+		int highWaterMark = socketContext == null ? DEFAULT_HIGH_WATER_MARK : socketContext.getReadHighWaterMark();
+		int lowWaterMark = socketContext == null ? DEFAULT_LOW_WATER_MARK : socketContext.getReadLowWaterMark();
+		if (buffered > highWaterMark) {
+			overWaterMark = true;
+		} else if (buffered <= lowWaterMark) {
+			overWaterMark = false;
+		}
+
+		boolean globalPaused = GLOBAL_PAUSED.get();
+		boolean shouldPause = globalPaused || (overWaterMark && !awaitingFrame);
+		if (shouldPause != paused) {
+			paused = shouldPause;
+			action |= shouldPause ? PAUSE : RESUME;
+		}
+
+		//已经因为自身高水位暂停的会话在全局暂停开始后同样需要加入队列,否则全局恢复时不会被重新判断
+		if (paused && globalPaused && !queued) {
+			queued = true;
+			GLOBAL_PAUSED_THROTTLES.offer(this);
+			//加入队列前全局暂停已经结束时,由当前线程处理队列
+			if (!GLOBAL_PAUSED.get()) {
+				action |= GLOBAL_DRAINED;
+			}
+		}
+		return action;
+	}
+
+	/**
+	 * 在锁外暂停或恢复读取
+	 * 		传输层根据会话当前的状态决定是否读取,多个线程的调用顺序交错时结果仍然一致
+	 * @param action 需要执行的动作
+	 */
+	private void apply(int action) {
+		if ((action & PAUSE) != 0) {
+			session.pauseRead();
+		} else if ((action & RESUME) != 0) {
+			session.resumeRead();
+		}
+		if ((action & GLOBAL_DRAINED) != 0) {
+			resumeGlobalPaused();
+		}
+	}
+
+	private static int size(ByteBufferChannel byteBufferChannel) {
+		return byteBufferChannel == null ? 0 : byteBufferChannel.size();
+	}
+
+	/**
+	 * 累加全局的总量
+	 * @param delta 变化的字节数
+	 * @return true: 全局的总量从暂停状态降低到了全局低水位
+	 */
+	private static boolean addGlobal(long delta) {
+		long globalBuffered = GLOBAL_BUFFERED.addAndGet(delta);
+		if (globalBuffered > globalHighWaterMark) {
+			GLOBAL_PAUSED.set(true);
+		} else if (globalBuffered <= globalLowWaterMark) {
+			return GLOBAL_PAUSED.compareAndSet(true, false);
+		}
+		return false;
+	}
+
+	/**
+	 * 全局的总量降低到全局低水位后,重新判断因全局高水位暂停读取的会话
+	 */
+	private static void resumeGlobalPaused() {
+		//只处理当前队列中的会话,重新判断时再次暂停的会话留给下一次恢复
+		for (int count = GLOBAL_PAUSED_THROTTLES.size(); count > 0; count--) {
+			InboundThrottle throttle = GLOBAL_PAUSED_THROTTLES.poll();
+			if (throttle == null) {
+				break;
+			}
+			synchronized (throttle) {
+				throttle.queued = false;
+			}
+			throttle.update();
+		}
+	}
+
+	/**
+	 * 所有会话已接收未处理的字节数
+	 * @return 字节数
+	 */
+	public static long getGlobalBufferedBytes() {
+		return GLOBAL_BUFFERED.get();
+	}
+
+	/**
+	 * 获取全局高水位
+	 * @return 字节数
+	 */
+	public static long getGlobalHighWaterMark() {
+		return globalHighWaterMark;
+	}
+
+	/**
+	 * 获取全局低水位
+	 * @return 字节数
+	 */
+	public static long getGlobalLowWaterMark() {
+		return globalLowWaterMark;
+	}
+
+	/**
+	 * 设置全局的高低水位
+	 * 		默认高水位为 JVM 最大内存的 1/4, 低水位为高水位的一半
+	 * @param highWaterMark 高水位,字节数
+	 * @param lowWaterMark  低水位,字节数
+	 */
+	public static void setGlobalWaterMark(long highWaterMark, long lowWaterMark) {
+		if (lowWaterMark > highWaterMark) {
+			throw new IllegalArgumentException("lowWaterMark must not be greater than highWaterMark");
+		}
+		globalHighWaterMark = highWaterMark;
+		globalLowWaterMark = lowWaterMark;
+	}
+}
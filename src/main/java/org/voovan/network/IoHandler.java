@@ -45,4 +45,14 @@ public interface IoHandler {
 	 * @param e
 	 */
 	public void onException(IoSession session,Exception e);
+	
+	/**
+	 * 空闲事件
+	 * 		连接超过 SocketContext 设置的读空闲或写空闲时间没有读写数据时触发,
+	 * 		空闲状态持续时每经过一个空闲时间触发一次,默认不做任何处理
+	 * @param session
+	 * @param idleType 空闲类型
+	 */
+	public default void onIdle(IoSession session,IdleType idleType) {
+	}
 }
@@ -1,12 +1,16 @@
 package org.voovan.network;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.Hashtable;
 import java.util.Map;
-
-import javax.net.ssl.SSLEngineResult;
-import javax.net.ssl.SSLEngineResult.Status;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.voovan.tools.ByteBufferChannel;
 import org.voovan.tools.log.Logger;
@@ -25,16 +29,137 @@ public abstract class IoSession {
 	
 	private Map<Object, Object> attributes;
 	private SSLParser sslParser;
-	private ByteBufferChannel netDataBufferChannel;
+	private volatile FilterPipeline filterPipeline;
+	private volatile NetworkMetrics metrics;
 	private ByteBufferChannel appDataBufferChannel;
+	private WriteQueue writeQueue;
+	private InboundThrottle inboundThrottle;
+	private volatile ReceiveBufferAllocator receiveBufferAllocator;
+	private volatile long lastReadTime;
+	private volatile long lastWriteTime;
+	private volatile HashedWheelTimer.Timeout readIdleTimeout;
+	private volatile HashedWheelTimer.Timeout writeIdleTimeout;
 	
 	/**
 	 * 构造函数
 	 */
 	protected IoSession(){
 		attributes = new Hashtable<Object, Object>();
-		netDataBufferChannel = new ByteBufferChannel();
 		appDataBufferChannel = new ByteBufferChannel();
+		writeQueue = new WriteQueue(this);
+		inboundThrottle = new InboundThrottle(this);
+		lastReadTime = System.currentTimeMillis();
+		lastWriteTime = lastReadTime;
+	}
+	
+	/**
+	 * 获取最后一次接收数据的时间
+	 * @return 毫秒时间戳
+	 */
+	public long getLastReadTime() {
+		return lastReadTime;
+	}
+	
+	/**
+	 * 获取最后一次写入数据的时间
+	 * @return 毫秒时间戳
+	 */
+	public long getLastWriteTime() {
+		return lastWriteTime;
+	}
+	
+	/**
+	 * 记录接收数据的时间
+	 */
+	protected void updateLastReadTime() {
+		lastReadTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * 记录写入数据的时间
+	 */
+	protected void updateLastWriteTime() {
+		lastWriteTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * 开始空闲检测
+	 * 		连接建立后调用,按 SocketContext 的读写空闲时间在共享的时间轮上定时检测
+	 */
+	public void startIdleCheck() {
+		SocketContext socketContext = sockContext();
+		if (socketContext == null) {
+			return;
+		}
+		lastReadTime = System.currentTimeMillis();
+		lastWriteTime = lastReadTime;
+		if (socketContext.getReadIdleTimeout() > 0) {
+			readIdleTimeout = scheduleIdleCheck(IdleType.READ_IDLE, socketContext.getReadIdleTimeout());
+		}
+		if (socketContext.getWriteIdleTimeout() > 0) {
+			writeIdleTimeout = scheduleIdleCheck(IdleType.WRITE_IDLE, socketContext.getWriteIdleTimeout());
+		}
+	}
+	
+	/**
+	 * 停止空闲检测
+	 * 		连接关闭时调用
+	 */
+	public void stopIdleCheck() {
+		HashedWheelTimer.Timeout timeout = readIdleTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+			readIdleTimeout = null;
+		}
+		timeout = writeIdleTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+			writeIdleTimeout = null;
+		}
+	}
+	
+	/**
+	 * 在时间轮上安排一次空闲检测
+	 * 		检测时如果已空闲则触发 onIdle 事件并在一个空闲时间后再次检测,
+	 * 		否则在距离空闲的剩余时间后再次检测,每个连接的每种空闲类型同一时刻只有一个定时任务
+	 * @param idleType 空闲类型
+	 * @param delay    延迟时间,毫秒
+	 * @return 定时任务句柄
+	 */
+	private HashedWheelTimer.Timeout scheduleIdleCheck(final IdleType idleType, long delay) {
+		return HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				SocketContext socketContext = sockContext();
+				if (!isConnect() || socketContext == null) {
+					return;
+				}
+
+				long idleTimeout = idleType == IdleType.READ_IDLE ? socketContext.getReadIdleTimeout() : socketContext.getWriteIdleTimeout();
+				if (idleTimeout <= 0) {
+					return;
+				}
+
+				long lastTime = idleType == IdleType.READ_IDLE ? lastReadTime : lastWriteTime;
+				long nextDelay = lastTime + idleTimeout - System.currentTimeMillis();
+				if (nextDelay <= 0) {
+					nextDelay = idleTimeout;
+					getEventTrigger().fireIdleThread(idleType);
+				}
+
+				HashedWheelTimer.Timeout timeout = scheduleIdleCheck(idleType, nextDelay);
+				if (idleType == IdleType.READ_IDLE) {
+					readIdleTimeout = timeout;
+				} else {
+					writeIdleTimeout = timeout;
+				}
+				
+				//检测期间连接已关闭,取消刚安排的检测
+				if (!isConnect()) {
+					timeout.cancel();
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
@@ -43,6 +168,52 @@ public abstract class IoSession {
 	 */
 	protected abstract ByteBufferChannel getByteBufferChannel();
 	
+	/**
+	 * 获取发送队列
+	 * @return 发送队列
+	 */
+	public WriteQueue getWriteQueue() {
+		return writeQueue;
+	}
+	
+	/**
+	 * 获取接收限流
+	 * @return 接收限流
+	 */
+	public InboundThrottle getInboundThrottle() {
+		return inboundThrottle;
+	}
+	
+	/**
+	 * 获取接收缓冲区分配器
+	 * 		第一次调用时按照 SocketContext 中接收缓冲区的大小创建
+	 * @return 接收缓冲区分配器
+	 */
+	public ReceiveBufferAllocator getReceiveBufferAllocator() {
+		if (receiveBufferAllocator == null) {
+			SocketContext socketContext = sockContext();
+			receiveBufferAllocator = socketContext == null ? new ReceiveBufferAllocator() :
+					new ReceiveBufferAllocator(socketContext.getMinReceiveBufferSize(),
+							socketContext.getInitialReceiveBufferSize(), socketContext.getMaxReceiveBufferSize());
+		}
+		return receiveBufferAllocator;
+	}
+	
+	/**
+	 * 是否暂停了读取
+	 * 		发送队列超过高水位或者已接收未处理的数据超过高水位时暂停读取
+	 * @return true: 暂停, false: 未暂停
+	 */
+	public boolean isReadPaused() {
+		return writeQueue.isReadPaused() || inboundThrottle.isPaused();
+	}
+	
+	/**
+	 * 获取事件触发器
+	 * @return 事件触发器
+	 */
+	protected abstract EventTrigger getEventTrigger();
+	
 	/**
 	 * 获取 SSLParser
 	 * @return SSLParser对象
@@ -61,6 +232,50 @@ public abstract class IoSession {
 		}
 	}
 
+	/**
+	 * 获取会话的网络指标
+	 * 		会话的指标只包含计数器,记录时同时累加到 SocketContext 的指标中
+	 * @return 网络指标
+	 */
+	public NetworkMetrics getMetrics() {
+		NetworkMetrics sessionMetrics = metrics;
+		if(sessionMetrics == null){
+			synchronized (this) {
+				sessionMetrics = metrics;
+				if(sessionMetrics == null){
+					SocketContext socketContext = sockContext();
+					sessionMetrics = new NetworkMetrics(socketContext == null ? null : socketContext.metrics(), false);
+					metrics = sessionMetrics;
+				}
+			}
+		}
+		return sessionMetrics;
+	}
+	
+	/**
+	 * 获取会话使用的过滤器管道
+	 * 		没有设置会话的管道时使用 SocketContext 的管道
+	 * @return 过滤器管道
+	 */
+	public FilterPipeline getFilterPipeline() {
+		FilterPipeline pipeline = filterPipeline;
+		if(pipeline == null){
+			SocketContext socketContext = sockContext();
+			pipeline = socketContext == null ? FilterPipeline.EMPTY : socketContext.filterPipeline();
+		}
+		return pipeline;
+	}
+	
+	/**
+	 * 设置会话使用的过滤器管道
+	 * 		用于协议升级(如 HTTP 升级为 WebSocket)等只影响当前会话的过滤器变更,
+	 * 		设置为 null 时恢复使用 SocketContext 的管道
+	 * @param filterPipeline 过滤器管道
+	 */
+	public void setFilterPipeline(FilterPipeline filterPipeline) {
+		this.filterPipeline = filterPipeline;
+	}
+
 	/**
 	 * 获取会话参数
 	 * @param key 参数名
@@ -128,10 +343,159 @@ public abstract class IoSession {
 	/**
 	 * 发送消息
 	 * 		注意直接调用不会出发 onSent 事件不出发任何事件
+	 * 		不能立即写入的数据进入发送队列,在返回的完成通知结束前,调用者不能再修改 buffer
 	 * @param byteBuffer
+	 * @return 完成通知,数据全部写入 Socket 后完成,值为发送的字节数
 	 * @throws IOException
 	 */
-	protected abstract void send(ByteBuffer buffer) throws IOException;
+	protected abstract CompletableFuture<Integer> send(ByteBuffer buffer) throws IOException;
+	
+	/**
+	 * 发送文件
+	 * 		注意直接调用不会触发 onSent 事件,调用者负责在完成后关闭文件通道.
+	 * 		默认每次从文件读取一块数据到池化的缓冲区中发送,上一块写入 Socket 后再读取下一块,
+	 * 		同一时刻只占用一个缓冲区;支持零拷贝的连接重写这个方法
+	 * @param fileChannel 文件通道
+	 * @param position    文件中的起始位置
+	 * @param count       发送的字节数
+	 * @return 完成通知,数据全部写入 Socket 后完成,值为发送的字节数
+	 */
+	public CompletableFuture<Long> sendFile(FileChannel fileChannel, long position, long count) {
+		CompletableFuture<Long> future = new CompletableFuture<Long>();
+		if (!isConnect()) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+		new ChunkedFileSender(fileChannel, position, count, future).run();
+		return future;
+	}
+	
+	/**
+	 * 分块发送文件
+	 * 		上一块发送完成的回调中发送下一块,发送已经同步完成时在循环中继续,避免递归
+	 */
+	private class ChunkedFileSender implements Runnable, BiConsumer<Integer, Throwable> {
+		private FileChannel fileChannel;
+		private long position;
+		private long remaining;
+		private long count;
+		private CompletableFuture<Long> future;
+		private ByteBufferPool pool;
+		private ByteBuffer buffer;
+		
+		public ChunkedFileSender(FileChannel fileChannel, long position, long count, CompletableFuture<Long> future) {
+			this.fileChannel = fileChannel;
+			this.position = position;
+			this.remaining = count;
+			this.count = count;
+			this.future = future;
+			this.pool = ByteBufferPool.getDirect();
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (remaining > 0) {
+					//会话在发送过程中断开
+					if (!isConnect()) {
+						throw new ClosedChannelException();
+					}
+					if (buffer == null) {
+						buffer = pool.acquire((int) Math.min(remaining, ByteBufferPool.MAX_SIZE));
+					}
+					buffer.clear();
+					buffer.limit((int) Math.min(remaining, buffer.capacity()));
+					int readSize = fileChannel.read(buffer, position);
+					if (readSize <= 0) {
+						throw new EOFException("File ended at " + position + " with " + remaining + " bytes left to send");
+					}
+					buffer.flip();
+					position += readSize;
+					remaining -= readSize;
+					
+					CompletableFuture<Integer> sendFuture;
+					if (sslParser != null && sslParser.isHandShakeDone()) {
+						sendFuture = sendSSLData(buffer);
+					} else {
+						sendFuture = send(buffer);
+					}
+					
+					//数据在发送队列中,写入完成后在回调中继续
+					if (!sendFuture.isDone()) {
+						sendFuture.whenComplete(this);
+						return;
+					}
+					sendFuture.join();
+				}
+				finish(null);
+			} catch (CompletionException e) {
+				finish(e.getCause());
+			} catch (Exception e) {
+				finish(e);
+			}
+		}
+		
+		@Override
+		public void accept(Integer length, Throwable throwable) {
+			if (throwable == null) {
+				run();
+			} else {
+				finish(throwable);
+			}
+		}
+		
+		private void finish(Throwable throwable) {
+			if (buffer != null) {
+				pool.release(buffer);
+				buffer = null;
+			}
+			if (throwable == null) {
+				future.complete(count);
+			} else {
+				future.completeExceptionally(throwable);
+			}
+		}
+	}
+	
+	/**
+	 * 暂停读取
+	 * 		发送队列或者已接收未处理的数据超过高水位时调用,
+	 * 		实现时根据 isReadPaused 的当前值决定是否读取
+	 */
+	protected abstract void pauseRead();
+	
+	/**
+	 * 恢复读取
+	 * 		发送队列或者已接收未处理的数据降低到低水位时调用,
+	 * 		实现时根据 isReadPaused 的当前值决定是否读取
+	 */
+	protected abstract void resumeRead();
+	
+	/**
+	 * 获取 SSL 解包后的应用数据通道
+	 * @return 应用数据通道
+	 */
+	protected ByteBufferChannel getAppDataBufferChannel() {
+		return appDataBufferChannel;
+	}
+	
+	/**
+	 * 将已接收的SSL报文解包到应用数据通道
+	 * 		解包所有已接收的完整 SSL 记录,不完整的 SSL 记录保留在 SSLParser 中等待后续数据
+	 * @return 应用数据通道
+	 */
+	protected ByteBufferChannel unwarpSSLData(){
+		try{
+			if(isConnect()){
+				sslParser.unwarpData();
+			}
+		}
+		catch(Exception e){
+			Logger.error("Class IoSession Error: "+e.getMessage());
+			e.printStackTrace();
+		}
+		return appDataBufferChannel;
+	}
 	
 	/**
 	 * 读取SSL消息到缓冲区
@@ -140,24 +504,10 @@ public abstract class IoSession {
 	 */
 	protected int readSSLData(ByteBuffer buffer){
 		int readSize = 0;
-		
-		ByteBuffer netBuffer = sslParser.buildAppDataBuffer();
-		ByteBuffer appBuffer = sslParser.buildAppDataBuffer();
 		try{
-			if(isConnect() && buffer!=null){
-				SSLEngineResult engineResult = null;
-				do{
-					netBuffer.clear();
-					appBuffer.clear();
-					if(read(netBuffer)!=0){
-						netDataBufferChannel.write(netBuffer);
-						engineResult = sslParser.unwarpData(netDataBufferChannel.getBuffer(), appBuffer);
-						appBuffer.flip();
-						appDataBufferChannel.write(appBuffer);
-					}
-				}while(engineResult==null?false:engineResult.getStatus() != Status.OK);
+			if(buffer!=null){
+				readSize = unwarpSSLData().read(buffer);
 			}
-			readSize = appDataBufferChannel.read(buffer);
 		}
 		catch(Exception e){
 			Logger.error("Class IoSession Error: "+e.getMessage());
@@ -171,17 +521,26 @@ public abstract class IoSession {
 	 * 发送SSL消息
 	 * 		不出发任何事件
 	 * @param byteBuffer
-	 * @throws IOException
+	 * @return 完成通知,本次发送的最后一个 SSL 记录写入 Socket 后完成,会话已断开时以 ClosedChannelException 结束
 	 */
-	protected void sendSSLData(ByteBuffer buffer){
-		if(isConnect() && buffer!=null){
+	protected CompletableFuture<Integer> sendSSLData(ByteBuffer buffer){
+		CompletableFuture<Integer> sendFuture = null;
+		if(!isConnect()){
+			sendFuture = new CompletableFuture<Integer>();
+			sendFuture.completeExceptionally(new ClosedChannelException());
+			return sendFuture;
+		}
+		if(buffer!=null){
 			try {
-				sslParser.warpData(buffer);
+				sendFuture = sslParser.warpData(buffer);
 			} catch (IOException e) {
 				Logger.error("Class IoSession Error: "+e.getMessage());
 				e.printStackTrace();
+				sendFuture = new CompletableFuture<Integer>();
+				sendFuture.completeExceptionally(e);
 			}
 		}
+		return sendFuture==null ? CompletableFuture.completedFuture(0) : sendFuture;
 	}
 	
 	
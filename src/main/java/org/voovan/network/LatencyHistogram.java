@@ -0,0 +1,135 @@
+package org.voovan.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟直方图
+ * 		按微秒以 2 的幂分桶, 第 i 个桶记录 [2^(i-1), 2^i) 微秒的延迟, 第 0 个桶记录小于 1 微秒的延迟.
+ * 		记录时只更新数组中的计数,不创建对象,可以在生产环境中一直开启.
+ * 		百分位数返回所在桶的上界,误差在 2 倍以内.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LatencyHistogram {
+
+	/**
+	 * 桶的数量, 最大的桶记录超过 2^38 微秒(约 3 天)的延迟
+	 */
+	public static final int BUCKET_COUNT = 40;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong totalTime;
+	private final AtomicLong maxTime;
+
+	/**
+	 * 构造函数
+	 */
+	public LatencyHistogram() {
+		buckets = new AtomicLongArray(BUCKET_COUNT);
+		count = new AtomicLong(0);
+		totalTime = new AtomicLong(0);
+		maxTime = new AtomicLong(0);
+	}
+
+	/**
+	 * 记录一次延迟
+	 * @param nanos 延迟,单位:纳秒
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		long micros = nanos / 1000;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalTime.addAndGet(nanos);
+
+		long currentMax = maxTime.get();
+		while (nanos > currentMax && !maxTime.compareAndSet(currentMax, nanos)) {
+			currentMax = maxTime.get();
+		}
+	}
+
+	/**
+	 * 记录的次数
+	 * @return 次数
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * 平均延迟
+	 * @return 平均延迟,单位:微秒
+	 */
+	public double getMean() {
+		long currentCount = count.get();
+		return currentCount == 0 ? 0 : totalTime.get() / 1000.0 / currentCount;
+	}
+
+	/**
+	 * 最大延迟
+	 * @return 最大延迟,单位:微秒
+	 */
+	public double getMax() {
+		return maxTime.get() / 1000.0;
+	}
+
+	/**
+	 * 百分位延迟
+	 * @param percentile 百分位, 0 到 100
+	 * @return 延迟所在桶的上界,单位:微秒
+	 */
+	public long getPercentile(double percentile) {
+		long currentCount = count.get();
+		if (currentCount == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(currentCount * percentile / 100);
+		long sum = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			sum += buckets.get(i);
+			if (sum >= target) {
+				return 1L << i;
+			}
+		}
+		return 1L << (BUCKET_COUNT - 1);
+	}
+
+	/**
+	 * 获取直方图的统计值
+	 * @return 统计项名称和值,延迟的单位为微秒
+	 */
+	public Map<String, Double> getStatistics() {
+		Map<String, Double> statistics = new LinkedHashMap<String, Double>();
+		statistics.put("count", (double) getCount());
+		statistics.put("mean", getMean());
+		statistics.put("p50", (double) getPercentile(50));
+		statistics.put("p90", (double) getPercentile(90));
+		statistics.put("p99", (double) getPercentile(99));
+		statistics.put("p999", (double) getPercentile(99.9));
+		statistics.put("max", getMax());
+		return statistics;
+	}
+
+	/**
+	 * 清空记录
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalTime.set(0);
+		maxTime.set(0);
+	}
+}
@@ -1,10 +1,10 @@
 package org.voovan.network;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
-import org.voovan.tools.TEnv;
+import org.voovan.tools.ByteBufferChannel;
 import org.voovan.tools.log.Logger;
 
 
@@ -20,6 +20,11 @@ import org.voovan.tools.log.Logger;
 public class MessageLoader {
 	private IoSession session;
 	private int readTimeout;
+	private int checkedSize;
+	private long lastArrivalTime;
+	private SplitState splitState;
+	private volatile boolean remoteClosed;
+	private volatile HashedWheelTimer.Timeout timeoutCheck;
 	
 
 	/**
@@ -30,6 +35,7 @@ public class MessageLoader {
 	public MessageLoader(IoSession session,int readTimeout) {
 		this.session = session;
 		this.readTimeout = readTimeout;
+		this.splitState = new SplitState();
 	}
 
 	/**
@@ -40,6 +46,7 @@ public class MessageLoader {
 	public MessageLoader(IoSession session) {
 		this.session = session;
 		this.readTimeout = 100;
+		this.splitState = new SplitState();
 	}
 	
 	public void setReadTimeOut(int readTimeout){
@@ -70,89 +77,148 @@ public class MessageLoader {
 	   return false;
 	}
 	
+	/**
+	 * 对端关闭连接
+	 * 		已接收的数据先按消息分割器返回完整的消息,剩余不完整的数据作为最后一个消息返回,
+	 * 		数据全部处理完成后由 onRead 事件关闭连接
+	 */
+	public void remoteClosed(){
+		remoteClosed = true;
+		EventTrigger eventTrigger = session.getEventTrigger();
+		if(eventTrigger.isShutdown()){
+			session.close();
+		}else{
+			eventTrigger.fireReceiveCheckThread();
+		}
+	}
+	
+	/**
+	 * 判断对端是否已经关闭连接
+	 * @return true: 对端已关闭连接
+	 */
+	public boolean isRemoteClosed(){
+		return remoteClosed;
+	}
+	
+	/**
+	 * 在时间轮上安排一次读取超时检查
+	 * 		消息不完整并且超过读取超时时间没有新的数据到达时,触发 receive 事件返回已接收的数据,
+	 * 		同一时刻只有一个检查,检查时有新的数据到达则按最后一次到达的时间重新安排
+	 * @param currentTime 当前时间
+	 */
+	private void scheduleTimeoutCheck(long currentTime){
+		if(readTimeout <= 0 || timeoutCheck != null){
+			return;
+		}
+		long delay = Math.max(1, readTimeout - (currentTime - lastArrivalTime));
+		timeoutCheck = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				timeoutCheck = null;
+				if(session.isConnect()){
+					session.getEventTrigger().fireReceiveCheckThread();
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * 获取保存已接收数据的通道
+	 * 		SSL 连接握手完成后,先将已接收的报文解包,返回应用数据通道
+	 * @return 数据通道
+	 */
+	private ByteBufferChannel getDataChannel(){
+		if(session.getSSLParser()!=null && session.getSSLParser().handShakeDone){
+			return session.unwarpSSLData();
+		}
+		else{
+			return session.getByteBufferChannel();
+		}
+	}
+	
 	/**
 	 * 读取 socket 中的数据
-	 * 	逐字节读取数据,并用消息截断器判断消息包是否完整,消息粘包有两种截断方式:
-	 * 	1.消息截断器生效
-	 * 	2.消息读取时间超时,例如设置5m,则连续5秒内没有读取到有用的消息则返回报文.
-	 * @param socketChannel
-	 * @return
+	 * 	从会话中已接收的数据里分割出一个完整的消息,消息粘包有两种截断方式:
+	 * 	1.消息截断器生效,截断器返回消息帧的准确长度,剩余的数据保留给下一个消息
+	 * 	2.消息读取时间超时,例如设置5m,则超过5秒没有收到新的数据时返回报文.
+	 * 	消息不完整时数据保留在通道中,等待下一次数据到达时从上次停止的位置继续判断,不会轮询等待,
+	 * 	读取超时由时间轮上的检查触发.对端关闭连接后,剩余不完整的数据作为最后一个消息返回.
+	 * @return 完整的消息,没有完整的消息时返回长度为0的 ByteBuffer,连接断开或者对端关闭连接且没有数据时返回 null
 	 * @throws IOException
 	 */
 	public ByteBuffer read() throws IOException {
 		
-		MessageSplitter messageSplitter = session.sockContext().messageSplitter();
+		if (session == null) {
+			return ByteBuffer.allocate(0);
+		}
 		
-		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+		ByteBufferChannel dataChannel = getDataChannel();
+		int dataSize = dataChannel.size();
 		
-		//当前已超时时间值
-		int elapsedtime = 0;
-		int wroteCount = 0;
+		//没有数据
+		if (dataSize == 0) {
+			checkedSize = 0;
+			splitState.reset();
+			session.getInboundThrottle().update(false);
+			return session.isConnect() && !remoteClosed ? ByteBuffer.allocate(0) : null;
+		}
 		
-		//缓冲区字段
-		ByteBuffer buffer = ByteBuffer.allocate(1);
+		long currentTime = System.currentTimeMillis();
+		FrameSplitter frameSplitter = session.sockContext().frameSplitter();
 		
-		if (session != null) {
-			while (true) {
-				buffer.clear();
-				int readsize = 0;
-				
-				//读出数据
-				if(session.getSSLParser()!=null && session.getSSLParser().handShakeDone){
-					readsize = session.readSSLData(buffer);
-				}
-				else{
-					readsize = session.read(buffer);
-				}
-				
-				//将读出的数据写入缓冲区
-				if(readsize!=0) {
-					//如果读到数据,则清零超时事件
-					wroteCount+=readsize;
-					byteOutputStream.write(buffer.array(), 0, readsize);
-				}
-				
-				//判断连接是否关闭
-				if (isRemoteClosed(readsize,buffer)) {
-					if(byteOutputStream.size()!=0){
-						return buffer;
-					}
-					return null;
-				}
-				//使用消息划分器进行消息划分
-				else if(messageSplitter!=null && messageSplitter.canSplite(session,byteOutputStream.toByteArray(), elapsedtime)){
-					Logger.simple(byteOutputStream.size());
-					break;
-				}
-				//readsize为0时认为是超时
-				else if(readsize==0){
-					
-					//超时判断
-					if(readTimeout==elapsedtime){
-						break;
-					}
-					
-					//如果连接断开立刻关闭
-					if(!session.isConnect()){
-						break;
-					}
-					
-					TEnv.sleep(1);
-					//超时时间自增
-					elapsedtime++;
-				}
+		int messageSize = -1;
+		//没有消息划分器或者连接已经断开,返回所有数据
+		if (frameSplitter == null || !session.isConnect()) {
+			messageSize = dataSize;
+		}
+		//没有新的数据到达,消息截断器的判断结果不会改变,只判断是否读取超时或者对端已关闭连接
+		else if (dataSize == checkedSize) {
+			if (remoteClosed || (readTimeout > 0 && currentTime - lastArrivalTime >= readTimeout)) {
+				messageSize = dataSize;
 			}
 		}
-		
-		if(byteOutputStream.size()!=0){
-			buffer = ByteBuffer.wrap(byteOutputStream.toByteArray());
+		//使用消息划分器进行消息划分
+		else {
+			//计算两次收到数据的间隔时间
+			int elapsedtime = checkedSize == 0 ? 0 : (int) (currentTime - lastArrivalTime);
+			lastArrivalTime = currentTime;
+			
+			splitState.setElapsedtime(elapsedtime);
+			messageSize = frameSplitter.split(session, dataChannel, splitState);
+			
+			//超时判断,对端已关闭连接时不会再有数据到达
+			if (messageSize <= 0 && (elapsedtime >= readTimeout || remoteClosed)) {
+				messageSize = dataSize;
+			}
 		}
 		
-		if(wroteCount==0){
-			buffer = ByteBuffer.allocate(0);
+		//消息不完整,记录已判断的数据长度
+		if (messageSize <= 0) {
+			checkedSize = dataSize;
+			
+			//不完整的消息超过最大消息长度,关闭连接
+			int maxMessageSize = session.sockContext().getMaxMessageSize();
+			if (maxMessageSize > 0 && dataSize > maxMessageSize) {
+				Logger.error("Class MessageLoader Error: message size exceeds max message size " + maxMessageSize + ", received " + dataSize);
+				session.close();
+				throw new IOException("Message size exceeds max message size " + maxMessageSize + ", received " + dataSize);
+			}
+			
+			//等待消息的剩余数据,接收限流不暂停读取
+			session.getInboundThrottle().update(true);
+			scheduleTimeoutCheck(currentTime);
+			return ByteBuffer.allocate(0);
 		}
 		
-		return buffer;
+		checkedSize = 0;
+		splitState.reset();
+		//分割时 I/O 线程可能追加了数据,按当前的数据长度截取消息
+		ByteBuffer message = ByteBuffer.allocate(Math.min(messageSize, dataChannel.size()));
+		dataChannel.read(message);
+		
+		//消息已取走,已接收未处理的数据降低到低水位时恢复读取
+		session.getInboundThrottle().update(false);
+		return message;
 	}
 
 	
@@ -0,0 +1,69 @@
+package org.voovan.network;
+
+import org.voovan.tools.ByteBufferChannel;
+
+/**
+ * MessageSplitter 适配器
+ * 		将只能判断整个数据是否为一个消息的 MessageSplitter 适配成 FrameSplitter,
+ * 		只有新的数据到达时才会调用 MessageSplitter 进行判断
+ * 
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class MessageSplitterAdapter implements FrameSplitter {
+	
+	private MessageSplitter messageSplitter;
+	
+	/**
+	 * 构造函数
+	 * @param messageSplitter 消息分割器
+	 */
+	public MessageSplitterAdapter(MessageSplitter messageSplitter){
+		this.messageSplitter = messageSplitter;
+	}
+	
+	/**
+	 * 获取被适配的消息分割器
+	 * @return 消息分割器
+	 */
+	public MessageSplitter getMessageSplitter() {
+		return messageSplitter;
+	}
+
+	@Override
+	public int split(IoSession session, ByteBufferChannel buffer, SplitState state) {
+		int length = buffer.size();
+		
+		//没有新的数据到达
+		if(length <= state.getOffset()){
+			return -1;
+		}
+		
+		byte[] bytes = new byte[length];
+		buffer.get(0, bytes);
+		if(messageSplitter.canSplite(session, bytes, state.getElapsedtime())){
+			return length;
+		}
+		
+		state.setOffset(length);
+		return -1;
+	}
+	
+	/**
+	 * 将消息分割器转换成增量消息分割器
+	 * @param messageSplitter 消息分割器
+	 * @return 增量消息分割器
+	 */
+	public static FrameSplitter adapt(MessageSplitter messageSplitter){
+		if(messageSplitter == null){
+			return null;
+		}else if(messageSplitter instanceof FrameSplitter){
+			return (FrameSplitter)messageSplitter;
+		}else{
+			return new MessageSplitterAdapter(messageSplitter);
+		}
+	}
+}
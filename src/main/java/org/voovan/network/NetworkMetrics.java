@@ -0,0 +1,359 @@
+package org.voovan.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.voovan.network.Event.EventName;
+import org.voovan.tools.log.Logger;
+
+/**
+ * 网络指标
+ * 		SocketContext 持有一个汇总的指标,服务端接受的连接共用 ServerSocket 的指标;
+ * 		每个会话持有一个只包含计数器的指标,记录时同时累加到所属 SocketContext 的指标中,
+ * 		延迟直方图只记录在 SocketContext 的指标中.
+ * 		记录时只更新计数器,不创建对象,可以在生产环境中一直开启.
+ * 		通过 register 注册到 JMX 后可以通过 JConsole 等工具查看.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class NetworkMetrics implements NetworkMetricsMXBean {
+
+	private static final EventName[] EVENT_NAMES = EventName.values();
+
+	private final NetworkMetrics parent;
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder messagesDecoded = new LongAdder();
+	private final LongAdder messagesEncoded = new LongAdder();
+	private final LongAdder writeStalls = new LongAdder();
+	private final LongAdder[] eventCounts;
+	private final LatencyHistogram handShakeTime;
+	private final LatencyHistogram queueWait;
+	private final LatencyHistogram decodeLatency;
+	private final LatencyHistogram handlerLatency;
+	private final LatencyHistogram encodeLatency;
+	private ObjectName objectName;
+
+	/**
+	 * 构造函数
+	 * 		创建包含延迟直方图的汇总指标
+	 */
+	public NetworkMetrics() {
+		this(null, true);
+	}
+
+	/**
+	 * 构造函数
+	 * @param parent    汇总的指标,记录时同时累加到汇总的指标中, 可以为 null
+	 * @param histogram 是否记录延迟直方图
+	 */
+	public NetworkMetrics(NetworkMetrics parent, boolean histogram) {
+		this.parent = parent;
+		eventCounts = new LongAdder[EVENT_NAMES.length];
+		for (int i = 0; i < eventCounts.length; i++) {
+			eventCounts[i] = new LongAdder();
+		}
+		handShakeTime = histogram ? new LatencyHistogram() : null;
+		queueWait = histogram ? new LatencyHistogram() : null;
+		decodeLatency = histogram ? new LatencyHistogram() : null;
+		handlerLatency = histogram ? new LatencyHistogram() : null;
+		encodeLatency = histogram ? new LatencyHistogram() : null;
+	}
+
+	/**
+	 * 记录接收的字节数
+	 * @param length 字节数
+	 */
+	public void recordBytesIn(long length) {
+		bytesIn.add(length);
+		if (parent != null) {
+			parent.recordBytesIn(length);
+		}
+	}
+
+	/**
+	 * 记录发送的字节数
+	 * @param length 字节数
+	 */
+	public void recordBytesOut(long length) {
+		bytesOut.add(length);
+		if (parent != null) {
+			parent.recordBytesOut(length);
+		}
+	}
+
+	/**
+	 * 记录 Socket 发送缓冲区已满,数据未能全部写入的次数
+	 */
+	public void recordWriteStall() {
+		writeStalls.increment();
+		if (parent != null) {
+			parent.recordWriteStall();
+		}
+	}
+
+	/**
+	 * 记录触发的事件
+	 * @param eventName 事件名称
+	 */
+	public void recordEvent(EventName eventName) {
+		eventCounts[eventName.ordinal()].increment();
+		if (parent != null) {
+			parent.recordEvent(eventName);
+		}
+	}
+
+	/**
+	 * 记录事件在执行前的排队时间
+	 * @param nanos 排队时间,单位:纳秒
+	 */
+	public void recordQueueWait(long nanos) {
+		record(queueWait, nanos);
+		if (parent != null) {
+			parent.recordQueueWait(nanos);
+		}
+	}
+
+	/**
+	 * 记录 SSL 握手时间
+	 * @param nanos 握手时间,单位:纳秒
+	 */
+	public void recordHandShake(long nanos) {
+		record(handShakeTime, nanos);
+		if (parent != null) {
+			parent.recordHandShake(nanos);
+		}
+	}
+
+	/**
+	 * 记录一个消息的解码
+	 * @param nanos 过滤器解码的时间,单位:纳秒
+	 */
+	public void recordDecode(long nanos) {
+		messagesDecoded.increment();
+		record(decodeLatency, nanos);
+		if (parent != null) {
+			parent.recordDecode(nanos);
+		}
+	}
+
+	/**
+	 * 记录一次业务处理
+	 * @param nanos 业务处理句柄的执行时间,单位:纳秒
+	 */
+	public void recordHandler(long nanos) {
+		record(handlerLatency, nanos);
+		if (parent != null) {
+			parent.recordHandler(nanos);
+		}
+	}
+
+	/**
+	 * 记录一个消息的编码
+	 * @param nanos 过滤器编码的时间,单位:纳秒
+	 */
+	public void recordEncode(long nanos) {
+		messagesEncoded.increment();
+		record(encodeLatency, nanos);
+		if (parent != null) {
+			parent.recordEncode(nanos);
+		}
+	}
+
+	private static void record(LatencyHistogram histogram, long nanos) {
+		if (histogram != null) {
+			histogram.record(nanos);
+		}
+	}
+
+	private static Map<String, Double> statistics(LatencyHistogram histogram) {
+		return histogram == null ? new LinkedHashMap<String, Double>() : histogram.getStatistics();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public long getMessagesDecoded() {
+		return messagesDecoded.sum();
+	}
+
+	@Override
+	public long getMessagesEncoded() {
+		return messagesEncoded.sum();
+	}
+
+	@Override
+	public long getWriteStalls() {
+		return writeStalls.sum();
+	}
+
+	/**
+	 * 获取指定事件的触发次数
+	 * @param eventName 事件名称
+	 * @return 触发次数
+	 */
+	public long getEventCount(EventName eventName) {
+		return eventCounts[eventName.ordinal()].sum();
+	}
+
+	@Override
+	public Map<String, Long> getEventCounts() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		for (EventName eventName : EVENT_NAMES) {
+			statistics.put(eventName.name(), getEventCount(eventName));
+		}
+		return statistics;
+	}
+
+	/**
+	 * 获取 SSL 握手时间的直方图
+	 * @return 直方图, 会话的指标返回 null
+	 */
+	public LatencyHistogram getHandShakeTimeHistogram() {
+		return handShakeTime;
+	}
+
+	/**
+	 * 获取事件排队时间的直方图
+	 * @return 直方图, 会话的指标返回 null
+	 */
+	public LatencyHistogram getQueueWaitHistogram() {
+		return queueWait;
+	}
+
+	/**
+	 * 获取解码延迟的直方图
+	 * @return 直方图, 会话的指标返回 null
+	 */
+	public LatencyHistogram getDecodeLatencyHistogram() {
+		return decodeLatency;
+	}
+
+	/**
+	 * 获取业务处理延迟的直方图
+	 * @return 直方图, 会话的指标返回 null
+	 */
+	public LatencyHistogram getHandlerLatencyHistogram() {
+		return handlerLatency;
+	}
+
+	/**
+	 * 获取编码延迟的直方图
+	 * @return 直方图, 会话的指标返回 null
+	 */
+	public LatencyHistogram getEncodeLatencyHistogram() {
+		return encodeLatency;
+	}
+
+	@Override
+	public Map<String, Double> getHandShakeTime() {
+		return statistics(handShakeTime);
+	}
+
+	@Override
+	public Map<String, Double> getQueueWait() {
+		return statistics(queueWait);
+	}
+
+	@Override
+	public Map<String, Double> getDecodeLatency() {
+		return statistics(decodeLatency);
+	}
+
+	@Override
+	public Map<String, Double> getHandlerLatency() {
+		return statistics(handlerLatency);
+	}
+
+	@Override
+	public Map<String, Double> getEncodeLatency() {
+		return statistics(encodeLatency);
+	}
+
+	/**
+	 * 获取所有的计数器
+	 * @return 指标名称和值
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("bytesIn", getBytesIn());
+		statistics.put("bytesOut", getBytesOut());
+		statistics.put("messagesDecoded", getMessagesDecoded());
+		statistics.put("messagesEncoded", getMessagesEncoded());
+		statistics.put("writeStalls", getWriteStalls());
+		statistics.putAll(getEventCounts());
+		return statistics;
+	}
+
+	/**
+	 * 清空所有指标
+	 * 		不影响汇总的指标
+	 */
+	@Override
+	public void reset() {
+		bytesIn.reset();
+		bytesOut.reset();
+		messagesDecoded.reset();
+		messagesEncoded.reset();
+		writeStalls.reset();
+		for (LongAdder eventCount : eventCounts) {
+			eventCount.reset();
+		}
+		LatencyHistogram[] histograms = new LatencyHistogram[]{handShakeTime, queueWait, decodeLatency, handlerLatency, encodeLatency};
+		for (LatencyHistogram histogram : histograms) {
+			if (histogram != null) {
+				histogram.reset();
+			}
+		}
+	}
+
+	/**
+	 * 注册到 JMX
+	 * 		ObjectName 为 org.voovan.network:type=NetworkMetrics,name=[name]
+	 * @param name 名称,例如服务的地址和端口
+	 */
+	public synchronized void register(String name) {
+		try {
+			unregister();
+			ObjectName newObjectName = new ObjectName("org.voovan.network:type=NetworkMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+			objectName = newObjectName;
+		} catch (Exception e) {
+			Logger.error("Class NetworkMetrics Error: register JMX failed, " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 从 JMX 注销
+	 */
+	public synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				if (mBeanServer.isRegistered(objectName)) {
+					mBeanServer.unregisterMBean(objectName);
+				}
+			} catch (Exception e) {
+				Logger.error("Class NetworkMetrics Error: unregister JMX failed, " + e.getMessage());
+			}
+			objectName = null;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package org.voovan.network;
+
+import java.util.Map;
+
+/**
+ * 网络指标的 JMX 接口
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface NetworkMetricsMXBean {
+
+	public long getBytesIn();
+
+	public long getBytesOut();
+
+	public long getMessagesDecoded();
+
+	public long getMessagesEncoded();
+
+	public long getWriteStalls();
+
+	public Map<String, Long> getEventCounts();
+
+	public Map<String, Double> getHandShakeTime();
+
+	public Map<String, Double> getQueueWait();
+
+	public Map<String, Double> getDecodeLatency();
+
+	public Map<String, Double> getHandlerLatency();
+
+	public Map<String, Double> getEncodeLatency();
+
+	public void reset();
+}
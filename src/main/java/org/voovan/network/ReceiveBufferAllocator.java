@@ -0,0 +1,135 @@
+package org.voovan.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 自适应的接收缓冲区分配器
+ * 		每个会话持有一个分配器,根据最近的读取长度调整下一次读取的缓冲区大小:
+ * 		读取填满缓冲区时扩大到 4 倍,连续两次读取都不超过下一级大小时缩小一半.
+ * 		缓冲区大小为 ByteBufferPool.MIN_SIZE 到 ByteBufferPool.MAX_SIZE 之间 2 的幂,从直接内存缓冲区池中申请.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ReceiveBufferAllocator {
+
+	/**
+	 * 默认最小缓冲区大小
+	 */
+	public static final int DEFAULT_MINIMUM = ByteBufferPool.MIN_SIZE;
+
+	/**
+	 * 默认初始缓冲区大小
+	 */
+	public static final int DEFAULT_INITIAL = 2048;
+
+	/**
+	 * 默认最大缓冲区大小
+	 */
+	public static final int DEFAULT_MAXIMUM = ByteBufferPool.MAX_SIZE;
+
+	private static final int INDEX_INCREMENT = 2;
+	private static final int INDEX_DECREMENT = 1;
+	private static final int[] SIZE_TABLE = createSizeTable();
+
+	private final int minIndex;
+	private final int maxIndex;
+	private int index;
+	private boolean decreaseNow;
+
+	/**
+	 * 构造函数
+	 * 		使用默认的大小
+	 */
+	public ReceiveBufferAllocator() {
+		this(DEFAULT_MINIMUM, DEFAULT_INITIAL, DEFAULT_MAXIMUM);
+	}
+
+	/**
+	 * 构造函数
+	 * 		大小向上取整到 2 的幂, 并限制在 ByteBufferPool.MIN_SIZE 到 ByteBufferPool.MAX_SIZE 之间
+	 * @param minimum 最小缓冲区大小
+	 * @param initial 初始缓冲区大小
+	 * @param maximum 最大缓冲区大小
+	 */
+	public ReceiveBufferAllocator(int minimum, int initial, int maximum) {
+		checkSize(minimum, initial, maximum);
+		this.minIndex = sizeIndex(minimum);
+		this.maxIndex = sizeIndex(maximum);
+		this.index = sizeIndex(initial);
+	}
+
+	/**
+	 * 检查缓冲区大小
+	 * @param minimum 最小缓冲区大小
+	 * @param initial 初始缓冲区大小
+	 * @param maximum 最大缓冲区大小
+	 */
+	public static void checkSize(int minimum, int initial, int maximum) {
+		if (minimum <= 0 || initial < minimum || maximum < initial) {
+			throw new IllegalArgumentException("receive buffer size must satisfy 0 < minimum <= initial <= maximum");
+		}
+	}
+
+	/**
+	 * 下一次读取使用的缓冲区大小
+	 * @return 字节数
+	 */
+	public synchronized int guess() {
+		return SIZE_TABLE[index];
+	}
+
+	/**
+	 * 申请下一次读取使用的缓冲区
+	 * @return 缓冲区, 使用完后归还到 ByteBufferPool.getDirect()
+	 */
+	public ByteBuffer allocate() {
+		return ByteBufferPool.getDirect().acquire(guess());
+	}
+
+	/**
+	 * 记录一次读取的长度
+	 * @param readSize 读取的字节数
+	 */
+	public synchronized void record(int readSize) {
+		if (readSize <= SIZE_TABLE[Math.max(0, index - INDEX_DECREMENT)]) {
+			if (decreaseNow) {
+				index = Math.max(index - INDEX_DECREMENT, minIndex);
+				decreaseNow = false;
+			} else {
+				decreaseNow = true;
+			}
+		} else if (readSize >= SIZE_TABLE[index]) {
+			index = Math.min(index + INDEX_INCREMENT, maxIndex);
+			decreaseNow = false;
+		} else {
+			decreaseNow = false;
+		}
+	}
+
+	/**
+	 * 获取大小在表中的索引
+	 * @param size 大小
+	 * @return 不小于 size 的最小的表项的索引, size 超过最大表项时返回最后一个索引
+	 */
+	private static int sizeIndex(int size) {
+		for (int i = 0; i < SIZE_TABLE.length; i++) {
+			if (SIZE_TABLE[i] >= size) {
+				return i;
+			}
+		}
+		return SIZE_TABLE.length - 1;
+	}
+
+	private static int[] createSizeTable() {
+		int count = Integer.numberOfTrailingZeros(ByteBufferPool.MAX_SIZE) - Integer.numberOfTrailingZeros(ByteBufferPool.MIN_SIZE) + 1;
+		int[] sizeTable = new int[count];
+		for (int i = 0; i < count; i++) {
+			sizeTable[i] = ByteBufferPool.MIN_SIZE << i;
+		}
+		return sizeTable;
+	}
+}
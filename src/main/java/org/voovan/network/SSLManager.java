@@ -2,13 +2,17 @@ package org.voovan.network;
 
 import java.io.FileInputStream;
 import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManagerFactory;
 /**
  * SSL管理器
+ * 		SSLContext 在第一次创建 SSLEngine 时初始化,之后所有连接共用,
+ * 		SSLEngine 使用对端的地址和端口创建,使得同一对端的连接可以复用 SSL 会话,避免完整握手
  * @author helyho
  *
  * Voovan Framework.
@@ -16,13 +20,43 @@ import javax.net.ssl.TrustManagerFactory;
  * Licence: Apache v2 License
  */
 public class SSLManager {
+	public static final int DEFAULT_SESSION_CACHE_SIZE = 20480;
+	public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+	/**
+	 * SSL 记录的最大明文长度
+	 */
+	public static final int MAX_RECORD_SIZE = 16384;
+
+	/**
+	 * 连接开始时的记录长度,一个记录可以放进一个 TCP 报文段
+	 */
+	public static final int DEFAULT_SMALL_RECORD_SIZE = 1400;
+
+	/**
+	 * 使用较小记录发送的字节数,超过后使用最大的记录
+	 */
+	public static final int DEFAULT_RECORD_BOOST_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * 发送空闲超过这个时间(毫秒)后重新使用较小的记录
+	 */
+	public static final int DEFAULT_RECORD_RESET_TIME = 1000;
+
 	private KeyManagerFactory keyManagerFactory;
 	private TrustManagerFactory trustManagerFactory;
-	private SSLContext context;
-	private SSLEngine engine;
+	private volatile SSLContext context;
 	private boolean useClientAuth;
 	private String protocol;
-	
+	private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+	private int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+	private SSLWriteMode writeMode = SSLWriteMode.COALESCE;
+	private int smallRecordSize = DEFAULT_SMALL_RECORD_SIZE;
+	private int recordBoostThreshold = DEFAULT_RECORD_BOOST_THRESHOLD;
+	private int recordResetTime = DEFAULT_RECORD_RESET_TIME;
+	private AtomicLong sessionHitCount = new AtomicLong(0);
+	private AtomicLong sessionMissCount = new AtomicLong(0);
+
 	/**
 	 * 构造函数
 	 * 		默认使用客户端认证
@@ -35,7 +69,7 @@ public class SSLManager {
 		keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
 		trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
 	}
-	
+
 	/**
 	 * 构造函数
 	 * @param protocol  	协议类型
@@ -48,65 +82,224 @@ public class SSLManager {
 		keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
 		trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
 	}
-	
+
 	/**
 	 * 读取管理证书
+	 * 		已经初始化的 SSLContext 将被丢弃,之后创建的连接使用新的证书
 	 * @param manageCertFile   证书地址
 	 * @param certPassword	   证书密码
 	 * @param keyPassword	   密钥
 	 * @throws Exception
 	 */
-	public void loadCertificate(String manageCertFile, String certPassword,String keyPassword) throws Exception{
+	public synchronized void loadCertificate(String manageCertFile, String certPassword,String keyPassword) throws Exception{
 		KeyStore manageKeystore = KeyStore.getInstance(KeyStore.getDefaultType());
-		manageKeystore.load(new FileInputStream(manageCertFile), certPassword.toCharArray());
+		try(FileInputStream certInputStream = new FileInputStream(manageCertFile)){
+			manageKeystore.load(certInputStream, certPassword.toCharArray());
+		}
 		keyManagerFactory.init(manageKeystore, keyPassword.toCharArray());
 		trustManagerFactory.init(manageKeystore);
+		context = null;
 	}
-	
+
 	/**
-	 * 初始化
-	 * @param protocol		协议名称 SSL/TLS
-	 * @throws Exception
+	 * 获取 SSL 会话缓存的最大数量
+	 * @return 会话缓存的最大数量
 	 */
-	private void init(String protocol) throws Exception{
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
 
-		if(protocol.isEmpty() || protocol == null){
-			protocol = "SSL";
+	/**
+	 * 获取 SSL 会话缓存的超时时间
+	 * @return 超时时间,单位:秒
+	 */
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * 设置 SSL 会话缓存
+	 * 		对已经初始化的 SSLContext 立即生效
+	 * @param sessionCacheSize 会话缓存的最大数量, 0 为不限制
+	 * @param sessionTimeout   超时时间,单位:秒, 0 为不超时
+	 */
+	public synchronized void setSessionCache(int sessionCacheSize, int sessionTimeout) {
+		if(sessionCacheSize < 0 || sessionTimeout < 0){
+			throw new IllegalArgumentException("Session cache size and timeout must not be negative");
+		}
+		this.sessionCacheSize = sessionCacheSize;
+		this.sessionTimeout = sessionTimeout;
+		if(context != null){
+			configSessionCache(context);
 		}
-		context = SSLContext.getInstance(protocol);
-		context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
 	}
-	
+
 	/**
-	 * 获取Client 模式 SSLEngine
-	 * @return
+	 * 获取 SSL 数据的发送模式
+	 * @return 发送模式
+	 */
+	public SSLWriteMode getWriteMode() {
+		return writeMode;
+	}
+
+	/**
+	 * 设置 SSL 数据的发送模式
+	 * 		对之后创建的连接生效
+	 * @param writeMode 发送模式
+	 */
+	public void setWriteMode(SSLWriteMode writeMode) {
+		this.writeMode = writeMode;
+	}
+
+	/**
+	 * 获取连接开始时的记录长度
+	 * @return 记录长度
+	 */
+	public int getSmallRecordSize() {
+		return smallRecordSize;
+	}
+
+	/**
+	 * 获取使用较小记录发送的字节数
+	 * @return 字节数
+	 */
+	public int getRecordBoostThreshold() {
+		return recordBoostThreshold;
+	}
+
+	/**
+	 * 获取重新使用较小记录的发送空闲时间
+	 * @return 空闲时间,单位:毫秒
+	 */
+	public int getRecordResetTime() {
+		return recordResetTime;
+	}
+
+	/**
+	 * 设置 COALESCE 模式下的记录长度
+	 * 		连接开始时和发送空闲后使用较小的记录,发送的数据超过 recordBoostThreshold 后使用最大的记录,
+	 * 		对之后创建的连接生效
+	 * @param smallRecordSize      较小的记录长度, 不超过 MAX_RECORD_SIZE
+	 * @param recordBoostThreshold 使用较小记录发送的字节数, 0 为始终使用最大的记录
+	 * @param recordResetTime      发送空闲超过这个时间后重新使用较小的记录,单位:毫秒
+	 */
+	public void setRecordSize(int smallRecordSize, int recordBoostThreshold, int recordResetTime) {
+		if(smallRecordSize <= 0 || smallRecordSize > MAX_RECORD_SIZE){
+			throw new IllegalArgumentException("Small record size must be between 1 and " + MAX_RECORD_SIZE);
+		}
+		if(recordBoostThreshold < 0 || recordResetTime < 0){
+			throw new IllegalArgumentException("Record boost threshold and reset time must not be negative");
+		}
+		this.smallRecordSize = smallRecordSize;
+		this.recordBoostThreshold = recordBoostThreshold;
+		this.recordResetTime = recordResetTime;
+	}
+
+	/**
+	 * 获取复用 SSL 会话的握手次数
+	 * @return 握手次数
+	 */
+	public long getSessionHitCount() {
+		return sessionHitCount.get();
+	}
+
+	/**
+	 * 获取完整握手的次数
+	 * @return 握手次数
+	 */
+	public long getSessionMissCount() {
+		return sessionMissCount.get();
+	}
+
+	/**
+	 * 记录一次完成的握手
+	 * @param resumed 是否复用了 SSL 会话
+	 */
+	protected void recordHandShake(boolean resumed) {
+		if(resumed){
+			sessionHitCount.incrementAndGet();
+		}else{
+			sessionMissCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 配置客户端和服务端的会话缓存
+	 * @param sslContext SSLContext 对象
+	 */
+	private void configSessionCache(SSLContext sslContext) {
+		SSLSessionContext[] sessionContexts = new SSLSessionContext[]{
+				sslContext.getClientSessionContext(), sslContext.getServerSessionContext()};
+		for(SSLSessionContext sessionContext : sessionContexts){
+			if(sessionContext != null){
+				sessionContext.setSessionCacheSize(sessionCacheSize);
+				sessionContext.setSessionTimeout(sessionTimeout);
+			}
+		}
+	}
+
+	/**
+	 * 获取 SSLContext
+	 * 		第一次调用时初始化,之后返回同一个 SSLContext
+	 * @return SSLContext 对象
+	 * @throws Exception
+	 */
+	private SSLContext getContext() throws Exception{
+		SSLContext sslContext = context;
+		if(sslContext == null){
+			synchronized (this) {
+				sslContext = context;
+				if(sslContext == null){
+					String contextProtocol = protocol;
+					if(contextProtocol == null || contextProtocol.isEmpty()){
+						contextProtocol = "SSL";
+					}
+					sslContext = SSLContext.getInstance(contextProtocol);
+					sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+					configSessionCache(sslContext);
+					context = sslContext;
+				}
+			}
+		}
+		return sslContext;
+	}
+
+	/**
+	 * 创建 SSLEngine
+	 * 		使用对端的地址和端口创建,以便复用缓存的 SSL 会话
+	 * @param peerHost 对端地址
+	 * @param peerPort 对端端口
+	 * @return SSLEngine 对象
 	 * @throws Exception
 	 */
-	private void createSSLEngine(String protocol) throws Exception{
-		init(protocol);
-		engine = context.createSSLEngine();
+	private SSLEngine createSSLEngine(String peerHost, int peerPort) throws Exception{
+		if(peerHost == null || peerPort <= 0){
+			return getContext().createSSLEngine();
+		}
+		return getContext().createSSLEngine(peerHost, peerPort);
 	}
-	
+
 	/**
-	 * 获取SSLEngine
+	 * 获取Client 模式 SSLParser
 	 * @return
 	 * @throws Exception
 	 */
 	public SSLParser createClientSSLParser(IoSession session) throws Exception{
-		createSSLEngine(protocol);
+		SocketContext socketContext = session.sockContext();
+		SSLEngine engine = createSSLEngine(socketContext.getHost(), socketContext.getPort());
 		engine.setUseClientMode(true);
-		return new SSLParser(engine, session);
+		return new SSLParser(engine, session, this);
 	}
-	
+
 	/**
-	 * 获取Server 模式 SSLEngine
+	 * 获取Server 模式 SSLParser
 	 * @return
 	 * @throws Exception
 	 */
 	public SSLParser createServerSSLParser(IoSession session) throws Exception{
-		createSSLEngine(protocol);
+		SSLEngine engine = createSSLEngine(session.remoteAddress(), session.remotePort());
 		engine.setUseClientMode(false);
 		engine.setNeedClientAuth(useClientAuth);
-		return new SSLParser(engine, session);
+		return new SSLParser(engine, session, this);
 	}
 }
@@ -2,21 +2,27 @@ package org.voovan.network;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
-import javax.net.ssl.SSLEngineResult.Status;
-import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLException;
 
+import org.voovan.network.Event.EventName;
 import org.voovan.tools.ByteBufferChannel;
-import org.voovan.tools.TEnv;
 import org.voovan.tools.log.Logger;
 
 /**
  * SSL 解析器
- * 		1.握手信息 
+ * 		1.握手信息
  * 		2.报文信息
+ * 		握手是由数据到达驱动的非阻塞状态机,每次数据到达时推进握手,需要等待对端数据时立即返回,
+ * 		SSLEngine 的委派任务在握手线程池中执行,完成后再次触发接收事件继续握手.
+ * 		接收和解包使用会话持有的缓冲区,不会在每次读取时申请缓冲区.
  * @author helyho
  *
  * Voovan Framework.
@@ -24,24 +30,68 @@ import org.voovan.tools.log.Logger;
  * Licence: Apache v2 License
  */
 public class SSLParser {
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+	//每个记录的头部、MAC 和填充的估算长度
+	private static final int RECORD_OVERHEAD = 512;
+
 	private SSLEngine engine;
-	private ByteBuffer appData;
+	//接收的报文,保持写入模式,未解包的不完整记录保留在其中
 	private ByteBuffer netData;
+	//解包出的应用数据
+	private ByteBuffer appData;
+	//打包后待发送的报文
+	private ByteBuffer sendNetData;
 	private IoSession session;
-	boolean handShakeDone = false;
+	private SSLManager sslManager;
+	private boolean handShakeBegin = false;
+	private long handShakeBeginTime;
+	private long handShakeBeginNanoTime;
+	private SSLWriteMode writeMode;
+	private int smallRecordSize;
+	private int recordBoostThreshold;
+	private int recordResetTime;
+	//当前使用较小记录的阶段已发送的明文长度
+	private long recordSent;
+	private long lastWarpTime;
+	private volatile boolean taskRunning = false;
+	volatile boolean handShakeDone = false;
+
 	/**
 	 * 构造函数
 	 * @param engine
 	 * @param session
 	 */
 	public SSLParser(SSLEngine engine,IoSession session) {
+		this(engine, session, null);
+	}
+
+	/**
+	 * 构造函数
+	 * @param engine
+	 * @param session
+	 * @param sslManager 创建 SSLEngine 的 SSL 管理器,握手完成时用于统计会话复用
+	 */
+	public SSLParser(SSLEngine engine,IoSession session, SSLManager sslManager) {
 		this.engine = engine;
+		this.sslManager = sslManager;
+		if(sslManager != null){
+			this.writeMode = sslManager.getWriteMode();
+			this.smallRecordSize = sslManager.getSmallRecordSize();
+			this.recordBoostThreshold = sslManager.getRecordBoostThreshold();
+			this.recordResetTime = sslManager.getRecordResetTime();
+		}else{
+			this.writeMode = SSLWriteMode.COALESCE;
+			this.smallRecordSize = SSLManager.DEFAULT_SMALL_RECORD_SIZE;
+			this.recordBoostThreshold = SSLManager.DEFAULT_RECORD_BOOST_THRESHOLD;
+			this.recordResetTime = SSLManager.DEFAULT_RECORD_RESET_TIME;
+		}
 		this.session = session;
 		session.setSSLParser(this);
-		this.appData= buildAppDataBuffer();
-		this.netData = buildNetDataBuffer();
+		this.netData = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+		this.appData = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+		this.sendNetData = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
 	}
-	
+
 	/**
 	 * 判断握手是否完成
 	 * @return
@@ -57,61 +107,223 @@ public class SSLParser {
 	public SSLEngine getSSLEngine(){
 		return engine;
 	}
-	
-	protected ByteBuffer buildNetDataBuffer() {
-		SSLSession session = engine.getSession();
-		int newBufferMax = session.getPacketBufferSize();
-		return ByteBuffer.allocate(newBufferMax);
-	}
-	
-	protected ByteBuffer buildAppDataBuffer() {
-		SSLSession session = engine.getSession();
-		int newBufferMax = session.getPacketBufferSize();
-		return ByteBuffer.allocate(newBufferMax);
-	}
-	
+
 	/**
-	 * 清理缓冲区
+	 * 扩大缓冲区,保留缓冲区中已有的数据
+	 * @param buffer  原缓冲区,写入模式
+	 * @param minSize 最小容量
+	 * @return 新的缓冲区,写入模式
 	 */
-	private void clearBuffer(){
-		appData.clear();
-		netData.clear();
+	private static ByteBuffer enlargeBuffer(ByteBuffer buffer, int minSize) {
+		ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(minSize, buffer.capacity() * 2));
+		buffer.flip();
+		newBuffer.put(buffer);
+		return newBuffer;
 	}
-	
+
 	/**
 	 * 打包并发送数据
+	 * 		COALESCE 模式下所有记录打包到池化的缓冲区中一起发送,RECORD 模式下每个记录单独发送
 	 * @param buffer       需要的数据缓冲区
-	 * @return 			   返回成功执行的最后一个或者失败的那个 SSLEnginResult
-	 * @throws IOException
+	 * @return 			   本次调用发送的最后一个记录的完成通知,没有发送任何记录时为 null
+	 * @throws IOException 会话已关闭或者 SSLEngine 已关闭
 	 */
-	public SSLEngineResult warpData(ByteBuffer buffer) throws IOException{
-		netData.clear();
+	public CompletableFuture<Integer> warpData(ByteBuffer buffer) throws IOException{
+		if(writeMode == SSLWriteMode.COALESCE){
+			return warpData(new ByteBuffer[]{buffer});
+		}
+		return warpRecord(buffer);
+	}
+
+	/**
+	 * 逐个记录打包并发送数据
+	 * @param buffer       需要的数据缓冲区
+	 * @return 			   本次调用发送的最后一个记录的完成通知,没有发送任何记录时为 null
+	 * @throws IOException 会话已关闭或者 SSLEngine 已关闭
+	 */
+	private synchronized CompletableFuture<Integer> warpRecord(ByteBuffer buffer) throws IOException{
 		SSLEngineResult engineResult = null;
+		CompletableFuture<Integer> sendFuture = null;
 		do{
-			engineResult = engine.wrap(buffer, netData);
-			netData.flip();
-			if(session.isConnect() && engineResult.bytesProduced()>0 && netData.limit()>0){
-				session.send(netData);
+			sendNetData.clear();
+			engineResult = engine.wrap(buffer, sendNetData);
+			if(engineResult.getStatus() == Status.BUFFER_OVERFLOW){
+				sendNetData = ByteBuffer.allocate(Math.max(engine.getSession().getPacketBufferSize(), sendNetData.capacity() * 2));
+				continue;
 			}
-			netData.clear();
-		}while(engineResult.getStatus() == Status.OK && buffer.hasRemaining());
-		return engineResult;
+			sendNetData.flip();
+			if(engineResult.bytesProduced()>0 && sendNetData.limit()>0){
+				if(!session.isConnect()){
+					throw new ClosedChannelException();
+				}
+				sendFuture = session.send(sendNetData);
+				//数据还在发送队列中,后续的记录使用新的缓冲区
+				if(!sendFuture.isDone()){
+					sendNetData = ByteBuffer.allocate(sendNetData.capacity());
+				}
+			}
+		}while(engineResult.getStatus() != Status.CLOSED && buffer.hasRemaining());
+		checkClosed(engineResult, buffer);
+		return sendFuture;
 	}
-	
+
+	/**
+	 * 检查 SSLEngine 关闭时是否还有没有打包的数据
+	 * @param engineResult 最后一次打包的结果
+	 * @param buffer       需要的数据缓冲区
+	 * @throws SSLException SSLEngine 已关闭,数据没有全部发送
+	 */
+	private static void checkClosed(SSLEngineResult engineResult, ByteBuffer buffer) throws SSLException{
+		if(engineResult != null && engineResult.getStatus() == Status.CLOSED && buffer.hasRemaining()){
+			throw new SSLException("SSLEngine closed with " + buffer.remaining() + " bytes left to send");
+		}
+	}
+
+	/**
+	 * 将多个数据缓冲区打包到池化的缓冲区中并发送
+	 * 		所有记录依次写入同一个缓冲区,缓冲区写满时才发送并申请下一个,
+	 * 		发送的多个缓冲区在发送队列中通过一次聚集写入写入 Socket,缓冲区在写入完成后归还到缓冲区池
+	 * @param buffers      需要的数据缓冲区
+	 * @return 			   本次调用发送的最后一个缓冲区的完成通知,没有发送任何记录时为 null
+	 * @throws IOException 会话已关闭或者 SSLEngine 已关闭
+	 */
+	public synchronized CompletableFuture<Integer> warpData(ByteBuffer[] buffers) throws IOException{
+		SSLEngineResult engineResult = null;
+		CompletableFuture<Integer> sendFuture = null;
+		ByteBuffer coalesceBuffer = null;
+		try{
+			for(ByteBuffer buffer : buffers){
+				do{
+					int recordSize = nextRecordSize();
+					if(coalesceBuffer == null){
+						coalesceBuffer = acquireCoalesceBuffer(buffers, recordSize);
+					}
+
+					//限制一次打包的明文长度来控制记录的长度
+					int limit = buffer.limit();
+					buffer.limit(Math.min(limit, buffer.position() + recordSize));
+					try{
+						engineResult = engine.wrap(buffer, coalesceBuffer);
+					}finally{
+						buffer.limit(limit);
+					}
+
+					if(engineResult.getStatus() == Status.BUFFER_OVERFLOW){
+						//缓冲区剩余空间容纳不下一个记录,先发送已打包的记录
+						if(coalesceBuffer.position() == 0){
+							releaseCoalesceBuffer(coalesceBuffer);
+							coalesceBuffer = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+						}else{
+							ByteBuffer sendBuffer = coalesceBuffer;
+							coalesceBuffer = null;
+							sendFuture = sendCoalesceBuffer(sendBuffer);
+						}
+						continue;
+					}
+					recordSent += engineResult.bytesConsumed();
+				}while(engineResult.getStatus() != Status.CLOSED && buffer.hasRemaining());
+
+				checkClosed(engineResult, buffer);
+			}
+
+			if(coalesceBuffer != null && coalesceBuffer.position() > 0){
+				ByteBuffer sendBuffer = coalesceBuffer;
+				coalesceBuffer = null;
+				sendFuture = sendCoalesceBuffer(sendBuffer);
+			}
+		}finally{
+			if(coalesceBuffer != null){
+				releaseCoalesceBuffer(coalesceBuffer);
+			}
+		}
+		return sendFuture;
+	}
+
+	/**
+	 * 获取下一个记录的明文长度
+	 * 		连接开始时和发送空闲后使用较小的记录,发送的数据超过阈值后使用最大的记录
+	 * @return 记录的明文长度
+	 */
+	private int nextRecordSize() {
+		long currentTime = System.currentTimeMillis();
+		if(currentTime - lastWarpTime > recordResetTime){
+			recordSent = 0;
+		}
+		lastWarpTime = currentTime;
+		return recordSent < recordBoostThreshold ? smallRecordSize : SSLManager.MAX_RECORD_SIZE;
+	}
+
+	/**
+	 * 从缓冲区池申请打包缓冲区
+	 * 		按剩余的数据长度和记录的额外开销估算大小,不超过缓冲区池的最大级别
+	 * @param buffers    需要打包的数据缓冲区
+	 * @param recordSize 记录的明文长度
+	 * @return 写入模式的缓冲区
+	 */
+	private ByteBuffer acquireCoalesceBuffer(ByteBuffer[] buffers, int recordSize) {
+		long remaining = 0;
+		for(ByteBuffer buffer : buffers){
+			remaining += buffer.remaining();
+		}
+		long recordCount = remaining / recordSize + 1;
+		long size = remaining + recordCount * RECORD_OVERHEAD;
+		size = Math.max(size, engine.getSession().getPacketBufferSize());
+		ByteBuffer buffer = ByteBufferPool.getDirect().acquire((int)Math.min(size, ByteBufferPool.MAX_SIZE));
+		buffer.limit(buffer.capacity());
+		return buffer;
+	}
+
+	/**
+	 * 发送打包缓冲区,写入完成后归还到缓冲区池
+	 * @param coalesceBuffer 写入模式的缓冲区
+	 * @return 完成通知
+	 * @throws IOException 会话已关闭或者发送失败
+	 */
+	private CompletableFuture<Integer> sendCoalesceBuffer(final ByteBuffer coalesceBuffer) throws IOException {
+		coalesceBuffer.flip();
+		if(!session.isConnect()){
+			releaseCoalesceBuffer(coalesceBuffer);
+			throw new ClosedChannelException();
+		}
+		CompletableFuture<Integer> sendFuture;
+		try{
+			sendFuture = session.send(coalesceBuffer);
+		}catch(IOException e){
+			releaseCoalesceBuffer(coalesceBuffer);
+			throw e;
+		}
+		sendFuture.whenComplete(new BiConsumer<Integer, Throwable>() {
+			@Override
+			public void accept(Integer length, Throwable throwable) {
+				releaseCoalesceBuffer(coalesceBuffer);
+			}
+		});
+		return sendFuture;
+	}
+
+	/**
+	 * 归还打包缓冲区,非池化的缓冲区直接丢弃
+	 * @param coalesceBuffer 缓冲区
+	 */
+	private static void releaseCoalesceBuffer(ByteBuffer coalesceBuffer) {
+		if(coalesceBuffer.isDirect()){
+			ByteBufferPool.getDirect().release(coalesceBuffer);
+		}
+	}
+
 	/**
 	 * 处理握手 Warp;
 	 * @return
 	 * @throws Exception
 	 */
-	private HandshakeStatus doHandShakeWarp()  throws Exception{
-		clearBuffer();
-		appData.flip();
-		warpData(appData);
-		//如果有 HandShake Task 则执行
-		HandshakeStatus handshakeStatus = runDelegatedTasks();
-		return handshakeStatus;
+	private HandshakeStatus doHandShakeWarp()  throws IOException{
+		warpRecord(EMPTY_BUFFER);
+		if(engine.isOutboundDone()){
+			throw new SSLException("SSLEngine closed during handshake");
+		}
+		return engine.getHandshakeStatus();
 	}
-	
+
 	/**
 	 * 解包数据
 	 * @param buffer    	接受解包数据的缓冲区
@@ -123,78 +335,182 @@ public class SSLParser {
 		engineResult = engine.unwrap(netBuffer, appBuffer);
 		return engineResult;
 	}
-	
+
 	/**
-	 * 处理握手 Unwarp;
-	 * @return
-	 * @throws Exception
+	 * 将会话已接收的报文移动到报文缓冲区
+	 * @throws IOException
 	 */
-	private HandshakeStatus doHandShakeUnwarp() throws Exception{
-			HandshakeStatus handshakeStatus =engine.getHandshakeStatus();
-			ByteBufferChannel netDataChannel = new ByteBufferChannel();
+	private void fillNetData() throws IOException {
+		ByteBufferChannel byteBufferChannel = session.getByteBufferChannel();
+		if(netData.hasRemaining() && byteBufferChannel.size() > 0){
+			ByteBuffer freeBuffer = netData.slice();
+			byteBufferChannel.read(freeBuffer);
+			netData.position(netData.position() + freeBuffer.limit());
+		}
+	}
+
+	/**
+	 * 解包一个 SSL 记录
+	 * 		解包出的应用数据写入会话的应用数据通道,不完整的记录保留在报文缓冲区中
+	 * @return 解包的结果, 需要等待更多的数据时返回 null
+	 * @throws IOException
+	 */
+	private SSLEngineResult unwarpNetData() throws IOException {
+		while(true){
+			fillNetData();
 			SSLEngineResult engineResult = null;
-			do{
-				clearBuffer();
-				session.read(netData);
-				netDataChannel.write(netData);
-				do{
-					engineResult = unwarpData(netDataChannel.getBuffer(),appData);
-					//如果有 HandShake Task 则执行
-					handshakeStatus = runDelegatedTasks();
-				}while(engineResult.getStatus()==Status.OK && netDataChannel.getBuffer().hasRemaining());
-			}while(engineResult!=null && engineResult.getStatus()!=Status.OK);
-			netDataChannel.close();
-			return handshakeStatus;
-	}
-	
-	/**
-	 * 执行委派任务
-	 * @param result
-	 * @param engine
+			netData.flip();
+			try{
+				appData.clear();
+				engineResult = engine.unwrap(netData, appData);
+			}finally{
+				netData.compact();
+			}
+
+			if(engineResult.bytesProduced() > 0){
+				appData.flip();
+				session.getAppDataBufferChannel().write(appData);
+			}
+
+			Status status = engineResult.getStatus();
+			if(status == Status.BUFFER_OVERFLOW){
+				appData = ByteBuffer.allocate(Math.max(engine.getSession().getApplicationBufferSize(), appData.capacity() * 2));
+			}else if(status == Status.BUFFER_UNDERFLOW){
+				//缓冲区容纳不下一个完整的记录
+				if(!netData.hasRemaining()){
+					netData = enlargeBuffer(netData, engine.getSession().getPacketBufferSize());
+				}else if(session.getByteBufferChannel().size() == 0){
+					return null;
+				}
+			}else{
+				return engineResult;
+			}
+		}
+	}
+
+	/**
+	 * 处理握手 Unwarp;
+	 * @return 握手状态, 需要等待对端数据时返回 null
 	 * @throws Exception
 	 */
-	private HandshakeStatus runDelegatedTasks() throws Exception {
-		if(handShakeDone==false){
-			if (engine.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
-				Runnable runnable;
-				while ((runnable = engine.getDelegatedTask()) != null) {
-					runnable.run();
+	private HandshakeStatus doHandShakeUnwarp() throws IOException{
+		SSLEngineResult engineResult = unwarpNetData();
+		if(engineResult == null){
+			return null;
+		}
+		if(engineResult.getStatus() == Status.CLOSED){
+			throw new SSLException("SSLEngine closed during handshake");
+		}
+		return engineResult.getHandshakeStatus();
+	}
+
+	/**
+	 * 在握手线程池中执行委派任务
+	 * 		任务完成后在会话的事件线程中继续握手
+	 */
+	private void runDelegatedTasks() {
+		taskRunning = true;
+		ThreadPool.getHandShakeThreadPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Runnable runnable;
+					while ((runnable = engine.getDelegatedTask()) != null) {
+						runnable.run();
+					}
+				} catch (Throwable e) {
+					Logger.error("Class SSLParser Error: " + e.getMessage());
+				} finally {
+					taskRunning = false;
+					session.getEventTrigger().fireEventThread(EventName.ON_RECEIVE, null);
 				}
 			}
-			return engine.getHandshakeStatus();
-		}
-		return null;
+		});
 	}
-	
-	public boolean doHandShake() throws Exception{
-		
-		engine.beginHandshake();
-		int handShakeCount = 0;
+
+	/**
+	 * 推进握手
+	 * 		非阻塞,需要等待对端数据或者委派任务执行时立即返回,在下次数据到达或委派任务完成时再次调用
+	 * @return true: 握手完成, false: 握手未完成
+	 * @throws IOException 握手失败
+	 */
+	public synchronized boolean doHandShake() throws IOException{
+		if(handShakeDone){
+			return true;
+		}
+		if(taskRunning){
+			return false;
+		}
+		if(!handShakeBegin){
+			handShakeBeginTime = System.currentTimeMillis();
+			handShakeBeginNanoTime = System.nanoTime();
+			engine.beginHandshake();
+			handShakeBegin = true;
+		}
+
 		HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
-		while(!handShakeDone && handShakeCount<20){
-			handShakeCount++;
+		while(!handShakeDone){
 			switch (handshakeStatus) {
 				case NEED_TASK:
-					handshakeStatus = runDelegatedTasks();
-					break;
+					runDelegatedTasks();
+					return false;
 				case NEED_WRAP:
 					handshakeStatus = doHandShakeWarp();
 					break;
-				case NEED_UNWRAP:
-					handshakeStatus = doHandShakeUnwarp();
- 					break;
 				case FINISHED:
-					handshakeStatus = engine.getHandshakeStatus();
-					break;
 				case NOT_HANDSHAKING:
 					handShakeDone = true;
 					break;
 				default:
+					//NEED_UNWRAP 或者 NEED_UNWRAP_AGAIN
+					handshakeStatus = doHandShakeUnwarp();
+					if(handshakeStatus == null){
+						return false;
+					}
 					break;
 			}
-			TEnv.sleep(1);
 		}
-		Logger.simple("HandShake: "+handShakeDone);
+
+		session.getMetrics().recordHandShake(System.nanoTime() - handShakeBeginNanoTime);
+		//复用的会话在本次握手开始前就已经创建
+		if(sslManager != null){
+			sslManager.recordHandShake(engine.getSession().getCreationTime() < handShakeBeginTime);
+		}
 		return handShakeDone;
 	}
+
+	/**
+	 * 解包所有已接收的报文到会话的应用数据通道
+	 * 		不完整的 SSL 记录保留在报文缓冲区中等待后续数据
+	 * @throws IOException
+	 */
+	public synchronized void unwarpData() throws IOException{
+		while(session.isConnect()){
+			SSLEngineResult engineResult = unwarpNetData();
+			if(engineResult == null){
+				break;
+			}
+			if(engineResult.getStatus() == Status.CLOSED){
+				session.close();
+				break;
+			}
+
+			//握手后的消息(如 TLS1.3 的 NewSessionTicket、密钥更新)
+			HandshakeStatus handshakeStatus = engineResult.getHandshakeStatus();
+			if(handshakeStatus == HandshakeStatus.NEED_TASK){
+				Runnable runnable;
+				while ((runnable = engine.getDelegatedTask()) != null) {
+					runnable.run();
+				}
+				handshakeStatus = engine.getHandshakeStatus();
+			}
+			if(handshakeStatus == HandshakeStatus.NEED_WRAP){
+				warpRecord(EMPTY_BUFFER);
+			}
+
+			if(engineResult.bytesConsumed() == 0 && engineResult.bytesProduced() == 0){
+				break;
+			}
+		}
+	}
 }
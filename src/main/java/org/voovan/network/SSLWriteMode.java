@@ -0,0 +1,16 @@
+package org.voovan.network;
+
+/**
+ * SSL 数据的发送模式枚举
+ * 		RECORD:   每个 SSL 记录打包后单独发送, 记录使用最大的记录长度
+ * 		COALESCE: 一次发送的所有 SSL 记录打包到同一个池化的缓冲区中发送, 由发送队列聚集写入 Socket,
+ * 				        连接开始时使用较小的记录以降低首字节延迟, 大量传输时使用最大的记录
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public enum SSLWriteMode {
+	RECORD,COALESCE
+}
@@ -0,0 +1,137 @@
+package org.voovan.network;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.voovan.tools.log.Logger;
+
+/**
+ * 串行执行器
+ * 		在共享的线程池上按提交顺序执行任务,同一时刻最多只有一个任务在执行,
+ * 		不同的串行执行器之间并行执行.
+ * 		任务入队是无锁的,每个会话持有一个串行执行器来保证事件的处理顺序.
+ * 		线程池拒绝执行时(例如已经关闭),剩余的任务在提交任务的线程中按顺序执行,
+ * 		断开连接、异常等事件不会丢失.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SerialExecutor implements Executor {
+
+	/**
+	 * 每次调度最多连续执行的任务数,超过后重新提交到线程池,避免一个会话长期占用线程
+	 */
+	private static final int MAX_TASKS_PER_RUN = 64;
+
+	private Executor executor;
+	private Queue<Runnable> taskQueue;
+	private AtomicBoolean scheduled;
+	private Runnable drainTask;
+
+	/**
+	 * 构造函数
+	 * @param executor 实际执行任务的共享线程池
+	 */
+	public SerialExecutor(Executor executor) {
+		this.executor = executor;
+		this.taskQueue = new ConcurrentLinkedQueue<Runnable>();
+		this.scheduled = new AtomicBoolean(false);
+		this.drainTask = new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+	}
+
+	/**
+	 * 待执行的任务数
+	 * @return
+	 */
+	public int size() {
+		return taskQueue.size();
+	}
+
+	/**
+	 * 是否有任务正在执行或者等待执行
+	 * @return
+	 */
+	public boolean isBusy() {
+		return scheduled.get() || !taskQueue.isEmpty();
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		taskQueue.offer(task);
+		schedule();
+	}
+
+	/**
+	 * 没有在执行的调度时,提交一次调度到线程池
+	 */
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				Logger.warn("Class SerialExecutor: executor rejected the task, run it in the current thread. " + e.getMessage());
+				drainInCurrentThread();
+			}
+		}
+	}
+
+	/**
+	 * 在当前线程中按顺序执行队列中的所有任务
+	 * 		调用时持有调度标记,其他线程提交的任务只入队,由当前线程执行
+	 */
+	private void drainInCurrentThread() {
+		while (true) {
+			Runnable task = null;
+			while ((task = taskQueue.poll()) != null) {
+				runTask(task);
+			}
+
+			scheduled.set(false);
+			// 释放调度后有新任务入队并且没有其他线程接手时继续执行
+			if (taskQueue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 执行一个任务
+	 * @param task 任务
+	 */
+	private static void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (Throwable e) {
+			Logger.error("Class SerialExecutor Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 按顺序执行队列中的任务
+	 */
+	private void drain() {
+		int taskCount = 0;
+		Runnable task = null;
+		while (taskCount < MAX_TASKS_PER_RUN && (task = taskQueue.poll()) != null) {
+			taskCount++;
+			runTask(task);
+		}
+
+		scheduled.set(false);
+		// 释放调度后可能有新任务入队,或者本次调度未执行完
+		if (!taskQueue.isEmpty()) {
+			schedule();
+		}
+	}
+}
@@ -1,5 +1,16 @@
 package org.voovan.network;
 
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.NetworkChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.voovan.tools.TObject;
+import org.voovan.tools.log.Logger;
+
 /**
  * socket 上下文
  * 
@@ -10,15 +21,52 @@ package org.voovan.network;
  * Licence: Apache v2 License
  */
 public abstract class SocketContext {
+	
+	/**
+	 * 默认的监听队列长度
+	 */
+	public static final int DEFAULT_BACKLOG = 1000;
+	
+	/**
+	 * 默认连接超时时间,单位:毫秒
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	
+	/**
+	 * SO_REUSEPORT 选项, JDK 9 以下或者操作系统不支持时为 null
+	 */
+	protected static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
+	
 	protected String host;
 	protected int port;
 	protected int readTimeout;
 	
 	protected IoHandler handler;
 	protected Chain<IoFilter> filterChain;
+	protected volatile FilterPipeline filterPipeline;
+	private volatile int filterPipelineModifyCount;
 	protected MessageSplitter messageSplitter;
+	protected FrameSplitter frameSplitter;
 	protected SSLManager sslManager;
 	protected ConnectModel connectModel;
+	protected int writeHighWaterMark = WriteQueue.DEFAULT_HIGH_WATER_MARK;
+	protected int writeLowWaterMark = WriteQueue.DEFAULT_LOW_WATER_MARK;
+	protected int readHighWaterMark = InboundThrottle.DEFAULT_HIGH_WATER_MARK;
+	protected int readLowWaterMark = InboundThrottle.DEFAULT_LOW_WATER_MARK;
+	protected int maxMessageSize = InboundThrottle.DEFAULT_MAX_MESSAGE_SIZE;
+	protected int minReceiveBufferSize = ReceiveBufferAllocator.DEFAULT_MINIMUM;
+	protected int initialReceiveBufferSize = ReceiveBufferAllocator.DEFAULT_INITIAL;
+	protected int maxReceiveBufferSize = ReceiveBufferAllocator.DEFAULT_MAXIMUM;
+	protected FlushPolicy flushPolicy = FlushPolicy.COALESCE;
+	protected ExecutionMode executionMode = ExecutionMode.PLATFORM;
+	protected int readIdleTimeout;
+	protected int writeIdleTimeout;
+	protected NetworkMetrics metrics = new NetworkMetrics();
+	protected Map<SocketOption<?>, Object> socketOptions = new LinkedHashMap<SocketOption<?>, Object>();
+	protected int backlog = DEFAULT_BACKLOG;
+	protected int acceptorCount = 1;
+	protected AsynchronousChannelGroup channelGroup;
+	protected int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
 	
 	
 	/**
@@ -40,8 +88,26 @@ public abstract class SocketContext {
 		this.readTimeout = parentSocketContext.readTimeout;
 		this.handler = parentSocketContext.handler;
 		this.filterChain = parentSocketContext.filterChain;
+		this.filterPipeline = parentSocketContext.filterPipeline();
+		this.filterPipelineModifyCount = parentSocketContext.filterPipelineModifyCount;
+		this.metrics = parentSocketContext.metrics;
+		this.socketOptions = parentSocketContext.socketOptions;
+		this.channelGroup = parentSocketContext.channelGroup;
 		this.messageSplitter = parentSocketContext.messageSplitter;
+		this.frameSplitter = parentSocketContext.frameSplitter;
 		this.sslManager = parentSocketContext.sslManager;
+		this.writeHighWaterMark = parentSocketContext.writeHighWaterMark;
+		this.writeLowWaterMark = parentSocketContext.writeLowWaterMark;
+		this.readHighWaterMark = parentSocketContext.readHighWaterMark;
+		this.readLowWaterMark = parentSocketContext.readLowWaterMark;
+		this.maxMessageSize = parentSocketContext.maxMessageSize;
+		this.minReceiveBufferSize = parentSocketContext.minReceiveBufferSize;
+		this.initialReceiveBufferSize = parentSocketContext.initialReceiveBufferSize;
+		this.maxReceiveBufferSize = parentSocketContext.maxReceiveBufferSize;
+		this.flushPolicy = parentSocketContext.flushPolicy;
+		this.executionMode = parentSocketContext.executionMode;
+		this.readIdleTimeout = parentSocketContext.readIdleTimeout;
+		this.writeIdleTimeout = parentSocketContext.writeIdleTimeout;
 	}
 	
 	/**
@@ -77,6 +143,341 @@ public abstract class SocketContext {
 		return readTimeout;
 	}
 	
+	/**
+	 * 获取发送队列的高水位
+	 * 		发送队列中等待写入的数据超过高水位时暂停读取
+	 * @return 字节数
+	 */
+	public int getWriteHighWaterMark() {
+		return writeHighWaterMark;
+	}
+	
+	/**
+	 * 获取发送队列的低水位
+	 * 		暂停读取后,发送队列中等待写入的数据降低到低水位时恢复读取
+	 * @return 字节数
+	 */
+	public int getWriteLowWaterMark() {
+		return writeLowWaterMark;
+	}
+	
+	/**
+	 * 设置发送队列的高低水位
+	 * @param writeHighWaterMark 高水位,字节数
+	 * @param writeLowWaterMark  低水位,字节数
+	 */
+	public void setWriteWaterMark(int writeHighWaterMark, int writeLowWaterMark) {
+		if(writeLowWaterMark > writeHighWaterMark){
+			throw new IllegalArgumentException("writeLowWaterMark must not be greater than writeHighWaterMark");
+		}
+		this.writeHighWaterMark = writeHighWaterMark;
+		this.writeLowWaterMark = writeLowWaterMark;
+	}
+	
+	/**
+	 * 获取接收数据的高水位
+	 * 		会话已接收未处理的数据超过高水位时暂停读取
+	 * @return 字节数
+	 */
+	public int getReadHighWaterMark() {
+		return readHighWaterMark;
+	}
+	
+	/**
+	 * 获取接收数据的低水位
+	 * 		暂停读取后,会话已接收未处理的数据降低到低水位时恢复读取
+	 * @return 字节数
+	 */
+	public int getReadLowWaterMark() {
+		return readLowWaterMark;
+	}
+	
+	/**
+	 * 设置接收数据的高低水位
+	 * 		所有会话的总量由 InboundThrottle.setGlobalWaterMark 设置
+	 * @param readHighWaterMark 高水位,字节数
+	 * @param readLowWaterMark  低水位,字节数
+	 */
+	public void setReadWaterMark(int readHighWaterMark, int readLowWaterMark) {
+		if(readLowWaterMark > readHighWaterMark){
+			throw new IllegalArgumentException("readLowWaterMark must not be greater than readHighWaterMark");
+		}
+		this.readHighWaterMark = readHighWaterMark;
+		this.readLowWaterMark = readLowWaterMark;
+	}
+	
+	/**
+	 * 获取最大消息长度
+	 * 		等待一个不完整的消息时已接收的数据超过最大消息长度则触发 onException 事件并关闭连接
+	 * @return 字节数, 0 表示不限制
+	 */
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+	
+	/**
+	 * 设置最大消息长度
+	 * @param maxMessageSize 字节数, 0 表示不限制
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		if(maxMessageSize < 0){
+			throw new IllegalArgumentException("maxMessageSize must not be negative");
+		}
+		this.maxMessageSize = maxMessageSize;
+	}
+	
+	/**
+	 * 获取接收缓冲区的最小大小
+	 * @return 字节数
+	 */
+	public int getMinReceiveBufferSize() {
+		return minReceiveBufferSize;
+	}
+	
+	/**
+	 * 获取接收缓冲区的初始大小
+	 * @return 字节数
+	 */
+	public int getInitialReceiveBufferSize() {
+		return initialReceiveBufferSize;
+	}
+	
+	/**
+	 * 获取接收缓冲区的最大大小
+	 * @return 字节数
+	 */
+	public int getMaxReceiveBufferSize() {
+		return maxReceiveBufferSize;
+	}
+	
+	/**
+	 * 设置接收缓冲区的大小
+	 * 		每次读取的缓冲区大小根据最近的读取长度在最小和最大大小之间调整,
+	 * 		大小向上取整到 2 的幂, 并限制在 ByteBufferPool.MIN_SIZE 到 ByteBufferPool.MAX_SIZE 之间
+	 * @param minimum 最小大小,字节数
+	 * @param initial 初始大小,字节数
+	 * @param maximum 最大大小,字节数
+	 */
+	public void setReceiveBufferSize(int minimum, int initial, int maximum) {
+		ReceiveBufferAllocator.checkSize(minimum, initial, maximum);
+		this.minReceiveBufferSize = minimum;
+		this.initialReceiveBufferSize = initial;
+		this.maxReceiveBufferSize = maximum;
+	}
+	
+	/**
+	 * 获取 Socket 选项
+	 * @return 选项和值
+	 */
+	public Map<SocketOption<?>, Object> getSocketOptions() {
+		return socketOptions;
+	}
+	
+	/**
+	 * 设置 Socket 选项
+	 * 		在启动时设置到通道上,通道不支持的选项忽略,
+	 * 		服务端的选项同时设置到监听通道和接受的连接上,例如 SO_RCVBUF 设置到监听通道, TCP_NODELAY 设置到接受的连接
+	 * @param name  选项
+	 * @param value 值
+	 */
+	public <T> void setSocketOption(SocketOption<T> name, T value) {
+		socketOptions.put(name, value);
+	}
+	
+	/**
+	 * 将 Socket 选项设置到通道上
+	 * @param channel 通道
+	 * @throws IOException
+	 */
+	protected void applySocketOptions(NetworkChannel channel) throws IOException {
+		for (Map.Entry<SocketOption<?>, Object> entry : socketOptions.entrySet()) {
+			if (channel.supportedOptions().contains(entry.getKey())) {
+				SocketOption<Object> name = TObject.cast(entry.getKey());
+				channel.setOption(name, entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * 获取监听队列长度
+	 * 		只对 ServerSocket 有效
+	 * @return 监听队列长度
+	 */
+	public int getBacklog() {
+		return backlog;
+	}
+	
+	/**
+	 * 设置监听队列长度
+	 * 		只对 ServerSocket 有效,启动前设置
+	 * @param backlog 监听队列长度, 0 表示使用操作系统的默认值
+	 */
+	public void setBacklog(int backlog) {
+		if(backlog < 0){
+			throw new IllegalArgumentException("backlog must not be negative");
+		}
+		this.backlog = backlog;
+	}
+	
+	/**
+	 * 获取连接超时时间
+	 * 		只对客户端 Socket 有效
+	 * @return 毫秒
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	/**
+	 * 设置连接超时时间
+	 * 		只对客户端 Socket 有效,在 connect 之前设置
+	 * @param connectTimeout 毫秒, 0 表示不限制
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		if(connectTimeout < 0){
+			throw new IllegalArgumentException("connectTimeout must not be negative");
+		}
+		this.connectTimeout = connectTimeout;
+	}
+	
+	/**
+	 * 获取监听通道的数量
+	 * 		只对 ServerSocket 有效
+	 * @return 监听通道的数量
+	 */
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+	
+	/**
+	 * 设置监听通道的数量
+	 * 		只对 ServerSocket 有效,启动前设置.
+	 * 		大于 1 时使用 SO_REUSEPORT 在同一端口上打开多个监听通道,由操作系统内核将新连接分散到各个通道,
+	 * 		操作系统不支持 SO_REUSEPORT 时只使用一个监听通道
+	 * @param acceptorCount 监听通道的数量
+	 */
+	public void setAcceptorCount(int acceptorCount) {
+		if(acceptorCount < 1){
+			throw new IllegalArgumentException("acceptorCount must be greater than 0");
+		}
+		this.acceptorCount = acceptorCount;
+	}
+	
+	/**
+	 * 获取 AIO 通道使用的通道组
+	 * @return 通道组, null 表示使用 JVM 默认的通道组
+	 */
+	public AsynchronousChannelGroup getChannelGroup() {
+		return channelGroup;
+	}
+	
+	/**
+	 * 设置 AIO 通道使用的通道组
+	 * 		通道组的线程执行读写完成的回调,可以通过 AioChannelGroup 创建固定或者缓存线程池的通道组,
+	 * 		或者使用 AioChannelGroup.getShared() 在多个 SocketContext 之间共用.
+	 * 		在 start 之前设置, NIO 忽略这个设置
+	 * @param channelGroup 通道组, null 表示使用 JVM 默认的通道组
+	 */
+	public void setChannelGroup(AsynchronousChannelGroup channelGroup) {
+		this.channelGroup = channelGroup;
+	}
+	
+	/**
+	 * 获取实际可用的监听通道数量
+	 * 		通道不支持 SO_REUSEPORT 时返回 1
+	 * @param channel 第一个监听通道
+	 * @return 监听通道的数量
+	 */
+	protected int availableAcceptorCount(NetworkChannel channel) {
+		if(acceptorCount > 1 && (SO_REUSEPORT == null || !channel.supportedOptions().contains(SO_REUSEPORT))){
+			Logger.warn("SO_REUSEPORT is not supported, only one acceptor will be used.");
+			return 1;
+		}
+		return acceptorCount;
+	}
+	
+	/**
+	 * 查找 SO_REUSEPORT 选项
+	 * 		SO_REUSEPORT 在 JDK 9 中加入,通过反射获取以兼容更早的 JDK
+	 * @return SO_REUSEPORT 选项, 不存在时返回 null
+	 */
+	private static SocketOption<Boolean> findReusePortOption() {
+		try {
+			return TObject.cast(StandardSocketOptions.class.getField("SO_REUSEPORT").get(null));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * 获取读空闲时间
+	 * 		超过读空闲时间没有接收到数据时触发 onIdle 事件
+	 * @return 毫秒, 0 表示不检测读空闲
+	 */
+	public int getReadIdleTimeout() {
+		return readIdleTimeout;
+	}
+	
+	/**
+	 * 获取写空闲时间
+	 * 		超过写空闲时间没有写入数据时触发 onIdle 事件
+	 * @return 毫秒, 0 表示不检测写空闲
+	 */
+	public int getWriteIdleTimeout() {
+		return writeIdleTimeout;
+	}
+	
+	/**
+	 * 设置读写空闲时间
+	 * 		空闲检测由共享的时间轮定时器完成,精度为时间轮的刻度
+	 * @param readIdleTimeout  读空闲时间,毫秒, 0 表示不检测
+	 * @param writeIdleTimeout 写空闲时间,毫秒, 0 表示不检测
+	 */
+	public void setIdleTimeout(int readIdleTimeout, int writeIdleTimeout) {
+		if(readIdleTimeout < 0 || writeIdleTimeout < 0){
+			throw new IllegalArgumentException("idle timeout must not be negative");
+		}
+		this.readIdleTimeout = readIdleTimeout;
+		this.writeIdleTimeout = writeIdleTimeout;
+	}
+	
+	/**
+	 * 获取发送数据的刷新策略
+	 * @return 刷新策略
+	 */
+	public FlushPolicy flushPolicy() {
+		return flushPolicy;
+	}
+	
+	/**
+	 * 设置发送数据的刷新策略
+	 * @param flushPolicy 刷新策略
+	 */
+	public void flushPolicy(FlushPolicy flushPolicy) {
+		this.flushPolicy = flushPolicy;
+	}
+	
+	/**
+	 * 获取事件执行模式
+	 * @return 执行模式
+	 */
+	public ExecutionMode executionMode() {
+		return executionMode;
+	}
+	
+	/**
+	 * 设置事件执行模式
+	 * 		VIRTUAL 模式下每个事件在一个新的虚拟线程中执行, JDK 不支持虚拟线程时使用平台线程池,
+	 * 		DIRECT 模式下事件在 I/O 线程中直接执行,业务处理不能阻塞
+	 * @param executionMode 执行模式
+	 */
+	public void executionMode(ExecutionMode executionMode) {
+		if(executionMode == ExecutionMode.VIRTUAL && !ThreadPool.isVirtualThreadSupported()){
+			Logger.warn("Virtual thread is not supported by this JDK, events will run on the platform thread pool.");
+		}
+		this.executionMode = executionMode;
+	}
+	
 	/**
 	 * 获取连接模式
 	 * @return
@@ -109,6 +510,34 @@ public abstract class SocketContext {
 		return this.filterChain;
 	}
 	
+	/**
+	 * 获取网络指标
+	 * 		服务端接受的连接共用 ServerSocket 的指标
+	 * @return 网络指标
+	 */
+	public NetworkMetrics metrics(){
+		return this.metrics;
+	}
+	
+	/**
+	 * 获取过滤器管道
+	 * 		第一次使用时由过滤器链构建,之后的连接共用同一个管道,
+	 * 		过滤器链有任何修改(增加、删除、替换过滤器)后重新构建,已建立的会话继续使用原来的管道
+	 * @return 过滤器管道
+	 */
+	public FilterPipeline filterPipeline(){
+		// 先读修改次数再读管道, 构建时先写管道再写修改次数, 修改次数一致时管道不会比它旧
+		int modifyCount = filterChain.modifyCount();
+		boolean expired = filterPipelineModifyCount != modifyCount;
+		FilterPipeline pipeline = this.filterPipeline;
+		if(pipeline == null || expired){
+			pipeline = new FilterPipeline(filterChain);
+			this.filterPipeline = pipeline;
+			this.filterPipelineModifyCount = modifyCount;
+		}
+		return pipeline;
+	}
+	
 	/**
 	 * 获取消息粘包分割器
 	 * @return
@@ -123,6 +552,29 @@ public abstract class SocketContext {
 	 */
 	public void messageSplitter(MessageSplitter messageSplitter) {
 		this.messageSplitter = messageSplitter;
+		this.frameSplitter = MessageSplitterAdapter.adapt(messageSplitter);
+	}
+	
+	/**
+	 * 获取增量消息分割器
+	 * 		通过 messageSplitter 设置的分割器如果不是增量消息分割器,则返回它的适配器
+	 * @return
+	 */
+	public FrameSplitter frameSplitter() {
+		return this.frameSplitter;
+	}
+	
+	/**
+	 * 设置增量消息分割器
+	 * @param frameSplitter 增量消息分割器
+	 */
+	public void frameSplitter(FrameSplitter frameSplitter) {
+		this.frameSplitter = frameSplitter;
+		if(frameSplitter instanceof MessageSplitter){
+			this.messageSplitter = (MessageSplitter)frameSplitter;
+		}else{
+			this.messageSplitter = null;
+		}
 	}
 	
 	/**
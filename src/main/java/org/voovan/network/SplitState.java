@@ -0,0 +1,83 @@
+package org.voovan.network;
+
+import org.voovan.tools.TObject;
+
+/**
+ * 消息分割的扫描状态
+ * 		每个会话持有一个,用于在多次数据到达之间保存分割器的扫描进度
+ * 
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SplitState {
+	private int offset;
+	private int elapsedtime;
+	private Object attachment;
+	
+	/**
+	 * 构造函数
+	 */
+	public SplitState(){
+		reset();
+	}
+	
+	/**
+	 * 获取下次扫描开始的位置
+	 * @return 相对于消息帧起始位置的偏移
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * 设置下次扫描开始的位置
+	 * @param offset 相对于消息帧起始位置的偏移
+	 */
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * 获取两次收到数据的间隔时间
+	 * @return 间隔时间(ms)
+	 */
+	public int getElapsedtime() {
+		return elapsedtime;
+	}
+
+	/**
+	 * 设置两次收到数据的间隔时间
+	 * @param elapsedtime 间隔时间(ms)
+	 */
+	public void setElapsedtime(int elapsedtime) {
+		this.elapsedtime = elapsedtime;
+	}
+
+	/**
+	 * 获取分割器自定义的状态对象
+	 * @return 状态对象
+	 */
+	public <T> T getAttachment() {
+		return TObject.cast(attachment);
+	}
+
+	/**
+	 * 设置分割器自定义的状态对象
+	 * @param attachment 状态对象
+	 */
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+	
+	/**
+	 * 重置扫描状态
+	 */
+	public void reset(){
+		offset = 0;
+		elapsedtime = 0;
+		attachment = null;
+	}
+}
@@ -1,9 +1,13 @@
 package org.voovan.network;
 
-import java.util.Timer;
+import java.lang.reflect.Method;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 线程池
@@ -15,23 +19,116 @@ import java.util.concurrent.TimeUnit;
  * Licence: Apache v2 License
  */
 public class ThreadPool {
+	private static ThreadPoolController threadPoolController;
 	private static ThreadPoolExecutor threadPool = createThreadPool();
+	private static Executor virtualThreadExecutor = createVirtualThreadExecutor();
+	private static ThreadPoolExecutor handShakeThreadPool = createHandShakeThreadPool();
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
 
 	private ThreadPool(){
 	}
 	
 	private static ThreadPoolExecutor createThreadPool(){
 		int cpuCoreCount = Runtime.getRuntime().availableProcessors();
-		ThreadPoolExecutor threadPoolInstance = new ThreadPoolExecutor(cpuCoreCount*10, cpuCoreCount*10,1, TimeUnit.MINUTES,new ArrayBlockingQueue<Runnable>(cpuCoreCount*10000));
+		final ThreadPoolController controller = new ThreadPoolController(cpuCoreCount, cpuCoreCount*100);
+		ThreadPoolExecutor threadPoolInstance = new ThreadPoolExecutor(cpuCoreCount*10, cpuCoreCount*10,1, TimeUnit.MINUTES,new ArrayBlockingQueue<Runnable>(cpuCoreCount*10000)){
+			@Override
+			public void execute(Runnable command) {
+				//记录任务的排队延迟和执行时间,供控制器调整线程池大小
+				super.execute(controller.wrap(command));
+			}
+		};
 		//设置allowCoreThreadTimeOut,允许回收超时的线程
 		threadPoolInstance.allowCoreThreadTimeOut(true);
-		Timer timer = new Timer();
-		ThreadPoolTask threadPoolTask = new ThreadPoolTask(threadPoolInstance,timer);
-		timer.schedule(threadPoolTask, 1, 1000);
+		controller.start(threadPoolInstance);
+		threadPoolController = controller;
 		return threadPoolInstance;
 	}
 	
+	/**
+	 * 创建 SSL 握手委派任务线程池
+	 * 		线程数和队列长度都是有界的,队列满时在提交任务的线程中执行
+	 * @return 线程池
+	 */
+	private static ThreadPoolExecutor createHandShakeThreadPool(){
+		int cpuCoreCount = Runtime.getRuntime().availableProcessors();
+		int poolSize = Math.max(2, cpuCoreCount);
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		ThreadPoolExecutor threadPoolInstance = new ThreadPoolExecutor(poolSize, poolSize, 1, TimeUnit.MINUTES,
+				new ArrayBlockingQueue<Runnable>(cpuCoreCount*1000), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "VOOVAN@SSLHandShake-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		threadPoolInstance.allowCoreThreadTimeOut(true);
+		return threadPoolInstance;
+	}
+	
+	/**
+	 * 通过反射创建虚拟线程执行器
+	 * 		每个任务在一个新的虚拟线程中执行, JDK 不支持虚拟线程时返回 null
+	 * @return 虚拟线程执行器
+	 */
+	private static Executor createVirtualThreadExecutor(){
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (Executor) method.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
 	public static ThreadPoolExecutor getThreadPool(){
 		return threadPool;
 	}
+	
+	/**
+	 * 获取 SSL 握手委派任务线程池
+	 * 		SSLEngine 的委派任务(证书校验、密钥计算等)在这个线程池中执行,不占用事件线程
+	 * @return 线程池
+	 */
+	public static ThreadPoolExecutor getHandShakeThreadPool(){
+		return handShakeThreadPool;
+	}
+	
+	/**
+	 * 获取线程池的自适应控制器
+	 * 		用于配置线程数范围、目标排队延迟以及获取线程池指标
+	 * @return 控制器
+	 */
+	public static ThreadPoolController getThreadPoolController(){
+		return threadPoolController;
+	}
+	
+	/**
+	 * 当前 JDK 是否支持虚拟线程
+	 * @return true: 支持, false: 不支持
+	 */
+	public static boolean isVirtualThreadSupported(){
+		return virtualThreadExecutor != null;
+	}
+	
+	/**
+	 * 获取执行模式对应的执行器
+	 * 		JDK 不支持虚拟线程时, VIRTUAL 模式使用平台线程池, DIRECT 模式在提交任务的线程中直接执行
+	 * @param executionMode 执行模式
+	 * @return 执行器
+	 */
+	public static Executor getExecutor(ExecutionMode executionMode){
+		if(executionMode == ExecutionMode.DIRECT){
+			return DIRECT_EXECUTOR;
+		}
+		if(executionMode == ExecutionMode.VIRTUAL && virtualThreadExecutor != null){
+			return virtualThreadExecutor;
+		}
+		return threadPool;
+	}
 }
@@ -0,0 +1,363 @@
+package org.voovan.network;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程池自适应控制器
+ * 		采样任务的排队延迟和执行时间,按目标排队延迟调整线程池的大小:
+ * 		排队延迟超过目标值时扩容,扩容的大小参考吞吐量和执行时间(Little's Law)估算;
+ * 		排队延迟远低于目标值且线程大量空闲,并连续多个采样周期保持时才缩容,避免线程数来回抖动.
+ * 		线程池大小始终在最小值和最大值之间.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ThreadPoolController extends TimerTask {
+
+	/**
+	 * 调整决策
+	 */
+	public enum Decision {
+		HOLD, GROW, SHRINK
+	}
+
+	private Timer				timer;
+	private ThreadPoolExecutor	threadPoolInstance;
+
+	private volatile int		minPoolSize;
+	private volatile int		maxPoolSize;
+	private volatile long		targetQueueDelay	= 10;
+	private volatile int		shrinkPatience		= 5;
+	private long				interval			= 1000;
+	private int					shrinkSamples		= 0;
+	private int					lastQueueSize		= 0;
+
+	// 采样周期内的统计
+	private final AtomicLong	taskCount			= new AtomicLong(0);
+	private final AtomicLong	queueDelaySum		= new AtomicLong(0);
+	private final AtomicLong	executeTimeSum		= new AtomicLong(0);
+
+	// 最近一次采样的指标
+	private volatile double		queueDelay;
+	private volatile double		executeTime;
+	private volatile double		throughput;
+	private volatile Decision	lastDecision		= Decision.HOLD;
+	private volatile long		lastDecisionTime;
+	private volatile int		lastPoolSize;
+	private final AtomicLong	growCount			= new AtomicLong(0);
+	private final AtomicLong	shrinkCount			= new AtomicLong(0);
+
+	/**
+	 * 构造函数
+	 * @param minPoolSize 线程池最小线程数
+	 * @param maxPoolSize 线程池最大线程数
+	 */
+	public ThreadPoolController(int minPoolSize, int maxPoolSize) {
+		if (minPoolSize <= 0) {
+			throw new IllegalArgumentException("minPoolSize must be positive: " + minPoolSize);
+		}
+		if (maxPoolSize < minPoolSize) {
+			throw new IllegalArgumentException("maxPoolSize must not be less than minPoolSize: " + maxPoolSize + " < " + minPoolSize);
+		}
+		this.minPoolSize = minPoolSize;
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * 开始控制线程池
+	 * @param threadPoolInstance 线程池
+	 */
+	public void start(ThreadPoolExecutor threadPoolInstance) {
+		this.threadPoolInstance = threadPoolInstance;
+		this.lastPoolSize = threadPoolInstance.getCorePoolSize();
+		this.timer = new Timer("VOOVAN@ThreadPoolController", true);
+		timer.schedule(this, interval, interval);
+	}
+
+	/**
+	 * 包装任务,记录任务的排队延迟和执行时间
+	 * @param task 任务
+	 * @return 包装后的任务
+	 */
+	public Runnable wrap(Runnable task) {
+		return new TimedTask(task);
+	}
+
+	/**
+	 * 记录任务的排队延迟和执行时间的任务包装
+	 */
+	private class TimedTask implements Runnable {
+		private Runnable	task;
+		private long		submitTime;
+
+		public TimedTask(Runnable task) {
+			this.task = task;
+			this.submitTime = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			long startTime = System.nanoTime();
+			try {
+				task.run();
+			} finally {
+				taskCount.incrementAndGet();
+				queueDelaySum.addAndGet(startTime - submitTime);
+				executeTimeSum.addAndGet(System.nanoTime() - startTime);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		if (threadPoolInstance.isShutdown()) {
+			this.cancel();
+			timer.cancel();
+			return;
+		}
+
+		long count = taskCount.getAndSet(0);
+		long delaySum = queueDelaySum.getAndSet(0);
+		long executeSum = executeTimeSum.getAndSet(0);
+
+		// 队列头部任务已经等待的时间也计入排队延迟,任务长时间得不到执行时也能及时扩容
+		long headDelay = 0;
+		Runnable headTask = threadPoolInstance.getQueue().peek();
+		if (headTask instanceof TimedTask) {
+			headDelay = System.nanoTime() - ((TimedTask) headTask).submitTime;
+		}
+
+		double averageDelay = count == 0 ? 0 : delaySum / (double) count / 1000000;
+		queueDelay = Math.max(averageDelay, headDelay / 1000000d);
+		executeTime = count == 0 ? 0 : executeSum / (double) count / 1000000;
+		throughput = count * 1000d / interval;
+
+		int poolSize = threadPoolInstance.getCorePoolSize();
+		int newPoolSize = decide(count, queueDelay, executeTime, threadPoolInstance.getQueue().size(),
+				threadPoolInstance.getActiveCount(), poolSize);
+		if (newPoolSize != poolSize) {
+			resize(newPoolSize);
+		}
+	}
+
+	/**
+	 * 根据一次采样的指标计算线程池大小
+	 * 		由采样定时任务调用,记录决策和统计,不修改线程池.
+	 * 		和 setMinPoolSize/setMaxPoolSize 同步,读到的最小值和最大值始终一致
+	 * @param count       采样周期内完成的任务数
+	 * @param queueDelay  排队延迟, 毫秒
+	 * @param executeTime 平均执行时间, 毫秒
+	 * @param queueSize   队列中等待的任务数
+	 * @param activeCount 正在执行任务的线程数
+	 * @param poolSize    当前的线程数
+	 * @return 调整后的线程数
+	 */
+	public synchronized int decide(long count, double queueDelay, double executeTime, int queueSize, int activeCount, int poolSize) {
+		int minPoolSize = this.minPoolSize;
+		int maxPoolSize = this.maxPoolSize;
+		int newPoolSize = poolSize;
+		Decision decision = Decision.HOLD;
+
+		if (queueDelay > targetQueueDelay && poolSize < maxPoolSize) {
+			shrinkSamples = 0;
+			// Little's Law: 满足任务到达速率需要的线程数, 加上在一个采样周期内消化积压任务需要的线程数, 另留 25% 的余量
+			double arrivalRate = Math.max(0, count + queueSize - lastQueueSize) * 1000d / interval;
+			double requiredThreads = arrivalRate * executeTime / 1000 + queueSize * executeTime / interval;
+			int requiredPoolSize = (int) Math.ceil(requiredThreads * 1.25);
+			newPoolSize = Math.max(poolSize + Math.max(1, poolSize / 4), requiredPoolSize);
+			decision = Decision.GROW;
+		} else if (queueDelay < targetQueueDelay / 4d && activeCount < poolSize / 2 && poolSize > minPoolSize) {
+			shrinkSamples++;
+			if (shrinkSamples >= shrinkPatience) {
+				shrinkSamples = 0;
+				newPoolSize = poolSize - Math.max(1, poolSize / 4);
+				decision = Decision.SHRINK;
+			}
+		} else {
+			shrinkSamples = 0;
+		}
+
+		newPoolSize = Math.max(minPoolSize, Math.min(maxPoolSize, newPoolSize));
+		if (newPoolSize != poolSize) {
+			if (newPoolSize > poolSize) {
+				decision = Decision.GROW;
+				growCount.incrementAndGet();
+			} else {
+				decision = Decision.SHRINK;
+				shrinkCount.incrementAndGet();
+			}
+			lastDecisionTime = System.currentTimeMillis();
+		} else {
+			decision = Decision.HOLD;
+		}
+		lastDecision = decision;
+		lastPoolSize = newPoolSize;
+		lastQueueSize = queueSize;
+		return newPoolSize;
+	}
+
+	/**
+	 * 调整线程池大小
+	 * 		核心线程数不能大于最大线程数,扩容时先调整最大线程数,缩容时先调整核心线程数
+	 * @param newPoolSize 新的线程数
+	 */
+	private void resize(int newPoolSize) {
+		if (newPoolSize > threadPoolInstance.getMaximumPoolSize()) {
+			threadPoolInstance.setMaximumPoolSize(newPoolSize);
+			threadPoolInstance.setCorePoolSize(newPoolSize);
+		} else {
+			threadPoolInstance.setCorePoolSize(newPoolSize);
+			threadPoolInstance.setMaximumPoolSize(newPoolSize);
+		}
+	}
+
+	public int getMinPoolSize() {
+		return minPoolSize;
+	}
+
+	/**
+	 * 设置线程池最小线程数
+	 * 		同时调大最小值和最大值时先设置最大值
+	 * @param minPoolSize 最小线程数, 必须大于 0 且不大于最大线程数
+	 */
+	public synchronized void setMinPoolSize(int minPoolSize) {
+		if (minPoolSize <= 0) {
+			throw new IllegalArgumentException("minPoolSize must be positive: " + minPoolSize);
+		}
+		if (minPoolSize > maxPoolSize) {
+			throw new IllegalArgumentException("minPoolSize must not be greater than maxPoolSize: " + minPoolSize + " > " + maxPoolSize);
+		}
+		this.minPoolSize = minPoolSize;
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	/**
+	 * 设置线程池最大线程数
+	 * 		同时调小最小值和最大值时先设置最小值
+	 * @param maxPoolSize 最大线程数, 必须不小于最小线程数
+	 */
+	public synchronized void setMaxPoolSize(int maxPoolSize) {
+		if (maxPoolSize < minPoolSize) {
+			throw new IllegalArgumentException("maxPoolSize must not be less than minPoolSize: " + maxPoolSize + " < " + minPoolSize);
+		}
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * 获取目标排队延迟
+	 * @return 毫秒
+	 */
+	public long getTargetQueueDelay() {
+		return targetQueueDelay;
+	}
+
+	/**
+	 * 设置目标排队延迟
+	 * @param targetQueueDelay 毫秒
+	 */
+	public void setTargetQueueDelay(long targetQueueDelay) {
+		if (targetQueueDelay <= 0) {
+			throw new IllegalArgumentException("targetQueueDelay must be positive: " + targetQueueDelay);
+		}
+		this.targetQueueDelay = targetQueueDelay;
+	}
+
+	/**
+	 * 获取缩容前需要连续满足条件的采样次数
+	 * @return
+	 */
+	public int getShrinkPatience() {
+		return shrinkPatience;
+	}
+
+	/**
+	 * 设置缩容前需要连续满足条件的采样次数
+	 * @param shrinkPatience
+	 */
+	public void setShrinkPatience(int shrinkPatience) {
+		if (shrinkPatience <= 0) {
+			throw new IllegalArgumentException("shrinkPatience must be positive: " + shrinkPatience);
+		}
+		this.shrinkPatience = shrinkPatience;
+	}
+
+	/**
+	 * 获取最近一次采样的平均排队延迟
+	 * @return 毫秒
+	 */
+	public double getQueueDelay() {
+		return queueDelay;
+	}
+
+	/**
+	 * 获取最近一次采样的平均执行时间
+	 * @return 毫秒
+	 */
+	public double getExecuteTime() {
+		return executeTime;
+	}
+
+	/**
+	 * 获取最近一次采样的吞吐量
+	 * @return 每秒完成的任务数
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * 获取最近一次采样的决策
+	 * @return
+	 */
+	public Decision getLastDecision() {
+		return lastDecision;
+	}
+
+	/**
+	 * 获取最近一次调整线程池大小的时间
+	 * @return 毫秒时间戳, 从未调整时为 0
+	 */
+	public long getLastDecisionTime() {
+		return lastDecisionTime;
+	}
+
+	public long getGrowCount() {
+		return growCount.get();
+	}
+
+	public long getShrinkCount() {
+		return shrinkCount.get();
+	}
+
+	/**
+	 * 获取控制器和线程池的指标
+	 * @return 指标名称和值
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new HashMap<String, Object>();
+		statistics.put("poolSize", lastPoolSize);
+		statistics.put("minPoolSize", minPoolSize);
+		statistics.put("maxPoolSize", maxPoolSize);
+		statistics.put("activeCount", threadPoolInstance == null ? 0 : threadPoolInstance.getActiveCount());
+		statistics.put("queueSize", threadPoolInstance == null ? 0 : threadPoolInstance.getQueue().size());
+		statistics.put("targetQueueDelay", targetQueueDelay);
+		statistics.put("queueDelay", queueDelay);
+		statistics.put("executeTime", executeTime);
+		statistics.put("throughput", throughput);
+		statistics.put("lastDecision", lastDecision);
+		statistics.put("growCount", getGrowCount());
+		statistics.put("shrinkCount", getShrinkCount());
+		return statistics;
+	}
+}
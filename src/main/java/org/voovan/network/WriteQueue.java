@@ -0,0 +1,365 @@
+package org.voovan.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 会话的发送队列
+ * 		对端接收缓慢时,未能立即写入的数据按顺序保存在队列中,由事件循环或者 Aio 写入完成回调继续写入.
+ * 		队列中的数据总量超过高水位时暂停读取,降低到低水位以下时恢复读取,避免慢速的对端占用过多内存.
+ * 		每个发送请求关联一个完成通知,数据全部写入 Socket 后完成.
+ * 		文件发送请求不占用内存,不计入高低水位.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WriteQueue {
+
+	/**
+	 * 默认高水位
+	 */
+	public static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+
+	/**
+	 * 默认低水位
+	 */
+	public static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+
+	/**
+	 * 一次聚集写入最多合并的缓冲区数量
+	 */
+	public static final int MAX_GATHER_COUNT = 64;
+
+	private IoSession session;
+	private ArrayDeque<WriteRequest> requests;
+	private long pendingBytes;
+	private volatile boolean readPaused;
+
+	/**
+	 * 构造函数
+	 * @param session 会话对象
+	 */
+	public WriteQueue(IoSession session) {
+		this.session = session;
+		this.requests = new ArrayDeque<WriteRequest>();
+		this.pendingBytes = 0;
+		this.readPaused = false;
+	}
+
+	/**
+	 * 发送请求
+	 */
+	public static class WriteRequest {
+		private ByteBuffer buffer;
+		private int length;
+		private CompletableFuture<Integer> future;
+
+		public WriteRequest(ByteBuffer buffer, int length, CompletableFuture<Integer> future) {
+			this.buffer = buffer;
+			this.length = length;
+			this.future = future;
+		}
+
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public CompletableFuture<Integer> getFuture() {
+			return future;
+		}
+
+		/**
+		 * 请求的数据是否已全部写入
+		 * @return true: 已写完
+		 */
+		public boolean isDone() {
+			return !buffer.hasRemaining();
+		}
+
+		/**
+		 * 请求写入完成
+		 */
+		protected void complete() {
+			future.complete(length);
+		}
+
+		/**
+		 * 请求写入失败
+		 * @param exception 异常
+		 */
+		protected void fail(Throwable exception) {
+			future.completeExceptionally(exception);
+		}
+
+		/**
+		 * 获取完成通知
+		 * @return 完成通知
+		 */
+		protected CompletableFuture<?> completion() {
+			return future;
+		}
+	}
+
+	/**
+	 * 文件发送请求
+	 * 		通过 FileChannel.transferTo 将文件内容直接写入 Socket,数据不经过 Java 堆
+	 */
+	public static class FileWriteRequest extends WriteRequest {
+		private FileChannel fileChannel;
+		private long position;
+		private long remaining;
+		private long count;
+		private CompletableFuture<Long> fileFuture;
+
+		public FileWriteRequest(FileChannel fileChannel, long position, long count, CompletableFuture<Long> fileFuture) {
+			super(null, 0, null);
+			this.fileChannel = fileChannel;
+			this.position = position;
+			this.remaining = count;
+			this.count = count;
+			this.fileFuture = fileFuture;
+		}
+
+		/**
+		 * 将文件内容写入通道
+		 * @param target 目标通道
+		 * @return 写入的字节数, 目标通道的发送缓冲区已满时为 0
+		 * @throws IOException 文件长度不足时抛出 EOFException
+		 */
+		public long transferTo(WritableByteChannel target) throws IOException {
+			if (position >= fileChannel.size()) {
+				throw new EOFException("File ended at " + position + " with " + remaining + " bytes left to send");
+			}
+			long transferSize = fileChannel.transferTo(position, remaining, target);
+			position += transferSize;
+			remaining -= transferSize;
+			return transferSize;
+		}
+
+		@Override
+		public boolean isDone() {
+			return remaining == 0;
+		}
+
+		@Override
+		protected void complete() {
+			fileFuture.complete(count);
+		}
+
+		@Override
+		protected void fail(Throwable exception) {
+			fileFuture.completeExceptionally(exception);
+		}
+
+		@Override
+		protected CompletableFuture<?> completion() {
+			return fileFuture;
+		}
+	}
+
+	/**
+	 * 队列是否为空
+	 * @return
+	 */
+	public synchronized boolean isEmpty() {
+		return requests.isEmpty();
+	}
+
+	/**
+	 * 队列中的请求数
+	 * @return
+	 */
+	public synchronized int size() {
+		return requests.size();
+	}
+
+	/**
+	 * 队列中等待写入的字节数
+	 * @return
+	 */
+	public synchronized long getPendingBytes() {
+		return pendingBytes;
+	}
+
+	/**
+	 * 是否因为超过高水位而暂停了读取
+	 * 		不加锁,传输层在暂停和恢复读取时调用
+	 * @return
+	 */
+	public boolean isReadPaused() {
+		return readPaused;
+	}
+
+	/**
+	 * 添加发送请求到队列尾部
+	 * @param buffer 需要发送的数据,从 position 到 limit 的数据
+	 * @param length 请求的总长度,用于完成通知
+	 * @param future 完成通知
+	 * @return 发送请求
+	 */
+	public synchronized WriteRequest add(ByteBuffer buffer, int length, CompletableFuture<Integer> future) {
+		WriteRequest request = new WriteRequest(buffer, length, future);
+		requests.addLast(request);
+		pendingBytes += buffer.remaining();
+
+		if (!readPaused && pendingBytes > highWaterMark()) {
+			readPaused = true;
+			session.pauseRead();
+		}
+		return request;
+	}
+
+	/**
+	 * 添加文件发送请求到队列尾部
+	 * @param fileChannel 文件通道
+	 * @param position    文件中的起始位置
+	 * @param count       发送的字节数
+	 * @param future      完成通知
+	 * @return 发送请求
+	 */
+	public synchronized WriteRequest addFile(FileChannel fileChannel, long position, long count, CompletableFuture<Long> future) {
+		WriteRequest request = new FileWriteRequest(fileChannel, position, count, future);
+		requests.addLast(request);
+		return request;
+	}
+
+	/**
+	 * 获取队列头部的请求
+	 * @return 发送请求, 队列为空时返回 null
+	 */
+	public synchronized WriteRequest peek() {
+		return requests.peekFirst();
+	}
+
+	/**
+	 * 获取队列尾部请求的完成通知
+	 * @return 完成通知, 队列为空时返回 null
+	 */
+	public synchronized CompletableFuture<?> lastFuture() {
+		WriteRequest request = requests.peekLast();
+		return request == null ? null : request.completion();
+	}
+
+	/**
+	 * 获取队列头部连续的多个请求的缓冲区,用于聚集写入
+	 * 		遇到文件发送请求时停止
+	 * @return 缓冲区数组, 最多 MAX_GATHER_COUNT 个
+	 */
+	public synchronized ByteBuffer[] gather() {
+		int count = 0;
+		for (WriteRequest request : requests) {
+			if (count == MAX_GATHER_COUNT || request instanceof FileWriteRequest) {
+				break;
+			}
+			count++;
+		}
+		ByteBuffer[] buffers = new ByteBuffer[count];
+		int index = 0;
+		for (WriteRequest request : requests) {
+			if (index == buffers.length) {
+				break;
+			}
+			buffers[index++] = request.getBuffer();
+		}
+		return buffers;
+	}
+
+	/**
+	 * 记录已写入的字节数
+	 * @param writeSize 写入的字节数
+	 */
+	public synchronized void written(long writeSize) {
+		pendingBytes -= writeSize;
+		if (writeSize > 0) {
+			session.updateLastWriteTime();
+			session.getMetrics().recordBytesOut(writeSize);
+		}
+		if (readPaused && pendingBytes <= lowWaterMark()) {
+			readPaused = false;
+			session.resumeRead();
+		}
+	}
+
+	/**
+	 * 记录文件发送请求已写入的字节数
+	 * 		文件发送请求不计入等待写入的字节数
+	 * @param writeSize 写入的字节数
+	 */
+	public synchronized void transferred(long writeSize) {
+		if (writeSize > 0) {
+			session.updateLastWriteTime();
+			session.getMetrics().recordBytesOut(writeSize);
+		}
+	}
+
+	/**
+	 * 记录一次写入阻塞
+	 * 		Socket 发送缓冲区已满,数据未能全部写入时调用
+	 */
+	public void stalled() {
+		session.getMetrics().recordWriteStall();
+	}
+
+	/**
+	 * 头部请求写入完成,移出队列并完成通知
+	 * @return 下一个请求, 队列为空时返回 null
+	 */
+	public synchronized WriteRequest complete() {
+		WriteRequest request = requests.pollFirst();
+		if (request != null) {
+			request.complete();
+		}
+		return requests.peekFirst();
+	}
+
+	/**
+	 * 移出头部所有已写完的请求并完成通知
+	 * @return true: 队列已为空, false: 还有未写完的请求
+	 */
+	public synchronized boolean completeWritten() {
+		WriteRequest request = requests.peekFirst();
+		while (request != null && request.isDone()) {
+			request = complete();
+		}
+		return request == null;
+	}
+
+	/**
+	 * 清空队列,以异常结束所有未完成的请求
+	 * @param exception 异常, 为 null 时使用 ClosedChannelException
+	 */
+	public synchronized void clear(Throwable exception) {
+		if (exception == null) {
+			exception = new ClosedChannelException();
+		}
+		WriteRequest request = null;
+		while ((request = requests.pollFirst()) != null) {
+			request.fail(exception);
+		}
+		pendingBytes = 0;
+		readPaused = false;
+	}
+
+	private int highWaterMark() {
+		SocketContext socketContext = session.sockContext();
+		return socketContext == null ? DEFAULT_HIGH_WATER_MARK : socketContext.getWriteHighWaterMark();
+	}
+
+	private int lowWaterMark() {
+		SocketContext socketContext = session.sockContext();
+		return socketContext == null ? DEFAULT_LOW_WATER_MARK : socketContext.getWriteLowWaterMark();
+	}
+}
@@ -1,6 +1,7 @@
 package org.voovan.network.aio;
 
 import java.io.IOException;
+import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
 
@@ -19,15 +20,23 @@ import org.voovan.tools.log.Logger;
 public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSocketChannel, AioServerSocket>{
 
 	private EventTrigger eventTrigger;
-	public AcceptCompletionHandler(EventTrigger eventTrigger){
+	private AsynchronousServerSocketChannel serverSocketChannel;
+	
+	/**
+	 * 构造函数
+	 * @param eventTrigger        事件触发器
+	 * @param serverSocketChannel 发起 Accept 的监听通道
+	 */
+	public AcceptCompletionHandler(EventTrigger eventTrigger, AsynchronousServerSocketChannel serverSocketChannel){
 		this.eventTrigger = eventTrigger;
+		this.serverSocketChannel = serverSocketChannel;
 	}
 	
 	@Override
 	public void completed(AsynchronousSocketChannel socketChannel, AioServerSocket serverSocket) {
 		try {
 			//接续接收 accept 请求
-			serverSocket.catchAccept();
+			serverSocket.catchAccept(serverSocketChannel);
 			
 			AioSocket socket = new AioSocket(serverSocket,socketChannel);
 			
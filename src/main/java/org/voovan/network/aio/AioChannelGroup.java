@@ -0,0 +1,81 @@
+package org.voovan.network.aio;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIO 通道组
+ * 		创建执行读写完成回调的通道组,线程名以 VOOVAN@AioGroup 开头,都是守护线程.
+ * 		固定线程池的通道组由固定数量的线程等待 I/O 事件并执行回调,回调阻塞时会减少可用的 I/O 线程;
+ * 		缓存线程池的通道组按需创建线程执行回调,适合回调中可能阻塞的场景.
+ * 		通过 SocketContext.setChannelGroup 设置后,监听通道和它接受的连接都在这个通道组中.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class AioChannelGroup {
+
+	private static final AtomicInteger GROUP_COUNT = new AtomicInteger(0);
+	private static AsynchronousChannelGroup sharedGroup;
+
+	private AioChannelGroup(){
+	}
+
+	/**
+	 * 获取共用的通道组
+	 * 		第一次调用时创建,线程数为 CPU 核心数
+	 * @return 通道组
+	 * @throws IOException 创建失败
+	 */
+	public static synchronized AsynchronousChannelGroup getShared() throws IOException {
+		if(sharedGroup == null || sharedGroup.isShutdown()){
+			sharedGroup = newFixedGroup(Runtime.getRuntime().availableProcessors());
+		}
+		return sharedGroup;
+	}
+
+	/**
+	 * 创建固定线程池的通道组
+	 * @param threadCount 线程数
+	 * @return 通道组
+	 * @throws IOException 创建失败
+	 */
+	public static AsynchronousChannelGroup newFixedGroup(int threadCount) throws IOException {
+		if(threadCount < 1){
+			throw new IllegalArgumentException("threadCount must be greater than 0");
+		}
+		return AsynchronousChannelGroup.withFixedThreadPool(threadCount, createThreadFactory());
+	}
+
+	/**
+	 * 创建缓存线程池的通道组
+	 * @param initialSize 等待 I/O 事件的初始线程数
+	 * @return 通道组
+	 * @throws IOException 创建失败
+	 */
+	public static AsynchronousChannelGroup newCachedGroup(int initialSize) throws IOException {
+		if(initialSize < 1){
+			throw new IllegalArgumentException("initialSize must be greater than 0");
+		}
+		return AsynchronousChannelGroup.withCachedThreadPool(Executors.newCachedThreadPool(createThreadFactory()), initialSize);
+	}
+
+	private static ThreadFactory createThreadFactory(){
+		final int groupIndex = GROUP_COUNT.incrementAndGet();
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "VOOVAN@AioGroup-" + groupIndex + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -10,6 +10,8 @@ import org.voovan.tools.TEnv;
 
 /**
  * AioServerSocket 监听
+ * 		监听通道数量大于 1 时使用 SO_REUSEPORT 在同一端口上打开多个监听通道,
+ * 		每个监听通道独立地发起 Accept,由操作系统内核将新连接分散到各个通道
  * 
  * @author helyho
  *
@@ -20,6 +22,7 @@ import org.voovan.tools.TEnv;
 public class AioServerSocket extends SocketContext{
 
 	private AsynchronousServerSocketChannel serverSocketChannel;
+	private AsynchronousServerSocketChannel[] acceptorChannels;
 	private EventTrigger eventTrigger;
 	
 	/**
@@ -38,16 +41,41 @@ public class AioServerSocket extends SocketContext{
 	
 	/**
 	 * 捕获 Aio Accept 事件
+	 * @param channel 监听通道
 	 */
-	public void catchAccept(){
-		serverSocketChannel.accept(this, new AcceptCompletionHandler(eventTrigger));
+	public void catchAccept(AsynchronousServerSocketChannel channel){
+		channel.accept(this, new AcceptCompletionHandler(eventTrigger, channel));
 	}
 	
 	@Override
 	public void start() throws IOException {
+		//在指定的通道组中重新打开监听通道,接受的连接也在这个通道组中
+		if(channelGroup != null){
+			serverSocketChannel.close();
+			serverSocketChannel = AsynchronousServerSocketChannel.open(channelGroup);
+		}
+		
 		InetSocketAddress socketAddress = new InetSocketAddress(host, port);
-		serverSocketChannel.bind(socketAddress, 1000);
-		catchAccept();
+		int count = availableAcceptorCount(serverSocketChannel);
+		acceptorChannels = new AsynchronousServerSocketChannel[count];
+		try{
+			for(int i=0; i<count; i++){
+				AsynchronousServerSocketChannel channel = i==0 ? serverSocketChannel : AsynchronousServerSocketChannel.open(channelGroup);
+				acceptorChannels[i] = channel;
+				if(count > 1){
+					channel.setOption(SO_REUSEPORT, true);
+				}
+				applySocketOptions(channel);
+				channel.bind(socketAddress, backlog);
+			}
+		}catch(IOException e){
+			closeAcceptors();
+			throw e;
+		}
+		
+		for(AsynchronousServerSocketChannel channel : acceptorChannels){
+			catchAccept(channel);
+		}
 		
 		//等待ServerSocketChannel关闭,结束进程
 		while(isConnect() && !eventTrigger.isShutdown()){
@@ -60,6 +88,20 @@ public class AioServerSocket extends SocketContext{
 		return serverSocketChannel.isOpen();
 	}
 	
+	/**
+	 * 关闭所有的监听通道
+	 * @throws IOException
+	 */
+	private void closeAcceptors() throws IOException {
+		if(acceptorChannels!=null){
+			for(AsynchronousServerSocketChannel channel : acceptorChannels){
+				if(channel!=null && channel.isOpen()){
+					channel.close();
+				}
+			}
+		}
+	}
+	
 	@Override
 	public boolean Close(){
 		
@@ -72,6 +114,7 @@ public class AioServerSocket extends SocketContext{
 				//关闭 Socket 连接
 				if(serverSocketChannel.isOpen()  && eventTrigger.isShutdown()){
 					serverSocketChannel.close();
+					closeAcceptors();
 				}
 				return true;
 			}
@@ -3,15 +3,16 @@ package org.voovan.network.aio;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousSocketChannel;
-import java.util.concurrent.Future;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
 
+import org.voovan.network.EventTrigger;
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageLoader;
 import org.voovan.network.MessageSplitter;
 import org.voovan.network.SocketContext;
+import org.voovan.network.WriteQueue;
 import org.voovan.tools.ByteBufferChannel;
-import org.voovan.tools.TEnv;
 import org.voovan.tools.TObject;
 
 /**
@@ -25,7 +26,6 @@ import org.voovan.tools.TObject;
  */
 public class AioSession extends IoSession {
 
-	private AsynchronousSocketChannel	socketChannel;
 	private AioSocket					socket;
 	private ByteBufferChannel			byteBufferChannel;
 	private MessageLoader				messageLoader;
@@ -38,7 +38,6 @@ public class AioSession extends IoSession {
 	 */
 	AioSession(AioSocket socket, int readTimeout) {
 		super();
-		this.socketChannel = socket.socketChannel();
 		this.socket = socket;
 
 		if (socket != null) {
@@ -61,7 +60,7 @@ public class AioSession extends IoSession {
 	public String loaclAddress() {
 		if (this.isConnect()) {
 			try {
-				InetSocketAddress socketAddress = TObject.cast(socketChannel.getLocalAddress());
+				InetSocketAddress socketAddress = TObject.cast(socket.socketChannel().getLocalAddress());
 				return socketAddress.getHostName();
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -76,7 +75,7 @@ public class AioSession extends IoSession {
 	public int loaclPort() {
 		if (this.isConnect()) {
 			try {
-				InetSocketAddress socketAddress = TObject.cast(socketChannel.getLocalAddress());
+				InetSocketAddress socketAddress = TObject.cast(socket.socketChannel().getLocalAddress());
 				return socketAddress.getPort();
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -91,7 +90,7 @@ public class AioSession extends IoSession {
 	public String remoteAddress() {
 		if (this.isConnect()) {
 			try {
-				InetSocketAddress socketAddress = TObject.cast(socketChannel.getRemoteAddress());
+				InetSocketAddress socketAddress = TObject.cast(socket.socketChannel().getRemoteAddress());
 				return socketAddress.getHostString();
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -106,7 +105,7 @@ public class AioSession extends IoSession {
 	public int remotePort() {
 		if (this.isConnect()) {
 			try {
-				InetSocketAddress socketAddress = TObject.cast(socketChannel.getRemoteAddress());
+				InetSocketAddress socketAddress = TObject.cast(socket.socketChannel().getRemoteAddress());
 				return socketAddress.getPort();
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -137,13 +136,41 @@ public class AioSession extends IoSession {
 	}
 
 	@Override
-	public void send(ByteBuffer buffer) throws IOException {
-		if (isConnect() && buffer != null) {
-			Future<Integer> sendResult = socketChannel.write(buffer);
-			while(!sendResult.isDone()){
-				TEnv.sleep(1);
+	public CompletableFuture<Integer> send(ByteBuffer buffer) throws IOException {
+		CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		if (buffer == null) {
+			future.complete(0);
+			return future;
+		}
+		if (!isConnect()) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		WriteQueue writeQueue = getWriteQueue();
+		synchronized (writeQueue) {
+			// 没有正在进行的写操作时发起写入,否则由 WriteCompletionHandler 在当前写入完成后合并写入
+			writeQueue.add(buffer, buffer.remaining(), future);
+			if (!socket.isWriting()) {
+				socket.catchWrite();
 			}
 		}
+		return future;
+	}
+
+	@Override
+	protected void pauseRead() {
+		socket.pauseRead();
+	}
+
+	@Override
+	protected void resumeRead() {
+		socket.resumeRead();
+	}
+
+	@Override
+	protected EventTrigger getEventTrigger() {
+		return socket.getEventTrigger();
 	}
 
 	@Override
@@ -2,16 +2,28 @@ package org.voovan.network.aio;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
+import org.voovan.network.ByteBufferPool;
 import org.voovan.network.ConnectModel;
 import org.voovan.network.EventTrigger;
+import org.voovan.network.HashedWheelTimer;
+import org.voovan.network.IoSession;
 import org.voovan.network.SocketContext;
 import org.voovan.tools.TEnv;
+import org.voovan.tools.log.Logger;
 
 /**
  * AioSocket 连接
+ * 		客户端通过 connect 发起异步连接,连接完成的回调在通道组的线程中执行;
+ * 		通过 start 连接时阻塞到连接关闭
  * 
  * @author helyho
  *
@@ -26,6 +38,14 @@ public class AioSocket extends SocketContext {
 	private EventTrigger				eventTrigger;
 	private ReadCompletionHandler		readCompletionHandler;
 	private ConnectedCompletionHandler	connectedCompletionHandler;
+	private WriteCompletionHandler		writeCompletionHandler;
+	private boolean						readPaused;
+	private ByteBuffer					pausedReadBuffer;
+	private boolean						writing;
+	private CompletableFuture<IoSession>	connectFuture;
+	private volatile HashedWheelTimer.Timeout	connectTimeoutTask;
+	private volatile boolean			standalone;
+	private final AtomicBoolean			closed = new AtomicBoolean(false);
 
 	/**
 	 * 构造函数
@@ -43,6 +63,7 @@ public class AioSocket extends SocketContext {
 
 		connectedCompletionHandler = new ConnectedCompletionHandler(eventTrigger);
 		readCompletionHandler = new ReadCompletionHandler(eventTrigger, session.getByteBufferChannel());
+		writeCompletionHandler = new WriteCompletionHandler(this, eventTrigger, session.getWriteQueue());
 		connectModel = ConnectModel.CLIENT;
 	}
 
@@ -61,6 +82,7 @@ public class AioSocket extends SocketContext {
 
 		connectedCompletionHandler = new ConnectedCompletionHandler(eventTrigger);
 		readCompletionHandler = new ReadCompletionHandler(eventTrigger, session.getByteBufferChannel());
+		writeCompletionHandler = new WriteCompletionHandler(this, eventTrigger, session.getWriteQueue());
 		connectModel = ConnectModel.SERVER;
 	}
 
@@ -74,25 +96,178 @@ public class AioSocket extends SocketContext {
 	}
 
 	/**
-	 * 捕获 Aio Connect
-	 * @throws IOException 
+	 * 发起异步连接
+	 * 		连接完成后开始读取并触发 onConnect 事件,SSL 连接的握手在连接完成后进行.
+	 * 		超过连接超时时间未完成时以 SocketTimeoutException 结束并关闭通道.
+	 * 		重复调用返回同一个结果
+	 * @return 连接结果, 连接完成时返回会话
 	 */
-	protected void catchConnected() throws IOException {
-		InetSocketAddress socketAddress = new InetSocketAddress(this.host, this.port);
-		socketChannel.connect(socketAddress, this, connectedCompletionHandler);
-		while(true){
-			if(socketChannel.getRemoteAddress()!=null){
-				break;
+	public synchronized CompletableFuture<IoSession> connect() {
+		if (connectFuture != null) {
+			return connectFuture;
+		}
+		connectFuture = new CompletableFuture<IoSession>();
+		if (connectModel != ConnectModel.CLIENT) {
+			connectFuture.complete(session);
+			return connectFuture;
+		}
+
+		try {
+			//在指定的通道组中重新打开通道
+			if (channelGroup != null) {
+				socketChannel.close();
+				socketChannel = AsynchronousSocketChannel.open(channelGroup);
+			}
+			applySocketOptions(socketChannel);
+
+			//在开始读取前创建 SSLParser, 避免握手数据被当作应用数据处理
+			if (sslManager != null) {
+				sslManager.createClientSSLParser(session);
+			}
+
+			if (connectTimeout > 0) {
+				connectTimeoutTask = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+					@Override
+					public void run() {
+						connectFailed(new SocketTimeoutException("Connect to " + host + ":" + port + " timed out after " + connectTimeout + "ms"));
+					}
+				}, connectTimeout, TimeUnit.MILLISECONDS);
+			}
+
+			socketChannel.connect(new InetSocketAddress(host, port), this, connectedCompletionHandler);
+		} catch (Exception e) {
+			connectFailed(e);
+		}
+		return connectFuture;
+	}
+
+	/**
+	 * 连接完成
+	 * 		在通道组的线程中调用
+	 */
+	protected void connectFinished() {
+		cancelConnectTimeout();
+		//已经超时
+		if (connectFuture.isDone()) {
+			return;
+		}
+
+		//捕获输入事件
+		catchRead(session.getReceiveBufferAllocator().allocate());
+
+		//在共享的时间轮上检测读写空闲
+		session.startIdleCheck();
+
+		// 触发 connect 事件
+		eventTrigger.fireConnectThread();
+		connectFuture.complete(session);
+	}
+
+	/**
+	 * 连接失败
+	 * 		关闭通道,结束连接前发送的数据
+	 * @param exception 异常
+	 */
+	protected void connectFailed(Throwable exception) {
+		cancelConnectTimeout();
+		if (connectFuture.completeExceptionally(exception)) {
+			try {
+				socketChannel.close();
+			} catch (IOException e) {
+				Logger.error("Class AioSocket Error: " + e.getMessage());
 			}
+			session.getWriteQueue().clear(exception);
+			session.getInboundThrottle().release();
+		}
+	}
+
+	private void cancelConnectTimeout() {
+		HashedWheelTimer.Timeout timeout = connectTimeoutTask;
+		if (timeout != null) {
+			timeout.cancel();
+			connectTimeoutTask = null;
 		}
 	}
 
 	/**
 	 * 捕获 Aio Read
+	 * 		连接已关闭时读取链结束,归还读取缓冲区
 	 */
-	protected void catchRead(ByteBuffer buffer) {
+	protected synchronized void catchRead(ByteBuffer buffer) {
 		if (isConnect()) {
-			socketChannel.read(buffer, buffer, readCompletionHandler);
+			// 暂停读取时保存读取缓冲区,恢复读取时再发起读取
+			if (readPaused) {
+				pausedReadBuffer = buffer;
+			} else {
+				socketChannel.read(buffer, buffer, readCompletionHandler);
+			}
+		} else {
+			ByteBufferPool.getDirect().release(buffer);
+		}
+	}
+
+	/**
+	 * 暂停读取
+	 * 		当前的读取完成后不再发起新的读取
+	 */
+	protected synchronized void pauseRead() {
+		readPaused = session.isReadPaused();
+	}
+
+	/**
+	 * 恢复读取
+	 * 		发送队列和接收限流都不再要求暂停时才恢复
+	 */
+	protected synchronized void resumeRead() {
+		readPaused = session.isReadPaused();
+		if (readPaused) {
+			return;
+		}
+		if (pausedReadBuffer != null) {
+			ByteBuffer buffer = pausedReadBuffer;
+			pausedReadBuffer = null;
+			catchRead(buffer);
+		}
+	}
+
+	/**
+	 * 捕获 Aio Write
+	 * 		发送队列中的数据通过一次聚集写入(Gathering Write)写入 Socket,
+	 * 		写入完成后由 WriteCompletionHandler 继续写入剩余的数据,
+	 * 		在持有发送队列的锁时调用
+	 */
+	protected void catchWrite() {
+		writing = true;
+		ByteBuffer[] buffers = session.getWriteQueue().gather();
+		socketChannel.write(buffers, 0, buffers.length, 0, TimeUnit.MILLISECONDS, buffers, writeCompletionHandler);
+	}
+
+	/**
+	 * 是否有正在进行的写操作
+	 * 		在持有发送队列的锁时调用.
+	 * 		写入完成的回调中完成通知时,通知的回调可能再次发送数据,
+	 * 		这时队列可能短暂为空,所以不能用队列是否为空判断
+	 * @return true: 有正在进行的写操作
+	 */
+	protected boolean isWriting() {
+		return writing;
+	}
+
+	/**
+	 * 写操作结束
+	 * 		发送队列已写完或者写入失败时在持有发送队列的锁时调用
+	 */
+	protected void writeFinished() {
+		writing = false;
+	}
+
+	/**
+	 * 归还暂停读取时保存的读取缓冲区
+	 */
+	private synchronized void releasePausedReadBuffer() {
+		if (pausedReadBuffer != null) {
+			ByteBufferPool.getDirect().release(pausedReadBuffer);
+			pausedReadBuffer = null;
 		}
 	}
 
@@ -102,26 +277,41 @@ public class AioSocket extends SocketContext {
 
 	@Override
 	public void start() throws Exception {
-
+		
 		if (connectModel == ConnectModel.CLIENT) {
-			// 捕获 connect 事件
-			catchConnected();
+			standalone = true;
+			try {
+				connect().get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			
+			// 客户端模式等待连接关闭
+			while (isConnect()) {
+				TEnv.sleep(500);
+			}
+			return;
 		}
 		
-		//捕获输入事件
-		catchRead(ByteBuffer.allocate(1024));
-
-		if (connectModel == ConnectModel.SERVER && sslManager != null) {
+		//服务端接受的连接已经在监听通道的通道组中
+		applySocketOptions(socketChannel);
+		
+		//在开始读取前创建 SSLParser, 避免握手数据被当作应用数据处理
+		if (sslManager != null) {
 			sslManager.createServerSSLParser(session);
-		} else if (connectModel == ConnectModel.CLIENT && sslManager != null) {
-			sslManager.createClientSSLParser(session);
 		}
 		
+		//捕获输入事件
+		catchRead(session.getReceiveBufferAllocator().allocate());
+		
+		//在共享的时间轮上检测读写空闲
+		session.startIdleCheck();
+		
 		// 触发 connect 事件
 		eventTrigger.fireConnectThread();
 		
 		// 等待ServerSocketChannel关闭,结束进程
-		while (isConnect() && (connectModel==ConnectModel.CLIENT || eventTrigger.isShutdown())) {
+		while (isConnect() && eventTrigger.isShutdown()) {
 			TEnv.sleep(500);
 		}
 	}
@@ -140,32 +330,78 @@ public class AioSocket extends SocketContext {
 		return socketChannel.isOpen();
 	}
 
+	/**
+	 * 关闭连接
+	 * 		发送队列中还有未写入完成的数据时,在写入完成或者超过读取超时时间后关闭,不阻塞当前线程.
+	 * 		当前线程可能是通道组的 I/O 线程(例如 DIRECT 执行模式),写入完成的回调也需要由通道组的线程执行,
+	 * 		在这里等待会占用 I/O 线程
+	 */
 	@Override
 	public boolean Close() {
 		if (socketChannel != null && socketChannel.isOpen()) {
-			try {
+			CompletableFuture<?> lastFuture = session.getWriteQueue().lastFuture();
+			if (lastFuture != null && !lastFuture.isDone()) {
+				closeAfter(lastFuture);
+				return true;
+			}
+			return closeChannel();
+		} else {
+			return true;
+		}
+	}
+
+	/**
+	 * 在发送队列写入完成或者超过读取超时时间后关闭连接
+	 * @param lastFuture 发送队列中最后一个写入请求的结果
+	 */
+	private void closeAfter(CompletableFuture<?> lastFuture) {
+		final HashedWheelTimer.Timeout timeout = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				closeChannel();
+			}
+		}, readTimeout, TimeUnit.MILLISECONDS);
+		lastFuture.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable throwable) {
+				timeout.cancel();
+				closeChannel();
+			}
+		});
+	}
 
-				// 触发 DisConnect 事件
-				eventTrigger.fireDisconnect();
+	/**
+	 * 关闭通道
+	 * 		写入完成的回调和超时检查可能同时调用,只有第一次调用生效
+	 * @return true: 关闭成功, false: 关闭失败
+	 */
+	private boolean closeChannel() {
+		if (!socketChannel.isOpen() || !closed.compareAndSet(false, true)) {
+			return true;
+		}
+		try {
+			// 触发 DisConnect 事件
+			eventTrigger.fireDisconnect();
 
-				// 检查是否关闭线程池
-				// 如果不是ServerSocket下的 Socket 则关闭线程池
-				// ServerSocket下的 Socket由 ServerSocket来关闭线程池
-				if (connectModel == ConnectModel.CLIENT) {
-					eventTrigger.shutdown();
-				}
+			// 检查是否关闭线程池
+			// 通过 start 阻塞运行的客户端关闭线程池
+			// 通过 connect 连接的客户端和ServerSocket下的 Socket共用线程池,不关闭
+			if (standalone) {
+				eventTrigger.shutdown();
+			}
 
-				// 关闭 Socket 连接
-				if (socketChannel.isOpen() && (connectModel == ConnectModel.SERVER || eventTrigger.isShutdown())) {
-					socketChannel.close();
-				}
-				return true;
-			} catch (Throwable e) {
-				e.printStackTrace();
-				return false;
+			// 关闭 Socket 连接
+			if (socketChannel.isOpen()) {
+				socketChannel.close();
+				session.stopIdleCheck();
+				session.getWriteQueue().clear(null);
+				session.getInboundThrottle().release();
+				releasePausedReadBuffer();
 			}
-		} else {
 			return true;
+		} catch (Throwable e) {
+			e.printStackTrace();
+			return false;
 		}
 	}
 
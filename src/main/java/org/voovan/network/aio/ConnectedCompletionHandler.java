@@ -24,7 +24,7 @@ public class ConnectedCompletionHandler implements CompletionHandler<Void, AioSo
 	@Override
 	public void completed(Void arg1,  AioSocket socketContext) {
 		try{
-			
+			socketContext.connectFinished();
 		}
 		catch(Exception e){
 			Logger.error("Class ConnectedCompletionHandler Error:"+e.getMessage());
@@ -34,11 +34,8 @@ public class ConnectedCompletionHandler implements CompletionHandler<Void, AioSo
 
 	@Override
 	public void failed(Throwable exc,  AioSocket socketContext) {
-		if(exc instanceof Exception){
-			Logger.error("Error: Aio connected socket error!");
-			//触发 onException 事件
-			eventTrigger.fireException(new Exception(exc));
-		}
+		//连接失败由连接结果通知调用者
+		socketContext.connectFailed(exc);
 	}
 
 }
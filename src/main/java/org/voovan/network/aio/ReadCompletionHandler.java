@@ -4,8 +4,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.CompletionHandler;
 
+import org.voovan.network.ByteBufferPool;
 import org.voovan.network.EventTrigger;
 import org.voovan.network.MessageLoader;
+import org.voovan.network.ReceiveBufferAllocator;
 import org.voovan.tools.ByteBufferChannel;
 import org.voovan.tools.TObject;
 import org.voovan.tools.log.Logger;
@@ -37,28 +39,44 @@ public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBu
 	@Override
 	public void completed(Integer length, ByteBuffer buffer) {
 
-		// 如果对端连接关闭,或者 session 关闭,则直接调用 session 的关闭
+		ReceiveBufferAllocator receiveBufferAllocator = session.getReceiveBufferAllocator();
+		receiveBufferAllocator.record(length);
+
+		// 如果对端连接关闭,不再继续读取,已接收的数据处理完成后关闭 session
 		if (MessageLoader.isRemoteClosed(length, buffer) && session.isConnect()) {
-			session.close();
+			ByteBufferPool.getDirect().release(buffer);
+			session.getMessageLoader().remoteClosed();
 		} else {
 			buffer.flip();
 			try {
 				if (length > 0) {
+					session.getMetrics().recordBytesIn(length);
 
 					// 接收数据
 					byteBufferChannel.write(buffer);
 
+					// 已接收未处理的数据超过高水位时暂停读取
+					session.getInboundThrottle().update();
+
 					// 触发 onReceive 事件
 					eventTrigger.fireReceiveThread();
 					
-					// 接收完成后重置buffer对象;
-					buffer.clear();
+					// 接收完成后重置buffer对象,接收缓冲区的大小变化时重新申请
+					if (buffer.capacity() != receiveBufferAllocator.guess()) {
+						ByteBufferPool.getDirect().release(buffer);
+						buffer = receiveBufferAllocator.allocate();
+					} else {
+						buffer.clear();
+					}
 
 					// 继续接收 Read 请求
 					socket.catchRead(buffer);
+				} else {
+					ByteBufferPool.getDirect().release(buffer);
 				}
 			} catch (Exception e) {
 				Logger.error("Class ReadCompletionHandler Error:"+e.getMessage());
+				ByteBufferPool.getDirect().release(buffer);
 				// 触发 onException 事件
 				eventTrigger.fireException(e);
 				
@@ -68,6 +86,8 @@ public class ReadCompletionHandler implements CompletionHandler<Integer,  ByteBu
 
 	@Override
 	public void failed(Throwable exc,  ByteBuffer buffer) {
+		//读取链结束,归还读取缓冲区
+		ByteBufferPool.getDirect().release(buffer);
 		if(exc instanceof Exception && !(exc instanceof AsynchronousCloseException)){
 			Logger.error("Error: Aio read socket error!");
 			//触发 onException 事件
@@ -0,0 +1,61 @@
+package org.voovan.network.aio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.CompletionHandler;
+
+import org.voovan.network.EventTrigger;
+import org.voovan.network.WriteQueue;
+import org.voovan.tools.log.Logger;
+
+/**
+ * Aio 写入事件
+ * 		一次写入完成后继续写入发送队列中剩余的数据,保证同一时刻只有一个写操作,
+ * 		写入期间进入队列的多个请求在下一次写入时合并成一次聚集写入
+ * 
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WriteCompletionHandler implements CompletionHandler<Long, ByteBuffer[]> {
+	private AioSocket socket;
+	private EventTrigger eventTrigger;
+	private WriteQueue writeQueue;
+
+	public WriteCompletionHandler(AioSocket socket, EventTrigger eventTrigger, WriteQueue writeQueue) {
+		this.socket = socket;
+		this.eventTrigger = eventTrigger;
+		this.writeQueue = writeQueue;
+	}
+
+	@Override
+	public void completed(Long length, ByteBuffer[] buffers) {
+		synchronized (writeQueue) {
+			writeQueue.written(length);
+			// 移出已写完的请求,继续写入剩余的数据
+			if (!writeQueue.completeWritten()) {
+				if (buffers[buffers.length - 1].hasRemaining()) {
+					writeQueue.stalled();
+				}
+				socket.catchWrite();
+			} else {
+				socket.writeFinished();
+			}
+		}
+	}
+
+	@Override
+	public void failed(Throwable exc, ByteBuffer[] buffers) {
+		synchronized (writeQueue) {
+			socket.writeFinished();
+			writeQueue.clear(exc);
+		}
+		if (exc instanceof Exception && !(exc instanceof AsynchronousCloseException)) {
+			Logger.error("Error: Aio write socket error!");
+			// 触发 onException 事件
+			eventTrigger.fireException(new Exception(exc));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.voovan.network.filter;
+
+import org.voovan.network.IoFilter;
+import org.voovan.network.IoSession;
+import org.voovan.tools.TObject;
+
+/**
+ * 类型化的编解码过滤器
+ * 		解码时只处理 I 类型的对象并转换为 O 类型,编码时只处理 O 类型的对象,其他类型的对象原样传递给下一个过滤器.
+ * 		编码结果可以是 ByteBuffer、String、Encodable 或者下一个过滤器能够处理的对象.
+ *
+ * @param <I> 解码前的类型,通常是 ByteBuffer
+ * @param <O> 解码后的类型
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public abstract class CodecFilter<I, O> implements IoFilter {
+
+	private final Class<I> inType;
+	private final Class<O> outType;
+
+	/**
+	 * 构造函数
+	 * @param inType  解码前的类型
+	 * @param outType 解码后的类型
+	 */
+	protected CodecFilter(Class<I> inType, Class<O> outType) {
+		this.inType = inType;
+		this.outType = outType;
+	}
+
+	/**
+	 * 解码
+	 * @param session 会话对象
+	 * @param message 解码前的对象
+	 * @return 解码后的对象
+	 */
+	protected abstract O decodeMessage(IoSession session, I message);
+
+	/**
+	 * 编码
+	 * @param session 会话对象
+	 * @param message 编码前的对象
+	 * @return 编码后的对象
+	 */
+	protected abstract Object encodeMessage(IoSession session, O message);
+
+	@Override
+	public Object decode(IoSession session, Object object) {
+		if (inType.isInstance(object)) {
+			return decodeMessage(session, TObject.<I>cast(object));
+		}
+		return object;
+	}
+
+	@Override
+	public Object encode(IoSession session, Object object) {
+		if (outType.isInstance(object)) {
+			return encodeMessage(session, TObject.<O>cast(object));
+		}
+		return object;
+	}
+}
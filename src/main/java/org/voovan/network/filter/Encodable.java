@@ -0,0 +1,33 @@
+package org.voovan.network.filter;
+
+import java.nio.ByteBuffer;
+
+import org.voovan.network.IoSession;
+
+/**
+ * 可编码的发送对象
+ * 		过滤器或者业务处理句柄返回实现这个接口的对象时,发送前调用 encode 得到需要发送的数据,
+ * 		数据写入 Socket 并且 onSent 事件处理完成后调用 release,用于归还池化的缓冲区
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface Encodable {
+
+	/**
+	 * 编码
+	 * 		每个对象只调用一次
+	 * @param session 会话对象
+	 * @return 需要发送的数据, position 到 limit 之间的数据
+	 */
+	public ByteBuffer encode(IoSession session);
+
+	/**
+	 * 发送完成后释放编码使用的资源
+	 * @param buffer encode 返回的缓冲区
+	 */
+	public void release(ByteBuffer buffer);
+}
@@ -0,0 +1,60 @@
+package org.voovan.network.filter;
+
+import java.nio.ByteBuffer;
+
+import org.voovan.network.IoFilter;
+import org.voovan.network.IoSession;
+import org.voovan.tools.TObject;
+
+/**
+ * 长度字段消息帧的解码过滤器
+ * 		配合 LengthFieldSplitter 使用,去掉消息帧开头的头部和长度字段,
+ * 		返回共享原消息帧内容的 ByteBuffer 切片,不复制数据
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LengthFieldDecoder implements IoFilter {
+
+	private int bytesToStrip;
+
+	/**
+	 * 构造函数
+	 * @param bytesToStrip 消息帧开头需要去掉的字节数,通常为头部和长度字段的长度
+	 */
+	public LengthFieldDecoder(int bytesToStrip) {
+		if (bytesToStrip < 0) {
+			throw new IllegalArgumentException("bytesToStrip must not be negative: " + bytesToStrip);
+		}
+		this.bytesToStrip = bytesToStrip;
+	}
+
+	/**
+	 * 获取消息帧开头需要去掉的字节数
+	 * @return 字节数
+	 */
+	public int getBytesToStrip() {
+		return bytesToStrip;
+	}
+
+	@Override
+	public Object decode(IoSession session, Object object) {
+		if (object instanceof ByteBuffer) {
+			ByteBuffer frame = TObject.cast(object);
+			if (frame.remaining() < bytesToStrip) {
+				return null;
+			}
+			frame.position(frame.position() + bytesToStrip);
+			return frame.slice();
+		}
+		return object;
+	}
+
+	@Override
+	public Object encode(IoSession session, Object object) {
+		return object;
+	}
+}
@@ -0,0 +1,120 @@
+package org.voovan.network.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.voovan.network.ByteBufferPool;
+import org.voovan.network.IoFilter;
+import org.voovan.network.IoSession;
+import org.voovan.network.messagesplitter.LengthFieldSplitter;
+import org.voovan.tools.TObject;
+
+/**
+ * 长度字段消息帧的编码过滤器
+ * 		在消息前加上长度字段,长度字段和消息一起写入池化的缓冲区,发送完成后归还到缓冲区池.
+ * 		长度字段的值 = 消息长度 + lengthAdjustment, 与对端 LengthFieldSplitter 的 lengthAdjustment 符号相反.
+ * 		支持 ByteBuffer 和 Encodable 类型的消息,其他类型的对象原样传递给下一个过滤器.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LengthFieldEncoder implements IoFilter {
+
+	private int lengthFieldLength;
+	private int lengthAdjustment;
+	private ByteOrder byteOrder;
+
+	/**
+	 * 构造函数
+	 * 		长度字段使用大端字节序
+	 * @param lengthFieldLength 长度字段的字节数, 1/2/4/8 或者 LengthFieldSplitter.VARINT
+	 * @param lengthAdjustment  长度字段的值相对于消息长度的调整值
+	 */
+	public LengthFieldEncoder(int lengthFieldLength, int lengthAdjustment) {
+		this(lengthFieldLength, lengthAdjustment, ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * 构造函数
+	 * @param lengthFieldLength 长度字段的字节数, 1/2/4/8 或者 LengthFieldSplitter.VARINT
+	 * @param lengthAdjustment  长度字段的值相对于消息长度的调整值
+	 * @param byteOrder         长度字段的字节序, VARINT 时忽略
+	 */
+	public LengthFieldEncoder(int lengthFieldLength, int lengthAdjustment, ByteOrder byteOrder) {
+		LengthFieldSplitter.checkLengthFieldLength(lengthFieldLength);
+		this.lengthFieldLength = lengthFieldLength;
+		this.lengthAdjustment = lengthAdjustment;
+		this.byteOrder = byteOrder;
+	}
+
+	@Override
+	public Object decode(IoSession session, Object object) {
+		return object;
+	}
+
+	@Override
+	public Object encode(IoSession session, Object object) {
+		if (object instanceof ByteBuffer) {
+			return encodeFrame(TObject.<ByteBuffer>cast(object));
+		} else if (object instanceof Encodable) {
+			Encodable encodable = TObject.cast(object);
+			ByteBuffer buffer = encodable.encode(session);
+			try {
+				return encodeFrame(buffer);
+			} finally {
+				encodable.release(buffer);
+			}
+		}
+		return object;
+	}
+
+	/**
+	 * 在消息前加上长度字段
+	 * @param message 消息
+	 * @return 消息帧
+	 */
+	private PooledByteBuffer encodeFrame(ByteBuffer message) {
+		long length = (long) message.remaining() + lengthAdjustment;
+		if (length < 0 || (lengthFieldLength != LengthFieldSplitter.VARINT && lengthFieldLength < 8
+				&& length >= 1L << (lengthFieldLength * 8))) {
+			throw new IllegalArgumentException("Message length " + message.remaining() + " does not fit in a "
+					+ lengthFieldLength + " byte length field");
+		}
+
+		int fieldSize = lengthFieldLength == LengthFieldSplitter.VARINT ? varintSize(length) : lengthFieldLength;
+		ByteBufferPool pool = ByteBufferPool.getDirect();
+		ByteBuffer frame = pool.acquire(fieldSize + message.remaining());
+		if (lengthFieldLength == LengthFieldSplitter.VARINT) {
+			while ((length & ~0x7FL) != 0) {
+				frame.put((byte) ((length & 0x7F) | 0x80));
+				length >>>= 7;
+			}
+			frame.put((byte) length);
+		} else {
+			for (int i = 0; i < lengthFieldLength; i++) {
+				int shift = byteOrder == ByteOrder.BIG_ENDIAN ? (lengthFieldLength - 1 - i) * 8 : i * 8;
+				frame.put((byte) (length >>> shift));
+			}
+		}
+		frame.put(message.duplicate());
+		frame.flip();
+		return new PooledByteBuffer(frame, pool);
+	}
+
+	/**
+	 * 计算 VARINT 的字节数
+	 * @param value 值
+	 * @return 字节数
+	 */
+	private static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
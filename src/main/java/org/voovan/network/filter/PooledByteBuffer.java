@@ -0,0 +1,50 @@
+package org.voovan.network.filter;
+
+import java.nio.ByteBuffer;
+
+import org.voovan.network.ByteBufferPool;
+import org.voovan.network.IoSession;
+
+/**
+ * 池化缓冲区的发送对象
+ * 		编码器直接写入从缓冲区池申请的缓冲区,发送完成后归还到缓冲区池
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class PooledByteBuffer implements Encodable {
+
+	private ByteBuffer buffer;
+	private ByteBufferPool pool;
+
+	/**
+	 * 构造函数
+	 * @param buffer 通过 pool 申请的缓冲区, position 到 limit 为需要发送的数据
+	 * @param pool   缓冲区池
+	 */
+	public PooledByteBuffer(ByteBuffer buffer, ByteBufferPool pool) {
+		this.buffer = buffer;
+		this.pool = pool;
+	}
+
+	/**
+	 * 获取缓冲区
+	 * @return 缓冲区
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public ByteBuffer encode(IoSession session) {
+		return buffer;
+	}
+
+	@Override
+	public void release(ByteBuffer buffer) {
+		pool.release(buffer);
+	}
+}
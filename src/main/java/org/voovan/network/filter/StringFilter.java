@@ -1,37 +1,159 @@
 package org.voovan.network.filter;
 
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
-import org.voovan.network.IoFilter;
+import org.voovan.network.ByteBufferPool;
 import org.voovan.network.IoSession;
-import org.voovan.network.MessageLoader;
-import org.voovan.tools.TObject;
+import org.voovan.tools.log.Logger;
 
 /**
  * String 过滤器
- * 
+ * 		解码时直接从接收的缓冲区转换成 String,编码时通过线程缓存的 CharsetEncoder 直接写入池化的缓冲区,
+ * 		发送完成后缓冲区归还到缓冲区池. 超过缓冲区池最大尺寸的字符串编码到堆内存
+ *
  * @author helyho
  *
  * Voovan Framework.
  * WebSite: https://github.com/helyho/Voovan
  * Licence: Apache v2 License
  */
-public class StringFilter implements IoFilter {
+public class StringFilter extends CodecFilter<ByteBuffer, String> {
+
+	private final Charset charset;
+	private final ThreadLocal<CharsetEncoder> encoders;
+	private final ThreadLocal<CharsetDecoder> decoders;
+
+	/**
+	 * 构造函数
+	 * 		使用平台默认的字符集
+	 */
+	public StringFilter() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 * 构造函数
+	 * @param charset 字符集
+	 */
+	public StringFilter(final Charset charset) {
+		super(ByteBuffer.class, String.class);
+		this.charset = charset;
+		this.encoders = new ThreadLocal<CharsetEncoder>() {
+			@Override
+			protected CharsetEncoder initialValue() {
+				return charset.newEncoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			}
+		};
+		this.decoders = new ThreadLocal<CharsetDecoder>() {
+			@Override
+			protected CharsetDecoder initialValue() {
+				return charset.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			}
+		};
+	}
+
+	/**
+	 * 获取字符集
+	 * @return 字符集
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
 
 	@Override
-	public Object encode(IoSession session,Object object) {
-		if(object instanceof String){
-			String sourceString = TObject.cast(object);
-			return ByteBuffer.wrap(sourceString.getBytes());
+	protected Object encodeMessage(IoSession session, String message) {
+		CharsetEncoder encoder = encoders.get();
+
+		// 按平均每个字符的字节数估算缓冲区大小,空间不足时扩容
+		// 超过 ByteBufferPool.MAX_SIZE 时缓冲区池会分配非池化的直接内存,改为编码到堆内存
+		int estimateSize = (int) Math.ceil(message.length() * (double) encoder.averageBytesPerChar());
+		if (estimateSize > ByteBufferPool.MAX_SIZE) {
+			return ByteBuffer.wrap(message.getBytes(charset));
+		}
+
+		ByteBufferPool pool = ByteBufferPool.getDirect();
+		ByteBuffer buffer = pool.acquire(estimateSize);
+		CharBuffer charBuffer = CharBuffer.wrap(message);
+		encoder.reset();
+		boolean flushing = false;
+		while (true) {
+			CoderResult coderResult = flushing ? encoder.flush(buffer) : encoder.encode(charBuffer, buffer, true);
+			if (coderResult.isUnderflow()) {
+				if (flushing) {
+					break;
+				}
+				flushing = true;
+			} else if (coderResult.isOverflow()) {
+				buffer = grow(pool, buffer, (int) Math.ceil(charBuffer.remaining() * (double) encoder.maxBytesPerChar()));
+				if (buffer == null) {
+					return ByteBuffer.wrap(message.getBytes(charset));
+				}
+			} else {
+				pool.release(buffer);
+				Logger.error("Class StringFilter Error: encode failed, " + coderResult);
+				return ByteBuffer.wrap(message.getBytes(charset));
+			}
+		}
+		buffer.flip();
+		return new PooledByteBuffer(buffer, pool);
+	}
+
+	/**
+	 * 扩容编码缓冲区
+	 * 		优先使用缓冲区容量中未申请的部分,不足时申请更大的缓冲区并复制已编码的数据
+	 * @param pool      缓冲区池
+	 * @param buffer    编码缓冲区
+	 * @param needSize  剩余字符需要的最大字节数
+	 * @return 扩容后的缓冲区, 超过 ByteBufferPool.MAX_SIZE 时归还缓冲区并返回 null
+	 */
+	private static ByteBuffer grow(ByteBufferPool pool, ByteBuffer buffer, int needSize) {
+		if (buffer.limit() < buffer.capacity()) {
+			buffer.limit(buffer.capacity());
+			return buffer;
+		}
+
+		long newSize = Math.max((long) buffer.position() + needSize, buffer.capacity() * 2L);
+		if (newSize > ByteBufferPool.MAX_SIZE) {
+			newSize = (long) buffer.position() + needSize;
+		}
+		if (newSize > ByteBufferPool.MAX_SIZE) {
+			pool.release(buffer);
+			return null;
 		}
-		return object;
+
+		ByteBuffer newBuffer = pool.acquire((int) newSize);
+		buffer.flip();
+		newBuffer.put(buffer);
+		pool.release(buffer);
+		return newBuffer;
 	}
 
 	@Override
-	public Object decode(IoSession session,Object object) {
-		if(object instanceof ByteBuffer){
-			return MessageLoader.byteBufferToString(TObject.cast(object));
+	protected String decodeMessage(IoSession session, ByteBuffer message) {
+		// 堆内存的缓冲区直接从数组构造,只复制一次
+		if (message.hasArray()) {
+			String result = new String(message.array(), message.arrayOffset() + message.position(), message.remaining(), charset);
+			message.position(message.limit());
+			return result;
+		}
+
+		try {
+			return decoders.get().decode(message).toString();
+		} catch (CharacterCodingException e) {
+			// 错误处理为 REPLACE,不会抛出异常
+			Logger.error("Class StringFilter Error: " + e.getMessage());
+			return null;
 		}
-		return object;
 	}
 }
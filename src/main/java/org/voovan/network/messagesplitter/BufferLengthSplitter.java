@@ -1,7 +1,10 @@
 package org.voovan.network.messagesplitter;
 
+import org.voovan.network.FrameSplitter;
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
+import org.voovan.network.SplitState;
+import org.voovan.tools.ByteBufferChannel;
 
 /**
  * 按定长对消息分割
@@ -12,7 +15,7 @@ import org.voovan.network.MessageSplitter;
  * WebSite: https://github.com/helyho/Voovan
  * Licence: Apache v2 License
  */
-public class BufferLengthSplitter implements MessageSplitter {
+public class BufferLengthSplitter implements MessageSplitter, FrameSplitter {
 	private long bufferLength;
 	
 	public BufferLengthSplitter(long bufferLength){
@@ -28,5 +31,15 @@ public class BufferLengthSplitter implements MessageSplitter {
 			return false;
 		}
 	}
+
+	@Override
+	public int split(IoSession session, ByteBufferChannel buffer, SplitState state) {
+		if(buffer.size()>=bufferLength){
+			return (int)bufferLength;
+		}
+		else{
+			return -1;
+		}
+	}
 	
 }
@@ -3,8 +3,12 @@ package org.voovan.network.messagesplitter;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 
+import org.voovan.network.FrameSplitter;
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
+import org.voovan.network.SplitState;
+import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.TObject;
 import org.voovan.tools.TString;
 
 /**
@@ -16,9 +20,278 @@ import org.voovan.tools.TString;
  * WebSite: https://github.com/helyho/Voovan
  * Licence: Apache v2 License
  */
-public class HttpMessageSplitter implements MessageSplitter {
+public class HttpMessageSplitter implements MessageSplitter, FrameSplitter {
 
 	private static final String	BODY_TAG	= "\r\n\r\n";
+	private static final byte[]	BODY_TAG_BYTES	= BODY_TAG.getBytes();
+	private static final byte[]	LINE_TAG_BYTES	= "\r\n".getBytes();
+	
+	//报文体的类型
+	private static final int BODY_NONE			= 0;
+	private static final int BODY_LENGTH		= 1;
+	private static final int BODY_CHUNKED		= 2;
+	private static final int BODY_BOUNDARY		= 3;
+	private static final int BODY_UNTIL_CLOSE	= 4;
+	
+	/**
+	 * HTTP 消息帧的扫描状态
+	 */
+	private static class HttpFrameState {
+		//报文头长度,包含结尾的\r\n\r\n
+		private int headerLength = -1;
+		private int bodyType = BODY_NONE;
+		private int contentLength;
+		//下一个 chunk 长度行的位置
+		private int chunkOffset;
+		private byte[] boundaryEnd;
+	}
+
+	@Override
+	public int split(IoSession session, ByteBufferChannel buffer, SplitState state) {
+		if (buffer.size() == 0) {
+			return -1;
+		}
+		
+		if (isWebSocket(session, buffer)) {
+			return webSocketFrameLength(buffer);
+		} else {
+			return httpFrameLength(buffer, state);
+		}
+	}
+	
+	/**
+	 * 判断数据是否是 WebSocket 帧
+	 * 		WebSocket 协议升级后的会话,或者首字节不是 HTTP 报文的首字节
+	 * @param session 会话对象
+	 * @param buffer  数据
+	 * @return true: WebSocket 帧, false: HTTP 报文
+	 */
+	private static boolean isWebSocket(IoSession session, ByteBufferChannel buffer) {
+		if (session != null && TObject.nullDefault((Boolean) session.getAttribute("isWebSocket"), false)) {
+			return true;
+		}
+		byte firstByte = buffer.get(0);
+		return !(firstByte >= 'A' && firstByte <= 'Z') && firstByte != '\r' && firstByte != '\n';
+	}
+	
+	/**
+	 * 计算 HTTP 报文的长度
+	 * @param buffer 数据
+	 * @param state  扫描状态
+	 * @return 报文长度,报文不完整时返回 -1
+	 */
+	private static int httpFrameLength(ByteBufferChannel buffer, SplitState state) {
+		int length = buffer.size();
+		HttpFrameState frameState = state.getAttachment();
+		if (frameState == null) {
+			frameState = new HttpFrameState();
+			state.setAttachment(frameState);
+		}
+		
+		// 查找报文头的结尾,从上次扫描停止的位置继续
+		if (frameState.headerLength < 0) {
+			int headerEnd = buffer.indexOf(BODY_TAG_BYTES, Math.max(0, state.getOffset() - BODY_TAG_BYTES.length + 1));
+			if (headerEnd < 0) {
+				state.setOffset(length);
+				return -1;
+			}
+			frameState.headerLength = headerEnd + BODY_TAG_BYTES.length;
+			parseHeader(buffer, frameState);
+		}
+		
+		switch (frameState.bodyType) {
+			// 1.包含 Content-Length 的则通过 Content-Length 来计算报文的总长度
+			case BODY_LENGTH: {
+				int totalLength = frameState.headerLength + frameState.contentLength;
+				if (length >= totalLength) {
+					return totalLength;
+				}
+				state.setOffset(length);
+				return -1;
+			}
+			// 2. chunked 报文,逐个跳过 chunk 直到长度为0的 chunk
+			case BODY_CHUNKED: {
+				return chunkedFrameLength(buffer, frameState);
+			}
+			// 3. POST方法的multipart/form-data类型,且没有指定ContentLength,则需要使用--boundary--的结尾形式来判断
+			case BODY_BOUNDARY: {
+				int fromIndex = Math.max(frameState.headerLength, state.getOffset() - frameState.boundaryEnd.length + 1);
+				int boundaryIndex = buffer.indexOf(frameState.boundaryEnd, fromIndex);
+				if (boundaryIndex < 0) {
+					state.setOffset(length);
+					return -1;
+				}
+				int totalLength = boundaryIndex + frameState.boundaryEnd.length;
+				if (length >= totalLength + 2 && buffer.get(totalLength) == '\r') {
+					totalLength = totalLength + 2;
+				}
+				return totalLength;
+			}
+			// 4. 没有报文长度的响应报文(HTTP/1.0 或 Connection: close),在连接关闭时结束,
+			//    对端关闭连接后 MessageLoader 将剩余的数据作为最后一个消息返回
+			case BODY_UNTIL_CLOSE: {
+				state.setOffset(length);
+				return -1;
+			}
+			// 5. HEAD,CONNECT,DELETE,GET,TRACE,OPTIONS等请求,没有报文内容
+			default: {
+				return frameState.headerLength;
+			}
+		}
+	}
+	
+	/**
+	 * 解析报文头,确定报文体的类型
+	 * @param buffer     数据
+	 * @param frameState 扫描状态
+	 */
+	private static void parseHeader(ByteBufferChannel buffer, HttpFrameState frameState) {
+		byte[] headerBytes = new byte[frameState.headerLength];
+		buffer.get(0, headerBytes);
+		String[] headerLines = new String(headerBytes).split("\r\n");
+		
+		boolean isResponse = headerLines[0].startsWith("HTTP/");
+		boolean isChunked = false;
+		int contentLength = -1;
+		String boundary = null;
+		
+		for (int i = 1; i < headerLines.length; i++) {
+			int colonIndex = headerLines[i].indexOf(':');
+			if (colonIndex <= 0) {
+				continue;
+			}
+			String name = headerLines[i].substring(0, colonIndex).trim();
+			String value = headerLines[i].substring(colonIndex + 1).trim();
+			if (name.equalsIgnoreCase("Content-Length")) {
+				try {
+					contentLength = Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+					contentLength = -1;
+				}
+			} else if (name.equalsIgnoreCase("Transfer-Encoding") && value.toLowerCase().contains("chunked")) {
+				isChunked = true;
+			} else if (name.equalsIgnoreCase("Content-Type") && value.contains("boundary=")) {
+				boundary = value.substring(value.indexOf("boundary=") + 9).split("[ ;]")[0];
+			}
+		}
+		
+		if (isChunked) {
+			frameState.bodyType = BODY_CHUNKED;
+			frameState.chunkOffset = frameState.headerLength;
+		} else if (contentLength >= 0) {
+			frameState.bodyType = BODY_LENGTH;
+			frameState.contentLength = contentLength;
+		} else if (!isResponse && boundary != null) {
+			frameState.bodyType = BODY_BOUNDARY;
+			frameState.boundaryEnd = ("--" + boundary + "--").getBytes();
+		} else if (isResponse && !isBodylessStatus(headerLines[0])) {
+			frameState.bodyType = BODY_UNTIL_CLOSE;
+		} else {
+			frameState.bodyType = BODY_NONE;
+		}
+	}
+	
+	/**
+	 * 判断响应状态是否不包含报文体(1xx, 204, 304)
+	 * @param statusLine 响应状态行
+	 * @return true: 不包含报文体
+	 */
+	private static boolean isBodylessStatus(String statusLine) {
+		String[] statusParts = statusLine.split(" ");
+		if (statusParts.length < 2) {
+			return false;
+		}
+		String status = statusParts[1];
+		return status.startsWith("1") || status.equals("204") || status.equals("304");
+	}
+	
+	/**
+	 * 计算 chunked 报文的长度
+	 * @param buffer     数据
+	 * @param frameState 扫描状态
+	 * @return 报文长度,报文不完整时返回 -1
+	 */
+	private static int chunkedFrameLength(ByteBufferChannel buffer, HttpFrameState frameState) {
+		int length = buffer.size();
+		while (true) {
+			int lineEnd = buffer.indexOf(LINE_TAG_BYTES, frameState.chunkOffset);
+			if (lineEnd < 0) {
+				return -1;
+			}
+			
+			byte[] sizeBytes = new byte[lineEnd - frameState.chunkOffset];
+			buffer.get(frameState.chunkOffset, sizeBytes);
+			String sizeLine = new String(sizeBytes).split(";")[0].trim();
+			int chunkSize = 0;
+			try {
+				chunkSize = Integer.parseInt(sizeLine, 16);
+			} catch (NumberFormatException e) {
+				// chunk 格式错误,交给报文解析器处理
+				return length;
+			}
+			
+			// 长度为0的 chunk,查找 trailer 的结尾
+			if (chunkSize == 0) {
+				int trailerStart = lineEnd + LINE_TAG_BYTES.length;
+				if (length < trailerStart + 2) {
+					return -1;
+				}
+				if (buffer.get(trailerStart) == '\r' && buffer.get(trailerStart + 1) == '\n') {
+					return trailerStart + 2;
+				}
+				int trailerEnd = buffer.indexOf(BODY_TAG_BYTES, lineEnd);
+				return trailerEnd < 0 ? -1 : trailerEnd + BODY_TAG_BYTES.length;
+			}
+			
+			int nextChunkOffset = lineEnd + LINE_TAG_BYTES.length + chunkSize + LINE_TAG_BYTES.length;
+			if (nextChunkOffset > length) {
+				return -1;
+			}
+			frameState.chunkOffset = nextChunkOffset;
+		}
+	}
+	
+	/**
+	 * 计算 WebSocket 帧的长度
+	 * @param buffer 数据
+	 * @return 帧长度,帧不完整时返回 -1
+	 */
+	public static int webSocketFrameLength(ByteBufferChannel buffer) {
+		int length = buffer.size();
+		if (length < 2) {
+			return -1;
+		}
+		
+		byte maskByte = buffer.get(1);
+		boolean mask = (maskByte & 0x80) != 0;
+		long payloadLength = maskByte & 0x7F;
+		int headerLength = 2;
+		
+		if (payloadLength == 126) {
+			headerLength += 2;
+			if (length < headerLength) {
+				return -1;
+			}
+			payloadLength = ((buffer.get(2) & 0xFF) << 8) | (buffer.get(3) & 0xFF);
+		} else if (payloadLength == 127) {
+			headerLength += 8;
+			if (length < headerLength) {
+				return -1;
+			}
+			byte[] lengthBytes = new byte[8];
+			buffer.get(2, lengthBytes);
+			payloadLength = ByteBuffer.wrap(lengthBytes).getLong();
+		}
+		
+		headerLength += (mask ? 4 : 0);
+		long frameLength = headerLength + payloadLength;
+		
+		// 长度超出范围,交给帧解析器处理
+		if (payloadLength < 0 || frameLength > Integer.MAX_VALUE) {
+			return length;
+		}
+		return length >= frameLength ? (int) frameLength : -1;
+	}
 
 	@Override
 	public boolean canSplite(IoSession session, byte[] buffer, int elapsedtime) {
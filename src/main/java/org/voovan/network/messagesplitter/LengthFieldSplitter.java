@@ -0,0 +1,180 @@
+package org.voovan.network.messagesplitter;
+
+import java.nio.ByteOrder;
+
+import org.voovan.network.FrameSplitter;
+import org.voovan.network.IoSession;
+import org.voovan.network.SplitState;
+import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.log.Logger;
+
+/**
+ * 按长度字段对消息分割
+ * 		消息帧的格式为: [lengthFieldOffset 字节的头部][长度字段][消息体],
+ * 		消息帧长度 = lengthFieldOffset + 长度字段的字节数 + 长度字段的值 + lengthAdjustment.
+ * 		长度字段支持 1/2/4/8 字节的无符号整数和 VARINT(每字节 7 位,低位在前,最高位为 1 表示后面还有字节).
+ * 		长度超过 maxFrameSize 的消息帧视为非法数据,关闭连接.
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LengthFieldSplitter implements FrameSplitter {
+
+	/**
+	 * 变长的长度字段
+	 */
+	public static final int VARINT = 0;
+
+	/**
+	 * VARINT 长度字段的最大字节数
+	 */
+	public static final int MAX_VARINT_LENGTH = 10;
+
+	private static final long ILLEGAL_SIZE = -2;
+
+	private int lengthFieldOffset;
+	private int lengthFieldLength;
+	private int lengthAdjustment;
+	private int maxFrameSize;
+	private ByteOrder byteOrder;
+
+	/**
+	 * 构造函数
+	 * 		长度字段使用大端字节序
+	 * @param lengthFieldOffset 长度字段的偏移
+	 * @param lengthFieldLength 长度字段的字节数, 1/2/4/8 或者 VARINT
+	 * @param lengthAdjustment  消息帧长度的调整值,长度字段的值包含头部和长度字段时为负数
+	 * @param maxFrameSize      消息帧的最大长度
+	 */
+	public LengthFieldSplitter(int lengthFieldOffset, int lengthFieldLength, int lengthAdjustment, int maxFrameSize) {
+		this(lengthFieldOffset, lengthFieldLength, lengthAdjustment, maxFrameSize, ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * 构造函数
+	 * @param lengthFieldOffset 长度字段的偏移
+	 * @param lengthFieldLength 长度字段的字节数, 1/2/4/8 或者 VARINT
+	 * @param lengthAdjustment  消息帧长度的调整值,长度字段的值包含头部和长度字段时为负数
+	 * @param maxFrameSize      消息帧的最大长度
+	 * @param byteOrder         长度字段的字节序, VARINT 时忽略
+	 */
+	public LengthFieldSplitter(int lengthFieldOffset, int lengthFieldLength, int lengthAdjustment, int maxFrameSize, ByteOrder byteOrder) {
+		checkLengthFieldLength(lengthFieldLength);
+		if(lengthFieldOffset < 0){
+			throw new IllegalArgumentException("lengthFieldOffset must not be negative: " + lengthFieldOffset);
+		}
+		if(maxFrameSize <= 0){
+			throw new IllegalArgumentException("maxFrameSize must be positive: " + maxFrameSize);
+		}
+		this.lengthFieldOffset = lengthFieldOffset;
+		this.lengthFieldLength = lengthFieldLength;
+		this.lengthAdjustment = lengthAdjustment;
+		this.maxFrameSize = maxFrameSize;
+		this.byteOrder = byteOrder;
+	}
+
+	/**
+	 * 检查长度字段的字节数
+	 * @param lengthFieldLength 长度字段的字节数
+	 */
+	public static void checkLengthFieldLength(int lengthFieldLength) {
+		if(lengthFieldLength != VARINT && lengthFieldLength != 1 && lengthFieldLength != 2
+				&& lengthFieldLength != 4 && lengthFieldLength != 8){
+			throw new IllegalArgumentException("lengthFieldLength must be 1, 2, 4, 8 or VARINT: " + lengthFieldLength);
+		}
+	}
+
+	public int getLengthFieldOffset() {
+		return lengthFieldOffset;
+	}
+
+	public int getLengthFieldLength() {
+		return lengthFieldLength;
+	}
+
+	public int getLengthAdjustment() {
+		return lengthAdjustment;
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	@Override
+	public int split(IoSession session, ByteBufferChannel buffer, SplitState state) {
+		int available = buffer.size();
+
+		//已经解析过长度字段,只需要等待数据足够
+		int frameSize = state.getOffset();
+		if(frameSize == 0){
+			long parsedSize = parseFrameSize(buffer);
+			if(parsedSize == -1){
+				return -1;
+			}
+			if(parsedSize == ILLEGAL_SIZE || parsedSize > maxFrameSize){
+				Logger.error("Class LengthFieldSplitter Error: illegal frame size" + (parsedSize == ILLEGAL_SIZE ? "" : " " + parsedSize) + ", max frame size is " + maxFrameSize);
+				if(session != null){
+					session.close();
+				}
+				return -1;
+			}
+			frameSize = (int) parsedSize;
+			state.setOffset(frameSize);
+		}
+
+		return available >= frameSize ? frameSize : -1;
+	}
+
+	/**
+	 * 解析消息帧的长度
+	 * @param buffer 已接收的数据, 偏移 0 为消息帧的起始位置
+	 * @return 消息帧的长度, 长度字段不完整时返回 -1, 长度字段非法时返回 ILLEGAL_SIZE
+	 */
+	private long parseFrameSize(ByteBufferChannel buffer) {
+		int start = lengthFieldOffset;
+		int available = buffer.size() - start;
+		long length = 0;
+		int fieldSize = lengthFieldLength;
+
+		if(lengthFieldLength == VARINT){
+			int shift = 0;
+			fieldSize = 0;
+			while(true){
+				if(fieldSize >= MAX_VARINT_LENGTH){
+					return ILLEGAL_SIZE;
+				}
+				if(fieldSize >= available){
+					return -1;
+				}
+				byte value = buffer.get(start + fieldSize);
+				fieldSize++;
+				length |= (long) (value & 0x7F) << shift;
+				if((value & 0x80) == 0){
+					break;
+				}
+				shift += 7;
+			}
+		} else {
+			if(available < lengthFieldLength){
+				return -1;
+			}
+			for(int i = 0; i < lengthFieldLength; i++){
+				int index = byteOrder == ByteOrder.BIG_ENDIAN ? i : lengthFieldLength - 1 - i;
+				length = (length << 8) | (buffer.get(start + index) & 0xFF);
+			}
+		}
+
+		if(length < 0 || length > Integer.MAX_VALUE){
+			return ILLEGAL_SIZE;
+		}
+		//消息帧至少包含头部和长度字段
+		long frameSize = lengthFieldOffset + fieldSize + length + lengthAdjustment;
+		return frameSize < lengthFieldOffset + fieldSize ? ILLEGAL_SIZE : frameSize;
+	}
+}
@@ -1,10 +1,14 @@
 package org.voovan.network.messagesplitter;
 
+import org.voovan.network.FrameSplitter;
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
+import org.voovan.network.SplitState;
+import org.voovan.tools.ByteBufferChannel;
 
 /**
  * 按换行对消息分割
+ * 		消息帧包含结尾的换行符, \r\n 作为一个换行符处理
  * 
  * @author helyho
  *
@@ -12,7 +16,7 @@ import org.voovan.network.MessageSplitter;
  * WebSite: https://github.com/helyho/Voovan
  * Licence: Apache v2 License
  */
-public class LineMessageSplitter implements MessageSplitter {
+public class LineMessageSplitter implements MessageSplitter, FrameSplitter {
 
 	@Override
 	public boolean canSplite(IoSession session, byte[] buffer, int elapsedtime) {
@@ -24,5 +28,34 @@ public class LineMessageSplitter implements MessageSplitter {
 		}
 		return false;
 	}
+
+	@Override
+	public int split(IoSession session, ByteBufferChannel buffer, SplitState state) {
+		int offset = state.getOffset();
+		int length = buffer.size();
+		if(offset >= length){
+			return -1;
+		}
+		
+		//从上次扫描停止的位置继续查找换行符,只复制新到达的数据
+		byte[] bytes = new byte[length-offset];
+		buffer.get(offset, bytes);
+		for(int i=0; i<bytes.length; i++){
+			if(bytes[i]=='\n'){
+				return offset+i+1;
+			}
+			else if(bytes[i]=='\r'){
+				//\r 是最后一个字节时,等待下一个字节来判断是否是 \r\n
+				if(i+1 == bytes.length){
+					state.setOffset(offset+i);
+					return -1;
+				}
+				return bytes[i+1]=='\n' ? offset+i+2 : offset+i+1;
+			}
+		}
+		
+		state.setOffset(length);
+		return -1;
+	}
 	
 }
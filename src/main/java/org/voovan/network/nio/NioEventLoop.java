@@ -0,0 +1,426 @@
+package org.voovan.network.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.voovan.network.ByteBufferPool;
+import org.voovan.network.EventTrigger;
+import org.voovan.network.MessageLoader;
+import org.voovan.network.ReceiveBufferAllocator;
+import org.voovan.tools.TObject;
+import org.voovan.tools.log.Logger;
+
+/**
+ * NIO 事件循环
+ * 		一个事件循环持有一个 Selector 和一个线程,可服务多个连接
+ * 		每个连接在事件循环中只占用一个 SelectionKey
+ * 		多监听通道模式下,事件循环同时负责一个监听通道的 Accept 事件
+ * 		客户端连接在事件循环中完成非阻塞连接
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class NioEventLoop implements Runnable {
+
+	/**
+	 * 一次 Accept 事件最多接受的连接数
+	 */
+	public static final int MAX_ACCEPT_PER_LOOP = 64;
+
+	private Selector selector;
+	private Thread thread;
+	private String name;
+	private Queue<Runnable> taskQueue;
+	private ByteBuffer readTempBuffer;
+	private volatile boolean running;
+
+	/**
+	 * 构造函数
+	 * @param name	事件循环线程名
+	 * @throws IOException
+	 */
+	public NioEventLoop(String name) throws IOException {
+		this.name = name;
+		this.selector = SelectorProvider.provider().openSelector();
+		this.taskQueue = new ConcurrentLinkedQueue<Runnable>();
+		this.running = false;
+	}
+
+	/**
+	 * 获取 Selector
+	 * @return
+	 */
+	public Selector selector() {
+		return selector;
+	}
+
+	/**
+	 * 当前线程是否是事件循环线程
+	 * @return
+	 */
+	public boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * 事件循环是否在运行
+	 * @return
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * 启动事件循环线程
+	 */
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			thread = new Thread(this, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * 停止事件循环
+	 */
+	public synchronized void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * 在事件循环线程中执行任务
+	 * @param task 任务
+	 */
+	public void execute(Runnable task) {
+		start();
+		taskQueue.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * 注册连接到事件循环
+	 * 		注册完成后触发 onConnect 事件
+	 * @param socket NioSocket 对象
+	 */
+	public void register(final NioSocket socket) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					socket.socketChannel().register(selector, SelectionKey.OP_READ, socket);
+					// 连接完成onConnect事件触发
+					socket.getEventTrigger().fireConnectThread();
+				} catch (IOException e) {
+					Logger.error("Class NioEventLoop Error: " + e.getMessage());
+					socket.getEventTrigger().fireExceptionThread(e);
+					socket.Close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * 注册客户端连接到事件循环
+	 * 		连接未完成时关注连接事件,连接完成后改为关注读取事件
+	 * @param socket    NioSocket 对象
+	 * @param connected 非阻塞的 connect 是否已经立即完成
+	 */
+	public void connect(final NioSocket socket, final boolean connected) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					socket.socketChannel().register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, socket);
+					if (connected) {
+						socket.connectFinished();
+					}
+				} catch (IOException e) {
+					socket.connectFailed(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 注册监听通道到事件循环
+	 * 		接受的连接由当前事件循环处理
+	 * @param serverSocketChannel 监听通道
+	 * @param serverSocket        NioServerSocket 对象
+	 */
+	public void registerAcceptor(final ServerSocketChannel serverSocketChannel, final NioServerSocket serverSocket) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT, serverSocket);
+				} catch (IOException e) {
+					Logger.error("Class NioEventLoop Error: " + e.getMessage());
+					serverSocket.getEventTrigger().fireExceptionThread(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 修改连接关注的事件
+	 * 		在事件循环线程中执行
+	 * @param socket    NioSocket 对象
+	 * @param addOps    需要增加的事件
+	 * @param removeOps 需要移除的事件
+	 */
+	public void interestOps(final NioSocket socket, final int addOps, final int removeOps) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				SelectionKey selectionKey = socket.socketChannel().keyFor(selector);
+				if (selectionKey != null && selectionKey.isValid()) {
+					selectionKey.interestOps((selectionKey.interestOps() | addOps) & ~removeOps);
+				}
+			}
+		};
+
+		if (inEventLoop()) {
+			task.run();
+		} else {
+			execute(task);
+		}
+	}
+
+	/**
+	 * 按发送队列的状态更新连接是否关注读取事件
+	 * 		暂停和恢复读取可能在不同的线程中发起,执行时以发送队列的当前状态为准,
+	 * 		避免先发起的暂停在恢复之后执行而导致读取一直暂停
+	 * @param socket NioSocket 对象
+	 */
+	public void updateReadInterest(final NioSocket socket) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				SelectionKey selectionKey = socket.socketChannel().keyFor(selector);
+				if (selectionKey != null && selectionKey.isValid()) {
+					if (socket.getSession().isReadPaused()) {
+						selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+					} else {
+						selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_READ);
+					}
+				}
+			}
+		};
+
+		if (inEventLoop()) {
+			task.run();
+		} else {
+			execute(task);
+		}
+	}
+
+	/**
+	 * 执行任务队列中的任务
+	 */
+	private void runTasks() {
+		Runnable task = null;
+		while ((task = taskQueue.poll()) != null) {
+			try {
+				task.run();
+			} catch (Exception e) {
+				Logger.error("Class NioEventLoop Error: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		// 按最大的接收缓冲区申请,每次读取时按会话的接收缓冲区大小限制读取的长度
+		readTempBuffer = ByteBufferPool.getDirect().acquire(ByteBufferPool.MAX_SIZE);
+		while (running) {
+			try {
+				selector.select();
+				runTasks();
+
+				Set<SelectionKey> selectionKeys = selector.selectedKeys();
+				Iterator<SelectionKey> selectionKeyIterator = selectionKeys.iterator();
+				while (selectionKeyIterator.hasNext()) {
+					SelectionKey selectionKey = selectionKeyIterator.next();
+					selectionKeyIterator.remove();
+					if (selectionKey.isValid() && selectionKey.isAcceptable()) {
+						processAccept(selectionKey);
+						continue;
+					}
+					NioSocket socket = TObject.cast(selectionKey.attachment());
+					if (selectionKey.isValid() && selectionKey.isConnectable()) {
+						processConnect(selectionKey, socket);
+					}
+					if (selectionKey.isValid() && selectionKey.isWritable()) {
+						processWrite(selectionKey, socket);
+					}
+					if (selectionKey.isValid() && selectionKey.isReadable()) {
+						processRead(selectionKey, socket);
+					}
+				}
+			} catch (Exception e) {
+				Logger.error("Class NioEventLoop Error: " + e.getMessage());
+			}
+		}
+
+		try {
+			selector.close();
+		} catch (IOException e) {
+			Logger.error("Class NioEventLoop Error: " + e.getMessage());
+		}
+		ByteBufferPool.getDirect().release(readTempBuffer);
+		readTempBuffer = null;
+	}
+
+	/**
+	 * 在事件循环中写入连接发送队列中的数据
+	 * 		同一轮中多次请求的写入会合并成一次聚集写入
+	 * @param socket NioSocket 对象
+	 */
+	public void flush(final NioSocket socket) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				SelectionKey selectionKey = socket.socketChannel().keyFor(selector);
+				if (!socket.socketChannel().isOpen()) {
+					socket.getSession().getWriteQueue().clear(null);
+				} else if (!socket.socketChannel().isConnected()) {
+					//连接尚未完成,连接完成后再写入
+					return;
+				} else if (selectionKey != null && selectionKey.isValid()) {
+					processWrite(selectionKey, socket);
+				} else {
+					//连接尚未注册到事件循环,下一轮再写入
+					execute(this);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 处理 Accept 事件
+	 * 		一次最多接受 MAX_ACCEPT_PER_LOOP 个连接,接受的连接在 onAccept 事件中注册到当前事件循环
+	 * @param selectionKey 监听通道的 Selectionkey
+	 */
+	private void processAccept(SelectionKey selectionKey) {
+		ServerSocketChannel serverSocketChannel = TObject.cast(selectionKey.channel());
+		NioServerSocket serverSocket = TObject.cast(selectionKey.attachment());
+		try {
+			for (int i = 0; i < MAX_ACCEPT_PER_LOOP; i++) {
+				SocketChannel socketChannel = serverSocketChannel.accept();
+				if (socketChannel == null) {
+					break;
+				}
+				NioSocket socket = new NioSocket(serverSocket, socketChannel, this);
+				serverSocket.getEventTrigger().fireAcceptThread(socket.getSession());
+			}
+		} catch (IOException e) {
+			if (!serverSocketChannel.isOpen()) {
+				selectionKey.cancel();
+				return;
+			}
+			Logger.error("Class NioEventLoop Error: " + e.getMessage());
+			serverSocket.getEventTrigger().fireExceptionThread(e);
+		}
+	}
+
+	/**
+	 * 处理连接事件
+	 * 		连接完成后不再关注连接事件,改为关注读取事件
+	 * @param selectionKey  当前 Selectionkey
+	 * @param socket        NioSocket 对象
+	 */
+	private void processConnect(SelectionKey selectionKey, NioSocket socket) {
+		try {
+			if (socket.socketChannel().finishConnect()) {
+				selectionKey.interestOps((selectionKey.interestOps() & ~SelectionKey.OP_CONNECT) | SelectionKey.OP_READ);
+				socket.connectFinished();
+			}
+		} catch (IOException e) {
+			selectionKey.cancel();
+			socket.connectFailed(e);
+		}
+	}
+
+	/**
+	 * 处理写入事件
+	 * 		写入发送队列中的数据,发送队列写完后不再关注写入事件,未写完则关注写入事件等待 Socket 可写
+	 * @param selectionKey  当前 Selectionkey
+	 * @param socket        NioSocket 对象
+	 */
+	private void processWrite(SelectionKey selectionKey, NioSocket socket) {
+		NioSession session = socket.getSession();
+		try {
+			if (session.flushWriteQueue()) {
+				selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+			} else {
+				selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+			}
+		} catch (IOException e) {
+			selectionKey.cancel();
+			session.getWriteQueue().clear(e);
+			if (!socket.socketChannel().isOpen()) {
+				return;
+			}
+			Logger.error("Class NioEventLoop Error: " + e.getMessage());
+			socket.getEventTrigger().fireExceptionThread(e);
+			session.close();
+		}
+	}
+
+	/**
+	 * 处理读取事件
+	 * @param selectionKey  当前 Selectionkey
+	 * @param socket        NioSocket 对象
+	 */
+	private void processRead(SelectionKey selectionKey, NioSocket socket) {
+		SocketChannel socketChannel = socket.socketChannel();
+		NioSession session = socket.getSession();
+		EventTrigger eventTrigger = socket.getEventTrigger();
+		ReceiveBufferAllocator receiveBufferAllocator = session.getReceiveBufferAllocator();
+		try {
+			readTempBuffer.limit(receiveBufferAllocator.guess());
+			int readSize = socketChannel.read(readTempBuffer);
+			receiveBufferAllocator.record(readSize);
+			// 判断连接是否关闭,停止读取,已接收的数据处理完成后关闭连接
+			if (MessageLoader.isRemoteClosed(readSize, readTempBuffer) && session.isConnect()) {
+				selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+				session.getMessageLoader().remoteClosed();
+			} else if (readSize > 0) {
+				session.getMetrics().recordBytesIn(readSize);
+				readTempBuffer.flip();
+				session.getByteBufferChannel().write(readTempBuffer);
+				// 已接收未处理的数据超过高水位时暂停读取
+				session.getInboundThrottle().update();
+				// 触发 onRead 事件,如果正在处理 onRead 事件则本次事件触发忽略
+				eventTrigger.fireReceiveThread();
+			}
+		} catch (IOException e) {
+			selectionKey.cancel();
+			// 连接已经被其他线程关闭
+			if (!socketChannel.isOpen()) {
+				return;
+			}
+			Logger.error("Class NioEventLoop Error: " + e.getMessage());
+			// 触发 onException 事件
+			eventTrigger.fireExceptionThread(e);
+			session.close();
+		} finally {
+			readTempBuffer.clear();
+		}
+	}
+}
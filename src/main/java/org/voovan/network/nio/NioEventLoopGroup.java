@@ -0,0 +1,96 @@
+package org.voovan.network.nio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * NIO 事件循环组
+ * 		连接按轮询的方式分配到组中的事件循环
+ * 		默认事件循环数量为 CPU 核心数
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class NioEventLoopGroup {
+
+	private static NioEventLoopGroup defaultGroup;
+
+	private NioEventLoop[] eventLoops;
+	private AtomicInteger index;
+
+	/**
+	 * 构造函数
+	 * 		事件循环数量为 CPU 核心数
+	 * @throws IOException
+	 */
+	public NioEventLoopGroup() throws IOException {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 构造函数
+	 * @param size 事件循环数量
+	 * @throws IOException
+	 */
+	public NioEventLoopGroup(int size) throws IOException {
+		if (size <= 0) {
+			size = Runtime.getRuntime().availableProcessors();
+		}
+		index = new AtomicInteger(0);
+		eventLoops = new NioEventLoop[size];
+		for (int i = 0; i < size; i++) {
+			eventLoops[i] = new NioEventLoop("NioEventLoop-" + i);
+		}
+	}
+
+	/**
+	 * 获取默认的事件循环组
+	 * 		所有未指定事件循环组的连接共享这个组
+	 * @return 事件循环组
+	 * @throws IOException
+	 */
+	public static synchronized NioEventLoopGroup getDefault() throws IOException {
+		if (defaultGroup == null) {
+			defaultGroup = new NioEventLoopGroup();
+		}
+		return defaultGroup;
+	}
+
+	/**
+	 * 轮询获取下一个事件循环
+	 * @return 事件循环
+	 */
+	public NioEventLoop next() {
+		int current = index.getAndIncrement() & Integer.MAX_VALUE;
+		return eventLoops[current % eventLoops.length];
+	}
+
+	/**
+	 * 按索引获取事件循环
+	 * @param index 索引,超过事件循环数量时取模
+	 * @return 事件循环
+	 */
+	public NioEventLoop get(int index) {
+		return eventLoops[(index & Integer.MAX_VALUE) % eventLoops.length];
+	}
+
+	/**
+	 * 获取事件循环数量
+	 * @return
+	 */
+	public int size() {
+		return eventLoops.length;
+	}
+
+	/**
+	 * 停止所有的事件循环
+	 */
+	public void shutdown() {
+		for (NioEventLoop eventLoop : eventLoops) {
+			eventLoop.shutdown();
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package org.voovan.network.nio;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
@@ -9,16 +8,15 @@ import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Set;
 
-import org.voovan.network.ConnectModel;
 import org.voovan.network.EventTrigger;
-import org.voovan.network.MessageLoader;
 import org.voovan.network.SocketContext;
-import org.voovan.tools.TEnv;
 import org.voovan.tools.TObject;
 import org.voovan.tools.log.Logger;
 
 /**
  * 事件监听器
+ * 		负责 NioServerSocket 的 Accept 事件,
+ * 		接受的连接交给事件循环组中的事件循环处理
  * 
  * @author helyho
  *
@@ -31,7 +29,6 @@ public class NioSelector {
 	private Selector selector;
 	private SocketContext socketContext;
 	private EventTrigger eventTrigger;
-	private NioSession session;
 	
 	/**
 	 * 事件监听器构造
@@ -41,77 +38,37 @@ public class NioSelector {
 	public NioSelector(Selector selector, SocketContext socketContext) {
 		this.selector = selector;
 		this.socketContext = socketContext;
-		if (socketContext instanceof NioSocket){
-			session = ((NioSocket)socketContext).getSession();
-			eventTrigger = new EventTrigger(session);
-		}else{
-			eventTrigger = new EventTrigger(null);
-		}
+		eventTrigger = new EventTrigger(null);
 	}
 
 	/**
-	 * 所有的事件均在这里触发
+	 * 所有的 Accept 事件均在这里触发
 	 * 
 	 * @throws IOException
 	 */
 	public void eventChose() throws IOException {
-		//读取用的缓冲区
-		ByteBuffer readTempBuffer = ByteBuffer.allocate(1024);
-		
-		if (socketContext instanceof NioSocket) {
-			// 连接完成onConnect事件触发
-			eventTrigger.fireConnectThread();
-		}
-		
 		// 事件循环
 		try {
 			while (socketContext != null && socketContext.isConnect()) {
-				TEnv.sleep(1);
-				if (selector.select(1) > 0) {
+				if (selector.select() > 0) {
 					Set<SelectionKey> selectionKeys = selector.selectedKeys();
 					Iterator<SelectionKey> selectionKeyIterator = selectionKeys
 							.iterator();
 					while (selectionKeyIterator.hasNext()) {
-						TEnv.sleep(1);
 						SelectionKey selectionKey = selectionKeyIterator.next();
-						if (selectionKey.isValid()) {
+						selectionKeyIterator.remove();
+						if (selectionKey.isValid() && selectionKey.isAcceptable()) {
 							// 获取 socket 通道
 							SocketChannel socketChannel = getSocketChannel(selectionKey);
-							if (socketChannel.isOpen() && selectionKey.isValid()) {
-								// 事件分发,包含时间 onRead onAccept
-								
-								switch (selectionKey.readyOps()) {
-									// Server接受连接
-									case SelectionKey.OP_ACCEPT: {
-										NioServerSocket serverSocket = (NioServerSocket)socketContext;
-										NioSocket socket = new NioSocket(serverSocket,socketChannel);
-										session = socket.getSession();
-										eventTrigger.fireAcceptThread(session);
-										break;
-									}
-									// 有数据读取
-									case SelectionKey.OP_READ: {
-											int readSize = 0;
-											readSize = socketChannel.read(readTempBuffer);
-											//判断连接是否关闭
-											if(MessageLoader.isRemoteClosed(readSize,readTempBuffer) && session.isConnect()){
-												session.close();
-											}else if(readSize>0){
-												readTempBuffer.flip();
-												session.getByteBufferChannel().write(readTempBuffer);
-												readTempBuffer.clear();
-											}
-											// 触发 onRead 事件,如果正在处理 onRead 事件则本次事件触发忽略
-											eventTrigger.fireReceiveThread();
-										break;
-									}
-									default: {
-										Logger.debug("Nothing to do ,SelectionKey is:"
-												+ selectionKey.readyOps());
-									}
-								}
-								selectionKeyIterator.remove();
+							if (socketChannel!=null && socketChannel.isOpen()) {
+								// Server接受连接,连接将在 onAccept 事件中注册到事件循环
+								NioServerSocket serverSocket = (NioServerSocket)socketContext;
+								NioSocket socket = new NioSocket(serverSocket,socketChannel);
+								eventTrigger.fireAcceptThread(socket.getSession());
 							}
+						} else {
+							Logger.debug("Nothing to do ,SelectionKey is:"
+									+ selectionKey.readyOps());
 						}
 					}
 				}
@@ -124,10 +81,7 @@ public class NioSelector {
 			// 触发连接断开事件
 			eventTrigger.fireDisconnectThread();
 			//关闭线程池
-			if(socketContext instanceof NioServerSocket 
-					||  socketContext.getConnectModel() == ConnectModel.CLIENT){
-				eventTrigger.shutdown();
-			}
+			eventTrigger.shutdown();
 		}
 	}
 
@@ -7,10 +7,15 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 
+import org.voovan.network.EventTrigger;
 import org.voovan.network.SocketContext;
+import org.voovan.tools.TEnv;
 
 /**
  * NioServerSocket 监听
+ * 		默认使用一个监听通道,由独立的线程接受连接;
+ * 		监听通道数量大于 1 时使用 SO_REUSEPORT 在同一端口上打开多个监听通道,
+ * 		每个监听通道注册到事件循环组中的一个事件循环,接受的连接由该事件循环处理
  * 
  * @author helyho
  *
@@ -23,6 +28,10 @@ public class NioServerSocket extends SocketContext{
 	private SelectorProvider provider;
 	private Selector selector;
 	private ServerSocketChannel serverSocketChannel;
+	private ServerSocketChannel[] acceptorChannels;
+	private NioEventLoop[] acceptorEventLoops;
+	private NioEventLoopGroup eventLoopGroup;
+	private EventTrigger eventTrigger;
 	 
 	 
 	/**
@@ -38,7 +47,41 @@ public class NioServerSocket extends SocketContext{
 		serverSocketChannel = provider.openServerSocketChannel();
 		serverSocketChannel.socket().setSoTimeout(this.readTimeout);
 		serverSocketChannel.configureBlocking(false);
-		init();
+	}
+	
+	/**
+	 * 构造函数
+	 * @param addr      	监听地址
+	 * @param port			监听端口
+	 * @param timeout   	超时时间
+	 * @param eventLoopCount 事件循环数量,小于等于0时使用 CPU 核心数
+	 * @throws IOException	异常
+	 */
+	public NioServerSocket(String host,int port,int readTimeout,int eventLoopCount) throws IOException{
+		this(host, port, readTimeout);
+		eventLoopGroup = new NioEventLoopGroup(eventLoopCount);
+	}
+	
+	/**
+	 * 获取事件循环组
+	 * 		未指定时使用默认的事件循环组
+	 * @return 事件循环组
+	 * @throws IOException
+	 */
+	public NioEventLoopGroup eventLoopGroup() throws IOException{
+		if(eventLoopGroup==null){
+			eventLoopGroup = NioEventLoopGroup.getDefault();
+		}
+		return eventLoopGroup;
+	}
+	
+	/**
+	 * 设置事件循环组
+	 * 		接受的连接将轮询分配到事件循环组中的事件循环
+	 * @param eventLoopGroup 事件循环组
+	 */
+	public void eventLoopGroup(NioEventLoopGroup eventLoopGroup){
+		this.eventLoopGroup = eventLoopGroup;
 	}
 	
 	
@@ -51,23 +94,74 @@ public class NioServerSocket extends SocketContext{
 	}
 	
 	/**
-	 * 初始化函数
-	 * @throws IOException
+	 * 获取多监听通道模式下 Accept 事件的事件触发器
+	 * @return 事件触发器
 	 */
-	private void init() throws IOException{
-		selector = provider.openSelector();
-		serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
-		serverSocketChannel.bind(new InetSocketAddress(host, port));
+	protected EventTrigger getEventTrigger() {
+		return eventTrigger;
 	}
 	
 	/**
 	 * 启动
+	 * 		绑定监听地址,在连接关闭前不会返回
 	 * @throws IOException 
 	 */
 	@Override
 	public void start() throws IOException {
-		NioSelector eventListener = new NioSelector(selector,this);
-		eventListener.eventChose();
+		int count = availableAcceptorCount(serverSocketChannel);
+		if(count == 1){
+			applySocketOptions(serverSocketChannel);
+			serverSocketChannel.bind(new InetSocketAddress(host, port), backlog);
+			selector = provider.openSelector();
+			serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+			NioSelector eventListener = new NioSelector(selector,this);
+			eventListener.eventChose();
+		}else{
+			startAcceptors(count);
+		}
+	}
+	
+	/**
+	 * 打开多个监听通道并注册到事件循环
+	 * @param count 监听通道的数量
+	 * @throws IOException
+	 */
+	private void startAcceptors(int count) throws IOException {
+		NioEventLoopGroup group = eventLoopGroup();
+		InetSocketAddress socketAddress = new InetSocketAddress(host, port);
+		acceptorChannels = new ServerSocketChannel[count];
+		acceptorEventLoops = new NioEventLoop[count];
+		try{
+			for(int i=0; i<count; i++){
+				ServerSocketChannel channel = i==0 ? serverSocketChannel : provider.openServerSocketChannel();
+				acceptorChannels[i] = channel;
+				channel.configureBlocking(false);
+				channel.setOption(SO_REUSEPORT, true);
+				applySocketOptions(channel);
+				channel.bind(socketAddress, backlog);
+			}
+		}catch(IOException e){
+			Close();
+			throw e;
+		}
+		
+		eventTrigger = new EventTrigger(null);
+		for(int i=0; i<count; i++){
+			acceptorEventLoops[i] = group.get(i);
+			acceptorEventLoops[i].registerAcceptor(acceptorChannels[i], this);
+		}
+		
+		try{
+			//等待ServerSocketChannel关闭
+			while(isConnect()){
+				TEnv.sleep(500);
+			}
+		}finally{
+			// 触发连接断开事件
+			eventTrigger.fireDisconnectThread();
+			//关闭线程池
+			eventTrigger.shutdown();
+		}
 	}
 
 	@Override
@@ -84,6 +178,10 @@ public class NioServerSocket extends SocketContext{
 		if(serverSocketChannel!=null && serverSocketChannel.isOpen()){
 			try{
 				serverSocketChannel.close();
+				if(selector!=null){
+					selector.wakeup();
+				}
+				closeAcceptors();
 				return true;
 			}
 			catch(Exception e){
@@ -94,4 +192,22 @@ public class NioServerSocket extends SocketContext{
 			return true;
 		}
 	}
+
+	/**
+	 * 关闭多监听通道模式下的其他监听通道
+	 * 		唤醒事件循环以便尽快注销通道并释放端口
+	 * @throws IOException
+	 */
+	private void closeAcceptors() throws IOException {
+		if(acceptorChannels!=null){
+			for(int i=0; i<acceptorChannels.length; i++){
+				if(acceptorChannels[i]!=null){
+					acceptorChannels[i].close();
+				}
+				if(acceptorEventLoops[i]!=null){
+					acceptorEventLoops[i].selector().wakeup();
+				}
+			}
+		}
+	}
 }
@@ -2,13 +2,24 @@ package org.voovan.network.nio;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.voovan.network.EventTrigger;
+import org.voovan.network.FlushPolicy;
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageLoader;
 import org.voovan.network.MessageSplitter;
 import org.voovan.network.SocketContext;
+import org.voovan.network.WriteQueue;
+import org.voovan.network.WriteQueue.FileWriteRequest;
+import org.voovan.network.WriteQueue.WriteRequest;
 import org.voovan.tools.ByteBufferChannel;
+import org.voovan.tools.TObject;
 
 /**
  * NIO 会话连接对象
@@ -24,6 +35,7 @@ public class NioSession extends IoSession {
 	private NioSocket			socket;
 	private ByteBufferChannel	byteBufferChannel;
 	private MessageLoader		messageLoader;
+	private AtomicBoolean		flushScheduled;
 
 	/**
 	 * 构造函数
@@ -41,6 +53,7 @@ public class NioSession extends IoSession {
 		}
 
 		messageLoader = new MessageLoader(this, readTimeout);
+		flushScheduled = new AtomicBoolean(false);
 	}
 
 	/**
@@ -141,10 +154,127 @@ public class NioSession extends IoSession {
 	}
 
 	@Override
-	public void send(ByteBuffer buffer) throws IOException {
-		if (isConnect() && buffer != null) {
-			socketChannel.write(buffer);
+	public CompletableFuture<Integer> send(ByteBuffer buffer) throws IOException {
+		CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		if (buffer == null) {
+			future.complete(0);
+			return future;
+		}
+		if (!isConnect()) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		int length = buffer.remaining();
+		WriteQueue writeQueue = getWriteQueue();
+
+		// 合并写入: 数据进入发送队列,由事件循环在本轮中合并写入
+		if (socket.flushPolicy() == FlushPolicy.COALESCE) {
+			writeQueue.add(buffer, length, future);
+			if (flushScheduled.compareAndSet(false, true)) {
+				socket.getEventLoop().flush(socket);
+			}
+			return future;
+		}
+
+		synchronized (writeQueue) {
+			// 发送队列为空时直接写入,未写完的数据进入发送队列
+			if (writeQueue.isEmpty()) {
+				int writeSize = socketChannel.write(buffer);
+				if (writeSize > 0) {
+					updateLastWriteTime();
+					getMetrics().recordBytesOut(writeSize);
+				}
+				if (!buffer.hasRemaining()) {
+					future.complete(length);
+					return future;
+				}
+				writeQueue.stalled();
+			}
+			writeQueue.add(buffer, length, future);
+		}
+
+		// 由事件循环在可写时继续写入
+		socket.getEventLoop().interestOps(socket, SelectionKey.OP_WRITE, 0);
+		return future;
+	}
+
+	/**
+	 * 发送文件
+	 * 		非 SSL 连接通过 FileChannel.transferTo 将文件内容直接写入 Socket,
+	 * 		文件发送请求和其他数据按顺序进入发送队列,由事件循环写入
+	 */
+	@Override
+	public CompletableFuture<Long> sendFile(FileChannel fileChannel, long position, long count) {
+		if (getSSLParser() != null) {
+			return super.sendFile(fileChannel, position, count);
+		}
+
+		CompletableFuture<Long> future = new CompletableFuture<Long>();
+		if (!isConnect()) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
 		}
+
+		getWriteQueue().addFile(fileChannel, position, count, future);
+		if (flushScheduled.compareAndSet(false, true)) {
+			socket.getEventLoop().flush(socket);
+		}
+		return future;
+	}
+
+	/**
+	 * 写入发送队列中的数据
+	 * 		在事件循环中调用,队列中的多个缓冲区通过一次聚集写入(Gathering Write)写入 Socket,
+	 * 		文件发送请求通过 FileChannel.transferTo 写入
+	 * @return true: 发送队列已写完, false: Socket 发送缓冲区已满,还有数据未写入
+	 * @throws IOException
+	 */
+	protected boolean flushWriteQueue() throws IOException {
+		flushScheduled.set(false);
+		WriteQueue writeQueue = getWriteQueue();
+		synchronized (writeQueue) {
+			while (!writeQueue.isEmpty()) {
+				WriteRequest request = writeQueue.peek();
+				if (request instanceof FileWriteRequest) {
+					FileWriteRequest fileRequest = TObject.cast(request);
+					if (!fileRequest.isDone()) {
+						writeQueue.transferred(fileRequest.transferTo(socketChannel));
+					}
+					if (!fileRequest.isDone()) {
+						writeQueue.stalled();
+						return false;
+					}
+					writeQueue.complete();
+					continue;
+				}
+
+				ByteBuffer[] buffers = writeQueue.gather();
+				long writeSize = buffers.length == 1 ? socketChannel.write(buffers[0]) : socketChannel.write(buffers);
+				writeQueue.written(writeSize);
+				writeQueue.completeWritten();
+				if (buffers[buffers.length - 1].hasRemaining()) {
+					writeQueue.stalled();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	@Override
+	protected void pauseRead() {
+		socket.getEventLoop().updateReadInterest(socket);
+	}
+
+	@Override
+	protected void resumeRead() {
+		socket.getEventLoop().updateReadInterest(socket);
+	}
+
+	@Override
+	protected EventTrigger getEventTrigger() {
+		return socket.getEventTrigger();
 	}
 
 	@Override
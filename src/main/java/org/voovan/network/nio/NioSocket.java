@@ -2,16 +2,27 @@ package org.voovan.network.nio;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.net.SocketTimeoutException;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import org.voovan.network.ConnectModel;
+import org.voovan.network.EventTrigger;
+import org.voovan.network.HashedWheelTimer;
+import org.voovan.network.IoSession;
 import org.voovan.network.SocketContext;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.log.Logger;
 
 /**
  * NioSocket 连接
+ * 		客户端通过 connect 发起非阻塞连接,连接在共享的事件循环组中完成,不占用独立的线程;
+ * 		通过 start 连接时阻塞到连接关闭
  * 
  * @author helyho
  *
@@ -21,9 +32,14 @@ import org.voovan.network.SocketContext;
  */
 public class NioSocket extends SocketContext{
 	private SelectorProvider provider;
-	private Selector selector;
 	private SocketChannel socketChannel;
 	private NioSession session;
+	private EventTrigger eventTrigger;
+	private NioEventLoop eventLoop;
+	private CompletableFuture<IoSession> connectFuture;
+	private volatile HashedWheelTimer.Timeout connectTimeoutTask;
+	private volatile boolean standalone;
+	private final AtomicBoolean closed = new AtomicBoolean(false);
 	
 	/**
 	 * socket 连接
@@ -38,11 +54,11 @@ public class NioSocket extends SocketContext{
 		provider = SelectorProvider.provider();
 		socketChannel = provider.openSocketChannel();
 		socketChannel.socket().setSoTimeout(this.readTimeout);
-		socketChannel.connect(new InetSocketAddress(this.host,this.port));
 		socketChannel.configureBlocking(false);
 		session = new NioSession(this,readTimeout);
+		eventTrigger = new EventTrigger(session);
 		connectModel = ConnectModel.CLIENT;
-		init();
+		eventLoop = NioEventLoopGroup.getDefault().next();
 	}
 	
 	/**
@@ -50,6 +66,16 @@ public class NioSocket extends SocketContext{
 	 * @param socketChannel SocketChannel 对象
 	 */
 	protected NioSocket(SocketContext parentSocketContext,SocketChannel socketChannel){
+		this(parentSocketContext, socketChannel, null);
+	}
+	
+	/**
+	 * 构造函数
+	 * @param parentSocketContext 父 SocketContext 对象
+	 * @param socketChannel       SocketChannel 对象
+	 * @param eventLoop           连接所在的事件循环,为 null 时从事件循环组中轮询分配
+	 */
+	protected NioSocket(SocketContext parentSocketContext,SocketChannel socketChannel,NioEventLoop eventLoop){
 		try {
 			provider = SelectorProvider.provider();
 			this.host = socketChannel.socket().getLocalAddress().getHostAddress();
@@ -59,8 +85,15 @@ public class NioSocket extends SocketContext{
 			this.copyFrom(parentSocketContext);
 			this.socketChannel().socket().setSoTimeout(this.readTimeout);
 			session = new NioSession(this,this.readTimeout);
+			eventTrigger = new EventTrigger(session);
 			connectModel = ConnectModel.SERVER;
-			init();
+			if(eventLoop != null){
+				this.eventLoop = eventLoop;
+			}else if(parentSocketContext instanceof NioServerSocket){
+				this.eventLoop = ((NioServerSocket)parentSocketContext).eventLoopGroup().next();
+			}else{
+				this.eventLoop = NioEventLoopGroup.getDefault().next();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -75,39 +108,161 @@ public class NioSocket extends SocketContext{
 		return this.socketChannel;
 	}
 	
+	public NioSession getSession(){
+		return session;
+	}
+	
 	/**
-	 * 初始化函数
+	 * 获取事件触发器
+	 * @return
 	 */
-	private void init()  {
-		try{
-			selector = provider.openSelector();
-			socketChannel.register(selector, SelectionKey.OP_READ);
+	protected EventTrigger getEventTrigger() {
+		return eventTrigger;
+	}
+	
+	/**
+	 * 获取连接所在的事件循环
+	 * @return
+	 */
+	protected NioEventLoop getEventLoop() {
+		return eventLoop;
+	}
+	
+	/**
+	 * 设置客户端连接使用的事件循环组
+	 * 		可以使用 NioServerSocket 的事件循环组,让客户端连接和服务端接受的连接共用事件循环,
+	 * 		在 connect 之前设置,未设置时使用默认的事件循环组
+	 * @param eventLoopGroup 事件循环组
+	 */
+	public void eventLoopGroup(NioEventLoopGroup eventLoopGroup){
+		this.eventLoop = eventLoopGroup.next();
+	}
+	
+	/**
+	 * 发起非阻塞连接
+	 * 		连接在事件循环中完成,完成后触发 onConnect 事件,SSL 连接的握手在连接完成后进行.
+	 * 		超过连接超时时间未完成时以 SocketTimeoutException 结束并关闭通道.
+	 * 		重复调用返回同一个结果
+	 * @return 连接结果, 连接完成时返回会话
+	 */
+	public synchronized CompletableFuture<IoSession> connect() {
+		if(connectFuture != null){
+			return connectFuture;
 		}
-		catch(Exception e){
-			e.printStackTrace();
+		connectFuture = new CompletableFuture<IoSession>();
+		if(connectModel != ConnectModel.CLIENT){
+			connectFuture.complete(session);
+			return connectFuture;
+		}
+		
+		try {
+			//在开始读取前创建 SSLParser, 避免握手数据被当作应用数据处理
+			if(sslManager != null){
+				sslManager.createClientSSLParser(session);
+			}
+			applySocketOptions(socketChannel);
+			
+			if(connectTimeout > 0){
+				connectTimeoutTask = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+					@Override
+					public void run() {
+						connectFailed(new SocketTimeoutException("Connect to " + host + ":" + port + " timed out after " + connectTimeout + "ms"));
+					}
+				}, connectTimeout, TimeUnit.MILLISECONDS);
+			}
+			
+			boolean connected = socketChannel.connect(new InetSocketAddress(host, port));
+			eventLoop.connect(this, connected);
+		} catch (Exception e) {
+			connectFailed(e);
 		}
+		return connectFuture;
 	}
 	
-	public NioSession getSession(){
-		return session;
+	/**
+	 * 连接完成
+	 * 		在事件循环线程中调用
+	 */
+	void connectFinished() {
+		cancelConnectTimeout();
+		//已经超时
+		if(connectFuture.isDone()){
+			return;
+		}
+		
+		//在共享的时间轮上检测读写空闲
+		session.startIdleCheck();
+		
+		// 连接完成onConnect事件触发
+		eventTrigger.fireConnectThread();
+		
+		//写入连接完成前发送的数据
+		if(!session.getWriteQueue().isEmpty()){
+			eventLoop.flush(this);
+		}
+		connectFuture.complete(session);
+	}
+	
+	/**
+	 * 连接失败
+	 * 		关闭通道,结束连接前发送的数据
+	 * @param exception 异常
+	 */
+	void connectFailed(Throwable exception) {
+		cancelConnectTimeout();
+		if(connectFuture.completeExceptionally(exception)){
+			try {
+				socketChannel.close();
+			} catch (IOException e) {
+				Logger.error("Class NioSocket Error: " + e.getMessage());
+			}
+			session.getWriteQueue().clear(exception);
+			session.getInboundThrottle().release();
+		}
+	}
+	
+	private void cancelConnectTimeout() {
+		HashedWheelTimer.Timeout timeout = connectTimeoutTask;
+		if(timeout != null){
+			timeout.cancel();
+			connectTimeoutTask = null;
+		}
 	}
 	
 	/**
 	 * 启动
+	 * 		客户端模式下连接并阻塞到连接关闭
 	 * @throws IOException 
 	 */
 	public void start() throws Exception {
 		
-		if(connectModel == ConnectModel.SERVER && sslManager != null){
+		if(connectModel == ConnectModel.CLIENT){
+			standalone = true;
+			try {
+				connect().get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			
+			// 客户端模式等待连接关闭
+			while (isConnect()) {
+				TEnv.sleep(500);
+			}
+			return;
+		}
+		
+		if(sslManager != null){
 			sslManager.createServerSSLParser(session);
 		}
-		else if(connectModel == ConnectModel.CLIENT && sslManager != null){
-			sslManager.createClientSSLParser(session);
-		}	
 		
 		if(socketChannel!=null && socketChannel.isOpen()){
-			NioSelector nioSelector = new NioSelector(selector,this);
-			nioSelector.eventChose();
+			applySocketOptions(socketChannel);
+			
+			//注册到事件循环,由事件循环负责读取数据和触发事件
+			eventLoop.register(this);
+			
+			//在共享的时间轮上检测读写空闲
+			session.startIdleCheck();
 		}
 	}
 
@@ -121,20 +276,76 @@ public class NioSocket extends SocketContext{
 		}
 	}
 
+	/**
+	 * 关闭连接
+	 * 		发送队列中还有未写入完成的数据时,在写入完成或者超过读取超时时间后关闭,不阻塞当前线程.
+	 * 		当前线程可能是事件循环线程,发送队列也由事件循环写入,在这里等待会导致数据无法写出
+	 */
 	@Override
 	public boolean Close(){
 		if(socketChannel!=null && socketChannel.isOpen()){
-			try{
-				socketChannel.close();
+			CompletableFuture<?> lastFuture = session.getWriteQueue().lastFuture();
+			if(lastFuture != null && !lastFuture.isDone()){
+				closeAfter(lastFuture);
 				return true;
 			}
-			catch(Exception e){
-				e.printStackTrace();
-				return false;
-			}
+			return closeChannel();
 		}else{
 			return true;
 		}
 	}
 
+	/**
+	 * 在发送队列写入完成或者超过读取超时时间后关闭连接
+	 * @param lastFuture 发送队列中最后一个写入请求的结果
+	 */
+	private void closeAfter(CompletableFuture<?> lastFuture) {
+		final HashedWheelTimer.Timeout timeout = HashedWheelTimer.getDefault().newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				closeChannel();
+			}
+		}, readTimeout, TimeUnit.MILLISECONDS);
+		lastFuture.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable throwable) {
+				timeout.cancel();
+				closeChannel();
+			}
+		});
+	}
+
+	/**
+	 * 关闭通道
+	 * 		写入完成的回调、超时检查和事件循环可能同时调用,只有第一次调用生效
+	 * @return true: 关闭成功, false: 关闭失败
+	 */
+	private boolean closeChannel() {
+		if (!socketChannel.isOpen() || !closed.compareAndSet(false, true)) {
+			return true;
+		}
+		try{
+			//关闭 Socket 连接,连接对应的 SelectionKey 会被取消
+			socketChannel.close();
+			session.stopIdleCheck();
+			session.getWriteQueue().clear(null);
+			session.getInboundThrottle().release();
+			
+			// 触发 DisConnect 事件
+			eventTrigger.fireDisconnect();
+			
+			// 检查是否关闭线程池
+			// 通过 start 阻塞运行的客户端关闭线程池
+			// 通过 connect 连接的客户端和ServerSocket下的 Socket共用线程池,不关闭
+			if (standalone) {
+				eventTrigger.shutdown();
+			}
+			return true;
+		}
+		catch(Exception e){
+			e.printStackTrace();
+			return false;
+		}
+	}
+
 }
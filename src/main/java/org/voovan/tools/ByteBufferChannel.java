@@ -3,10 +3,17 @@ package org.voovan.tools;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ByteBuffer双向通道
- * 
+ * 		数据保存在一组分段的缓冲区中,写入时追加到最后一个分段,读取时从第一个分段消费,
+ * 		追加和消费都不需要复制已有的数据,分段在消费完成后归还到分段池中重复使用.
+ * 		只有在调用 getBuffer()/compact() 时才会把所有分段合并成一个连续的缓冲区.
+ *
  * @author helyho
  *
  * Voovan Framework.
@@ -15,52 +22,318 @@ import java.nio.channels.ByteChannel;
  */
 public class ByteBufferChannel implements ByteChannel {
 
-	private ByteBuffer buffer; 
-	
+	/**
+	 * 分段的大小
+	 */
+	public static final int SEGMENT_SIZE = 4096;
+
+	/**
+	 * 分段池中最多缓存的分段数量
+	 */
+	private static final int SEGMENT_POOL_MAX = 4096;
+
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+	private static final Queue<ByteBuffer> segmentPool = new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final AtomicInteger segmentPoolSize = new AtomicInteger(0);
+
+	//分段队列,每个分段的 position 到 limit 之间为有效数据
+	private ArrayDeque<ByteBuffer> segments;
+	private int size;
+
+	//通过 getBuffer 暴露出去的缓冲区,外部可能会移动它的 position
+	private ByteBuffer exposedBuffer;
+	private int exposedPosition;
+
 	public ByteBufferChannel() {
-		buffer = ByteBuffer.allocate(0);
+		segments = new ArrayDeque<ByteBuffer>();
+		size = 0;
 	}
-	
+
+	/**
+	 * 从分段池获取分段
+	 * @return 分段缓冲区
+	 */
+	private static ByteBuffer acquireSegment(){
+		ByteBuffer segment = segmentPool.poll();
+		if(segment==null){
+			segment = ByteBuffer.allocate(SEGMENT_SIZE);
+		}else{
+			segmentPoolSize.decrementAndGet();
+		}
+		segment.clear();
+		segment.limit(0);
+		return segment;
+	}
+
+	/**
+	 * 归还分段到分段池
+	 * 		只有标准大小的分段才会被归还
+	 * @param segment 分段缓冲区
+	 */
+	private static void releaseSegment(ByteBuffer segment){
+		if(segment.capacity()!=SEGMENT_SIZE){
+			return;
+		}
+		if(segmentPoolSize.incrementAndGet() <= SEGMENT_POOL_MAX){
+			segmentPool.offer(segment);
+		}else{
+			segmentPoolSize.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 同步外部对 getBuffer() 返回的缓冲区的消费
+	 */
+	private void syncExposed(){
+		if(exposedBuffer!=null){
+			size -= exposedBuffer.position() - exposedPosition;
+			exposedPosition = exposedBuffer.position();
+			if(!exposedBuffer.hasRemaining() && exposedBuffer == segments.peekFirst()){
+				segments.pollFirst();
+				releaseSegment(exposedBuffer);
+				exposedBuffer = null;
+			}
+		}
+	}
+
+	/**
+	 * 移除头部的分段
+	 */
+	private void removeFirstSegment(){
+		ByteBuffer segment = segments.pollFirst();
+		if(segment == exposedBuffer){
+			exposedBuffer = null;
+		}
+		releaseSegment(segment);
+	}
+
 	/**
 	 * 重置
 	 */
-	public void reset() {
-		buffer = ByteBuffer.allocate(0);
+	public synchronized void reset() {
+		while(!segments.isEmpty()){
+			removeFirstSegment();
+		}
+		exposedBuffer = null;
+		size = 0;
 	}
-	
+
 	/**
 	 * 当前数据大小
 	 * @return
 	 */
-	public int size(){
-		return buffer.limit();
-	} 
-	
-	public ByteBuffer getBuffer(){
+	public synchronized int size(){
+		syncExposed();
+		return size;
+	}
+
+	/**
+	 * 获取缓冲区
+	 * 		所有分段会被合并成一个连续的缓冲区,
+	 * 		对返回的缓冲区 position 的移动会被视为对数据的消费
+	 * @return 包含所有数据的缓冲区
+	 */
+	public synchronized ByteBuffer getBuffer(){
+		compact();
+		ByteBuffer buffer = segments.peekFirst();
+		if(buffer==null){
+			return EMPTY_BUFFER;
+		}
+		exposedBuffer = buffer;
+		exposedPosition = buffer.position();
 		return buffer;
 	}
-	
+
+	/**
+	 * 将所有分段合并成一个连续的缓冲区
+	 * 		只在需要连续缓冲区时调用,合并后的缓冲区不预留空间,后续的写入追加到新的分段中
+	 */
+	public synchronized void compact(){
+		syncExposed();
+		while(!segments.isEmpty() && !segments.peekFirst().hasRemaining()){
+			removeFirstSegment();
+		}
+		if(segments.size() > 1){
+			ByteBuffer compactBuffer = ByteBuffer.allocate(Math.max(SEGMENT_SIZE, size));
+			while(!segments.isEmpty()){
+				compactBuffer.put(segments.peekFirst());
+				removeFirstSegment();
+			}
+			compactBuffer.flip();
+			segments.addLast(compactBuffer);
+		}
+	}
+
+	/**
+	 * 查看指定位置的字节,不消费数据
+	 * @param index 相对于数据起始位置的偏移
+	 * @return 字节
+	 */
+	public synchronized byte get(int index){
+		syncExposed();
+		if(index<0 || index>=size){
+			throw new IndexOutOfBoundsException("index: "+index+", size: "+size);
+		}
+		for(ByteBuffer segment : segments){
+			if(index < segment.remaining()){
+				return segment.get(segment.position()+index);
+			}
+			index -= segment.remaining();
+		}
+		throw new IndexOutOfBoundsException("index: "+index+", size: "+size);
+	}
+
+	/**
+	 * 复制从指定位置开始的数据到字节数组,不消费数据
+	 * 		复制的长度为字节数组的长度
+	 * @param index 相对于数据起始位置的偏移
+	 * @param dst   目标字节数组
+	 */
+	public synchronized void get(int index, byte[] dst){
+		syncExposed();
+		if(index<0 || index+dst.length>size){
+			throw new IndexOutOfBoundsException("index: "+index+", length: "+dst.length+", size: "+size);
+		}
+		int copied = 0;
+		for(ByteBuffer segment : segments){
+			if(copied == dst.length){
+				break;
+			}
+			int remaining = segment.remaining();
+			if(index >= remaining){
+				index -= remaining;
+				continue;
+			}
+			int step = Math.min(remaining - index, dst.length - copied);
+			ByteBuffer source = segment.duplicate();
+			source.position(segment.position()+index);
+			source.get(dst, copied, step);
+			copied += step;
+			index = 0;
+		}
+	}
+
+	/**
+	 * 查找字节序列第一次出现的位置,不消费数据
+	 * @param mark 需要查找的字节序列
+	 * @return 相对于数据起始位置的偏移,没有找到返回-1
+	 */
+	public synchronized int indexOf(byte[] mark){
+		return indexOf(mark, 0);
+	}
+
+	/**
+	 * 从指定位置开始查找字节序列第一次出现的位置,不消费数据
+	 * @param mark      需要查找的字节序列
+	 * @param fromIndex 开始查找的位置
+	 * @return 相对于数据起始位置的偏移,没有找到返回-1
+	 */
+	public synchronized int indexOf(byte[] mark, int fromIndex){
+		syncExposed();
+		if(mark.length==0){
+			return fromIndex <= size ? fromIndex : -1;
+		}
+
+		int offset = 0;
+		for(ByteBuffer segment : segments){
+			int start = segment.position();
+			int end = segment.limit();
+			//整个分段都在查找起始位置之前则直接跳过
+			if(offset + (end - start) <= fromIndex){
+				offset += end - start;
+				continue;
+			}
+			for(int i=start; i<end; i++, offset++){
+				if(offset < fromIndex){
+					continue;
+				}
+				if(offset > size - mark.length){
+					return -1;
+				}
+				if(segment.get(i)==mark[0] && matches(segment, i, mark, offset)){
+					return offset;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 判断指定位置的数据是否和字节序列相同
+	 * @param segment 当前分段
+	 * @param index   在当前分段中的位置
+	 * @param mark    字节序列
+	 * @param offset  相对于数据起始位置的偏移
+	 * @return true: 相同, false: 不同
+	 */
+	private boolean matches(ByteBuffer segment, int index, byte[] mark, int offset){
+		//字节序列全部在当前分段中
+		if(index + mark.length <= segment.limit()){
+			for(int j=1; j<mark.length; j++){
+				if(segment.get(index+j)!=mark[j]){
+					return false;
+				}
+			}
+			return true;
+		}
+		//字节序列跨越分段
+		for(int j=1; j<mark.length; j++){
+			if(get(offset+j)!=mark[j]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 跳过(消费)指定长度的数据,不复制数据
+	 * @param length 需要跳过的长度
+	 * @return 实际跳过的长度
+	 */
+	public synchronized int skip(int length){
+		syncExposed();
+		int skipSize = Math.min(length, size);
+		int remain = skipSize;
+		while(remain > 0){
+			ByteBuffer segment = segments.peekFirst();
+			int step = Math.min(remain, segment.remaining());
+			segment.position(segment.position()+step);
+			remain -= step;
+			if(!segment.hasRemaining()){
+				removeFirstSegment();
+			}else if(segment == exposedBuffer){
+				exposedPosition = segment.position();
+			}
+		}
+		size -= skipSize;
+		return skipSize;
+	}
+
 	@Override
 	public synchronized int read(ByteBuffer dst) throws IOException {
-			int readSize = 0;
-			
-			//确定读取大小
-			if( dst.limit() > buffer.limit() ){
-				readSize = buffer.limit();
+		syncExposed();
+		int readSize = Math.min(dst.remaining(), size);
+		int remain = readSize;
+		while(remain > 0){
+			ByteBuffer segment = segments.peekFirst();
+			int step = Math.min(remain, segment.remaining());
+			if(step == segment.remaining()){
+				dst.put(segment);
+				removeFirstSegment();
 			}else{
-				readSize = dst.limit();
-			}
-			
-			if(readSize!=0)
-			{
-				dst.put(buffer.array(),0,readSize);
-				buffer.position(readSize);
-				byte[] tempBytes = new byte[buffer.remaining()];
-				buffer.get(tempBytes,0,buffer.remaining());
-				buffer = ByteBuffer.wrap(tempBytes);
+				int oldLimit = segment.limit();
+				segment.limit(segment.position()+step);
+				dst.put(segment);
+				segment.limit(oldLimit);
+				if(segment == exposedBuffer){
+					exposedPosition = segment.position();
+				}
 			}
-			dst.flip();
-			return readSize;
+			remain -= step;
+		}
+		size -= readSize;
+		dst.flip();
+		return readSize;
 	}
 
 	/**
@@ -72,28 +345,46 @@ public class ByteBufferChannel implements ByteChannel {
 	}
 
 	/**
-	 * 没有作用
+	 * 释放所有的分段
 	 */
 	@Override
 	public void close() throws IOException {
-		
+		reset();
 	}
 
 	@Override
 	public synchronized int write(ByteBuffer src) throws IOException {
-		if(src.limit()!=0){
-			int newSize = buffer.limit()+src.limit();
-			ByteBuffer tempBuffer = ByteBuffer.allocate(newSize);
-			tempBuffer.put(buffer);
-			tempBuffer.put(src);
-			buffer = tempBuffer;
-			buffer.flip();
+		syncExposed();
+		int writeSize = src.remaining();
+		while(src.hasRemaining()){
+			ByteBuffer tail = segments.peekLast();
+			if(tail==null || tail.limit()==tail.capacity()){
+				tail = acquireSegment();
+				segments.addLast(tail);
+			}
+
+			//切换到写入模式,在有效数据之后追加
+			int position = tail.position();
+			tail.position(tail.limit());
+			tail.limit(tail.capacity());
+			if(src.remaining() <= tail.remaining()){
+				tail.put(src);
+			}else{
+				int oldLimit = src.limit();
+				src.limit(src.position()+tail.remaining());
+				tail.put(src);
+				src.limit(oldLimit);
+			}
+			tail.limit(tail.position());
+			tail.position(position);
 		}
-		return src.limit();
+		size += writeSize;
+		return writeSize;
 	}
-	
+
 	@Override
-	public String toString(){
-		return buffer.toString();
+	public synchronized String toString(){
+		syncExposed();
+		return "ByteBufferChannel[size="+size+" segments="+segments.size()+"]";
 	}
 }
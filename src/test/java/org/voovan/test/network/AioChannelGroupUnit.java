@@ -0,0 +1,106 @@
+package org.voovan.test.network;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.concurrent.TimeUnit;
+
+import org.voovan.network.ExecutionMode;
+import org.voovan.network.IoHandler;
+import org.voovan.network.IoSession;
+import org.voovan.network.ThreadPool;
+import org.voovan.network.aio.AioChannelGroup;
+import org.voovan.network.aio.AioServerSocket;
+import org.voovan.network.filter.StringFilter;
+
+import junit.framework.TestCase;
+
+public class AioChannelGroupUnit extends TestCase {
+
+	public AioChannelGroupUnit(String name) {
+		super(name);
+	}
+
+	public void testDirectExecutor() {
+		final Thread[] runThread = new Thread[1];
+		ThreadPool.getExecutor(ExecutionMode.DIRECT).execute(new Runnable() {
+			@Override
+			public void run() {
+				runThread[0] = Thread.currentThread();
+			}
+		});
+		assertEquals(runThread[0], Thread.currentThread());
+	}
+
+	public void testDirectHandlerOnGroupThread() throws Exception {
+		AsynchronousChannelGroup channelGroup = AioChannelGroup.newFixedGroup(2);
+		final AioServerSocket serverSocket = new AioServerSocket("127.0.0.1", 2043, 1000);
+		serverSocket.setChannelGroup(channelGroup);
+		serverSocket.executionMode(ExecutionMode.DIRECT);
+		serverSocket.filterChain().add(new StringFilter());
+		serverSocket.handler(new ThreadNameHandler());
+
+		Thread serverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					serverSocket.start();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		serverThread.start();
+
+		try {
+			Socket socket = null;
+			for (int i = 0; i < 50 && socket == null; i++) {
+				try {
+					socket = new Socket("127.0.0.1", 2043);
+				} catch (Exception e) {
+					Thread.sleep(100);
+				}
+			}
+			assertNotNull(socket);
+			socket.setSoTimeout(3000);
+			socket.getOutputStream().write("hello".getBytes());
+
+			InputStream inputStream = socket.getInputStream();
+			byte[] buffer = new byte[256];
+			int length = inputStream.read(buffer);
+			String response = new String(buffer, 0, length);
+			assertTrue(response, response.startsWith("VOOVAN@AioGroup-"));
+			socket.close();
+		} finally {
+			channelGroup.shutdownNow();
+			channelGroup.awaitTermination(3, TimeUnit.SECONDS);
+			serverThread.join(3000);
+		}
+		assertTrue(channelGroup.isTerminated());
+	}
+
+	private static class ThreadNameHandler implements IoHandler {
+
+		@Override
+		public Object onConnect(IoSession session) {
+			return null;
+		}
+
+		@Override
+		public void onDisconnect(IoSession session) {
+		}
+
+		@Override
+		public Object onReceive(IoSession session, Object obj) {
+			return Thread.currentThread().getName();
+		}
+
+		@Override
+		public void onSent(IoSession session, Object obj) {
+		}
+
+		@Override
+		public void onException(IoSession session, Exception e) {
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package org.voovan.test.network;
+
+import java.nio.ByteBuffer;
+
+import org.voovan.network.ByteBufferPool;
+
+import junit.framework.TestCase;
+
+public class ByteBufferPoolUnit extends TestCase {
+
+	private ByteBufferPool pool;
+
+	public ByteBufferPoolUnit(String name) {
+		super(name);
+	}
+
+	public void setUp() {
+		pool = new ByteBufferPool(false);
+		pool.setLeakSampleInterval(0);
+	}
+
+	public void testAcquire() {
+		ByteBuffer buffer = pool.acquire(1000);
+		assertEquals(buffer.position(), 0);
+		assertEquals(buffer.limit(), 1000);
+		assertEquals(buffer.capacity(), 1024);
+		assertFalse(buffer.isDirect());
+	}
+
+	public void testReuse() {
+		ByteBuffer buffer = pool.acquire(1024);
+		pool.release(buffer);
+		ByteBuffer reused = pool.acquire(700);
+		assertTrue(buffer == reused);
+		assertEquals(pool.getThreadCacheHitCount(), 1);
+		assertEquals(pool.getAllocateCount(), 1);
+	}
+
+	public void testArena() throws InterruptedException {
+		pool.setThreadCacheSize(0);
+		final ByteBuffer buffer = pool.acquire(4096);
+		pool.release(buffer);
+		assertEquals(pool.getArenaBufferCount(), 1);
+
+		final ByteBuffer[] reused = new ByteBuffer[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				reused[0] = pool.acquire(4096);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertTrue(buffer == reused[0]);
+		assertEquals(pool.getArenaHitCount(), 1);
+	}
+
+	public void testUnpooled() {
+		ByteBuffer buffer = pool.acquire(ByteBufferPool.MAX_SIZE + 1);
+		assertEquals(buffer.capacity(), ByteBufferPool.MAX_SIZE + 1);
+		pool.release(buffer);
+		assertEquals(pool.getUnpooledCount(), 1);
+		assertEquals(pool.getArenaBufferCount(), 0);
+		assertEquals(pool.getStatistics().get("inUse").longValue(), 0);
+	}
+
+	public void testLeakDetection() throws InterruptedException {
+		pool.setLeakSampleInterval(1);
+		pool.acquire(512);
+		for (int i = 0; i < 20 && pool.getLeakCount() == 0; i++) {
+			System.gc();
+			Thread.sleep(50);
+			pool.release(pool.acquire(512));
+		}
+		assertEquals(pool.getLeakCount(), 1);
+	}
+}
@@ -0,0 +1,244 @@
+package org.voovan.test.network;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.voovan.network.EventProcess;
+import org.voovan.network.IoHandler;
+import org.voovan.network.IoSession;
+import org.voovan.network.SocketContext;
+import org.voovan.network.aio.AioSocket;
+import org.voovan.network.filter.StringFilter;
+import org.voovan.network.nio.NioEventLoopGroup;
+import org.voovan.network.nio.NioSocket;
+
+import junit.framework.TestCase;
+
+public class ClientConnectUnit extends TestCase {
+
+	private static final int CLIENT_COUNT = 20;
+
+	private ServerSocket echoServer;
+
+	public ClientConnectUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws IOException {
+		echoServer = new ServerSocket(0);
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!echoServer.isClosed()) {
+					try {
+						final Socket socket = echoServer.accept();
+						Thread echoThread = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								echo(socket);
+							}
+						});
+						echoThread.setDaemon(true);
+						echoThread.start();
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		});
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		echoServer.close();
+	}
+
+	private static void echo(Socket socket) {
+		try {
+			byte[] buffer = new byte[1024];
+			int length = 0;
+			while ((length = socket.getInputStream().read(buffer)) > 0) {
+				socket.getOutputStream().write(buffer, 0, length);
+			}
+			socket.close();
+		} catch (IOException e) {
+			//连接关闭
+		}
+	}
+
+	public void testNioConnect() throws Exception {
+		NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(2);
+		List<SocketContext> sockets = new ArrayList<SocketContext>();
+		for (int i = 0; i < CLIENT_COUNT; i++) {
+			NioSocket socket = new NioSocket("127.0.0.1", echoServer.getLocalPort(), 1000);
+			socket.eventLoopGroup(eventLoopGroup);
+			sockets.add(socket);
+		}
+		assertConnectAndEcho(sockets);
+		eventLoopGroup.shutdown();
+	}
+
+	public void testAioConnect() throws Exception {
+		List<SocketContext> sockets = new ArrayList<SocketContext>();
+		for (int i = 0; i < CLIENT_COUNT; i++) {
+			sockets.add(new AioSocket("127.0.0.1", echoServer.getLocalPort(), 1000));
+		}
+		assertConnectAndEcho(sockets);
+	}
+
+	public void testConnectRefused() throws Exception {
+		ServerSocket closedServer = new ServerSocket(0);
+		int port = closedServer.getLocalPort();
+		closedServer.close();
+
+		assertConnectRefused(new NioSocket("127.0.0.1", port, 1000).connect());
+		assertConnectRefused(new AioSocket("127.0.0.1", port, 1000).connect());
+	}
+
+	public void testNioCloseAfterPendingWrites() throws Exception {
+		//对端延迟读取,发送队列中的数据不能立即写完
+		final ServerSocket sinkServer = new ServerSocket(0);
+		final CompletableFuture<Long> receivedFuture = new CompletableFuture<Long>();
+		Thread sinkThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Socket socket = sinkServer.accept();
+					Thread.sleep(1000);
+					byte[] buffer = new byte[64 * 1024];
+					long total = 0;
+					int length = 0;
+					while ((length = socket.getInputStream().read(buffer)) > 0) {
+						total += length;
+					}
+					socket.close();
+					receivedFuture.complete(total);
+				} catch (Exception e) {
+					receivedFuture.completeExceptionally(e);
+				}
+			}
+		});
+		sinkThread.setDaemon(true);
+		sinkThread.start();
+
+		try {
+			final AtomicInteger disconnectCount = new AtomicInteger();
+			NioSocket socket = new NioSocket("127.0.0.1", sinkServer.getLocalPort(), 10000);
+			socket.handler(new ReceiveHandler(new LinkedBlockingQueue<String>()) {
+				@Override
+				public void onDisconnect(IoSession session) {
+					disconnectCount.incrementAndGet();
+				}
+			});
+			IoSession session = socket.connect().get(5, TimeUnit.SECONDS);
+
+			int size = 16 * 1024 * 1024;
+			CompletableFuture<Integer> sendFuture = EventProcess.sendMessage(session, ByteBuffer.allocate(size));
+			assertFalse(sendFuture.isDone());
+
+			//关闭不等待发送队列写完,重复关闭只触发一次断开事件
+			long start = System.currentTimeMillis();
+			assertTrue(socket.Close());
+			assertTrue(socket.Close());
+			assertTrue(System.currentTimeMillis() - start < 500);
+
+			assertEquals(receivedFuture.get(10, TimeUnit.SECONDS).longValue(), size);
+			assertEquals(sendFuture.get(5, TimeUnit.SECONDS).intValue(), size);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (disconnectCount.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertFalse(socket.isConnect());
+			session.close();
+			Thread.sleep(100);
+			assertEquals(disconnectCount.get(), 1);
+		} finally {
+			sinkServer.close();
+		}
+	}
+
+	private static void assertConnectRefused(CompletableFuture<IoSession> connectFuture) throws Exception {
+		try {
+			connectFuture.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), e.getCause() instanceof ConnectException);
+		}
+	}
+
+	private static void assertConnectAndEcho(List<SocketContext> sockets) throws Exception {
+		LinkedBlockingQueue<String> received = new LinkedBlockingQueue<String>();
+		List<CompletableFuture<IoSession>> connectFutures = new ArrayList<CompletableFuture<IoSession>>();
+		for (SocketContext socket : sockets) {
+			socket.filterChain().add(new StringFilter());
+			socket.handler(new ReceiveHandler(received));
+			connectFutures.add(socket instanceof NioSocket ? ((NioSocket) socket).connect() : ((AioSocket) socket).connect());
+		}
+
+		for (int i = 0; i < connectFutures.size(); i++) {
+			IoSession session = connectFutures.get(i).get(5, TimeUnit.SECONDS);
+			assertTrue(session.isConnect());
+			EventProcess.sendMessage(session, "hello" + i).get(5, TimeUnit.SECONDS);
+		}
+
+		List<String> messages = new ArrayList<String>();
+		for (int i = 0; i < sockets.size(); i++) {
+			String message = received.poll(5, TimeUnit.SECONDS);
+			assertNotNull(message);
+			messages.add(message);
+		}
+		for (int i = 0; i < sockets.size(); i++) {
+			assertTrue(messages.contains("hello" + i));
+		}
+
+		for (SocketContext socket : sockets) {
+			socket.Close();
+			assertFalse(socket.isConnect());
+		}
+	}
+
+	private static class ReceiveHandler implements IoHandler {
+
+		private LinkedBlockingQueue<String> received;
+
+		public ReceiveHandler(LinkedBlockingQueue<String> received) {
+			this.received = received;
+		}
+
+		@Override
+		public Object onConnect(IoSession session) {
+			return null;
+		}
+
+		@Override
+		public void onDisconnect(IoSession session) {
+		}
+
+		@Override
+		public Object onReceive(IoSession session, Object obj) {
+			received.offer(obj.toString());
+			return null;
+		}
+
+		@Override
+		public void onSent(IoSession session, Object obj) {
+		}
+
+		@Override
+		public void onException(IoSession session, Exception e) {
+		}
+	}
+}
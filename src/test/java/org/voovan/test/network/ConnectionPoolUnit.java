@@ -0,0 +1,246 @@
+package org.voovan.test.network;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.voovan.network.ConnectionFactory;
+import org.voovan.network.ConnectionPool;
+import org.voovan.network.IoSession;
+
+import junit.framework.TestCase;
+
+public class ConnectionPoolUnit extends TestCase {
+
+	private TestConnectionFactory connectionFactory;
+	private ConnectionPool connectionPool;
+
+	public ConnectionPoolUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		connectionFactory = new TestConnectionFactory();
+		connectionPool = new ConnectionPool(connectionFactory);
+	}
+
+	@Override
+	protected void tearDown() {
+		connectionPool.close();
+	}
+
+	public void testBorrowAndRelease() throws Exception {
+		connectionPool.setMaxPerHost(2);
+		IoSession session1 = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		IoSession session2 = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		assertNotSame(session1, session2);
+
+		//达到最大连接数,等待归还
+		CompletableFuture<IoSession> waitFuture = borrow("127.0.0.1", 80, false);
+		assertFalse(waitFuture.isDone());
+		assertEquals(connectionPool.getPendingBorrows(), 1);
+
+		connectionPool.release(session1);
+		assertSame(waitFuture.get(1, TimeUnit.SECONDS), session1);
+		assertEquals(connectionPool.getPendingBorrows(), 0);
+		assertEquals(connectionPool.getBorrowedConnections(), 2);
+		assertEquals(connectionPool.getTotalConnections(), 2);
+		assertEquals(connectionPool.getCreatedConnections(), 2L);
+		assertEquals(connectionPool.getBorrowCount(), 3L);
+
+		//归还后再借出复用同一个连接
+		connectionPool.release(session2);
+		assertEquals(connectionPool.getIdleConnections(), 1);
+		assertSame(borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS), session2);
+		assertEquals(connectionPool.getCreatedConnections(), 2L);
+
+		try {
+			connectionPool.release(new StubSession("TestSession"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			//期望的异常
+		}
+	}
+
+	public void testKeyedBySsl() throws Exception {
+		connectionPool.setMaxPerHost(1);
+		IoSession plainSession = borrow("127.0.0.1", 443, false).get(1, TimeUnit.SECONDS);
+		IoSession sslSession = borrow("127.0.0.1", 443, true).get(1, TimeUnit.SECONDS);
+		assertNotSame(plainSession, sslSession);
+		assertEquals(connectionPool.getTotalConnections(), 2);
+	}
+
+	public void testWaitTimeout() throws Exception {
+		connectionPool.setMaxPerHost(1);
+		connectionPool.setMaxWaitTime(200);
+		IoSession session = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		try {
+			borrow("127.0.0.1", 80, false).get(2, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(connectionPool.getWaitTimeouts(), 1L);
+		assertEquals(connectionPool.getPendingBorrows(), 0);
+
+		//超时的请求不影响后续的借出
+		connectionPool.release(session);
+		assertSame(borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS), session);
+	}
+
+	public void testHealthCheck() throws Exception {
+		IoSession session = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		connectionPool.release(session);
+
+		//借出前检查不可用的空闲连接被关闭
+		session.setAttribute("valid", false);
+		IoSession newSession = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		assertNotSame(newSession, session);
+		assertFalse(session.isConnect());
+		assertEquals(connectionPool.getClosedConnections(), 1L);
+		assertEquals(connectionPool.getTotalConnections(), 1);
+
+		//已断开的连接归还时关闭
+		newSession.close();
+		connectionPool.release(newSession);
+		assertEquals(connectionPool.getTotalConnections(), 0);
+		assertEquals(connectionPool.getIdleConnections(), 0);
+	}
+
+	public void testIdleEviction() throws Exception {
+		connectionPool.setMaxIdleTime(200);
+		IoSession session = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		connectionPool.release(session);
+		assertEquals(connectionPool.getIdleConnections(), 1);
+
+		for (int i = 0; i < 20 && connectionPool.getIdleConnections() > 0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(connectionPool.getIdleConnections(), 0);
+		assertEquals(connectionPool.getTotalConnections(), 0);
+		assertEquals(connectionPool.getEvictedConnections(), 1L);
+		assertFalse(session.isConnect());
+	}
+
+	public void testConnectFailure() throws Exception {
+		connectionPool.setMaxPerHost(1);
+		connectionFactory.fail = true;
+		try {
+			borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConnectException);
+		}
+		assertEquals(connectionPool.getConnectFailures(), 1L);
+		assertEquals(connectionPool.getTotalConnections(), 0);
+
+		//失败的连接不占用连接数
+		connectionFactory.fail = false;
+		assertNotNull(borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS));
+	}
+
+	public void testImmediateConnectFailures() throws Exception {
+		//连接被拒绝时所有等待的请求依次失败,不会因为递归分配导致栈溢出
+		connectionPool.setMaxPerHost(1);
+		connectionPool.setMaxWaitTime(0);
+		connectionFactory.hold();
+		CompletableFuture<IoSession> firstFuture = borrow("127.0.0.1", 80, false);
+		List<CompletableFuture<IoSession>> waitFutures = new ArrayList<CompletableFuture<IoSession>>();
+		for (int i = 0; i < 20000; i++) {
+			waitFutures.add(borrow("127.0.0.1", 80, false));
+		}
+		assertEquals(connectionPool.getPendingBorrows(), 20000);
+
+		connectionFactory.fail = true;
+		connectionFactory.heldFuture.completeExceptionally(new ConnectException("Connection refused"));
+		assertTrue(firstFuture.isCompletedExceptionally());
+		for (CompletableFuture<IoSession> waitFuture : waitFutures) {
+			try {
+				waitFuture.getNow(null);
+				fail();
+			} catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof ConnectException);
+			}
+		}
+		assertEquals(connectionPool.getConnectFailures(), 20001L);
+		assertEquals(connectionPool.getTotalConnections(), 0);
+		assertEquals(connectionPool.getPendingBorrows(), 0);
+	}
+
+	public void testRemoveEmptyHost() throws Exception {
+		connectionPool.setMaxIdleTime(200);
+		IoSession session = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		connectionPool.release(session);
+		assertEquals(connectionPool.getHostCount(), 1);
+
+		//空闲连接被关闭后移除分组
+		for (int i = 0; i < 20 && connectionPool.getHostCount() > 0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(connectionPool.getHostCount(), 0);
+
+		//移除后再借出重新创建分组
+		assertNotNull(borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS));
+		assertEquals(connectionPool.getHostCount(), 1);
+	}
+
+	public void testClose() throws Exception {
+		connectionPool.setMaxPerHost(1);
+		IoSession session = borrow("127.0.0.1", 80, false).get(1, TimeUnit.SECONDS);
+		CompletableFuture<IoSession> waitFuture = borrow("127.0.0.1", 80, false);
+		connectionPool.close();
+		try {
+			waitFuture.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		//关闭后归还的连接被关闭
+		connectionPool.release(session);
+		assertFalse(session.isConnect());
+		assertEquals(connectionPool.getTotalConnections(), 0);
+	}
+
+	private CompletableFuture<IoSession> borrow(String host, int port, boolean ssl) {
+		return connectionPool.borrow(host, port, ssl);
+	}
+
+	private static class TestConnectionFactory implements ConnectionFactory {
+		private volatile boolean fail;
+		private volatile CompletableFuture<IoSession> heldFuture;
+
+		/**
+		 * 下一次连接不立即完成,由测试通过 heldFuture 完成
+		 */
+		void hold() {
+			heldFuture = new CompletableFuture<IoSession>();
+		}
+
+		@Override
+		public CompletableFuture<IoSession> connect(String host, int port, boolean ssl) throws Exception {
+			CompletableFuture<IoSession> future = heldFuture;
+			if (future != null && !future.isDone()) {
+				return future;
+			}
+			future = new CompletableFuture<IoSession>();
+			if (fail) {
+				future.completeExceptionally(new ConnectException("Connection refused"));
+			} else {
+				future.complete(new StubSession("TestSession"));
+			}
+			return future;
+		}
+
+		@Override
+		public boolean validate(IoSession session) {
+			return !Boolean.FALSE.equals(session.getAttribute("valid"));
+		}
+	}
+}
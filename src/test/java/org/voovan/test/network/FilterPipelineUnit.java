@@ -0,0 +1,103 @@
+package org.voovan.test.network;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.voovan.network.FilterPipeline;
+import org.voovan.network.IoFilter;
+import org.voovan.network.IoSession;
+import org.voovan.network.SocketContext;
+
+import junit.framework.TestCase;
+
+public class FilterPipelineUnit extends TestCase {
+
+	public FilterPipelineUnit(String name) {
+		super(name);
+	}
+
+	public void testDecodeEncode() {
+		FilterPipeline pipeline = new FilterPipeline(Arrays.<IoFilter>asList(new AppendFilter("a"), new AppendFilter("b")));
+		assertEquals(pipeline.size(), 2);
+		assertEquals(pipeline.decode(null, ""), "-a-b");
+		assertEquals(pipeline.encode(null, ""), "+a+b");
+	}
+
+	public void testCopyOnChange() {
+		FilterPipeline pipeline = new FilterPipeline(new AppendFilter("a"));
+		FilterPipeline upgraded = pipeline.addLast(new AppendFilter("b")).addFirst(new UpperFilter());
+		assertEquals(pipeline.decode(null, "x"), "x-a");
+		assertEquals(upgraded.decode(null, "x"), "X-a-b");
+
+		FilterPipeline replaced = upgraded.replace(AppendFilter.class, new UpperFilter());
+		assertEquals(replaced.size(), 3);
+		assertEquals(replaced.decode(null, "x"), "X");
+
+		assertEquals(upgraded.remove(AppendFilter.class).size(), 1);
+		assertTrue(pipeline.remove(UpperFilter.class) == pipeline);
+	}
+
+	public void testSocketContextRebuild() {
+		SocketContext socketContext = new SocketContext() {
+			@Override
+			public void start() {
+			}
+
+			@Override
+			public boolean isConnect() {
+				return false;
+			}
+
+			@Override
+			public boolean Close() {
+				return true;
+			}
+		};
+		socketContext.filterChain().add(new AppendFilter("a"));
+		FilterPipeline pipeline = socketContext.filterPipeline();
+		assertTrue(socketContext.filterPipeline() == pipeline);
+
+		//过滤器数量不变的替换同样重新构建
+		socketContext.filterChain().clear();
+		socketContext.filterChain().add(new AppendFilter("b"));
+		assertEquals(socketContext.filterPipeline().decode(null, ""), "-b");
+
+		socketContext.filterChain().addFirst(new UpperFilter());
+		assertEquals(socketContext.filterPipeline().decode(null, "x"), "X-b");
+		Iterator<IoFilter> iterator = socketContext.filterChain().iterator();
+		iterator.next();
+		iterator.remove();
+		assertEquals(socketContext.filterPipeline().decode(null, "x"), "x-b");
+		assertEquals(pipeline.decode(null, "x"), "x-a");
+	}
+
+	private static class AppendFilter implements IoFilter {
+		private String name;
+
+		public AppendFilter(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Object decode(IoSession session, Object object) {
+			return object + "-" + name;
+		}
+
+		@Override
+		public Object encode(IoSession session, Object object) {
+			return object + "+" + name;
+		}
+	}
+
+	private static class UpperFilter implements IoFilter {
+		@Override
+		public Object decode(IoSession session, Object object) {
+			return object.toString().toUpperCase();
+		}
+
+		@Override
+		public Object encode(IoSession session, Object object) {
+			return object;
+		}
+	}
+}
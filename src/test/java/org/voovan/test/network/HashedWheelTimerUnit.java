@@ -0,0 +1,112 @@
+package org.voovan.test.network;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.voovan.network.HashedWheelTimer;
+
+import junit.framework.TestCase;
+
+public class HashedWheelTimerUnit extends TestCase {
+
+	private HashedWheelTimer timer;
+
+	public HashedWheelTimerUnit(String name) {
+		super(name);
+	}
+
+	public void setUp() {
+		timer = new HashedWheelTimer(10, 8, null);
+	}
+
+	public void tearDown() {
+		timer.stop();
+	}
+
+	public void testWheelSize() {
+		HashedWheelTimer sizedTimer = new HashedWheelTimer(10, 100, null);
+		assertEquals(128, sizedTimer.getWheelSize());
+		sizedTimer.stop();
+	}
+
+	public void testExpire() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		long startTime = System.currentTimeMillis();
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - startTime >= 50);
+		assertTrue(timeout.isExpired());
+		assertEquals(0, timer.pendingTimeouts());
+	}
+
+	public void testMultipleRounds() throws InterruptedException {
+		// 8 个槽位, 10ms 刻度, 200ms 的任务需要转动多轮
+		final CountDownLatch latch = new CountDownLatch(1);
+		long startTime = System.currentTimeMillis();
+		timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 200, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - startTime >= 200);
+	}
+
+	public void testCancel() throws InterruptedException {
+		final AtomicInteger count = new AtomicInteger(0);
+		HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				count.incrementAndGet();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+
+		assertTrue(timeout.cancel());
+		assertFalse(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		assertEquals(0, timer.pendingTimeouts());
+
+		Thread.sleep(200);
+		assertEquals(0, count.get());
+		assertFalse(timeout.isExpired());
+	}
+
+	public void testManyTimeouts() throws InterruptedException {
+		int size = 10000;
+		final AtomicInteger count = new AtomicInteger(0);
+		HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[size];
+		// 延迟远大于添加和取消任务所用的时间,取消时任务都还没有到期
+		for (int i = 0; i < size; i++) {
+			timeouts[i] = timer.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					count.incrementAndGet();
+				}
+			}, 1000 + i % 100, TimeUnit.MILLISECONDS);
+		}
+
+		// 只统计取消成功的任务
+		int cancelled = 0;
+		for (int i = 0; i < size; i += 2) {
+			if (timeouts[i].cancel()) {
+				cancelled++;
+			}
+		}
+
+		for (int i = 0; i < 50 && (count.get() < size - cancelled || timer.pendingTimeouts() > 0); i++) {
+			Thread.sleep(100);
+		}
+		Thread.sleep(100);
+		assertEquals(size - cancelled, count.get());
+		assertEquals(0, timer.pendingTimeouts());
+	}
+}
@@ -0,0 +1,176 @@
+package org.voovan.test.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.voovan.network.FrameSplitter;
+import org.voovan.network.SplitState;
+import org.voovan.network.messagesplitter.HttpMessageSplitter;
+import org.voovan.tools.ByteBufferChannel;
+
+import junit.framework.TestCase;
+
+public class HttpMessageSplitterUnit extends TestCase {
+
+	private ByteBufferChannel buffer;
+	private SplitState state;
+	private FrameSplitter splitter;
+
+	public HttpMessageSplitterUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		buffer = new ByteBufferChannel();
+		state = new SplitState();
+		splitter = new HttpMessageSplitter();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		buffer.close();
+	}
+
+	public void testPipelinedRequests() throws IOException {
+		String get1 = "GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n";
+		String get2 = "GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n";
+		String post = "POST /c HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello";
+		List<String> frames = feed(get1 + get2 + post + "GET /d");
+		assertEquals(frames.size(), 3);
+		assertEquals(frames.get(0), get1);
+		assertEquals(frames.get(1), get2);
+		assertEquals(frames.get(2), post);
+		assertEquals(buffer.size(), 6);
+	}
+
+	public void testHeaderSplitAcrossReads() throws IOException {
+		//报文头结尾的 \r\n\r\n 跨越多次读取
+		assertEquals(feed("GET /a HTTP/1.1\r\nHo").size(), 0);
+		assertEquals(feed("st: localhost\r").size(), 0);
+		assertEquals(feed("\n\r").size(), 0);
+		List<String> frames = feed("\nGET");
+		assertEquals(frames.size(), 1);
+		assertEquals(frames.get(0), "GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n");
+		assertEquals(buffer.size(), 3);
+	}
+
+	public void testContentLengthAcrossReads() throws IOException {
+		assertEquals(feed("POST / HTTP/1.1\r\nContent-Length: 10\r\n\r\n01234").size(), 0);
+		List<String> frames = feed("56789");
+		assertEquals(frames.size(), 1);
+		assertTrue(frames.get(0).endsWith("\r\n\r\n0123456789"));
+	}
+
+	public void testChunkedWithTrailers() throws IOException {
+		String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "5\r\nhello\r\n"
+				+ "6;name=value\r\n world\r\n"
+				+ "0\r\nX-Checksum: 1234\r\nX-Other: 5\r\n\r\n";
+
+		//逐字节到达
+		List<String> frames = new ArrayList<String>();
+		for (int i = 0; i < response.length(); i++) {
+			frames.addAll(feed(response.substring(i, i + 1)));
+			if (i < response.length() - 1) {
+				assertEquals(frames.size(), 0);
+			}
+		}
+		assertEquals(frames.size(), 1);
+		assertEquals(frames.get(0), response);
+		assertEquals(buffer.size(), 0);
+	}
+
+	public void testChunkedWithoutTrailers() throws IOException {
+		String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n";
+		List<String> frames = feed(response + "HTTP/1.1 204 No Content\r\n\r\n");
+		assertEquals(frames.size(), 2);
+		assertEquals(frames.get(0), response);
+		assertEquals(frames.get(1), "HTTP/1.1 204 No Content\r\n\r\n");
+	}
+
+	public void testMultipartBoundary() throws IOException {
+		String request = "POST /upload HTTP/1.1\r\nContent-Type: multipart/form-data; boundary=XyZ\r\n\r\n"
+				+ "--XyZ\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\n1\r\n"
+				+ "--XyZ\r\nContent-Disposition: form-data; name=\"b\"\r\n\r\n2\r\n"
+				+ "--XyZ--\r\n";
+
+		//结束标记跨越两次读取
+		int splitIndex = request.length() - 6;
+		assertEquals(feed(request.substring(0, splitIndex)).size(), 0);
+		List<String> frames = feed(request.substring(splitIndex) + "GET");
+		assertEquals(frames.size(), 1);
+		assertEquals(frames.get(0), request);
+		assertEquals(buffer.size(), 3);
+	}
+
+	public void testResponseUntilClose() throws IOException {
+		//没有 Content-Length 和 chunked 的响应在连接关闭时结束
+		assertEquals(feed("HTTP/1.0 200 OK\r\nConnection: close\r\n\r\nbody").size(), 0);
+		assertEquals(feed(" more").size(), 0);
+		assertEquals(buffer.size(), 47);
+	}
+
+	public void testWebSocketFrames() throws IOException {
+		//带掩码的短帧 + 16 位长度的帧
+		byte[] shortFrame = new byte[]{(byte) 0x81, (byte) 0x85, 1, 2, 3, 4, 'h', 'e', 'l', 'l', 'o'};
+		byte[] mediumFrame = new byte[4 + 300];
+		mediumFrame[0] = (byte) 0x82;
+		mediumFrame[1] = 126;
+		mediumFrame[2] = (byte) (300 >> 8);
+		mediumFrame[3] = (byte) (300 & 0xFF);
+
+		assertEquals(split(shortFrame).size(), 1);
+		assertEquals(split(new byte[]{(byte) 0x82, 126, 1}).size(), 0);
+		byte[] rest = new byte[mediumFrame.length - 3];
+		System.arraycopy(mediumFrame, 3, rest, 0, rest.length);
+		List<String> frames = split(rest);
+		assertEquals(frames.size(), 1);
+		assertEquals(frames.get(0).length(), 304);
+
+		//64 位长度的帧
+		byte[] longFrame = new byte[10 + 70000];
+		longFrame[0] = (byte) 0x82;
+		longFrame[1] = 127;
+		longFrame[7] = (byte) (70000 >> 16);
+		longFrame[8] = (byte) ((70000 >> 8) & 0xFF);
+		longFrame[9] = (byte) (70000 & 0xFF);
+		assertEquals(HttpMessageSplitter.webSocketFrameLength(channel(longFrame)), 70010);
+		byte[] partialFrame = new byte[1000];
+		System.arraycopy(longFrame, 0, partialFrame, 0, partialFrame.length);
+		assertEquals(HttpMessageSplitter.webSocketFrameLength(channel(partialFrame)), -1);
+	}
+
+	private List<String> feed(String data) throws IOException {
+		return split(data.getBytes());
+	}
+
+	/**
+	 * 写入数据并按 MessageLoader 的方式取出所有完整的消息帧
+	 * @param data 到达的数据
+	 * @return 完整的消息帧
+	 */
+	private List<String> split(byte[] data) throws IOException {
+		buffer.write(ByteBuffer.wrap(data));
+		List<String> frames = new ArrayList<String>();
+		while (buffer.size() > 0) {
+			int frameLength = splitter.split(null, buffer, state);
+			if (frameLength <= 0) {
+				break;
+			}
+			ByteBuffer frame = ByteBuffer.allocate(frameLength);
+			buffer.read(frame);
+			frames.add(new String(frame.array(), "ISO-8859-1"));
+			state.reset();
+		}
+		return frames;
+	}
+
+	private static ByteBufferChannel channel(byte[] data) throws IOException {
+		ByteBufferChannel channel = new ByteBufferChannel();
+		channel.write(ByteBuffer.wrap(data));
+		return channel;
+	}
+}
@@ -0,0 +1,147 @@
+package org.voovan.test.network;
+
+import java.io.IOException;
+
+import org.voovan.network.InboundThrottle;
+
+import junit.framework.TestCase;
+
+public class InboundThrottleUnit extends TestCase {
+
+	private long globalHighWaterMark;
+	private long globalLowWaterMark;
+
+	public InboundThrottleUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		globalHighWaterMark = InboundThrottle.getGlobalHighWaterMark();
+		globalLowWaterMark = InboundThrottle.getGlobalLowWaterMark();
+	}
+
+	@Override
+	protected void tearDown() {
+		InboundThrottle.setGlobalWaterMark(globalHighWaterMark, globalLowWaterMark);
+	}
+
+	public void testSessionWaterMark() throws IOException {
+		StubSession session = new StubSession();
+		InboundThrottle throttle = session.getInboundThrottle();
+
+		session.receive(InboundThrottle.DEFAULT_HIGH_WATER_MARK + 1);
+		throttle.update();
+		assertTrue(session.isReadPaused());
+		assertEquals(session.getPauseCount(), 1);
+
+		//等待不完整的消息时不暂停读取
+		throttle.update(true);
+		assertFalse(session.isReadPaused());
+		throttle.update(false);
+		assertTrue(session.isReadPaused());
+
+		//降低到低水位时恢复读取
+		session.consume(InboundThrottle.DEFAULT_HIGH_WATER_MARK - InboundThrottle.DEFAULT_LOW_WATER_MARK);
+		throttle.update();
+		assertTrue(session.isReadPaused());
+		session.consume(1);
+		throttle.update();
+		assertFalse(session.isReadPaused());
+		assertEquals(session.getResumeCount(), 2);
+
+		throttle.release();
+	}
+
+	public void testGlobalWaterMark() throws IOException {
+		long baseBuffered = InboundThrottle.getGlobalBufferedBytes();
+		InboundThrottle.setGlobalWaterMark(baseBuffered + 1000, baseBuffered + 500);
+		StubSession session1 = new StubSession();
+		StubSession session2 = new StubSession();
+
+		session1.receive(800);
+		session1.getInboundThrottle().update();
+		session2.receive(400);
+		session2.getInboundThrottle().update();
+		assertFalse(session1.isReadPaused());
+		assertTrue(session2.isReadPaused());
+		assertEquals(InboundThrottle.getGlobalBufferedBytes(), baseBuffered + 1200);
+
+		//其他会话的数据被处理后恢复读取
+		session1.consume(800);
+		session1.getInboundThrottle().update();
+		assertFalse(session2.isReadPaused());
+		assertEquals(session2.getResumeCount(), 1);
+
+		session1.getInboundThrottle().release();
+		session2.getInboundThrottle().release();
+		assertEquals(InboundThrottle.getGlobalBufferedBytes(), baseBuffered);
+	}
+
+	public void testGlobalWaterMarkAwaitingFrame() throws IOException {
+		long baseBuffered = InboundThrottle.getGlobalBufferedBytes();
+		InboundThrottle.setGlobalWaterMark(baseBuffered + 1000, baseBuffered + 500);
+		StubSession session1 = new StubSession();
+		StubSession session2 = new StubSession();
+
+		//全局总量超过高水位时,等待不完整消息的会话也暂停读取
+		session1.receive(600);
+		session1.getInboundThrottle().update(true);
+		session2.receive(600);
+		session2.getInboundThrottle().update(true);
+		assertFalse(session1.isReadPaused());
+		assertTrue(session2.isReadPaused());
+		session1.getInboundThrottle().update(true);
+		assertTrue(session1.isReadPaused());
+
+		//全局总量仍高于低水位
+		session2.consume(600);
+		session2.getInboundThrottle().update(false);
+		assertTrue(session1.isReadPaused());
+		assertTrue(session2.isReadPaused());
+
+		//不完整的消息在读取超时后被取走,全局总量降低到低水位后恢复读取
+		session1.consume(600);
+		session1.getInboundThrottle().update(false);
+		assertFalse(session1.isReadPaused());
+		assertFalse(session2.isReadPaused());
+
+		session1.getInboundThrottle().release();
+		session2.getInboundThrottle().release();
+		assertEquals(InboundThrottle.getGlobalBufferedBytes(), baseBuffered);
+	}
+
+	public void testLocalPauseThenGlobalPause() throws IOException {
+		long baseBuffered = InboundThrottle.getGlobalBufferedBytes();
+		int highWaterMark = InboundThrottle.DEFAULT_HIGH_WATER_MARK;
+		InboundThrottle.setGlobalWaterMark(baseBuffered + highWaterMark * 3, baseBuffered + highWaterMark * 2);
+		StubSession session1 = new StubSession();
+		StubSession session2 = new StubSession();
+
+		//超过会话的高水位暂停读取
+		session1.receive(highWaterMark + 1);
+		session1.getInboundThrottle().update();
+		assertTrue(session1.isReadPaused());
+
+		//全局暂停开始
+		session2.receive(highWaterMark * 5 / 2);
+		session2.getInboundThrottle().update();
+		assertTrue(session2.isReadPaused());
+
+		//会话的数据降低到低水位,仍然因为全局暂停而暂停
+		session1.consume(highWaterMark + 1);
+		session1.getInboundThrottle().update();
+		assertTrue(session1.isReadPaused());
+
+		//全局恢复时两个会话都恢复读取
+		session2.consume(highWaterMark * 5 / 2);
+		session2.getInboundThrottle().update();
+		assertFalse(session2.isReadPaused());
+		assertFalse(session1.isReadPaused());
+		assertEquals(session1.getResumeCount(), 1);
+
+		session1.getInboundThrottle().release();
+		session2.getInboundThrottle().release();
+		assertEquals(InboundThrottle.getGlobalBufferedBytes(), baseBuffered);
+	}
+}
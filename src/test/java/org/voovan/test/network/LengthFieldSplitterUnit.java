@@ -0,0 +1,77 @@
+package org.voovan.test.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.voovan.network.SplitState;
+import org.voovan.network.filter.LengthFieldDecoder;
+import org.voovan.network.filter.LengthFieldEncoder;
+import org.voovan.network.filter.PooledByteBuffer;
+import org.voovan.network.messagesplitter.LengthFieldSplitter;
+import org.voovan.tools.ByteBufferChannel;
+
+import junit.framework.TestCase;
+
+public class LengthFieldSplitterUnit extends TestCase {
+
+	public LengthFieldSplitterUnit(String name) {
+		super(name);
+	}
+
+	public void testFixedLength() throws IOException {
+		//2 字节头部 + 4 字节长度 + 消息体
+		LengthFieldSplitter splitter = new LengthFieldSplitter(2, 4, 0, 1024);
+		ByteBufferChannel buffer = channel(new byte[]{9, 9, 0, 0, 0, 5, 1, 2, 3});
+
+		SplitState state = new SplitState();
+		assertEquals(splitter.split(null, buffer, state), -1);
+		assertEquals(state.getOffset(), 11);
+
+		buffer.write(ByteBuffer.wrap(new byte[]{4, 5}));
+		assertEquals(splitter.split(null, buffer, state), 11);
+		assertEquals(buffer.size(), 11);
+	}
+
+	public void testLittleEndianAdjustment() throws IOException {
+		//长度字段的值包含长度字段本身
+		LengthFieldSplitter splitter = new LengthFieldSplitter(0, 2, -2, 1024, ByteOrder.LITTLE_ENDIAN);
+		ByteBufferChannel buffer = channel(new byte[]{5, 0, 1, 2, 3, 4});
+		assertEquals(splitter.split(null, buffer, new SplitState()), 5);
+	}
+
+	public void testMaxFrameSize() throws IOException {
+		LengthFieldSplitter splitter = new LengthFieldSplitter(0, 4, 0, 100);
+		ByteBufferChannel buffer = channel(new byte[]{0, 0, 1, 0});
+		SplitState state = new SplitState();
+		assertEquals(splitter.split(null, buffer, state), -1);
+		assertEquals(state.getOffset(), 0);
+	}
+
+	public void testVarintRoundTrip() throws IOException {
+		LengthFieldEncoder encoder = new LengthFieldEncoder(LengthFieldSplitter.VARINT, 0);
+		LengthFieldSplitter splitter = new LengthFieldSplitter(0, LengthFieldSplitter.VARINT, 0, 1024);
+		ByteBuffer message = ByteBuffer.allocate(300);
+		message.put(299, (byte) 7);
+
+		PooledByteBuffer pooledByteBuffer = (PooledByteBuffer) encoder.encode(null, message);
+		ByteBuffer frame = pooledByteBuffer.getBuffer();
+		assertEquals(frame.remaining(), 302);
+		assertEquals(splitter.split(null, channel(frame.duplicate()), new SplitState()), 302);
+
+		ByteBuffer body = (ByteBuffer) new LengthFieldDecoder(2).decode(null, frame);
+		assertEquals(body.remaining(), 300);
+		assertEquals(body.get(299), 7);
+		pooledByteBuffer.release(frame);
+	}
+
+	private static ByteBufferChannel channel(byte[] data) throws IOException {
+		return channel(ByteBuffer.wrap(data));
+	}
+
+	private static ByteBufferChannel channel(ByteBuffer data) throws IOException {
+		ByteBufferChannel buffer = new ByteBufferChannel();
+		buffer.write(data);
+		return buffer;
+	}
+}
@@ -0,0 +1,189 @@
+package org.voovan.test.network;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.voovan.network.IoHandler;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.SocketContext;
+import org.voovan.network.aio.AioSocket;
+import org.voovan.network.filter.StringFilter;
+import org.voovan.network.messagesplitter.HttpMessageSplitter;
+import org.voovan.network.messagesplitter.LineMessageSplitter;
+import org.voovan.network.nio.NioEventLoopGroup;
+import org.voovan.network.nio.NioSocket;
+
+import junit.framework.TestCase;
+
+public class MessageLoaderUnit extends TestCase {
+
+	private ServerSocket peerServer;
+	private LinkedBlockingQueue<Socket> peers;
+
+	public MessageLoaderUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws IOException {
+		peerServer = new ServerSocket(0);
+		peers = new LinkedBlockingQueue<Socket>();
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!peerServer.isClosed()) {
+					try {
+						peers.offer(peerServer.accept());
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		});
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		peerServer.close();
+	}
+
+	public void testNioReadTimeout() throws Exception {
+		NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+		NioSocket socket = new NioSocket("127.0.0.1", peerServer.getLocalPort(), 300);
+		socket.eventLoopGroup(eventLoopGroup);
+		assertReadTimeout(socket);
+		eventLoopGroup.shutdown();
+	}
+
+	public void testAioReadTimeout() throws Exception {
+		AioSocket socket = new AioSocket("127.0.0.1", peerServer.getLocalPort(), 300);
+		assertReadTimeout(socket);
+	}
+
+	public void testNioRemoteClose() throws Exception {
+		NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+		NioSocket socket = new NioSocket("127.0.0.1", peerServer.getLocalPort(), 60000);
+		socket.eventLoopGroup(eventLoopGroup);
+		assertRemoteClose(socket);
+		eventLoopGroup.shutdown();
+	}
+
+	public void testAioRemoteClose() throws Exception {
+		AioSocket socket = new AioSocket("127.0.0.1", peerServer.getLocalPort(), 60000);
+		assertRemoteClose(socket);
+	}
+
+	public void testHttpResponseUntilClose() throws Exception {
+		//没有 Content-Length 和 chunked 的 HTTP/1.0 响应在连接关闭时作为一个消息返回
+		NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+		NioSocket socket = new NioSocket("127.0.0.1", peerServer.getLocalPort(), 60000);
+		socket.eventLoopGroup(eventLoopGroup);
+		ReceiveHandler handler = prepare(socket, new HttpMessageSplitter());
+		connect(socket).get(5, TimeUnit.SECONDS);
+		Socket peer = peers.poll(5, TimeUnit.SECONDS);
+
+		String response = "HTTP/1.0 200 OK\r\nConnection: close\r\n\r\nbody without length";
+		peer.getOutputStream().write(response.getBytes());
+		peer.getOutputStream().flush();
+		assertNull(handler.received.poll(300, TimeUnit.MILLISECONDS));
+		peer.close();
+
+		assertTrue(handler.disconnected.await(5, TimeUnit.SECONDS));
+		assertEquals(handler.received.poll(), response);
+		eventLoopGroup.shutdown();
+	}
+
+	/**
+	 * 没有换行符的数据在读取超时后作为一个消息返回
+	 */
+	private void assertReadTimeout(SocketContext socket) throws Exception {
+		ReceiveHandler handler = prepare(socket, new LineMessageSplitter());
+		connect(socket).get(5, TimeUnit.SECONDS);
+		Socket peer = peers.poll(5, TimeUnit.SECONDS);
+
+		peer.getOutputStream().write("line\r\npartial".getBytes());
+		peer.getOutputStream().flush();
+		assertEquals(handler.received.poll(5, TimeUnit.SECONDS), "line\r\n");
+		long startTime = System.currentTimeMillis();
+		assertEquals(handler.received.poll(5, TimeUnit.SECONDS), "partial");
+		assertTrue(System.currentTimeMillis() - startTime >= 200);
+		assertTrue(socket.isConnect());
+
+		socket.Close();
+		peer.close();
+	}
+
+	/**
+	 * 对端关闭连接时,已接收的完整消息和剩余的数据在断开事件之前返回
+	 */
+	private void assertRemoteClose(SocketContext socket) throws Exception {
+		ReceiveHandler handler = prepare(socket, new LineMessageSplitter());
+		connect(socket).get(5, TimeUnit.SECONDS);
+		Socket peer = peers.poll(5, TimeUnit.SECONDS);
+
+		peer.getOutputStream().write("first\nsecond\nlast".getBytes());
+		peer.getOutputStream().flush();
+		peer.close();
+
+		assertTrue(handler.disconnected.await(5, TimeUnit.SECONDS));
+		assertEquals(handler.received.poll(), "first\n");
+		assertEquals(handler.received.poll(), "second\n");
+		assertEquals(handler.received.poll(), "last");
+
+		//断开事件在关闭通道之前触发
+		for (int i = 0; i < 50 && socket.isConnect(); i++) {
+			Thread.sleep(100);
+		}
+		assertFalse(socket.isConnect());
+	}
+
+	private static ReceiveHandler prepare(SocketContext socket, MessageSplitter messageSplitter) {
+		ReceiveHandler handler = new ReceiveHandler();
+		socket.filterChain().add(new StringFilter());
+		socket.messageSplitter(messageSplitter);
+		socket.handler(handler);
+		return handler;
+	}
+
+	private static CompletableFuture<IoSession> connect(SocketContext socket) {
+		return socket instanceof NioSocket ? ((NioSocket) socket).connect() : ((AioSocket) socket).connect();
+	}
+
+	private static class ReceiveHandler implements IoHandler {
+
+		private LinkedBlockingQueue<String> received = new LinkedBlockingQueue<String>();
+		private CountDownLatch disconnected = new CountDownLatch(1);
+
+		@Override
+		public Object onConnect(IoSession session) {
+			return null;
+		}
+
+		@Override
+		public void onDisconnect(IoSession session) {
+			disconnected.countDown();
+		}
+
+		@Override
+		public Object onReceive(IoSession session, Object obj) {
+			received.offer(obj.toString());
+			return null;
+		}
+
+		@Override
+		public void onSent(IoSession session, Object obj) {
+		}
+
+		@Override
+		public void onException(IoSession session, Exception e) {
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.voovan.test.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.voovan.network.FrameSplitter;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.MessageSplitterAdapter;
+import org.voovan.network.SplitState;
+import org.voovan.network.messagesplitter.BufferLengthSplitter;
+import org.voovan.network.messagesplitter.LineMessageSplitter;
+import org.voovan.tools.ByteBufferChannel;
+
+import junit.framework.TestCase;
+
+public class MessageSplitterUnit extends TestCase {
+
+	private ByteBufferChannel buffer;
+	private SplitState state;
+
+	public MessageSplitterUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		buffer = new ByteBufferChannel();
+		state = new SplitState();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		buffer.close();
+	}
+
+	public void testLineSplitter() throws IOException {
+		FrameSplitter splitter = new LineMessageSplitter();
+		List<String> frames = split(splitter, "first\r\nsecond\nthird\rfou");
+		assertEquals(frames.size(), 3);
+		assertEquals(frames.get(0), "first\r\n");
+		assertEquals(frames.get(1), "second\n");
+		assertEquals(frames.get(2), "third\r");
+		assertEquals(state.getOffset(), 3);
+
+		//\r 是最后一个字节时等待下一个字节
+		assertEquals(split(splitter, "rth\r").size(), 0);
+		frames = split(splitter, "\n");
+		assertEquals(frames.size(), 1);
+		assertEquals(frames.get(0), "fourth\r\n");
+		assertEquals(buffer.size(), 0);
+	}
+
+	public void testBufferLengthSplitter() throws IOException {
+		FrameSplitter splitter = new BufferLengthSplitter(4);
+		List<String> frames = split(splitter, "abcdefghij");
+		assertEquals(frames.size(), 2);
+		assertEquals(frames.get(0), "abcd");
+		assertEquals(frames.get(1), "efgh");
+		assertEquals(split(splitter, "k").size(), 0);
+		assertEquals(split(splitter, "l").get(0), "ijkl");
+	}
+
+	public void testAdapter() throws IOException {
+		final int[] calls = new int[1];
+		MessageSplitter messageSplitter = new MessageSplitter() {
+			@Override
+			public boolean canSplite(IoSession session, byte[] buffer, int elapsedtime) {
+				calls[0]++;
+				return buffer[buffer.length - 1] == '!';
+			}
+		};
+		FrameSplitter splitter = MessageSplitterAdapter.adapt(messageSplitter);
+		assertTrue(splitter instanceof MessageSplitterAdapter);
+
+		assertEquals(split(splitter, "hello").size(), 0);
+		assertEquals(state.getOffset(), 5);
+
+		//没有新的数据到达时不调用消息分割器
+		assertEquals(splitter.split(null, buffer, state), -1);
+		assertEquals(calls[0], 1);
+
+		List<String> frames = split(splitter, "!");
+		assertEquals(frames.size(), 1);
+		assertEquals(frames.get(0), "hello!");
+		assertEquals(calls[0], 2);
+	}
+
+	public void testAdapt() {
+		LineMessageSplitter lineMessageSplitter = new LineMessageSplitter();
+		assertSame(MessageSplitterAdapter.adapt(lineMessageSplitter), lineMessageSplitter);
+		assertNull(MessageSplitterAdapter.adapt(null));
+	}
+
+	/**
+	 * 写入数据并按 MessageLoader 的方式取出所有完整的消息帧
+	 * @param splitter 消息分割器
+	 * @param data     到达的数据
+	 * @return 完整的消息帧
+	 */
+	private List<String> split(FrameSplitter splitter, String data) throws IOException {
+		buffer.write(ByteBuffer.wrap(data.getBytes()));
+		List<String> frames = new ArrayList<String>();
+		while (buffer.size() > 0) {
+			int frameLength = splitter.split(null, buffer, state);
+			if (frameLength <= 0) {
+				break;
+			}
+			ByteBuffer frame = ByteBuffer.allocate(frameLength);
+			buffer.read(frame);
+			frames.add(new String(frame.array()));
+			state.reset();
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,49 @@
+package org.voovan.test.network;
+
+import org.voovan.network.Event.EventName;
+import org.voovan.network.LatencyHistogram;
+import org.voovan.network.NetworkMetrics;
+
+import junit.framework.TestCase;
+
+public class NetworkMetricsUnit extends TestCase {
+
+	public NetworkMetricsUnit(String name) {
+		super(name);
+	}
+
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(3000);
+		}
+		histogram.record(1000000);
+		assertEquals(histogram.getCount(), 100);
+		assertEquals(histogram.getPercentile(50), 4);
+		assertEquals(histogram.getPercentile(100), 1024);
+		assertEquals(histogram.getMax(), 1000.0);
+
+		histogram.reset();
+		assertEquals(histogram.getCount(), 0);
+		assertEquals(histogram.getPercentile(99), 0);
+	}
+
+	public void testParent() {
+		NetworkMetrics serverMetrics = new NetworkMetrics();
+		NetworkMetrics sessionMetrics1 = new NetworkMetrics(serverMetrics, false);
+		NetworkMetrics sessionMetrics2 = new NetworkMetrics(serverMetrics, false);
+
+		sessionMetrics1.recordBytesIn(100);
+		sessionMetrics2.recordBytesIn(50);
+		sessionMetrics1.recordDecode(2000);
+		sessionMetrics2.recordEvent(EventName.ON_RECEIVE);
+
+		assertEquals(sessionMetrics1.getBytesIn(), 100);
+		assertEquals(serverMetrics.getBytesIn(), 150);
+		assertEquals(serverMetrics.getMessagesDecoded(), 1);
+		assertEquals(serverMetrics.getDecodeLatencyHistogram().getCount(), 1);
+		assertNull(sessionMetrics1.getDecodeLatencyHistogram());
+		assertEquals(serverMetrics.getEventCount(EventName.ON_RECEIVE), 1);
+		assertEquals(serverMetrics.getEventCounts().get("ON_RECEIVE").longValue(), 1);
+	}
+}
@@ -0,0 +1,73 @@
+package org.voovan.test.network;
+
+import java.nio.ByteBuffer;
+
+import org.voovan.network.ByteBufferPool;
+import org.voovan.network.ReceiveBufferAllocator;
+
+import junit.framework.TestCase;
+
+public class ReceiveBufferAllocatorUnit extends TestCase {
+
+	public ReceiveBufferAllocatorUnit(String name) {
+		super(name);
+	}
+
+	public void testGrow() {
+		ReceiveBufferAllocator allocator = new ReceiveBufferAllocator(512, 2048, 65536);
+		assertEquals(allocator.guess(), 2048);
+
+		allocator.record(2048);
+		assertEquals(allocator.guess(), 8192);
+		allocator.record(8192);
+		assertEquals(allocator.guess(), 32768);
+		allocator.record(32768);
+		assertEquals(allocator.guess(), 65536);
+		allocator.record(65536);
+		assertEquals(allocator.guess(), 65536);
+	}
+
+	public void testShrink() {
+		ReceiveBufferAllocator allocator = new ReceiveBufferAllocator(1024, 4096, 65536);
+
+		//连续两次读取较少时才缩小
+		allocator.record(100);
+		assertEquals(allocator.guess(), 4096);
+		allocator.record(3000);
+		assertEquals(allocator.guess(), 4096);
+		allocator.record(100);
+		assertEquals(allocator.guess(), 4096);
+		allocator.record(100);
+		assertEquals(allocator.guess(), 2048);
+		allocator.record(100);
+		allocator.record(100);
+		assertEquals(allocator.guess(), 1024);
+		allocator.record(100);
+		allocator.record(100);
+		assertEquals(allocator.guess(), 1024);
+	}
+
+	public void testRoundSize() {
+		ReceiveBufferAllocator allocator = new ReceiveBufferAllocator(100, 3000, 1024 * 1024);
+		assertEquals(allocator.guess(), 4096);
+		for (int i = 0; i < 10; i++) {
+			allocator.record(allocator.guess());
+		}
+		assertEquals(allocator.guess(), ByteBufferPool.MAX_SIZE);
+		for (int i = 0; i < 40; i++) {
+			allocator.record(0);
+		}
+		assertEquals(allocator.guess(), ByteBufferPool.MIN_SIZE);
+
+		ByteBuffer buffer = allocator.allocate();
+		assertEquals(buffer.capacity(), ByteBufferPool.MIN_SIZE);
+		ByteBufferPool.getDirect().release(buffer);
+
+		try {
+			new ReceiveBufferAllocator(2048, 1024, 4096);
+			fail();
+		} catch (IllegalArgumentException e) {
+			//期望的异常
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.voovan.test.network;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.voovan.network.ByteBufferPool;
+import org.voovan.network.EventProcess;
+import org.voovan.network.FileRegion;
+import org.voovan.network.SSLParser;
+import org.voovan.test.network.ssl.SSLRecordBenchmark;
+
+import junit.framework.TestCase;
+
+public class SendFileUnit extends TestCase {
+
+	private File file;
+	private byte[] data;
+
+	public SendFileUnit(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws IOException {
+		data = new byte[ByteBufferPool.MAX_SIZE * 3 + 17];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		file = File.createTempFile("SendFileUnit", ".bin");
+		FileOutputStream outputStream = new FileOutputStream(file);
+		outputStream.write(data);
+		outputStream.close();
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testChunkedSend() throws Exception {
+		StubSession session = new StubSession();
+		session.setRecordSent(true);
+		FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			CompletableFuture<Long> future = session.sendFile(fileChannel, 10, data.length - 20);
+			assertEquals(future.get().longValue(), data.length - 20);
+			assertTrue(Arrays.equals(session.getReceived(), Arrays.copyOfRange(data, 10, data.length - 10)));
+			assertEquals(session.getSendCount(), 3);
+		} finally {
+			fileChannel.close();
+		}
+	}
+
+	public void testFileTooShort() throws Exception {
+		StubSession session = new StubSession();
+		session.setRecordSent(true);
+		FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			session.sendFile(fileChannel, 0, data.length + 1).get();
+			fail("send beyond the end of file should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof EOFException);
+			assertEquals(session.getReceived().length, data.length);
+		} finally {
+			fileChannel.close();
+		}
+	}
+
+	public void testHeadSendFailed() throws Exception {
+		//头部发送失败时关闭文件通道
+		StubSession session = new StubSession();
+		session.setRecordSent(true);
+		session.setSendException(new IOException("send failed"));
+		FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+		FileRegion fileRegion = new FileRegion(ByteBuffer.wrap("head".getBytes()), fileChannel, 0, data.length);
+		CompletableFuture<Integer> future = EventProcess.sendMessage(session, fileRegion);
+		try {
+			future.get();
+			fail("send should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertFalse(fileChannel.isOpen());
+	}
+
+	public void testHeadSendFailedAsync() throws Exception {
+		//头部写入完成后才发送文件,头部写入失败时不发送文件并关闭文件通道
+		StubSession session = new StubSession();
+		session.setAsyncSend(true);
+		FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+		FileRegion fileRegion = new FileRegion(ByteBuffer.wrap("head".getBytes()), fileChannel, 0, data.length);
+		CompletableFuture<Integer> future = EventProcess.sendMessage(session, fileRegion);
+		assertEquals(session.getSendCount(), 1);
+		assertFalse(future.isDone());
+
+		session.pollPendingSend().completeExceptionally(new IOException("write failed"));
+		try {
+			future.get();
+			fail("send should fail");
+		} catch (ExecutionException e) {
+			assertEquals(e.getCause().getMessage(), "write failed");
+		}
+		assertEquals(session.getSendCount(), 1);
+		assertFalse(fileChannel.isOpen());
+	}
+
+	public void testCloseDuringChunkedSend() throws Exception {
+		assertCloseDuringSend(new StubSession());
+	}
+
+	public void testCloseDuringSslSend() throws Exception {
+		StubSession session = new StubSession();
+		SSLParser sslParser = new SSLParser(SSLRecordBenchmark.handShake(), session);
+		assertTrue(sslParser.doHandShake());
+		assertCloseDuringSend(session);
+	}
+
+	/**
+	 * 第一块数据写入完成前断开连接,文件发送以 ClosedChannelException 结束,剩余的文件不再读取和发送
+	 * @param session 会话
+	 */
+	private void assertCloseDuringSend(StubSession session) throws Exception {
+		session.reset();
+		session.setAsyncSend(true);
+		FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			CompletableFuture<Long> future = session.sendFile(fileChannel, 0, data.length);
+			assertFalse(future.isDone());
+			int sendCount = session.getSendCount();
+			assertTrue(sendCount > 0);
+
+			session.close();
+			CompletableFuture<Integer> pendingSend;
+			while ((pendingSend = session.pollPendingSend()) != null) {
+				pendingSend.complete(0);
+			}
+			try {
+				future.get(1, TimeUnit.SECONDS);
+				fail("send should fail");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof ClosedChannelException);
+			}
+			assertEquals(session.getSendCount(), sendCount);
+			assertTrue(session.getSendBytes() < data.length);
+		} finally {
+			fileChannel.close();
+		}
+	}
+}
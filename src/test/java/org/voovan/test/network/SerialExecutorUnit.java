@@ -0,0 +1,66 @@
+package org.voovan.test.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.voovan.network.SerialExecutor;
+
+import junit.framework.TestCase;
+
+public class SerialExecutorUnit extends TestCase {
+
+	public SerialExecutorUnit(String name) {
+		super(name);
+	}
+
+	public void testOrder() throws InterruptedException {
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		SerialExecutor serialExecutor = new SerialExecutor(executorService);
+		final List<Integer> results = new ArrayList<Integer>();
+		final CountDownLatch latch = new CountDownLatch(1000);
+		for (int i = 0; i < 1000; i++) {
+			final int index = i;
+			serialExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					results.add(index);
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(results.get(i).intValue(), i);
+		}
+		executorService.shutdown();
+	}
+
+	public void testRejected() throws InterruptedException {
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		executorService.shutdown();
+		SerialExecutor serialExecutor = new SerialExecutor(executorService);
+		final List<String> results = new ArrayList<String>();
+		
+		//线程池已关闭时在当前线程中执行,事件不会丢失
+		serialExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				results.add("receive");
+			}
+		});
+		serialExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				results.add("disconnect");
+			}
+		});
+		assertEquals(results.size(), 2);
+		assertEquals(results.get(0), "receive");
+		assertEquals(results.get(1), "disconnect");
+		assertFalse(serialExecutor.isBusy());
+	}
+}
@@ -0,0 +1,247 @@
+package org.voovan.test.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.voovan.network.EventTrigger;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageLoader;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.SocketContext;
+import org.voovan.tools.ByteBufferChannel;
+
+/**
+ * 测试用的会话
+ * 		不连接网络,记录发送和暂停/恢复读取的次数,
+ * 		可以设置为记录发送的数据、发送时抛出异常、异步完成发送或者发送指定次数后断开连接
+ */
+public class StubSession extends IoSession {
+
+	private final String name;
+	private final ByteBufferChannel byteBufferChannel = new ByteBufferChannel();
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+	private final ConcurrentLinkedQueue<CompletableFuture<Integer>> pendingSends = new ConcurrentLinkedQueue<CompletableFuture<Integer>>();
+	private volatile boolean connected = true;
+	private volatile boolean recordSent;
+	private volatile boolean asyncSend;
+	private volatile IOException sendException;
+	private volatile int closeAfterSends;
+	private volatile int sendCount;
+	private volatile long sendBytes;
+	private volatile int pauseCount;
+	private volatile int resumeCount;
+
+	public StubSession() {
+		this("StubSession");
+	}
+
+	/**
+	 * 构造函数
+	 * @param name 会话名称,用于 toString
+	 */
+	public StubSession(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 模拟接收到数据
+	 * @param length 数据长度
+	 * @throws IOException
+	 */
+	public void receive(int length) throws IOException {
+		byteBufferChannel.write(ByteBuffer.allocate(length));
+	}
+
+	/**
+	 * 模拟取走已接收的数据
+	 * @param length 数据长度
+	 */
+	public void consume(int length) {
+		byteBufferChannel.skip(length);
+	}
+
+	/**
+	 * 设置是否记录发送的数据
+	 * @param recordSent true: 记录到 getReceived(), false: 直接丢弃
+	 */
+	public void setRecordSent(boolean recordSent) {
+		this.recordSent = recordSent;
+	}
+
+	/**
+	 * 设置是否异步完成发送
+	 * @param asyncSend true: 发送返回未完成的通知,通过 pollPendingSend() 取出后由测试完成
+	 */
+	public void setAsyncSend(boolean asyncSend) {
+		this.asyncSend = asyncSend;
+	}
+
+	/**
+	 * 设置发送时抛出的异常
+	 * @param sendException 异常, null 表示正常发送
+	 */
+	public void setSendException(IOException sendException) {
+		this.sendException = sendException;
+	}
+
+	/**
+	 * 设置发送指定次数后断开连接
+	 * @param closeAfterSends 发送次数, 0 表示不断开
+	 */
+	public void setCloseAfterSends(int closeAfterSends) {
+		this.closeAfterSends = closeAfterSends;
+	}
+
+	/**
+	 * 取出一个未完成的发送通知
+	 * @return 发送通知, 没有时返回 null
+	 */
+	public CompletableFuture<Integer> pollPendingSend() {
+		return pendingSends.poll();
+	}
+
+	public byte[] getReceived() {
+		synchronized (received) {
+			return received.toByteArray();
+		}
+	}
+
+	public int getSendCount() {
+		return sendCount;
+	}
+
+	public long getSendBytes() {
+		return sendBytes;
+	}
+
+	public int getPauseCount() {
+		return pauseCount;
+	}
+
+	public int getResumeCount() {
+		return resumeCount;
+	}
+
+	/**
+	 * 重置发送统计
+	 */
+	public void reset() {
+		sendCount = 0;
+		sendBytes = 0;
+	}
+
+	@Override
+	protected CompletableFuture<Integer> send(ByteBuffer buffer) throws IOException {
+		if (sendException != null) {
+			throw sendException;
+		}
+		if (!connected) {
+			CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		int length = buffer.remaining();
+		if (recordSent) {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			synchronized (received) {
+				received.write(bytes, 0, length);
+			}
+		} else {
+			buffer.position(buffer.limit());
+		}
+		sendCount++;
+		sendBytes += length;
+		if (closeAfterSends > 0 && sendCount >= closeAfterSends) {
+			connected = false;
+		}
+
+		if (asyncSend) {
+			CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+			pendingSends.offer(future);
+			return future;
+		}
+		return CompletableFuture.completedFuture(length);
+	}
+
+	@Override
+	public boolean isConnect() {
+		return connected;
+	}
+
+	@Override
+	public boolean close() {
+		connected = false;
+		return true;
+	}
+
+	@Override
+	protected ByteBufferChannel getByteBufferChannel() {
+		return byteBufferChannel;
+	}
+
+	@Override
+	protected void pauseRead() {
+		pauseCount++;
+	}
+
+	@Override
+	protected void resumeRead() {
+		resumeCount++;
+	}
+
+	@Override
+	protected EventTrigger getEventTrigger() {
+		return null;
+	}
+
+	@Override
+	public String loaclAddress() {
+		return null;
+	}
+
+	@Override
+	public int loaclPort() {
+		return -1;
+	}
+
+	@Override
+	public String remoteAddress() {
+		return null;
+	}
+
+	@Override
+	public int remotePort() {
+		return -1;
+	}
+
+	@Override
+	public SocketContext sockContext() {
+		return null;
+	}
+
+	@Override
+	protected int read(ByteBuffer buffer) throws IOException {
+		return 0;
+	}
+
+	@Override
+	protected MessageLoader getMessageLoader() {
+		return null;
+	}
+
+	@Override
+	protected MessageSplitter getMessagePartition() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return name + "@" + Integer.toHexString(hashCode());
+	}
+}
@@ -0,0 +1,143 @@
+package org.voovan.test.network;
+
+import org.voovan.network.ThreadPoolController;
+import org.voovan.network.ThreadPoolController.Decision;
+
+import junit.framework.TestCase;
+
+public class ThreadPoolControllerUnit extends TestCase {
+
+	private ThreadPoolController controller;
+
+	public ThreadPoolControllerUnit(String name) {
+		super(name);
+	}
+
+	public void setUp() {
+		controller = new ThreadPoolController(4, 100);
+		controller.setTargetQueueDelay(10);
+		controller.setShrinkPatience(3);
+	}
+
+	public void testValidation() {
+		assertIllegal(new Runnable() {
+			@Override
+			public void run() {
+				new ThreadPoolController(0, 10);
+			}
+		});
+		assertIllegal(new Runnable() {
+			@Override
+			public void run() {
+				new ThreadPoolController(10, 5);
+			}
+		});
+		assertIllegal(new Runnable() {
+			@Override
+			public void run() {
+				controller.setMinPoolSize(101);
+			}
+		});
+		assertIllegal(new Runnable() {
+			@Override
+			public void run() {
+				controller.setMinPoolSize(-1);
+			}
+		});
+		assertIllegal(new Runnable() {
+			@Override
+			public void run() {
+				controller.setMaxPoolSize(3);
+			}
+		});
+		assertIllegal(new Runnable() {
+			@Override
+			public void run() {
+				controller.setShrinkPatience(0);
+			}
+		});
+		assertEquals(controller.getMinPoolSize(), 4);
+		assertEquals(controller.getMaxPoolSize(), 100);
+
+		//先调大最大值再调大最小值
+		controller.setMaxPoolSize(200);
+		controller.setMinPoolSize(150);
+		assertEquals(controller.getMinPoolSize(), 150);
+	}
+
+	public void testGrow() {
+		//到达速率 1200/s, 执行时间 20ms: 24 个线程满足到达速率, 4 个线程消化 200 个积压任务, 再留 25% 余量
+		assertEquals(controller.decide(1000, 50, 20, 200, 8, 8), 35);
+		assertEquals(controller.getLastDecision(), Decision.GROW);
+		assertEquals(controller.getGrowCount(), 1);
+
+		//积压很少时至少增加 25%
+		assertEquals(controller.decide(10, 50, 1, 200, 35, 35), 43);
+		assertEquals(controller.getLastDecision(), Decision.GROW);
+	}
+
+	public void testGrowLimit() {
+		controller.setMinPoolSize(2);
+		controller.setMaxPoolSize(16);
+		assertEquals(controller.decide(1000, 50, 20, 200, 8, 8), 16);
+		assertEquals(controller.getLastDecision(), Decision.GROW);
+
+		//已经是最大值
+		assertEquals(controller.decide(1000, 50, 20, 200, 16, 16), 16);
+		assertEquals(controller.getLastDecision(), Decision.HOLD);
+		assertEquals(controller.getGrowCount(), 1);
+	}
+
+	public void testShrinkHysteresis() {
+		//连续 3 次排队延迟很低且线程大量空闲时才缩容
+		assertEquals(controller.decide(10, 1, 1, 0, 2, 16), 16);
+		assertEquals(controller.getLastDecision(), Decision.HOLD);
+		assertEquals(controller.decide(10, 1, 1, 0, 2, 16), 16);
+		assertEquals(controller.getLastDecision(), Decision.HOLD);
+
+		//排队延迟回升,重新计数
+		assertEquals(controller.decide(10, 5, 1, 0, 2, 16), 16);
+		assertEquals(controller.decide(10, 1, 1, 0, 2, 16), 16);
+		assertEquals(controller.decide(10, 1, 1, 0, 2, 16), 16);
+		assertEquals(controller.getShrinkCount(), 0);
+
+		assertEquals(controller.decide(10, 1, 1, 0, 2, 16), 12);
+		assertEquals(controller.getLastDecision(), Decision.SHRINK);
+		assertEquals(controller.getShrinkCount(), 1);
+
+		//缩容后重新计数
+		assertEquals(controller.decide(10, 1, 1, 0, 2, 12), 12);
+		assertEquals(controller.getLastDecision(), Decision.HOLD);
+	}
+
+	public void testShrinkBusy() {
+		//线程没有大量空闲时不缩容
+		for (int i = 0; i < 10; i++) {
+			assertEquals(controller.decide(10, 1, 1, 0, 8, 16), 16);
+		}
+		assertEquals(controller.getShrinkCount(), 0);
+	}
+
+	public void testShrinkLimit() {
+		controller.setMinPoolSize(10);
+		controller.decide(10, 1, 1, 0, 1, 12);
+		controller.decide(10, 1, 1, 0, 1, 12);
+		assertEquals(controller.decide(10, 1, 1, 0, 1, 12), 10);
+		assertEquals(controller.getLastDecision(), Decision.SHRINK);
+
+		//已经是最小值
+		for (int i = 0; i < 5; i++) {
+			assertEquals(controller.decide(10, 1, 1, 0, 1, 10), 10);
+		}
+		assertEquals(controller.getLastDecision(), Decision.HOLD);
+		assertEquals(controller.getShrinkCount(), 1);
+	}
+
+	private static void assertIllegal(Runnable runnable) {
+		try {
+			runnable.run();
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
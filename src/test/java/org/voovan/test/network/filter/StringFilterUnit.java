@@ -0,0 +1,89 @@
+package org.voovan.test.network.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.voovan.network.ByteBufferPool;
+import org.voovan.network.filter.PooledByteBuffer;
+import org.voovan.network.filter.StringFilter;
+
+import junit.framework.TestCase;
+
+public class StringFilterUnit extends TestCase {
+
+	private StringFilter stringFilter;
+
+	public StringFilterUnit(String name) {
+		super(name);
+	}
+
+	public void setUp() {
+		stringFilter = new StringFilter(Charset.forName("UTF-8"));
+	}
+
+	public void testEncode() {
+		Object result = stringFilter.encode(null, "Voovan 测试");
+		assertTrue(result instanceof PooledByteBuffer);
+		PooledByteBuffer pooledByteBuffer = (PooledByteBuffer) result;
+		ByteBuffer buffer = pooledByteBuffer.encode(null);
+		assertTrue(buffer.isDirect());
+		assertEquals(buffer.remaining(), 13);
+		assertEquals(stringFilter.decode(null, buffer), "Voovan 测试");
+		pooledByteBuffer.release(buffer);
+	}
+
+	public void testEncodeGrow() {
+		//多字节字符超过按平均字节数估算的缓冲区大小
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			builder.append("中文");
+		}
+		String message = builder.toString();
+		Object result = stringFilter.encode(null, message);
+		assertTrue(result instanceof PooledByteBuffer);
+		PooledByteBuffer pooledByteBuffer = (PooledByteBuffer) result;
+		ByteBuffer buffer = pooledByteBuffer.encode(null);
+		assertEquals(buffer.remaining(), message.getBytes(Charset.forName("UTF-8")).length);
+		assertEquals(stringFilter.decode(null, buffer), message);
+		pooledByteBuffer.release(buffer);
+	}
+
+	public void testEncodeLarge() {
+		//超过缓冲区池最大尺寸时编码到堆内存
+		char[] chars = new char[ByteBufferPool.MAX_SIZE + 1];
+		Arrays.fill(chars, 'a');
+		String message = new String(chars);
+		long unpooledCount = ByteBufferPool.getDirect().getUnpooledCount();
+		Object result = stringFilter.encode(null, message);
+		assertTrue(result instanceof ByteBuffer);
+		assertFalse(((ByteBuffer) result).isDirect());
+		assertEquals(((ByteBuffer) result).remaining(), chars.length);
+		assertEquals(ByteBufferPool.getDirect().getUnpooledCount(), unpooledCount);
+
+		//估算大小在池化范围内,编码过程中超过最大尺寸
+		Arrays.fill(chars, '中');
+		message = new String(chars, 0, ByteBufferPool.MAX_SIZE / 2);
+		result = stringFilter.encode(null, message);
+		assertTrue(result instanceof ByteBuffer);
+		assertEquals(((ByteBuffer) result).remaining(), message.getBytes(Charset.forName("UTF-8")).length);
+		assertEquals(ByteBufferPool.getDirect().getUnpooledCount(), unpooledCount);
+	}
+
+	public void testDecode() {
+		ByteBuffer heapBuffer = ByteBuffer.wrap("Voovan".getBytes());
+		assertEquals(stringFilter.decode(null, heapBuffer), "Voovan");
+		assertFalse(heapBuffer.hasRemaining());
+
+		ByteBuffer directBuffer = ByteBuffer.allocateDirect(16);
+		directBuffer.put("测试".getBytes(Charset.forName("UTF-8")));
+		directBuffer.flip();
+		assertEquals(stringFilter.decode(null, directBuffer), "测试");
+	}
+
+	public void testPassThrough() {
+		Object object = new Object();
+		assertTrue(stringFilter.encode(null, object) == object);
+		assertTrue(stringFilter.decode(null, object) == object);
+	}
+}
@@ -0,0 +1,127 @@
+package org.voovan.test.network.ssl;
+
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.voovan.network.SSLManager;
+import org.voovan.network.SSLParser;
+import org.voovan.network.SSLWriteMode;
+import org.voovan.test.network.StubSession;
+
+/**
+ * SSL 发送模式的性能对比
+ * 		在内存中完成握手后,分别用 RECORD 和 COALESCE 模式打包相同的数据,
+ * 		统计发送调用次数(对应 Socket 写入次数)和耗时
+ */
+public class SSLRecordBenchmark {
+
+	private static final String KEY_STORE = System.getProperty("user.dir")+"/src/test/java/org/voovan/test/network/ssl/ssl_ks";
+	private static final int MESSAGE_SIZE = 64 * 1024;
+	private static final int MESSAGE_COUNT = 5000;
+
+	public static void main(String[] args) throws Exception {
+		SSLEngine serverEngine = handShake();
+		ByteBuffer message = ByteBuffer.allocate(MESSAGE_SIZE);
+
+		run("RECORD", serverEngine, SSLWriteMode.RECORD, 0, message);
+		run("COALESCE(small->16K)", serverEngine, SSLWriteMode.COALESCE, SSLManager.DEFAULT_RECORD_BOOST_THRESHOLD, message);
+		run("COALESCE(16K)", serverEngine, SSLWriteMode.COALESCE, 0, message);
+	}
+
+	private static void run(String name, SSLEngine engine, SSLWriteMode writeMode, int boostThreshold, ByteBuffer message) throws Exception {
+		SSLManager sslManager = new SSLManager("TLS");
+		sslManager.setWriteMode(writeMode);
+		sslManager.setRecordSize(SSLManager.DEFAULT_SMALL_RECORD_SIZE, boostThreshold, SSLManager.DEFAULT_RECORD_RESET_TIME);
+		StubSession session = new StubSession();
+		SSLParser sslParser = new SSLParser(engine, session, sslManager);
+
+		//预热
+		for(int i=0;i<MESSAGE_COUNT/10;i++){
+			message.rewind();
+			sslParser.warpData(message);
+		}
+		session.reset();
+
+		long startTime = System.nanoTime();
+		for(int i=0;i<MESSAGE_COUNT;i++){
+			message.rewind();
+			sslParser.warpData(message);
+		}
+		long costTime = System.nanoTime() - startTime;
+
+		System.out.println(name + ": sends=" + session.getSendCount()
+				+ " sends/message=" + (double)session.getSendCount() / MESSAGE_COUNT
+				+ " bytes=" + session.getSendBytes()
+				+ " time=" + costTime / 1000000 + "ms"
+				+ " throughput=" + (long)((double)MESSAGE_SIZE * MESSAGE_COUNT / 1024 / 1024 / (costTime / 1e9)) + "MB/s");
+	}
+
+	/**
+	 * 在内存中完成客户端和服务端 SSLEngine 的握手
+	 * @return 服务端 SSLEngine
+	 * @throws Exception
+	 */
+	public static SSLEngine handShake() throws Exception {
+		KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		try(FileInputStream inputStream = new FileInputStream(KEY_STORE)){
+			keyStore.load(inputStream, "passStr".toCharArray());
+		}
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+		keyManagerFactory.init(keyStore, "123123".toCharArray());
+		TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
+		trustManagerFactory.init(keyStore);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+		SSLEngine clientEngine = context.createSSLEngine("localhost", 443);
+		clientEngine.setUseClientMode(true);
+		SSLEngine serverEngine = context.createSSLEngine();
+		serverEngine.setUseClientMode(false);
+
+		int packetSize = serverEngine.getSession().getPacketBufferSize();
+		int appSize = serverEngine.getSession().getApplicationBufferSize();
+		ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4);
+		ByteBuffer serverToClient = ByteBuffer.allocate(packetSize * 4);
+		ByteBuffer clientApp = ByteBuffer.allocate(appSize);
+		ByteBuffer serverApp = ByteBuffer.allocate(appSize);
+		ByteBuffer empty = ByteBuffer.allocate(0);
+
+		clientEngine.beginHandshake();
+		serverEngine.beginHandshake();
+		while(!isDone(clientEngine) || !isDone(serverEngine)){
+			clientEngine.wrap(empty, clientToServer);
+			serverEngine.wrap(empty, serverToClient);
+			runTasks(clientEngine);
+			runTasks(serverEngine);
+
+			clientToServer.flip();
+			serverToClient.flip();
+			serverEngine.unwrap(clientToServer, serverApp);
+			clientEngine.unwrap(serverToClient, clientApp);
+			clientToServer.compact();
+			serverToClient.compact();
+			runTasks(clientEngine);
+			runTasks(serverEngine);
+		}
+		return serverEngine;
+	}
+
+	private static boolean isDone(SSLEngine engine) {
+		HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+		return handshakeStatus == HandshakeStatus.NOT_HANDSHAKING || handshakeStatus == HandshakeStatus.FINISHED;
+	}
+
+	private static void runTasks(SSLEngine engine) {
+		Runnable runnable;
+		while((runnable = engine.getDelegatedTask()) != null){
+			runnable.run();
+		}
+	}
+}
@@ -36,6 +36,57 @@ public class ByteBufferChannelUnit extends TestCase {
 		assertEquals(new String(buffer1.array()), "helyh");
 	}
 	
+	public void testLargeWrite() throws IOException{
+		byte[] data = new byte[ByteBufferChannel.SEGMENT_SIZE*3+17];
+		for(int i=0;i<data.length;i++){
+			data[i] = (byte)(i%128);
+		}
+		byteBufferChannel.write(ByteBuffer.wrap(data));
+		assertEquals(byteBufferChannel.size(),19+data.length);
+		byteBufferChannel.skip(19);
+		ByteBuffer buffer = ByteBuffer.allocate(data.length);
+		int size = byteBufferChannel.read(buffer);
+		assertEquals(size, data.length);
+		assertEquals(buffer.get(ByteBufferChannel.SEGMENT_SIZE*2+5), data[ByteBufferChannel.SEGMENT_SIZE*2+5]);
+		assertEquals(byteBufferChannel.size(),0);
+	}
+	
+	public void testIndexOf() throws IOException{
+		assertEquals(byteBufferChannel.indexOf("hero".getBytes()), 12);
+		assertEquals(byteBufferChannel.indexOf("villain".getBytes()), -1);
+		assertEquals(byteBufferChannel.get(0), 'h');
+		assertEquals(byteBufferChannel.size(),19);
+	}
+	
+	public void testGetBytes() throws IOException{
+		byte[] data = new byte[ByteBufferChannel.SEGMENT_SIZE*2];
+		data[ByteBufferChannel.SEGMENT_SIZE-1] = 1;
+		data[ByteBufferChannel.SEGMENT_SIZE] = 2;
+		byteBufferChannel.write(ByteBuffer.wrap(data));
+		
+		//跨越分段复制,不消费数据
+		byte[] bytes = new byte[4];
+		byteBufferChannel.get(19+ByteBufferChannel.SEGMENT_SIZE-2, bytes);
+		assertEquals(bytes[1], 1);
+		assertEquals(bytes[2], 2);
+		assertEquals(byteBufferChannel.size(), 19+data.length);
+		
+		try {
+			byteBufferChannel.get(19+data.length-2, bytes);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			//期望的异常
+		}
+	}
+	
+	public void testGetBuffer() throws IOException{
+		byteBufferChannel.write(ByteBuffer.wrap(new byte[ByteBufferChannel.SEGMENT_SIZE]));
+		ByteBuffer buffer = byteBufferChannel.getBuffer();
+		assertEquals(buffer.remaining(), 19+ByteBufferChannel.SEGMENT_SIZE);
+		buffer.position(buffer.position()+7);
+		assertEquals(byteBufferChannel.size(), 12+ByteBufferChannel.SEGMENT_SIZE);
+	}
+	
 	public void tearDown() throws IOException{
 		byteBufferChannel.close();
 	}